@@ -2,188 +2,511 @@ package com.univ.logserver.buffer;
 
 import com.univ.logserver.model.LogEntry;
 import com.univ.logserver.model.LogLevel;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Buffer circulaire thread-safe avec mécanisme de back-pressure
  * Implémente producteur-consommateur avec gestion de surcharge
+ *
+ * Une file circulaire par LogLevel: chaque entrée reçoit un numéro d'arrivée,
+ * les consommateurs retirent toujours la tête de file la plus ancienne (ordre
+ * global d'arrivée) et l'éviction du plus ancien DEBUG/TRACE est en O(1).
+ *
+ * Capacité double: nombre d'entrées et, optionnellement, budget mémoire en
+ * octets (estimation par entrée). Le back-pressure et l'éviction s'appliquent
+ * à la première des deux limites atteinte.
+ *
+ * Débordement disque optionnel (SpillFile): quand l'anneau est plein, les
+ * entrées sont écrites dans le fichier au lieu d'être évincées, et remontées
+ * dans l'anneau à mesure que les consommateurs le vident. Tant que le fichier
+ * n'est pas vide, toute nouvelle entrée y passe: l'ordre FIFO est conservé.
+ * Les suppressions n'ont lieu qu'une fois le quota disque atteint.
+ *
+ * Les entrées déjà acceptées puis supprimées par le back-pressure sont
+ * signalées à l'écouteur d'éviction (libération du WAL).
  */
-public class CircularBuffer {
-    private final LogEntry[] buffer;
+public class CircularBuffer implements LogBuffer {
+    private static final int INITIAL_LANE_CAPACITY = 16;
+
+    private final Lane[] lanes;
+    private final Lane traceLane;
+    private final Lane debugLane;
     private final int capacity;
-    private volatile int writeIndex = 0;
-    private volatile int readIndex = 0;
+    private final long maxBytes; // <= 0: pas de budget mémoire
+    private long nextSequence = 0;
     private final AtomicInteger size = new AtomicInteger(0);
-    
+    private volatile long bytesInFlight = 0; // Écrit sous verrou
+    private final SpillFile spill; // null: pas de débordement disque
+    private final Consumer<LogEntry> evictionListener;
+
+    // Débit de vidage du débordement (échantillonné par getSpillDrainRate)
+    private long drainRateSampleNanos = System.nanoTime();
+    private long drainRateSampleRead = 0;
+    private double spillDrainRate = 0;
+
     // Synchronisation
     private final ReentrantLock lock = new ReentrantLock();
     private final Condition notEmpty = lock.newCondition();
     private final Condition notFull = lock.newCondition();
-    
+
     // Statistiques pour back-pressure
     private final AtomicInteger totalAdded = new AtomicInteger(0);
     private final AtomicInteger totalDropped = new AtomicInteger(0);
     private volatile boolean backPressureActive = false;
-    
+
     public CircularBuffer(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * @param maxBytes budget mémoire des entrées en attente (0: limite en nombre seule)
+     */
+    public CircularBuffer(int capacity, long maxBytes) {
+        this(capacity, maxBytes, null);
+    }
+
+    /**
+     * @param spill fichier de débordement (null: éviction quand l'anneau est plein)
+     */
+    public CircularBuffer(int capacity, long maxBytes, SpillFile spill) {
+        this(capacity, maxBytes, spill, null);
+    }
+
+    /**
+     * @param evictionListener reçoit les entrées acceptées puis supprimées (peut être null)
+     */
+    public CircularBuffer(int capacity, long maxBytes, SpillFile spill, Consumer<LogEntry> evictionListener) {
         this.capacity = capacity;
-        this.buffer = new LogEntry[capacity];
+        this.maxBytes = maxBytes;
+        this.spill = spill;
+        this.evictionListener = evictionListener != null ? evictionListener : entry -> { };
+        this.lanes = new Lane[LogLevel.values().length];
+        for (LogLevel level : LogLevel.values()) {
+            lanes[level.ordinal()] = new Lane(Math.min(capacity, INITIAL_LANE_CAPACITY), capacity);
+        }
+        this.traceLane = lanes[LogLevel.TRACE.ordinal()];
+        this.debugLane = lanes[LogLevel.DEBUG.ordinal()];
     }
-    
+
     /**
      * Ajoute une entrée avec gestion du back-pressure
      * @param entry Entrée à ajouter
      * @return true si ajouté, false si rejeté par back-pressure
      */
+    @Override
     public boolean add(LogEntry entry) {
+        int entryBytes = entry.estimateRetainedBytes();
         lock.lock();
         try {
             totalAdded.incrementAndGet();
-            
-            // Gestion du back-pressure à 90% de capacité
-            if (size.get() >= capacity * 0.9) {
+
+            // Débordement disque: anneau plein, ou entrées plus anciennes déjà sur disque
+            if (spill != null && (!spill.isEmpty() || ringFull(entryBytes))) {
                 backPressureActive = true;
-                
-                if (size.get() >= capacity) {
-                    // Buffer plein - supprimer ancien log de faible priorité
-                    LogEntry removed = removeOldestLowPriorityEntry();
-                    if (removed != null) {
-                        totalDropped.incrementAndGet();
-                        System.err.println("Back-pressure: Log supprimé - " + removed.getLevel());
-                    } else {
-                        // Aucun log de faible priorité - rejeter la nouvelle entrée
-                        totalDropped.incrementAndGet();
-                        System.err.println("Back-pressure: Buffer plein, entrée rejetée");
-                        return false;
-                    }
-                }
-            } else if (size.get() < capacity * 0.7) {
+                return addToSpill(entry);
+            }
+
+            // Entrée plus grosse que tout le budget: acceptée seule dans un anneau
+            // vide, rejetée sinon sans évincer les entrées en attente pour elle
+            if (maxBytes > 0 && entryBytes > maxBytes && size.get() > 0) {
+                backPressureActive = true;
+                totalDropped.incrementAndGet();
+                System.err.println("Back-pressure: Entrée plus grosse que le budget, rejetée");
+                return false;
+            }
+
+            // Indicateur de back-pressure à 90% de capacité (entrées ou octets)
+            double usage = usageRatio();
+            if (usage >= 0.9) {
+                backPressureActive = true;
+            } else if (usage < 0.7) {
                 backPressureActive = false;
             }
-            
-            // Ajouter la nouvelle entrée
-            buffer[writeIndex] = entry;
-            writeIndex = (writeIndex + 1) % capacity;
+
+            // Limites vérifiées à chaque ajout, entrée comprise
+            while (ringFull(entryBytes)) {
+                backPressureActive = true;
+                // Buffer plein - supprimer ancien log de faible priorité
+                LogEntry removed = removeOldestLowPriorityEntry();
+                if (removed != null) {
+                    totalDropped.incrementAndGet();
+                    evictionListener.accept(removed);
+                    System.err.println("Back-pressure: Log supprimé - " + removed.getLevel());
+                } else {
+                    // Aucun log de faible priorité - rejeter la nouvelle entrée
+                    totalDropped.incrementAndGet();
+                    System.err.println("Back-pressure: Buffer plein, entrée rejetée");
+                    return false;
+                }
+            }
+
+            // Ajouter la nouvelle entrée dans la file de son niveau
+            lanes[entry.getLevel().ordinal()].addLast(entry, nextSequence++);
             size.incrementAndGet();
-            
+            bytesInFlight += entryBytes;
+
             notEmpty.signal();
             return true;
-            
+
         } finally {
             lock.unlock();
         }
     }
-    
+
+    /**
+     * Attend sur notFull que l'anneau ait de la place, puis add
+     * Avec débordement disque, pas d'attente: le fichier absorbe l'entrée
+     */
+    @Override
+    public boolean add(LogEntry entry, long timeout, TimeUnit unit) throws InterruptedException {
+        int entryBytes = entry.estimateRetainedBytes();
+        long remainingNanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (spill == null && ringFull(entryBytes) && remainingNanos > 0) {
+                remainingNanos = notFull.awaitNanos(remainingNanos);
+            }
+            return add(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Retire une entrée (bloquant si vide)
+     * Attente sur Condition (pas de moniteur synchronized): un thread virtuel
+     * bloqué ici libère son thread porteur et reste interruptible
      */
+    @Override
     public LogEntry take() throws InterruptedException {
-        lock.lock();
+        lock.lockInterruptibly();
         try {
             while (size.get() == 0) {
                 notEmpty.await();
             }
-            
-            LogEntry entry = buffer[readIndex];
-            buffer[readIndex] = null; // Éviter fuites mémoire
-            readIndex = (readIndex + 1) % capacity;
-            size.decrementAndGet();
-            
+
+            LogEntry entry = removeOldest();
+            refillFromSpill();
             notFull.signal();
             return entry;
-            
+
         } finally {
             lock.unlock();
         }
     }
-    
+
     /**
      * Retire une entrée (non-bloquant)
      */
+    @Override
     public LogEntry poll() {
         lock.lock();
         try {
             if (size.get() == 0) {
                 return null;
             }
-            
-            LogEntry entry = buffer[readIndex];
-            buffer[readIndex] = null;
-            readIndex = (readIndex + 1) % capacity;
-            size.decrementAndGet();
-            
+
+            LogEntry entry = removeOldest();
+            refillFromSpill();
             notFull.signal();
             return entry;
-            
+
         } finally {
             lock.unlock();
         }
     }
-    
+
     /**
-     * Supprime la plus ancienne entrée de faible priorité (DEBUG/TRACE)
+     * Transfère un batch complet sous une seule acquisition du verrou
+     * Attend sur notEmpty (pas de sleep) jusqu'à l'arrivée d'une entrée ou l'expiration du délai
      */
-    private LogEntry removeOldestLowPriorityEntry() {
-        int index = readIndex;
-        for (int i = 0; i < size.get(); i++) {
-            LogEntry entry = buffer[index];
-            if (entry != null && 
-                (entry.getLevel() == LogLevel.DEBUG || entry.getLevel() == LogLevel.TRACE)) {
-                
-                LogEntry removed = entry;
-                buffer[index] = null;
-                shiftElements(index);
-                size.decrementAndGet();
-                return removed;
+    @Override
+    public int drainTo(List<LogEntry> target, int maxEntries, long timeout, TimeUnit unit) throws InterruptedException {
+        long remainingNanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size.get() == 0) {
+                if (remainingNanos <= 0) {
+                    return 0;
+                }
+                remainingNanos = notEmpty.awaitNanos(remainingNanos);
+            }
+
+            int drained = 0;
+            while (drained < maxEntries && size.get() > 0) {
+                target.add(removeOldest());
+                drained++;
             }
-            index = (index + 1) % capacity;
+            refillFromSpill();
+            notFull.signalAll();
+            return drained;
+
+        } finally {
+            lock.unlock();
         }
-        
-        // Aucune entrée de faible priorité - supprimer la plus ancienne
-        if (size.get() > 0) {
-            LogEntry removed = buffer[readIndex];
-            buffer[readIndex] = null;
-            readIndex = (readIndex + 1) % capacity;
-            size.decrementAndGet();
+    }
+
+    /**
+     * Retire l'entrée arrivée en premier, toutes files confondues
+     */
+    private LogEntry removeOldest() {
+        Lane oldest = null;
+        for (Lane lane : lanes) {
+            if (lane.count > 0 && (oldest == null || lane.headSequence() < oldest.headSequence())) {
+                oldest = lane;
+            }
+        }
+        if (oldest == null) {
+            return null;
+        }
+        return release(oldest.removeFirst());
+    }
+
+    /**
+     * Décompte une entrée retirée (sous verrou)
+     */
+    private LogEntry release(LogEntry entry) {
+        size.decrementAndGet();
+        bytesInFlight -= entry.estimateRetainedBytes();
+        return entry;
+    }
+
+    /**
+     * Taux de remplissage: le plus élevé entre entrées et octets
+     */
+    private double usageRatio() {
+        double ratio = (double) size.get() / capacity;
+        if (maxBytes > 0) {
+            ratio = Math.max(ratio, (double) bytesInFlight / maxBytes);
+        }
+        return ratio;
+    }
+
+    /**
+     * Vrai si l'entrée dépasserait le budget alors que l'anneau n'est pas vide
+     * (une entrée seule est toujours acceptée, sinon elle ne passerait jamais)
+     */
+    private boolean exceedsBudget(int entryBytes) {
+        return maxBytes > 0 && bytesInFlight + entryBytes > maxBytes && size.get() > 0;
+    }
+
+    private boolean ringFull(int entryBytes) {
+        return size.get() >= capacity || exceedsBudget(entryBytes);
+    }
+
+    /**
+     * Écrit l'entrée dans le fichier de débordement (sous verrou)
+     * Quota atteint: une entrée DEBUG/TRACE est rejetée; sinon le plus ancien
+     * DEBUG/TRACE de l'anneau est supprimé et la tête du fichier remonte à sa
+     * place, ce qui libère de l'espace disque pour la nouvelle entrée.
+     */
+    private boolean addToSpill(LogEntry entry) {
+        while (!spill.append(entry)) {
+            LogEntry removed = spill.isEmpty() || isLowPriority(entry) ? null : removeLowPriorityEntry();
+            if (removed == null) {
+                totalDropped.incrementAndGet();
+                System.err.println("Débordement: quota disque atteint, entrée rejetée");
+                return false;
+            }
+            totalDropped.incrementAndGet();
+            evictionListener.accept(removed);
+            System.err.println("Débordement: Log supprimé - " + removed.getLevel());
+            refillFromSpill();
+        }
+        notEmpty.signal();
+        return true;
+    }
+
+    /**
+     * Remonte les entrées du fichier de débordement dans l'anneau (sous verrou)
+     * Elles sont plus récentes que toutes celles de l'anneau: l'ordre est conservé.
+     * Le budget mémoire peut être dépassé d'une entrée (taille connue après lecture).
+     */
+    private void refillFromSpill() {
+        if (spill == null) {
+            return;
+        }
+        while (!spill.isEmpty() && !ringFull(0)) {
+            LogEntry entry = spill.poll();
+            lanes[entry.getLevel().ordinal()].addLast(entry, nextSequence++);
+            size.incrementAndGet();
+            bytesInFlight += entry.estimateRetainedBytes();
+        }
+    }
+
+    private static boolean isLowPriority(LogEntry entry) {
+        return entry.getLevel() == LogLevel.DEBUG || entry.getLevel() == LogLevel.TRACE;
+    }
+
+    /**
+     * Supprime la plus ancienne entrée de faible priorité (DEBUG/TRACE)
+     * Comparaison des deux têtes de file: O(1)
+     */
+    private LogEntry removeOldestLowPriorityEntry() {
+        LogEntry removed = removeLowPriorityEntry();
+        if (removed != null) {
             return removed;
         }
-        
-        return null;
+
+        // Aucune entrée de faible priorité - supprimer la plus ancienne
+        return removeOldest();
     }
-    
+
     /**
-     * Décale les éléments après suppression
+     * Supprime la plus ancienne entrée DEBUG/TRACE, null s'il n'y en a pas
      */
-    private void shiftElements(int removedIndex) {
-        int current = removedIndex;
-        while (current != writeIndex) {
-            int next = (current + 1) % capacity;
-            if (next == writeIndex) break;
-            buffer[current] = buffer[next];
-            current = next;
+    private LogEntry removeLowPriorityEntry() {
+        Lane lowPriority = null;
+        if (traceLane.count > 0 && debugLane.count > 0) {
+            lowPriority = traceLane.headSequence() < debugLane.headSequence() ? traceLane : debugLane;
+        } else if (traceLane.count > 0) {
+            lowPriority = traceLane;
+        } else if (debugLane.count > 0) {
+            lowPriority = debugLane;
         }
-        writeIndex = current;
+
+        return lowPriority != null ? release(lowPriority.removeFirst()) : null;
     }
-    
+
     // Méthodes d'information
-    public int size() { return size.get(); }
-    public boolean isEmpty() { return size.get() == 0; }
-    public boolean isFull() { return size.get() >= capacity; }
-    public boolean isBackPressureActive() { return backPressureActive; }
-    public int getTotalAdded() { return totalAdded.get(); }
-    public int getTotalDropped() { return totalDropped.get(); }
-    
+    @Override public int size() { return size.get(); }
+    @Override public boolean isEmpty() { return size.get() == 0; }
+    @Override public boolean isFull() { return size.get() >= capacity; }
+    @Override public boolean isBackPressureActive() { return backPressureActive; }
+    @Override public int getTotalAdded() { return totalAdded.get(); }
+    @Override public int getTotalDropped() { return totalDropped.get(); }
+    @Override public long getBytesInFlight() { return bytesInFlight; }
+    public long getMaxBytes() { return maxBytes; }
+
+    @Override public boolean isSpillEnabled() { return spill != null; }
+    @Override public int getSpillDepth() { return spill != null ? spill.size() : 0; }
+    @Override public long getSpillBytes() { return spill != null ? spill.getUsedBytes() : 0; }
+    @Override public long getTotalSpilled() { return spill != null ? spill.getTotalWritten() : 0; }
+    @Override public long getTotalUnspilled() { return spill != null ? spill.getTotalRead() : 0; }
+
+    /**
+     * Entrées remontées du débordement par seconde, depuis l'échantillon précédent
+     * (nouvel échantillon au plus une fois par seconde)
+     */
+    @Override
+    public double getSpillDrainRate() {
+        if (spill == null) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            long elapsed = now - drainRateSampleNanos;
+            if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+                long read = spill.getTotalRead();
+                spillDrainRate = (read - drainRateSampleRead) * 1e9 / elapsed;
+                drainRateSampleRead = read;
+                drainRateSampleNanos = now;
+            }
+            return spillDrainRate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ferme et supprime le fichier de débordement
+     */
+    @Override
+    public void close() {
+        if (spill == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (!spill.isEmpty()) {
+                System.err.println("Débordement: " + spill.size() + " entrées non traitées à la fermeture");
+            }
+            spill.close();
+        } catch (IOException e) {
+            System.err.println("Erreur fermeture débordement: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
     public double getCapacityUsage() {
-        return (double) size.get() / capacity * 100.0;
+        return usageRatio() * 100.0;
     }
-    
+
+    @Override
     public String getStats() {
-        return String.format(
-            "Buffer Stats - Size: %d/%d (%.1f%%), Added: %d, Dropped: %d, BackPressure: %s",
-            size.get(), capacity, getCapacityUsage(), 
-            getTotalAdded(), getTotalDropped(), isBackPressureActive()
+        String stats = String.format(
+            "Buffer Stats - Size: %d/%d (%.1f%%), Added: %d, Dropped: %d, BackPressure: %s, Bytes: %d/%s",
+            size.get(), capacity, getCapacityUsage(),
+            getTotalAdded(), getTotalDropped(), isBackPressureActive(),
+            bytesInFlight, maxBytes > 0 ? String.valueOf(maxBytes) : "-"
         );
+        if (spill == null) {
+            return stats;
+        }
+        return stats + String.format(", Spill: %d (%d/%d bytes), Spilled: %d, DrainRate: %.1f/s",
+            getSpillDepth(), getSpillBytes(), spill.getQuota(), getTotalSpilled(), getSpillDrainRate());
+    }
+
+    /**
+     * File circulaire d'un niveau: entrées et numéros d'arrivée en tableaux
+     * parallèles, agrandie à la demande jusqu'à la capacité du buffer
+     */
+    private static final class Lane {
+        private LogEntry[] entries;
+        private long[] sequences;
+        private final int maxCapacity;
+        private int head = 0;
+        private int count = 0;
+
+        Lane(int initialCapacity, int maxCapacity) {
+            this.entries = new LogEntry[initialCapacity];
+            this.sequences = new long[initialCapacity];
+            this.maxCapacity = maxCapacity;
+        }
+
+        long headSequence() {
+            return sequences[head];
+        }
+
+        void addLast(LogEntry entry, long sequence) {
+            if (count == entries.length) {
+                grow();
+            }
+            int tail = (head + count) % entries.length;
+            entries[tail] = entry;
+            sequences[tail] = sequence;
+            count++;
+        }
+
+        LogEntry removeFirst() {
+            LogEntry entry = entries[head];
+            entries[head] = null; // Éviter fuites mémoire
+            head = (head + 1) % entries.length;
+            count--;
+            return entry;
+        }
+
+        private void grow() {
+            int newCapacity = Math.min(Math.max(entries.length * 2, 1), maxCapacity);
+            LogEntry[] newEntries = new LogEntry[newCapacity];
+            long[] newSequences = new long[newCapacity];
+            for (int i = 0; i < count; i++) {
+                int index = (head + i) % entries.length;
+                newEntries[i] = entries[index];
+                newSequences[i] = sequences[index];
+            }
+            entries = newEntries;
+            sequences = newSequences;
+            head = 0;
+        }
     }
 }
@@ -0,0 +1,403 @@
+package com.univ.logserver.buffer;
+
+import com.univ.logserver.model.LogEntry;
+import com.univ.logserver.model.LogLevel;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Buffer circulaire multi-producteurs / multi-consommateurs sans verrou
+ * Slots numérotés par séquence, curseurs isolés sur leur ligne de cache,
+ * capacité arrondie à la puissance de deux supérieure.
+ *
+ * Quand l'anneau est plein: une nouvelle entrée DEBUG/TRACE est rejetée,
+ * sinon la plus ancienne entrée est évincée pour lui faire de la place si
+ * son niveau n'est pas plus prioritaire (anneau FIFO: seule la plus
+ * ancienne peut être retirée); un ERROR en tête n'est jamais évincé pour
+ * un INFO, qui est rejeté.
+ * Les entrées évincées sont signalées à l'écouteur d'éviction (libération du WAL).
+ * Le verrou n'est utilisé que pour réveiller les consommateurs endormis dans
+ * take() et les producteurs qui attendent de la place (add avec délai).
+ *
+ * Budget mémoire optionnel (octets estimés des entrées en attente), appliqué
+ * avec la même politique; limite souple: des producteurs concurrents peuvent
+ * le dépasser brièvement d'une entrée chacun. Une entrée plus grosse que
+ * tout le budget n'est acceptée que dans un anneau vide, sans éviction.
+ */
+public class LockFreeRingBuffer implements LogBuffer {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<LogEntry> slots;
+    private final AtomicLongArray sequences;
+    private final PaddedCursor enqueueCursor = new PaddedCursor();
+    private final PaddedCursor dequeueCursor = new PaddedCursor();
+
+    // Attente des consommateurs bloqués
+    private final AtomicInteger waitingConsumers = new AtomicInteger(0);
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition notEmpty = waitLock.newCondition();
+    private final AtomicInteger waitingProducers = new AtomicInteger(0);
+    private final Condition notFull = waitLock.newCondition();
+
+    // Statistiques pour back-pressure
+    private final AtomicInteger totalAdded = new AtomicInteger(0);
+    private final AtomicInteger totalDropped = new AtomicInteger(0);
+    private volatile boolean backPressureActive = false;
+
+    // Budget mémoire (<= 0: limite en nombre seule)
+    private final long maxBytes;
+    private final AtomicLong bytesInFlight = new AtomicLong(0);
+
+    private final Consumer<LogEntry> evictionListener;
+
+    public LockFreeRingBuffer(int requestedCapacity) {
+        this(requestedCapacity, 0);
+    }
+
+    public LockFreeRingBuffer(int requestedCapacity, long maxBytes) {
+        this(requestedCapacity, maxBytes, null);
+    }
+
+    /**
+     * @param evictionListener reçoit les entrées évincées (peut être null)
+     */
+    public LockFreeRingBuffer(int requestedCapacity, long maxBytes, Consumer<LogEntry> evictionListener) {
+        if (requestedCapacity <= 0) {
+            throw new IllegalArgumentException("Capacité invalide: " + requestedCapacity);
+        }
+        this.capacity = nextPowerOfTwo(requestedCapacity);
+        this.maxBytes = maxBytes;
+        this.evictionListener = evictionListener != null ? evictionListener : entry -> { };
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        int highest = Integer.highestOneBit(value);
+        return highest == value ? value : highest << 1;
+    }
+
+    @Override
+    public boolean add(LogEntry entry) {
+        totalAdded.incrementAndGet();
+        updateBackPressure();
+
+        int entryBytes = entry.estimateRetainedBytes();
+        // Entrée plus grosse que tout le budget: acceptée seule dans un anneau
+        // vide, rejetée sinon sans évincer les entrées en attente pour elle
+        if (maxBytes > 0 && entryBytes > maxBytes && size() > 0) {
+            totalDropped.incrementAndGet();
+            System.err.println("Back-pressure: Entrée plus grosse que le budget, rejetée");
+            return false;
+        }
+        while (overBudget(entryBytes) || !offer(entry, entryBytes)) {
+            // Anneau plein: privilégier les entrées de priorité haute
+            if (entry.getLevel() == LogLevel.DEBUG || entry.getLevel() == LogLevel.TRACE) {
+                totalDropped.incrementAndGet();
+                System.err.println("Back-pressure: Buffer plein, entrée rejetée");
+                return false;
+            }
+            LogEntry removed = pollEvictable(entry.getLevel());
+            if (removed != null) {
+                totalDropped.incrementAndGet();
+                evictionListener.accept(removed);
+                System.err.println("Back-pressure: Log supprimé - " + removed.getLevel());
+            } else if (!isEmpty()) {
+                // Plus ancienne entrée plus prioritaire: rejeter la nouvelle
+                totalDropped.incrementAndGet();
+                System.err.println("Back-pressure: Buffer plein, entrée rejetée");
+                return false;
+            }
+        }
+
+        signalConsumers();
+        return true;
+    }
+
+    /**
+     * Attend sur notFull (réveil par les consommateurs) que l'anneau ait de la place, puis add
+     */
+    @Override
+    public boolean add(LogEntry entry, long timeout, TimeUnit unit) throws InterruptedException {
+        int entryBytes = entry.estimateRetainedBytes();
+        if (isFull() || overBudget(entryBytes)) {
+            long remainingNanos = unit.toNanos(timeout);
+            waitLock.lockInterruptibly();
+            try {
+                waitingProducers.incrementAndGet();
+                try {
+                    while ((isFull() || overBudget(entryBytes)) && remainingNanos > 0) {
+                        remainingNanos = notFull.awaitNanos(remainingNanos);
+                    }
+                } finally {
+                    waitingProducers.decrementAndGet();
+                }
+            } finally {
+                waitLock.unlock();
+            }
+        }
+        return add(entry);
+    }
+
+    private void updateBackPressure() {
+        double usage = usageRatio();
+        if (usage >= 0.9) {
+            backPressureActive = true;
+        } else if (usage < 0.7) {
+            backPressureActive = false;
+        }
+    }
+
+    /**
+     * Taux de remplissage: le plus élevé entre entrées et octets
+     */
+    private double usageRatio() {
+        double ratio = (double) size() / capacity;
+        if (maxBytes > 0) {
+            ratio = Math.max(ratio, (double) bytesInFlight.get() / maxBytes);
+        }
+        return ratio;
+    }
+
+    /**
+     * Vrai si l'entrée dépasserait le budget alors que l'anneau n'est pas vide
+     * (une entrée seule est toujours acceptée, sinon elle ne passerait jamais)
+     */
+    private boolean overBudget(int entryBytes) {
+        return maxBytes > 0 && bytesInFlight.get() + entryBytes > maxBytes && size() > 0;
+    }
+
+    /**
+     * Réserve un slot par CAS sur le curseur d'écriture puis le publie
+     */
+    private boolean offer(LogEntry entry, int entryBytes) {
+        long position = enqueueCursor.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (enqueueCursor.compareAndSet(position, position + 1)) {
+                    bytesInFlight.addAndGet(entryBytes);
+                    slots.lazySet(index, entry);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = enqueueCursor.get();
+            } else if (difference < 0) {
+                return false; // Plein
+            } else {
+                position = enqueueCursor.get();
+            }
+        }
+    }
+
+    @Override
+    public LogEntry poll() {
+        return pollEvictable(null);
+    }
+
+    /**
+     * Retire la plus ancienne entrée, si son niveau n'est pas plus prioritaire
+     * que level (null: sans condition); le slot publié est lu avant le CAS
+     * qui l'attribue
+     * @return null si l'anneau est vide ou si la plus ancienne est plus prioritaire
+     */
+    private LogEntry pollEvictable(LogLevel level) {
+        long position = dequeueCursor.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                LogEntry head = slots.get(index);
+                if (level != null && head != null && head.getLevel().getPriority() > level.getPriority()) {
+                    if (dequeueCursor.get() == position) {
+                        return null;
+                    }
+                    position = dequeueCursor.get(); // Déjà retirée: nouvelle tête
+                    continue;
+                }
+                if (dequeueCursor.compareAndSet(position, position + 1)) {
+                    LogEntry entry = slots.get(index);
+                    slots.lazySet(index, null); // Éviter fuites mémoire
+                    sequences.set(index, position + capacity);
+                    bytesInFlight.addAndGet(-entry.estimateRetainedBytes());
+                    signalProducers();
+                    return entry;
+                }
+                position = dequeueCursor.get();
+            } else if (difference < 0) {
+                return null; // Vide
+            } else {
+                position = dequeueCursor.get();
+            }
+        }
+    }
+
+    /**
+     * Retire une entrée (bloquant si vide)
+     * Les producteurs ne prennent le verrou que si un consommateur attend
+     */
+    @Override
+    public LogEntry take() throws InterruptedException {
+        LogEntry entry = poll();
+        if (entry != null) {
+            return entry;
+        }
+
+        waitLock.lockInterruptibly();
+        try {
+            waitingConsumers.incrementAndGet();
+            try {
+                while ((entry = poll()) == null) {
+                    notEmpty.await();
+                }
+                return entry;
+            } finally {
+                waitingConsumers.decrementAndGet();
+            }
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Transfère jusqu'à maxEntries entrées; attend sur la Condition seulement si l'anneau est vide
+     */
+    @Override
+    public int drainTo(List<LogEntry> target, int maxEntries, long timeout, TimeUnit unit) throws InterruptedException {
+        int drained = drainAvailable(target, maxEntries);
+        if (drained > 0) {
+            return drained;
+        }
+
+        long remainingNanos = unit.toNanos(timeout);
+        waitLock.lockInterruptibly();
+        try {
+            waitingConsumers.incrementAndGet();
+            try {
+                while ((drained = drainAvailable(target, maxEntries)) == 0 && remainingNanos > 0) {
+                    remainingNanos = notEmpty.awaitNanos(remainingNanos);
+                }
+                return drained;
+            } finally {
+                waitingConsumers.decrementAndGet();
+            }
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    private int drainAvailable(List<LogEntry> target, int maxEntries) {
+        int drained = 0;
+        LogEntry entry;
+        while (drained < maxEntries && (entry = poll()) != null) {
+            target.add(entry);
+            drained++;
+        }
+        return drained;
+    }
+
+    private void signalConsumers() {
+        if (waitingConsumers.get() > 0) {
+            waitLock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                waitLock.unlock();
+            }
+        }
+    }
+
+    private void signalProducers() {
+        if (waitingProducers.get() > 0) {
+            waitLock.lock();
+            try {
+                notFull.signal();
+            } finally {
+                waitLock.unlock();
+            }
+        }
+    }
+
+    // Méthodes d'information
+    @Override
+    public int size() {
+        long currentSize = enqueueCursor.get() - dequeueCursor.get();
+        return (int) Math.max(0, Math.min(capacity, currentSize));
+    }
+
+    @Override public boolean isEmpty() { return size() == 0; }
+    @Override public boolean isFull() { return size() >= capacity; }
+    @Override public boolean isBackPressureActive() { return backPressureActive; }
+    @Override public int getTotalAdded() { return totalAdded.get(); }
+    @Override public int getTotalDropped() { return totalDropped.get(); }
+    @Override public long getBytesInFlight() { return bytesInFlight.get(); }
+    public int getCapacity() { return capacity; }
+    public long getMaxBytes() { return maxBytes; }
+
+    @Override
+    public double getCapacityUsage() {
+        return usageRatio() * 100.0;
+    }
+
+    @Override
+    public String getStats() {
+        int currentSize = size();
+        return String.format(
+            "Buffer Stats - Size: %d/%d (%.1f%%), Added: %d, Dropped: %d, BackPressure: %s, Bytes: %d/%s",
+            currentSize, capacity, getCapacityUsage(),
+            getTotalAdded(), getTotalDropped(), isBackPressureActive(),
+            getBytesInFlight(), maxBytes > 0 ? String.valueOf(maxBytes) : "-"
+        );
+    }
+
+    /**
+     * Curseur entouré de padding pour éviter le faux partage entre
+     * producteurs et consommateurs (le champ value est seul sur sa ligne de cache)
+     */
+    static class LeftPadding {
+        protected long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    static class CursorValue extends LeftPadding {
+        protected volatile long value;
+    }
+
+    static final class PaddedCursor extends CursorValue {
+        protected long p9, p10, p11, p12, p13, p14, p15;
+
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(CursorValue.class, "value", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        long get() {
+            return value;
+        }
+
+        boolean compareAndSet(long expected, long newValue) {
+            return VALUE.compareAndSet(this, expected, newValue);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.univ.logserver.buffer;
+
+import com.univ.logserver.model.LogEntry;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interface commune des buffers d'ingestion
+ * Permet de choisir l'implémentation (verrou global, sans verrou, etc.)
+ */
+public interface LogBuffer {
+
+    /**
+     * Ajoute une entrée avec gestion du back-pressure
+     * @return true si ajouté, false si rejeté par back-pressure
+     */
+    boolean add(LogEntry entry);
+
+    /**
+     * Ajoute une entrée en attendant au plus timeout qu'une place se libère
+     * (attente sur Condition, sans sommeil); au-delà, même back-pressure que add
+     * @return true si ajouté, false si rejeté par back-pressure
+     */
+    boolean add(LogEntry entry, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Retire une entrée (bloquant si vide)
+     */
+    LogEntry take() throws InterruptedException;
+
+    /**
+     * Retire une entrée (non-bloquant)
+     */
+    LogEntry poll();
+
+    /**
+     * Transfère jusqu'à maxEntries entrées dans target, en attendant au plus
+     * timeout qu'au moins une entrée soit disponible
+     * @return nombre d'entrées transférées (0 si le délai a expiré)
+     */
+    int drainTo(List<LogEntry> target, int maxEntries, long timeout, TimeUnit unit) throws InterruptedException;
+
+    int size();
+
+    boolean isEmpty();
+
+    boolean isFull();
+
+    boolean isBackPressureActive();
+
+    int getTotalAdded();
+
+    int getTotalDropped();
+
+    double getCapacityUsage();
+
+    /**
+     * Mémoire estimée des entrées présentes (LogEntry.estimateRetainedBytes)
+     */
+    long getBytesInFlight();
+
+    String getStats();
+
+    /**
+     * Débordement disque configuré (buffer.spill.directory)
+     */
+    default boolean isSpillEnabled() { return false; }
+
+    /**
+     * Entrées en attente dans le fichier de débordement
+     */
+    default int getSpillDepth() { return 0; }
+
+    default long getSpillBytes() { return 0; }
+
+    default long getTotalSpilled() { return 0; }
+
+    default long getTotalUnspilled() { return 0; }
+
+    /**
+     * Entrées remontées du débordement par seconde
+     */
+    default double getSpillDrainRate() { return 0; }
+
+    /**
+     * Libère les ressources du buffer (fichier de débordement), à l'arrêt
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,327 @@
+package com.univ.logserver.buffer;
+
+import com.univ.logserver.model.LogEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Buffer partitionné en K shards indépendants
+ * Les producteurs choisissent leur shard par hash de l'application, chaque
+ * processeur possède un shard (consumer(i)) et vole dans les autres quand
+ * le sien est vide. Les statistiques sont agrégées sur tous les shards.
+ */
+public class ShardedLogBuffer implements LogBuffer {
+    private static final long STEAL_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final LogBuffer[] shards;
+    private final AtomicInteger nextPollShard = new AtomicInteger(0);
+    private final AtomicLong totalStolen = new AtomicLong(0);
+
+    public ShardedLogBuffer(int shardCount, int capacityPerShard, IntFunction<LogBuffer> shardFactory) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Nombre de shards invalide: " + shardCount);
+        }
+        this.shards = new LogBuffer[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = shardFactory.apply(capacityPerShard);
+        }
+    }
+
+    /**
+     * Shard d'une entrée: même application, même shard (ordre conservé par application)
+     */
+    private LogBuffer shardFor(LogEntry entry) {
+        String key = entry.getApplicationName();
+        int hash = key != null ? key.hashCode() : 0;
+        hash ^= (hash >>> 16);
+        return shards[Math.floorMod(hash, shards.length)];
+    }
+
+    @Override
+    public boolean add(LogEntry entry) {
+        return shardFor(entry).add(entry);
+    }
+
+    @Override
+    public boolean add(LogEntry entry, long timeout, TimeUnit unit) throws InterruptedException {
+        return shardFor(entry).add(entry, timeout, unit);
+    }
+
+    /**
+     * Vue consommateur du shard index: draine son shard puis vole les autres
+     */
+    public LogBuffer consumer(int index) {
+        return new ShardConsumer(Math.floorMod(index, shards.length));
+    }
+
+    @Override
+    public LogEntry poll() {
+        int start = Math.floorMod(nextPollShard.getAndIncrement(), shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            LogEntry entry = shards[(start + i) % shards.length].poll();
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public LogEntry take() throws InterruptedException {
+        List<LogEntry> single = new ArrayList<>(1);
+        while (drainTo(single, 1, 1, TimeUnit.SECONDS) == 0) {
+            // Attente jusqu'à la première entrée
+        }
+        return single.get(0);
+    }
+
+    @Override
+    public int drainTo(List<LogEntry> target, int maxEntries, long timeout, TimeUnit unit) throws InterruptedException {
+        return drainFrom(Math.floorMod(nextPollShard.getAndIncrement(), shards.length), target, maxEntries, timeout, unit);
+    }
+
+    /**
+     * Draine le shard home, vole les autres s'il est vide, puis attend sur
+     * le shard home par tranches courtes pour revérifier les autres
+     */
+    private int drainFrom(int home, List<LogEntry> target, int maxEntries, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            int drained = shards[home].drainTo(target, maxEntries, 0, TimeUnit.NANOSECONDS);
+            if (drained > 0) {
+                return drained;
+            }
+
+            for (int i = 1; i < shards.length; i++) {
+                int victim = (home + i) % shards.length;
+                drained = shards[victim].drainTo(target, maxEntries, 0, TimeUnit.NANOSECONDS);
+                if (drained > 0) {
+                    totalStolen.addAndGet(drained);
+                    return drained;
+                }
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return 0;
+            }
+            drained = shards[home].drainTo(target, maxEntries, Math.min(remaining, STEAL_CHECK_NANOS), TimeUnit.NANOSECONDS);
+            if (drained > 0) {
+                return drained;
+            }
+        }
+    }
+
+    // Méthodes d'information agrégées
+    @Override
+    public int size() {
+        int total = 0;
+        for (LogBuffer shard : shards) {
+            total += shard.size();
+        }
+        return total;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (LogBuffer shard : shards) {
+            if (!shard.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isFull() {
+        for (LogBuffer shard : shards) {
+            if (!shard.isFull()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isBackPressureActive() {
+        for (LogBuffer shard : shards) {
+            if (shard.isBackPressureActive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getTotalAdded() {
+        int total = 0;
+        for (LogBuffer shard : shards) {
+            total += shard.getTotalAdded();
+        }
+        return total;
+    }
+
+    @Override
+    public int getTotalDropped() {
+        int total = 0;
+        for (LogBuffer shard : shards) {
+            total += shard.getTotalDropped();
+        }
+        return total;
+    }
+
+    @Override
+    public double getCapacityUsage() {
+        double total = 0;
+        for (LogBuffer shard : shards) {
+            total += shard.getCapacityUsage();
+        }
+        return total / shards.length;
+    }
+
+    @Override
+    public long getBytesInFlight() {
+        long total = 0;
+        for (LogBuffer shard : shards) {
+            total += shard.getBytesInFlight();
+        }
+        return total;
+    }
+
+    @Override
+    public boolean isSpillEnabled() {
+        for (LogBuffer shard : shards) {
+            if (shard.isSpillEnabled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getSpillDepth() {
+        int total = 0;
+        for (LogBuffer shard : shards) {
+            total += shard.getSpillDepth();
+        }
+        return total;
+    }
+
+    @Override
+    public long getSpillBytes() {
+        long total = 0;
+        for (LogBuffer shard : shards) {
+            total += shard.getSpillBytes();
+        }
+        return total;
+    }
+
+    @Override
+    public long getTotalSpilled() {
+        long total = 0;
+        for (LogBuffer shard : shards) {
+            total += shard.getTotalSpilled();
+        }
+        return total;
+    }
+
+    @Override
+    public long getTotalUnspilled() {
+        long total = 0;
+        for (LogBuffer shard : shards) {
+            total += shard.getTotalUnspilled();
+        }
+        return total;
+    }
+
+    @Override
+    public double getSpillDrainRate() {
+        double total = 0;
+        for (LogBuffer shard : shards) {
+            total += shard.getSpillDrainRate();
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        for (LogBuffer shard : shards) {
+            shard.close();
+        }
+    }
+
+    public int getShardCount() { return shards.length; }
+    public long getTotalStolen() { return totalStolen.get(); }
+
+    @Override
+    public String getStats() {
+        String stats = String.format(
+            "Buffer Stats - Size: %d (%.1f%%), Added: %d, Dropped: %d, BackPressure: %s, Bytes: %d, Shards: %d, Stolen: %d",
+            size(), getCapacityUsage(), getTotalAdded(), getTotalDropped(),
+            isBackPressureActive(), getBytesInFlight(), shards.length, getTotalStolen()
+        );
+        if (!isSpillEnabled()) {
+            return stats;
+        }
+        return stats + String.format(", Spill: %d (%d bytes), Spilled: %d, DrainRate: %.1f/s",
+            getSpillDepth(), getSpillBytes(), getTotalSpilled(), getSpillDrainRate());
+    }
+
+    /**
+     * Vue d'un processeur: consommation prioritaire de son shard, vol sinon;
+     * les écritures et statistiques restent celles du buffer partitionné
+     */
+    private final class ShardConsumer implements LogBuffer {
+        private final int home;
+
+        ShardConsumer(int home) {
+            this.home = home;
+        }
+
+        @Override
+        public int drainTo(List<LogEntry> target, int maxEntries, long timeout, TimeUnit unit) throws InterruptedException {
+            return drainFrom(home, target, maxEntries, timeout, unit);
+        }
+
+        @Override
+        public LogEntry poll() {
+            LogEntry entry = shards[home].poll();
+            return entry != null ? entry : ShardedLogBuffer.this.poll();
+        }
+
+        @Override
+        public LogEntry take() throws InterruptedException {
+            List<LogEntry> single = new ArrayList<>(1);
+            while (drainFrom(home, single, 1, 1, TimeUnit.SECONDS) == 0) {
+                // Attente jusqu'à la première entrée
+            }
+            return single.get(0);
+        }
+
+        @Override public boolean add(LogEntry entry) { return ShardedLogBuffer.this.add(entry); }
+        @Override public boolean add(LogEntry entry, long timeout, TimeUnit unit) throws InterruptedException {
+            return ShardedLogBuffer.this.add(entry, timeout, unit);
+        }
+        @Override public int size() { return ShardedLogBuffer.this.size(); }
+        @Override public boolean isEmpty() { return ShardedLogBuffer.this.isEmpty(); }
+        @Override public boolean isFull() { return ShardedLogBuffer.this.isFull(); }
+        @Override public boolean isBackPressureActive() { return ShardedLogBuffer.this.isBackPressureActive(); }
+        @Override public int getTotalAdded() { return ShardedLogBuffer.this.getTotalAdded(); }
+        @Override public int getTotalDropped() { return ShardedLogBuffer.this.getTotalDropped(); }
+        @Override public double getCapacityUsage() { return ShardedLogBuffer.this.getCapacityUsage(); }
+        @Override public long getBytesInFlight() { return ShardedLogBuffer.this.getBytesInFlight(); }
+        @Override public boolean isSpillEnabled() { return ShardedLogBuffer.this.isSpillEnabled(); }
+        @Override public int getSpillDepth() { return ShardedLogBuffer.this.getSpillDepth(); }
+        @Override public long getSpillBytes() { return ShardedLogBuffer.this.getSpillBytes(); }
+        @Override public long getTotalSpilled() { return ShardedLogBuffer.this.getTotalSpilled(); }
+        @Override public long getTotalUnspilled() { return ShardedLogBuffer.this.getTotalUnspilled(); }
+        @Override public double getSpillDrainRate() { return ShardedLogBuffer.this.getSpillDrainRate(); }
+        @Override public String getStats() { return ShardedLogBuffer.this.getStats(); }
+    }
+}
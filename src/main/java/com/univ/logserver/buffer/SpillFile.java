@@ -0,0 +1,144 @@
+package com.univ.logserver.buffer;
+
+import com.univ.logserver.model.LogEntry;
+import com.univ.logserver.model.LogEntrySerializer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fichier de débordement mappé en mémoire (niveau disque du CircularBuffer)
+ * File FIFO d'enregistrements [int longueur | int segment WAL | LogEntry
+ * sérialisée] dans un anneau d'octets de taille fixe: la taille du fichier
+ * est le quota disque. Le segment WAL de l'entrée est conservé pour que le
+ * journal puisse la libérer une fois stockée.
+ * Un enregistrement qui ne tient pas avant la fin du fichier est écrit au
+ * début, précédé d'un marqueur de saut.
+ *
+ * Non thread-safe: utilisé sous le verrou du buffer (compteurs volatils
+ * pour la lecture des statistiques). Le fichier est recréé à l'ouverture:
+ * le débordement absorbe les pics, ce n'est pas un journal de durabilité.
+ */
+public class SpillFile implements Closeable {
+    private static final int HEADER_BYTES = 8; // Longueur + segment WAL
+    private static final int WRAP_MARKER = -1;
+    private static final long MIN_QUOTA = 4096;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int quota;
+    private final LogEntrySerializer serializer = new LogEntrySerializer();
+
+    private int readPosition = 0;
+    private int writePosition = 0;
+    private volatile long usedBytes = 0; // Enregistrements et fins de fichier sautées
+    private volatile int count = 0;
+    private volatile long totalWritten = 0;
+    private volatile long totalRead = 0;
+
+    /**
+     * @param quotaBytes taille du fichier (au plus 2 Go, limite d'un mapping)
+     */
+    public SpillFile(Path path, long quotaBytes) throws IOException {
+        if (quotaBytes < MIN_QUOTA || quotaBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Quota de débordement invalide: " + quotaBytes);
+        }
+        this.path = path;
+        this.quota = (int) quotaBytes;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, quota);
+    }
+
+    /**
+     * Ajoute une entrée en fin de file
+     * @return false si le quota ne permet pas de l'écrire
+     */
+    public boolean append(LogEntry entry) {
+        ByteBuffer record = serializer.serialize(entry);
+        int recordLength = record.remaining();
+        int needed = HEADER_BYTES + recordLength;
+
+        int writeAt = writePosition;
+        int skipped = 0;
+        if (writeAt + needed > quota) {
+            // Pas de place avant la fin du fichier: reprise au début
+            skipped = quota - writeAt;
+            writeAt = 0;
+        }
+        if (usedBytes + skipped + needed > quota) {
+            return false;
+        }
+
+        if (skipped >= HEADER_BYTES) {
+            map.putInt(writePosition, WRAP_MARKER);
+        }
+        map.putInt(writeAt, recordLength);
+        map.putInt(writeAt + 4, entry.getWalSegment());
+        map.put(writeAt + HEADER_BYTES, record, record.position(), recordLength);
+
+        writePosition = writeAt + needed;
+        usedBytes += skipped + needed;
+        count++;
+        totalWritten++;
+        return true;
+    }
+
+    /**
+     * Retire l'entrée la plus ancienne
+     * @return null si le fichier est vide
+     */
+    public LogEntry poll() {
+        if (count == 0) {
+            return null;
+        }
+        if (quota - readPosition < HEADER_BYTES || map.getInt(readPosition) == WRAP_MARKER) {
+            usedBytes -= quota - readPosition;
+            readPosition = 0;
+        }
+
+        int recordLength = map.getInt(readPosition);
+        LogEntry entry = serializer.deserialize(map.slice(readPosition + HEADER_BYTES, recordLength));
+        entry.setWalSegment(map.getInt(readPosition + 4));
+        readPosition += HEADER_BYTES + recordLength;
+        usedBytes -= HEADER_BYTES + recordLength;
+        count--;
+        totalRead++;
+
+        if (count == 0) {
+            // Fichier vide: repartir du début (évite les sauts inutiles)
+            readPosition = 0;
+            writePosition = 0;
+            usedBytes = 0;
+        }
+        return entry;
+    }
+
+    public int size() { return count; }
+    public boolean isEmpty() { return count == 0; }
+    public long getUsedBytes() { return usedBytes; }
+    public long getQuota() { return quota; }
+    public long getTotalWritten() { return totalWritten; }
+    public long getTotalRead() { return totalRead; }
+    public Path getPath() { return path; }
+
+    /**
+     * Ferme et supprime le fichier (les entrées restantes sont perdues)
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+}
@@ -2,11 +2,13 @@ package com.univ.logserver.client;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.univ.logserver.model.LogLevel;
+import com.univ.logserver.processor.BinaryLogCodec;
 
 /**
  * Client de test pour envoyer des logs au serveur
@@ -17,12 +19,23 @@ public class LogClient {
     private final int serverPort;
     private final String applicationName;
     private Socket socket;
+    private OutputStream output;
     private PrintWriter writer;
     private BufferedReader reader;
     private final AtomicBoolean connected = new AtomicBoolean(false);
     private final AtomicLong messagesSent = new AtomicLong(0);
     private final Random random = new Random();
 
+    // Acquittements en pipeline (mode négocié autre que EACH)
+    private volatile boolean pipelined = false;
+    private long sequence = 0;
+    private long lastAckedSequence = 0;
+    private long messagesRejected = 0;
+
+    // Protocole binaire (négocié par CMD:PROTO:BINARY)
+    private boolean binary = false;
+    private BinaryLogCodec.Encoder encoder;
+
     public LogClient(String serverHost, int serverPort, String applicationName) {
         this.serverHost = serverHost;
         this.serverPort = serverPort;
@@ -35,7 +48,8 @@ public class LogClient {
     public boolean connect() {
         try {
             socket = new Socket(serverHost, serverPort);
-            writer = new PrintWriter(socket.getOutputStream(), true);
+            output = new BufferedOutputStream(socket.getOutputStream());
+            writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), true);
             reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
 
             // Lire la réponse de connexion
@@ -64,15 +78,31 @@ public class LogClient {
         }
 
         try {
-            // Format: LEVEL|APPLICATION|HOSTNAME|MESSAGE|metadata
-            String logMessage = String.format("%s|%s|%s|%s|%s",
-                    level.getName(),
-                    applicationName,
-                    hostname != null ? hostname : "localhost",
-                    message,
-                    metadata != null ? metadata : "");
+            if (binary) {
+                encoder.writeLog(output, level, applicationName,
+                        hostname != null ? hostname : "localhost", message, metadata);
+            } else {
+                // Format: LEVEL|APPLICATION|HOSTNAME|MESSAGE|metadata
+                String logMessage = String.format("%s|%s|%s|%s|%s",
+                        level.getName(),
+                        applicationName,
+                        hostname != null ? hostname : "localhost",
+                        message,
+                        metadata != null ? metadata : "");
+                writer.print(logMessage);
+                writer.print('\n');
+            }
+
+            if (pipelined) {
+                // Pas d'attente de réponse ni de flush par ligne: le serveur
+                // acquitte de façon cumulative, les rejets arrivent avec leur numéro
+                sequence++;
+                messagesSent.incrementAndGet();
+                readPendingNotifications();
+                return true;
+            }
 
-            writer.println(logMessage);
+            writer.flush();
 
             // Lire la réponse
             String response = reader.readLine();
@@ -98,56 +128,82 @@ public class LogClient {
         return sendLog(level, message, null, null);
     }
 
+    private static final String[] SAMPLE_MESSAGES = {
+            "Application démarrée avec succès",
+            "Connexion base de données établie",
+            "Utilisateur connecté: user_%d",
+            "Requête SQL exécutée en %dms",
+            "Erreur de validation: champ obligatoire manquant",
+            "WARNING: Mémoire faible disponible",
+            "Cache invalidé pour la clé: session_%d",
+            "Transaction terminée avec succès",
+            "Erreur réseau: timeout de connexion",
+            "Service externe indisponible",
+            "Backup programmé démarré",
+            "Configuration rechargée",
+            "Certificat SSL renouvelé",
+            "Processus de nettoyage terminé"
+    };
+
+    private static final LogLevel[] SAMPLE_LEVELS = {
+            LogLevel.INFO, LogLevel.DEBUG, LogLevel.WARN,
+            LogLevel.ERROR, LogLevel.TRACE
+    };
+
+    private static final String[] SAMPLE_COMPONENTS = { "web", "database", "cache", "auth", "scheduler" };
+
+    /**
+     * Log de la simulation de charge (aussi utilisé pour les mesures hors réseau)
+     */
+    public static final class SimulatedLog {
+        public final LogLevel level;
+        public final String message;
+        public final String hostname;
+        public final String metadata;
+
+        SimulatedLog(LogLevel level, String message, String hostname, String metadata) {
+            this.level = level;
+            this.message = message;
+            this.hostname = hostname;
+            this.metadata = metadata;
+        }
+    }
+
+    /**
+     * Génère le i-ème log de simulateLoad
+     */
+    public static SimulatedLog simulatedLog(Random random, int i) {
+        // Sélectionner message et niveau aléatoires
+        String baseMessage = SAMPLE_MESSAGES[random.nextInt(SAMPLE_MESSAGES.length)];
+        LogLevel level = SAMPLE_LEVELS[random.nextInt(SAMPLE_LEVELS.length)];
+        String component = SAMPLE_COMPONENTS[random.nextInt(SAMPLE_COMPONENTS.length)];
+
+        // Formater le message avec données variables
+        String message = String.format(baseMessage,
+                random.nextInt(1000),
+                random.nextInt(500) + 10);
+
+        // Créer métadonnées réalistes
+        String metadata = String.format("request_id=%d,user_id=%d,session=%s,component=%s",
+                random.nextInt(10000),
+                random.nextInt(500),
+                "sess_" + random.nextInt(100),
+                component);
+
+        return new SimulatedLog(level, message + " [" + i + "]", "test-host-" + (i % 3), metadata);
+    }
+
     /**
      * Simule une charge de travail réaliste
      */
     public void simulateLoad(int messageCount, int delayMs) {
         System.out.println("Simulation de charge: " + messageCount + " messages");
 
-        String[] sampleMessages = {
-                "Application démarrée avec succès",
-                "Connexion base de données établie",
-                "Utilisateur connecté: user_%d",
-                "Requête SQL exécutée en %dms",
-                "Erreur de validation: champ obligatoire manquant",
-                "WARNING: Mémoire faible disponible",
-                "Cache invalidé pour la clé: session_%d",
-                "Transaction terminée avec succès",
-                "Erreur réseau: timeout de connexion",
-                "Service externe indisponible",
-                "Backup programmé démarré",
-                "Configuration rechargée",
-                "Certificat SSL renouvelé",
-                "Processus de nettoyage terminé"
-        };
-
-        LogLevel[] levels = {
-                LogLevel.INFO, LogLevel.DEBUG, LogLevel.WARN,
-                LogLevel.ERROR, LogLevel.TRACE
-        };
-
-        String[] components = { "web", "database", "cache", "auth", "scheduler" };
-
         for (int i = 0; i < messageCount; i++) {
-            // Sélectionner message et niveau aléatoires
-            String baseMessage = sampleMessages[random.nextInt(sampleMessages.length)];
-            LogLevel level = levels[random.nextInt(levels.length)];
-            String component = components[random.nextInt(components.length)];
-
-            // Formater le message avec données variables
-            String message = String.format(baseMessage,
-                    random.nextInt(1000),
-                    random.nextInt(500) + 10);
-
-            // Créer métadonnées réalistes
-            String metadata = String.format("request_id=%d,user_id=%d,session=%s,component=%s",
-                    random.nextInt(10000),
-                    random.nextInt(500),
-                    "sess_" + random.nextInt(100),
-                    component);
+            SimulatedLog log = simulatedLog(random, i);
 
             // Envoyer le log
-            sendLog(level, message + " [" + i + "]", "test-host-" + (i % 3), metadata);
+            sendLog(log.level, log.message, log.hostname, log.metadata);
 
             try {
                 Thread.sleep(delayMs);
@@ -173,14 +229,98 @@ public class LogClient {
         }
 
         try {
-            writer.println("CMD:" + command);
-            return reader.readLine();
+            if (binary) {
+                encoder.writeCommand(output, command);
+                writer.flush();
+            } else {
+                writer.println("CMD:" + command);
+            }
+            return readResponse();
         } catch (IOException e) {
             System.err.println("Erreur commande: " + e.getMessage());
             return "ERROR: " + e.getMessage();
         }
     }
 
+    /**
+     * Négocie le mode d'acquittement: EACH, NONE, EVERY:<n>, INTERVAL:<ms> ou DURABLE
+     * (DURABLE: une réponse par log, comme EACH, une fois le log sur disque)
+     */
+    public boolean setAckMode(String mode) {
+        String response = sendCommand("ACK:" + mode);
+        if (response != null && response.startsWith("OK:ACK_MODE")) {
+            String upper = mode.trim().toUpperCase();
+            pipelined = !upper.startsWith("EACH") && !upper.startsWith("DURABLE");
+            return true;
+        }
+        System.err.println("Mode d'acquittement refusé: " + response);
+        return false;
+    }
+
+    /**
+     * Bascule l'envoi en trames binaires (les réponses du serveur restent textuelles)
+     */
+    public boolean useBinaryProtocol() {
+        String response = sendCommand("PROTO:BINARY");
+        if (response != null && response.equals("OK:PROTO:BINARY")) {
+            encoder = new BinaryLogCodec.Encoder();
+            binary = true;
+            return true;
+        }
+        System.err.println("Protocole binaire refusé: " + response);
+        return false;
+    }
+
+    /**
+     * Vide le pipeline: attend que le serveur ait traité toutes les lignes envoyées
+     * @return true si toutes les lignes envoyées sont acquittées
+     */
+    public boolean sync() {
+        String response = sendCommand("SYNC");
+        if (response == null || !response.startsWith("OK:SYNC:")) {
+            return false;
+        }
+        lastAckedSequence = Math.max(lastAckedSequence, Long.parseLong(response.split(":")[2]));
+        return lastAckedSequence >= sequence;
+    }
+
+    /**
+     * Lit la réponse à une commande en traitant au passage les notifications
+     * asynchrones (acquittements cumulatifs et rejets)
+     */
+    private String readResponse() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null && handleNotification(line)) {
+            // Notification consommée, lire la ligne suivante
+        }
+        return line;
+    }
+
+    /**
+     * Consomme sans bloquer les notifications déjà reçues
+     */
+    private void readPendingNotifications() throws IOException {
+        while (reader.ready()) {
+            String line = reader.readLine();
+            if (line == null || !handleNotification(line)) {
+                return;
+            }
+        }
+    }
+
+    private boolean handleNotification(String line) {
+        if (line.startsWith("OK:ACK:")) {
+            lastAckedSequence = Math.max(lastAckedSequence, Long.parseLong(line.split(":")[2]));
+            return true;
+        }
+        if (line.startsWith("ERROR:REJECTED:")) {
+            messagesRejected++;
+            System.err.println("Log rejeté: " + line);
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Test de performance avec burst de logs
      */
@@ -256,6 +396,14 @@ public class LogClient {
         return messagesSent.get();
     }
 
+    public long getMessagesRejected() {
+        return messagesRejected;
+    }
+
+    public long getLastAckedSequence() {
+        return lastAckedSequence;
+    }
+
     /**
      * Programme principal pour tests
      */
@@ -282,6 +430,19 @@ public class LogClient {
             // Test de performance
             client.performanceTest(3, 20);
 
+            // Test de performance en pipeline (acquittement toutes les 100 lignes)
+            if (client.setAckMode("EVERY:100")) {
+                client.performanceTest(3, 1000);
+                System.out.println("SYNC: " + (client.sync() ? "tout acquitté" : "incomplet")
+                        + " - Rejetés: " + client.getMessagesRejected());
+                client.setAckMode("EACH");
+            }
+
+            // Test de performance en protocole binaire
+            if (client.useBinaryProtocol()) {
+                client.performanceTest(3, 20);
+            }
+
             // Stats finales
             System.out.println("STATS: " + client.sendCommand("STATS"));
             System.out.println("BUFFER_STATS: " + client.sendCommand("BUFFER_STATS"));
@@ -10,9 +10,35 @@ import java.util.Properties;
 public class ServerConfig {
     private int port = 8080;
     private int bufferSize = 1000;
+    private String bufferType = "circular";
+    private int bufferShards = 1;
+    private long bufferMaxBytes = 0;
+    private String bufferSpillDirectory = "";
+    private long bufferSpillMaxBytes = 64L * 1024 * 1024;
+    private boolean walEnabled = false;
+    private String walDirectory = "./wal";
+    private long walGroupCommitMs = 5;
+    private int walGroupCommitBytes = 256 * 1024;
+    private long walSegmentBytes = 64L * 1024 * 1024;
     private String logFormat = "text";
     private String storageType = "file";
+    private String storageDurability = "none";
+    private long storageSegmentMaxBytes = 128L * 1024 * 1024;
+    private long storageSegmentMaxAgeSeconds = 0;
+    private String storageCompression = "off";
+    private int storageBlockBytes = 64 * 1024;
+    private int storageIndexInterval = 128;
+    private boolean storageSearchIndex = true;
+    private String storageBloomKeys = "request_id,user_id,session";
+    private int storageReadMappedSegments = 64;
     private int threadPoolSize = 10;
+    private String ingestionMode = "blocking";
+    private int nioEventLoops = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private boolean virtualThreads = false;
+    private int nodeId = 0;
+    private String categoryRules = "error:error,exception;warning:warning,warn;lifecycle:startup,shutdown";
+    private String componentRules = "database:sql,database,query;web:http,request,response;"
+            + "memory:memory,gc,heap;security:security,auth,login";
     
     private static ServerConfig instance;
     
@@ -36,9 +62,44 @@ public class ServerConfig {
                 props.load(input);
                 config.port = Integer.parseInt(props.getProperty("server.port", "8080"));
                 config.bufferSize = Integer.parseInt(props.getProperty("buffer.size", "1000"));
+                config.bufferType = props.getProperty("buffer.type", config.bufferType).trim();
+                config.bufferShards = Integer.parseInt(props.getProperty("buffer.shards", "1").trim());
+                config.bufferMaxBytes = Long.parseLong(props.getProperty("buffer.max.bytes", "0").trim());
+                config.bufferSpillDirectory = props.getProperty("buffer.spill.directory", config.bufferSpillDirectory).trim();
+                config.bufferSpillMaxBytes = Long.parseLong(props.getProperty("buffer.spill.max.bytes",
+                        String.valueOf(config.bufferSpillMaxBytes)).trim());
                 config.logFormat = props.getProperty("log.format", "text");
                 config.storageType = props.getProperty("storage.type", "file");
+                config.storageDurability = props.getProperty("storage.durability", config.storageDurability).trim();
+                config.storageSegmentMaxBytes = Long.parseLong(props.getProperty("storage.segment.max.bytes",
+                        String.valueOf(config.storageSegmentMaxBytes)).trim());
+                config.storageSegmentMaxAgeSeconds = Long.parseLong(props.getProperty("storage.segment.max.age.seconds",
+                        String.valueOf(config.storageSegmentMaxAgeSeconds)).trim());
+                config.storageCompression = props.getProperty("storage.compression", config.storageCompression).trim();
+                config.storageBlockBytes = Integer.parseInt(props.getProperty("storage.block.bytes",
+                        String.valueOf(config.storageBlockBytes)).trim());
+                config.storageIndexInterval = Integer.parseInt(props.getProperty("storage.index.interval",
+                        String.valueOf(config.storageIndexInterval)).trim());
+                config.storageSearchIndex = Boolean.parseBoolean(props.getProperty("storage.search.index", "true").trim());
+                config.storageBloomKeys = props.getProperty("storage.bloom.keys", config.storageBloomKeys).trim();
+                config.storageReadMappedSegments = Integer.parseInt(props.getProperty("storage.read.mapped.segments",
+                        String.valueOf(config.storageReadMappedSegments)).trim());
                 config.threadPoolSize = Integer.parseInt(props.getProperty("thread.pool.size", "10"));
+                config.ingestionMode = props.getProperty("server.ingestion.mode", config.ingestionMode).trim();
+                config.nioEventLoops = Integer.parseInt(props.getProperty("server.nio.event.loops",
+                        String.valueOf(config.nioEventLoops)).trim());
+                config.virtualThreads = Boolean.parseBoolean(props.getProperty("server.virtual.threads", "false").trim());
+                config.walEnabled = Boolean.parseBoolean(props.getProperty("wal.enabled", "false").trim());
+                config.walDirectory = props.getProperty("wal.directory", config.walDirectory).trim();
+                config.walGroupCommitMs = Long.parseLong(props.getProperty("wal.group.commit.ms",
+                        String.valueOf(config.walGroupCommitMs)).trim());
+                config.walGroupCommitBytes = Integer.parseInt(props.getProperty("wal.group.commit.bytes",
+                        String.valueOf(config.walGroupCommitBytes)).trim());
+                config.walSegmentBytes = Long.parseLong(props.getProperty("wal.segment.bytes",
+                        String.valueOf(config.walSegmentBytes)).trim());
+                config.nodeId = Integer.parseInt(props.getProperty("server.node.id", "0").trim());
+                config.categoryRules = props.getProperty("classifier.category.rules", config.categoryRules).trim();
+                config.componentRules = props.getProperty("classifier.component.rules", config.componentRules).trim();
                 
                 System.out.println("Configuration chargée depuis application.properties");
             } else {
@@ -55,20 +116,72 @@ public class ServerConfig {
     // Getters
     public int getPort() { return port; }
     public int getBufferSize() { return bufferSize; }
+    public String getBufferType() { return bufferType; }
+    public int getBufferShards() { return bufferShards; }
+    public long getBufferMaxBytes() { return bufferMaxBytes; }
+    public String getBufferSpillDirectory() { return bufferSpillDirectory; }
+    public long getBufferSpillMaxBytes() { return bufferSpillMaxBytes; }
     public String getLogFormat() { return logFormat; }
     public String getStorageType() { return storageType; }
+    public String getStorageDurability() { return storageDurability; }
+    public long getStorageSegmentMaxBytes() { return storageSegmentMaxBytes; }
+    public long getStorageSegmentMaxAgeSeconds() { return storageSegmentMaxAgeSeconds; }
+    public String getStorageCompression() { return storageCompression; }
+    public boolean isStorageCompressed() { return !"off".equalsIgnoreCase(storageCompression) && !storageCompression.isEmpty(); }
+    public int getStorageBlockBytes() { return storageBlockBytes; }
+    public int getStorageIndexInterval() { return storageIndexInterval; }
+    public boolean isStorageSearchIndex() { return storageSearchIndex; }
+    public String getStorageBloomKeys() { return storageBloomKeys; }
+    public int getStorageReadMappedSegments() { return storageReadMappedSegments; }
     public int getThreadPoolSize() { return threadPoolSize; }
+    public String getIngestionMode() { return ingestionMode; }
+    public boolean isNioIngestion() { return "nio".equalsIgnoreCase(ingestionMode); }
+    public int getNioEventLoops() { return nioEventLoops; }
+    public boolean isVirtualThreads() { return virtualThreads; }
+    public int getNodeId() { return nodeId; }
+    public boolean isWalEnabled() { return walEnabled; }
+    public String getWalDirectory() { return walDirectory; }
+    public long getWalGroupCommitMs() { return walGroupCommitMs; }
+    public int getWalGroupCommitBytes() { return walGroupCommitBytes; }
+    public long getWalSegmentBytes() { return walSegmentBytes; }
+    public String getCategoryRules() { return categoryRules; }
+    public String getComponentRules() { return componentRules; }
     
     // Setters pour les tests
     public void setPort(int port) { this.port = port; }
     public void setBufferSize(int bufferSize) { this.bufferSize = bufferSize; }
+    public void setBufferType(String bufferType) { this.bufferType = bufferType; }
+    public void setBufferShards(int bufferShards) { this.bufferShards = bufferShards; }
+    public void setBufferMaxBytes(long bufferMaxBytes) { this.bufferMaxBytes = bufferMaxBytes; }
+    public void setBufferSpillDirectory(String bufferSpillDirectory) { this.bufferSpillDirectory = bufferSpillDirectory; }
+    public void setBufferSpillMaxBytes(long bufferSpillMaxBytes) { this.bufferSpillMaxBytes = bufferSpillMaxBytes; }
     public void setLogFormat(String logFormat) { this.logFormat = logFormat; }
     public void setStorageType(String storageType) { this.storageType = storageType; }
+    public void setStorageDurability(String storageDurability) { this.storageDurability = storageDurability; }
+    public void setStorageSegmentMaxBytes(long storageSegmentMaxBytes) { this.storageSegmentMaxBytes = storageSegmentMaxBytes; }
+    public void setStorageSegmentMaxAgeSeconds(long storageSegmentMaxAgeSeconds) { this.storageSegmentMaxAgeSeconds = storageSegmentMaxAgeSeconds; }
+    public void setStorageCompression(String storageCompression) { this.storageCompression = storageCompression; }
+    public void setStorageBlockBytes(int storageBlockBytes) { this.storageBlockBytes = storageBlockBytes; }
+    public void setStorageIndexInterval(int storageIndexInterval) { this.storageIndexInterval = storageIndexInterval; }
+    public void setStorageSearchIndex(boolean storageSearchIndex) { this.storageSearchIndex = storageSearchIndex; }
+    public void setStorageBloomKeys(String storageBloomKeys) { this.storageBloomKeys = storageBloomKeys; }
+    public void setStorageReadMappedSegments(int storageReadMappedSegments) { this.storageReadMappedSegments = storageReadMappedSegments; }
     public void setThreadPoolSize(int threadPoolSize) { this.threadPoolSize = threadPoolSize; }
+    public void setIngestionMode(String ingestionMode) { this.ingestionMode = ingestionMode; }
+    public void setNioEventLoops(int nioEventLoops) { this.nioEventLoops = nioEventLoops; }
+    public void setVirtualThreads(boolean virtualThreads) { this.virtualThreads = virtualThreads; }
+    public void setNodeId(int nodeId) { this.nodeId = nodeId; }
+    public void setWalEnabled(boolean walEnabled) { this.walEnabled = walEnabled; }
+    public void setWalDirectory(String walDirectory) { this.walDirectory = walDirectory; }
+    public void setWalGroupCommitMs(long walGroupCommitMs) { this.walGroupCommitMs = walGroupCommitMs; }
+    public void setWalGroupCommitBytes(int walGroupCommitBytes) { this.walGroupCommitBytes = walGroupCommitBytes; }
+    public void setWalSegmentBytes(long walSegmentBytes) { this.walSegmentBytes = walSegmentBytes; }
+    public void setCategoryRules(String categoryRules) { this.categoryRules = categoryRules; }
+    public void setComponentRules(String componentRules) { this.componentRules = componentRules; }
     
     @Override
     public String toString() {
-        return String.format("ServerConfig{port=%d, bufferSize=%d, logFormat='%s', storageType='%s', threadPoolSize=%d}",
-                           port, bufferSize, logFormat, storageType, threadPoolSize);
+        return String.format("ServerConfig{port=%d, bufferSize=%d, bufferType='%s', bufferShards=%d, bufferMaxBytes=%d, logFormat='%s', storageType='%s', threadPoolSize=%d, ingestionMode='%s', nioEventLoops=%d, virtualThreads=%s, walEnabled=%s, nodeId=%d}",
+                           port, bufferSize, bufferType, bufferShards, bufferMaxBytes, logFormat, storageType, threadPoolSize, ingestionMode, nioEventLoops, virtualThreads, walEnabled, nodeId);
     }
 }
\ No newline at end of file
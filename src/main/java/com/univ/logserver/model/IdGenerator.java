@@ -0,0 +1,15 @@
+package com.univ.logserver.model;
+
+/**
+ * Générateur d'identifiants d'entrées de log (64 bits)
+ * Les identifiants doivent être uniques et croissants dans le temps, afin de
+ * pouvoir servir de curseur ou de clé de tri côté stockage.
+ */
+@FunctionalInterface
+public interface IdGenerator {
+
+    /**
+     * Identifiant suivant (appelable depuis n'importe quel thread)
+     */
+    long nextId();
+}
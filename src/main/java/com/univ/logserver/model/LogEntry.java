@@ -1,39 +1,71 @@
 package com.univ.logserver.model;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
+import java.util.function.BiConsumer;
 
 /**
  * Représente une entrée de log avec toutes ses métadonnées
  * Inclut la sérialisation/désérialisation des données
  */
 public class LogEntry {
-    private final String id;
-    private final LocalDateTime timestamp;
+    private static volatile IdGenerator idGenerator = new TimeOrderedIdGenerator(0);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private final long idValue;
+    private String id; // Rendu texte à la demande
+    private final long timestampMicros;   // Réception par le serveur (epoch µs)
+    private long eventTimeMicros;         // Horodatage fourni par le client, sinon réception
     private final LogLevel level;
     private final String message;
     private final String applicationName;
     private final String hostname;
-    private final Map<String, String> metadata;
-    
-    private static final DateTimeFormatter FORMATTER = 
-        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    private final Metadata metadata;
+    private Metadata sharedMetadata; // Métadonnées de connexion partagées (gelées), peut être null
+    private int retainedBytes = -1;  // Estimation figée au premier calcul
+    private int walSegment = -1;     // Segment du journal (WAL) non encore stocké, -1 sinon
+    private int storeAttempts = 0;   // Écritures du stockage échouées (remises en file)
     
     /**
      * Constructeur complet pour une entrée de log
      */
     public LogEntry(LogLevel level, String message, String applicationName, 
                    String hostname, Map<String, String> metadata) {
-        this.id = UUID.randomUUID().toString();
-        this.timestamp = LocalDateTime.now();
+        this.idValue = idGenerator.nextId();
+        this.timestampMicros = TimestampFormatter.currentTimeMicros();
+        this.eventTimeMicros = timestampMicros;
+        this.level = level;
+        this.message = message;
+        this.applicationName = applicationName;
+        this.hostname = hostname;
+        this.metadata = new Metadata();
+        if (metadata != null) {
+            metadata.forEach(this.metadata::put);
+        }
+    }
+    
+    /**
+     * Restauration d'une entrée sérialisée (identifiant et horodatages conservés)
+     */
+    LogEntry(long idValue, long timestampMicros, long eventTimeMicros, LogLevel level, String message,
+             String applicationName, String hostname, Metadata metadata) {
+        this.idValue = idValue;
+        this.timestampMicros = timestampMicros;
+        this.eventTimeMicros = eventTimeMicros;
         this.level = level;
         this.message = message;
         this.applicationName = applicationName;
         this.hostname = hostname;
-        this.metadata = metadata != null ? new HashMap<>(metadata) : new HashMap<>();
+        this.metadata = metadata;
+    }
+    
+    /**
+     * Entrée relue depuis le stockage (horodatage d'origine, nouvel identifiant)
+     */
+    public LogEntry(long timestampMicros, LogLevel level, String message, String applicationName, String hostname) {
+        this(idGenerator.nextId(), timestampMicros, timestampMicros, level, message, applicationName, hostname,
+             new Metadata());
     }
     
     /**
@@ -43,14 +75,115 @@ public class LogEntry {
         this(level, message, applicationName, "unknown", null);
     }
     
+    /**
+     * Remplace le générateur d'identifiants (appelé au démarrage du serveur)
+     */
+    public static void setIdGenerator(IdGenerator generator) {
+        idGenerator = generator;
+    }
+    
+    /**
+     * Identifiant en 16 caractères hexadécimaux, rendu à la première demande
+     * (l'ordre lexicographique suit l'ordre numérique)
+     */
+    public String getId() {
+        String rendered = id;
+        if (rendered == null) {
+            char[] chars = new char[16];
+            long value = idValue;
+            for (int i = 15; i >= 0; i--) {
+                chars[i] = HEX[(int) (value & 0xF)];
+                value >>>= 4;
+            }
+            rendered = new String(chars);
+            id = rendered;
+        }
+        return rendered;
+    }
+    
     // Getters
-    public String getId() { return id; }
-    public LocalDateTime getTimestamp() { return timestamp; }
+    public long getIdValue() { return idValue; }
+    public LocalDateTime getTimestamp() { return TimestampFormatter.toLocalDateTime(timestampMicros); }
+    public long getTimestampMicros() { return timestampMicros; }
+    public long getEventTimeMicros() { return eventTimeMicros; }
+    public boolean hasEventTime() { return eventTimeMicros != timestampMicros; }
     public LogLevel getLevel() { return level; }
     public String getMessage() { return message; }
     public String getApplicationName() { return applicationName; }
     public String getHostname() { return hostname; }
-    public Map<String, String> getMetadata() { return new HashMap<>(metadata); }
+    
+    /**
+     * Copie des métadonnées (propres et partagées) - préférer getMetadataValue / forEachMetadata
+     */
+    public Map<String, String> getMetadata() {
+        Map<String, String> copy = new HashMap<>();
+        forEachMetadata(copy::put);
+        return copy;
+    }
+    
+    /**
+     * Valeur d'une métadonnée sans copie (les valeurs propres masquent les partagées)
+     */
+    public String getMetadataValue(String key) {
+        String value = metadata.get(key);
+        if (value == null && sharedMetadata != null) {
+            value = sharedMetadata.get(key);
+        }
+        return value;
+    }
+    
+    /**
+     * Parcours sans copie: métadonnées partagées non masquées, puis propres
+     */
+    public void forEachMetadata(BiConsumer<String, String> action) {
+        if (sharedMetadata != null) {
+            for (int i = 0; i < sharedMetadata.size(); i++) {
+                String key = sharedMetadata.keyAt(i);
+                if (!metadata.containsKey(key)) {
+                    action.accept(key, sharedMetadata.valueAt(i));
+                }
+            }
+        }
+        metadata.forEach(action);
+    }
+    
+    public int getMetadataCount() {
+        int count = metadata.size();
+        if (sharedMetadata != null) {
+            for (int i = 0; i < sharedMetadata.size(); i++) {
+                if (!metadata.containsKey(sharedMetadata.keyAt(i))) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Rattache des métadonnées de connexion, partagées par référence entre entrées
+     */
+    public void setSharedMetadata(Metadata shared) {
+        this.sharedMetadata = shared.freeze();
+    }
+    
+    /**
+     * Segment du journal d'écriture anticipée contenant l'entrée (-1: aucun)
+     */
+    public int getWalSegment() { return walSegment; }
+    public void setWalSegment(int walSegment) { this.walSegment = walSegment; }
+    
+    /**
+     * Compte une écriture échouée de l'entrée
+     * @return nombre d'échecs, celui-ci compris
+     */
+    public int incrementStoreAttempts() { return ++storeAttempts; }
+    
+    /**
+     * Horodatage de l'événement fourni par le client (epoch µs)
+     */
+    public void setEventTimeMicros(long eventTimeMicros) {
+        this.eventTimeMicros = eventTimeMicros;
+    }
     
     /**
      * Ajoute une métadonnée à l'entrée de log
@@ -59,27 +192,56 @@ public class LogEntry {
         metadata.put(key, value);
     }
     
+    /**
+     * Estimation de la mémoire retenue par l'entrée (octets)
+     * Calculée une fois, à l'entrée dans le buffer: la même valeur est
+     * décomptée à la sortie même si des métadonnées sont ajoutées ensuite.
+     * Les métadonnées partagées de connexion et les clés internées ne sont
+     * pas comptées (une seule copie pour toutes les entrées).
+     */
+    public int estimateRetainedBytes() {
+        int estimate = retainedBytes;
+        if (estimate < 0) {
+            estimate = 72 // En-tête et champs de l'entrée
+                     + stringBytes(message) + stringBytes(applicationName) + stringBytes(hostname)
+                     + metadata.estimateRetainedBytes();
+            retainedBytes = estimate;
+        }
+        return estimate;
+    }
+    
+    /**
+     * Taille approximative d'une String (objet + tableau, un octet par caractère Latin-1)
+     */
+    static int stringBytes(String value) {
+        return value == null ? 0 : 40 + ((value.length() + 7) & ~7);
+    }
+    
     /**
      * Sérialise l'entrée de log en format JSON simple
      */
     public String toJson() {
         StringBuilder json = new StringBuilder();
         json.append("{");
-        json.append("\"id\":\"").append(id).append("\",");
-        json.append("\"timestamp\":\"").append(timestamp.format(FORMATTER)).append("\",");
+        json.append("\"id\":\"").append(getId()).append("\",");
+        json.append("\"timestamp\":\"");
+        TimestampFormatter.appendTo(json, timestampMicros).append("\",");
+        if (hasEventTime()) {
+            json.append("\"event_time\":\"");
+            TimestampFormatter.appendTo(json, eventTimeMicros).append("\",");
+        }
         json.append("\"level\":\"").append(level.getName()).append("\",");
         json.append("\"message\":\"").append(escapeJson(message)).append("\",");
         json.append("\"application\":\"").append(applicationName).append("\",");
         json.append("\"hostname\":\"").append(hostname).append("\",");
         json.append("\"metadata\":{");
         
-        boolean first = true;
-        for (Map.Entry<String, String> entry : metadata.entrySet()) {
-            if (!first) json.append(",");
-            json.append("\"").append(entry.getKey()).append("\":\"")
-                .append(escapeJson(entry.getValue())).append("\"");
-            first = false;
-        }
+        int start = json.length();
+        forEachMetadata((key, value) -> {
+            if (json.length() > start) json.append(",");
+            json.append("\"").append(key).append("\":\"")
+                .append(escapeJson(value)).append("\"");
+        });
         
         json.append("}}");
         return json.toString();
@@ -100,12 +262,18 @@ public class LogEntry {
      * Format lisible pour l'affichage
      */
     public String toFormattedString() {
-        return String.format("[%s] %s [%s] %s - %s", 
-                           timestamp.format(FORMATTER),
-                           level.getName(),
-                           applicationName,
-                           hostname,
-                           message);
+        return appendFormatted(new StringBuilder(128)).toString();
+    }
+    
+    /**
+     * Ajoute le format lisible [TIMESTAMP] LEVEL [APP] HOST - MESSAGE au StringBuilder
+     */
+    public StringBuilder appendFormatted(StringBuilder sb) {
+        sb.append('[');
+        TimestampFormatter.appendTo(sb, timestampMicros);
+        return sb.append("] ").append(level.getName())
+                 .append(" [").append(applicationName).append("] ")
+                 .append(hostname).append(" - ").append(message);
     }
     
     @Override
@@ -0,0 +1,174 @@
+package com.univ.logserver.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sérialisation binaire compacte d'une LogEntry (débordement disque, journaux)
+ * L'identifiant et les horodatages sont conservés; les métadonnées partagées
+ * de connexion sont aplaties dans les métadonnées de l'entrée restaurée.
+ *
+ * Format: octet version | long id | long réception µs | long événement µs |
+ *         octet niveau (priorité) | chaîne application | chaîne hostname |
+ *         chaîne message | int nb métadonnées | (chaîne clé | chaîne valeur)*
+ * Chaîne: int longueur (-1: null) | octets UTF-8
+ *
+ * Une instance réutilise ses tableaux de travail: non thread-safe.
+ */
+public final class LogEntrySerializer {
+    public static final byte FORMAT_VERSION = 1;
+
+    private byte[] buffer = new byte[512];
+    private ByteBuffer view = ByteBuffer.wrap(buffer);
+    private int length;
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Sérialise l'entrée dans le tableau de travail
+     * @return vue [0, longueur) valable jusqu'au prochain appel
+     */
+    public ByteBuffer serialize(LogEntry entry) {
+        length = 0;
+        writeByte(FORMAT_VERSION);
+        writeLong(entry.getIdValue());
+        writeLong(entry.getTimestampMicros());
+        writeLong(entry.getEventTimeMicros());
+        writeByte(entry.getLevel().getPriority());
+        writeString(entry.getApplicationName());
+        writeString(entry.getHostname());
+        writeString(entry.getMessage());
+
+        int countPosition = length;
+        writeInt(0);
+        int[] count = new int[1];
+        entry.forEachMetadata((key, value) -> {
+            writeString(key);
+            writeString(value);
+            count[0]++;
+        });
+        putInt(countPosition, count[0]);
+
+        view.clear().limit(length);
+        return view;
+    }
+
+    /**
+     * Restaure une entrée depuis la position courante de source (avancée d'un enregistrement)
+     * @throws IllegalArgumentException si l'enregistrement est invalide
+     */
+    public LogEntry deserialize(ByteBuffer source) {
+        byte version = source.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Version de sérialisation inconnue: " + version);
+        }
+        long idValue = source.getLong();
+        long timestampMicros = source.getLong();
+        long eventTimeMicros = source.getLong();
+        LogLevel level = LogLevel.fromPriority(source.get());
+        String application = readString(source);
+        String hostname = readString(source);
+        String message = readString(source);
+
+        int count = source.getInt();
+        if (count < 0 || count > source.remaining() / 8) {
+            throw new IllegalArgumentException("Nombre de métadonnées invalide: " + count);
+        }
+        Metadata metadata = new Metadata(Math.max(count, 1));
+        for (int i = 0; i < count; i++) {
+            String key = readString(source);
+            metadata.put(key, readString(source));
+        }
+        return new LogEntry(idValue, timestampMicros, eventTimeMicros, level, message,
+                            application, hostname, metadata);
+    }
+
+    private String readString(ByteBuffer source) {
+        int stringLength = source.getInt();
+        if (stringLength < 0) {
+            return null;
+        }
+        if (stringLength > source.remaining()) {
+            throw new IllegalArgumentException("Chaîne tronquée");
+        }
+        if (source.hasArray()) {
+            String value = new String(source.array(), source.arrayOffset() + source.position(),
+                                      stringLength, StandardCharsets.UTF_8);
+            source.position(source.position() + stringLength);
+            return value;
+        }
+        if (stringLength > scratch.length) {
+            scratch = new byte[Math.max(scratch.length * 2, stringLength)];
+        }
+        source.get(scratch, 0, stringLength);
+        return new String(scratch, 0, stringLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encode en UTF-8 directement dans le tableau de travail (sans getBytes)
+     */
+    private void writeString(String value) {
+        if (value == null) {
+            writeInt(-1);
+            return;
+        }
+        int lengthPosition = length;
+        writeInt(0);
+        ensureCapacity(value.length() * 3);
+        int start = length;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                       && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[length++] = '?'; // Surrogate isolé, comme String.getBytes
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        putInt(lengthPosition, length - start);
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        putInt(length, value);
+        length += 4;
+    }
+
+    private void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private void putInt(int position, int value) {
+        buffer[position] = (byte) (value >>> 24);
+        buffer[position + 1] = (byte) (value >>> 16);
+        buffer[position + 2] = (byte) (value >>> 8);
+        buffer[position + 3] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            byte[] larger = new byte[Math.max(buffer.length * 2, length + extra)];
+            System.arraycopy(buffer, 0, larger, 0, length);
+            buffer = larger;
+            view = ByteBuffer.wrap(buffer);
+        }
+    }
+}
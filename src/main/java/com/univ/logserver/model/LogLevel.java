@@ -13,6 +13,8 @@ public enum LogLevel {
     ERROR(5, "ERROR"),
     FATAL(6, "FATAL");
     
+    private static final LogLevel[] LEVELS = values();
+    
     private final int priority;
     private final String name;
     
@@ -29,14 +31,36 @@ public enum LogLevel {
         return name;
     }
     
+    /**
+     * Convertit une priorité (protocole binaire) en LogLevel
+     */
+    public static LogLevel fromPriority(int priority) {
+        for (LogLevel level : LEVELS) {
+            if (level.priority == priority) {
+                return level;
+            }
+        }
+        return INFO; // Niveau par défaut
+    }
+    
     /**
      * Convertit une chaîne en LogLevel
      */
     public static LogLevel fromString(String level) {
-        try {
-            return LogLevel.valueOf(level.toUpperCase());
-        } catch (IllegalArgumentException e) {
-            return INFO; // Niveau par défaut
+        return fromString(level, 0, level.length());
+    }
+    
+    /**
+     * Convertit la portion [start, end) d'une chaîne en LogLevel, sans allocation
+     * ni exception (comparaison insensible à la casse)
+     */
+    public static LogLevel fromString(String text, int start, int end) {
+        int length = end - start;
+        for (LogLevel level : LEVELS) {
+            if (level.name.length() == length && text.regionMatches(true, start, level.name, 0, length)) {
+                return level;
+            }
         }
+        return INFO; // Niveau par défaut
     }
 }
\ No newline at end of file
@@ -0,0 +1,139 @@
+package com.univ.logserver.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Métadonnées compactes d'une entrée de log
+ * Clés internées et valeurs en tableaux parallèles, parcourus linéairement
+ * (une dizaine de clés par entrée: plus rapide et plus léger qu'une HashMap).
+ *
+ * Une instance peut être partagée par référence (métadonnées de connexion
+ * comme client_ip / client_id): elle est alors gelée par freeze().
+ */
+public final class Metadata {
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int MAX_INTERNED_KEYS = 10_000;
+    private static final Map<String, String> INTERNED_KEYS = new ConcurrentHashMap<>();
+
+    private String[] keys;
+    private String[] values;
+    private int size;
+    private boolean frozen;
+
+    public Metadata() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public Metadata(int initialCapacity) {
+        this.keys = new String[Math.max(1, initialCapacity)];
+        this.values = new String[keys.length];
+    }
+
+    /**
+     * Instance canonique d'une clé: les entrées partagent la même String
+     * (table bornée, les clés au-delà restent non internées)
+     */
+    public static String key(String key) {
+        String canonical = INTERNED_KEYS.get(key);
+        if (canonical != null) {
+            return canonical;
+        }
+        if (INTERNED_KEYS.size() >= MAX_INTERNED_KEYS) {
+            return key;
+        }
+        canonical = INTERNED_KEYS.putIfAbsent(key, key);
+        return canonical != null ? canonical : key;
+    }
+
+    /**
+     * Ajoute ou remplace une valeur
+     */
+    public void put(String key, String value) {
+        if (frozen) {
+            throw new IllegalStateException("Métadonnées partagées non modifiables");
+        }
+        int index = indexOf(key);
+        if (index >= 0) {
+            values[index] = value;
+            return;
+        }
+        if (size == keys.length) {
+            int newCapacity = keys.length * 2;
+            String[] newKeys = new String[newCapacity];
+            String[] newValues = new String[newCapacity];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(values, 0, newValues, 0, size);
+            keys = newKeys;
+            values = newValues;
+        }
+        keys[size] = key(key);
+        values[size] = value;
+        size++;
+    }
+
+    public String get(String key) {
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : null;
+    }
+
+    public boolean containsKey(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    private int indexOf(String key) {
+        // Comparaison par référence d'abord (clés internées), puis equals
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public String keyAt(int index) { return keys[index]; }
+    public String valueAt(int index) { return values[index]; }
+
+    /**
+     * Parcours sans copie, dans l'ordre d'insertion
+     */
+    public void forEach(BiConsumer<String, String> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Rend l'instance non modifiable avant de la partager entre entrées
+     */
+    public Metadata freeze() {
+        frozen = true;
+        return this;
+    }
+
+    /**
+     * Tableaux et valeurs (les clés internées sont partagées, non comptées)
+     */
+    int estimateRetainedBytes() {
+        int estimate = 24 + 2 * (16 + 4 * keys.length);
+        for (int i = 0; i < size; i++) {
+            estimate += LogEntry.stringBytes(values[i]);
+        }
+        return estimate;
+    }
+
+    public Map<String, String> toMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        forEach(map::put);
+        return map;
+    }
+}
@@ -0,0 +1,81 @@
+package com.univ.logserver.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identifiants 64 bits ordonnés dans le temps, sans aléa ni verrou
+ * Disposition: [42 bits millisecondes depuis 2024-01-01][12 bits séquence][10 bits nœud]
+ *
+ * Le nœud est en bits de poids faible: le tri numérique suit l'ordre
+ * chronologique, tous nœuds confondus. Chaque thread réserve un bloc de
+ * séquences par un seul CAS puis le consomme localement; le bloc est
+ * abandonné dès que l'horloge avance, pour que l'horodatage reste exact.
+ * Au-delà de 4096 identifiants par milliseconde, la séquence déborde sur
+ * la milliseconde suivante (l'unicité et la croissance sont conservées).
+ */
+public class TimeOrderedIdGenerator implements IdGenerator {
+    public static final long EPOCH_MILLIS = 1704067200000L; // 2024-01-01T00:00:00Z
+    public static final int NODE_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    private static final int BLOCK_SIZE = 16;
+
+    private final long nodeId;
+    // (millis << SEQUENCE_BITS) | séquence, partagé par toutes les instances du processus:
+    // remplacer le générateur ne peut pas réémettre une séquence déjà réservée
+    private static final AtomicLong lastReserved = new AtomicLong(0);
+    private final ThreadLocal<long[]> blocks = ThreadLocal.withInitial(() -> new long[2]); // {suivant, fin}
+
+    public TimeOrderedIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Identifiant de nœud invalide (0-" + MAX_NODE_ID + "): " + nodeId);
+        }
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public long nextId() {
+        long now = System.currentTimeMillis() - EPOCH_MILLIS;
+        long[] block = blocks.get();
+        if (block[0] >= block[1] || (block[0] >>> SEQUENCE_BITS) < now) {
+            reserveBlock(block, now);
+        }
+        return (block[0]++ << NODE_BITS) | nodeId;
+    }
+
+    /**
+     * Réserve BLOCK_SIZE séquences à partir de max(dernière réservée, début de la milliseconde)
+     */
+    private void reserveBlock(long[] block, long now) {
+        long floor = now << SEQUENCE_BITS;
+        long previous;
+        long start;
+        do {
+            previous = lastReserved.get();
+            start = Math.max(previous, floor);
+        } while (!lastReserved.compareAndSet(previous, start + BLOCK_SIZE));
+        block[0] = start;
+        block[1] = start + BLOCK_SIZE;
+    }
+
+    /**
+     * Horodatage (epoch millis) encodé dans un identifiant
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    /**
+     * Nœud émetteur d'un identifiant
+     */
+    public static int nodeOf(long id) {
+        return (int) (id & MAX_NODE_ID);
+    }
+
+    /**
+     * Plus petit identifiant possible à un instant donné (curseur de recherche)
+     */
+    public static long lowerBound(long epochMillis) {
+        return (epochMillis - EPOCH_MILLIS) << (NODE_BITS + SEQUENCE_BITS);
+    }
+}
@@ -0,0 +1,146 @@
+package com.univ.logserver.model;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Formatage "yyyy-MM-dd HH:mm:ss.SSS" (fuseau du système) d'horodatages en
+ * microsecondes depuis l'epoch, sans allocation dans le cas courant:
+ * le préfixe "yyyy-MM-dd HH:mm:ss." est mis en cache pour la seconde en cours,
+ * seules les millisecondes sont écrites à chaque appel.
+ */
+public final class TimestampFormatter {
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    /**
+     * Préfixe d'une seconde (immuable, publié par référence volatile)
+     */
+    private static final class Prefix {
+        final long epochSecond;
+        final char[] chars;
+
+        Prefix(long epochSecond) {
+            this.epochSecond = epochSecond;
+            ZoneOffset offset = ZONE.getRules().getOffset(Instant.ofEpochSecond(epochSecond));
+            LocalDateTime time = LocalDateTime.ofEpochSecond(epochSecond, 0, offset);
+            char[] text = new char[20];
+            writeDigits(text, 0, time.getYear(), 4);
+            text[4] = '-';
+            writeDigits(text, 5, time.getMonthValue(), 2);
+            text[7] = '-';
+            writeDigits(text, 8, time.getDayOfMonth(), 2);
+            text[10] = ' ';
+            writeDigits(text, 11, time.getHour(), 2);
+            text[13] = ':';
+            writeDigits(text, 14, time.getMinute(), 2);
+            text[16] = ':';
+            writeDigits(text, 17, time.getSecond(), 2);
+            text[19] = '.';
+            this.chars = text;
+        }
+    }
+
+    private static volatile Prefix cached = new Prefix(0);
+
+    private TimestampFormatter() {
+    }
+
+    /**
+     * Microsecondes depuis l'epoch (horloge système)
+     */
+    public static long currentTimeMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000;
+    }
+
+    /**
+     * Ajoute l'horodatage formaté (23 caractères) au StringBuilder
+     */
+    public static StringBuilder appendTo(StringBuilder sb, long epochMicros) {
+        long epochSecond = Math.floorDiv(epochMicros, 1_000_000L);
+        int millis = (int) (Math.floorMod(epochMicros, 1_000_000L) / 1_000);
+
+        Prefix prefix = cached;
+        if (prefix.epochSecond != epochSecond) {
+            prefix = new Prefix(epochSecond);
+            cached = prefix;
+        }
+        sb.append(prefix.chars);
+        sb.append((char) ('0' + millis / 100));
+        sb.append((char) ('0' + millis / 10 % 10));
+        sb.append((char) ('0' + millis % 10));
+        return sb;
+    }
+
+    public static String format(long epochMicros) {
+        return appendTo(new StringBuilder(23), epochMicros).toString();
+    }
+
+    /**
+     * Lecture inverse de appendTo: "yyyy-MM-dd HH:mm:ss.SSS" à la position offset
+     * Le préfixe de la dernière seconde lue est mis en cache (lignes consécutives).
+     * @return microsecondes depuis l'epoch (précision milliseconde)
+     * @throws IllegalArgumentException si le texte n'est pas un horodatage
+     */
+    public static long parse(CharSequence text, int offset) {
+        if (text.length() < offset + 23 || text.charAt(offset + 19) != '.') {
+            throw new IllegalArgumentException("Horodatage invalide");
+        }
+        int millis = readDigits(text, offset + 20, 3);
+
+        Prefix prefix = lastParsed;
+        if (!matches(prefix, text, offset)) {
+            if (text.charAt(offset + 4) != '-' || text.charAt(offset + 7) != '-' || text.charAt(offset + 10) != ' '
+                    || text.charAt(offset + 13) != ':' || text.charAt(offset + 16) != ':') {
+                throw new IllegalArgumentException("Horodatage invalide");
+            }
+            LocalDateTime time = LocalDateTime.of(readDigits(text, offset, 4), readDigits(text, offset + 5, 2),
+                                                  readDigits(text, offset + 8, 2), readDigits(text, offset + 11, 2),
+                                                  readDigits(text, offset + 14, 2), readDigits(text, offset + 17, 2));
+            prefix = new Prefix(time.atZone(ZONE).toEpochSecond());
+            lastParsed = prefix;
+        }
+        return prefix.epochSecond * 1_000_000L + millis * 1_000L;
+    }
+
+    private static volatile Prefix lastParsed = new Prefix(0);
+
+    private static boolean matches(Prefix prefix, CharSequence text, int offset) {
+        for (int i = 0; i < prefix.chars.length; i++) {
+            if (text.charAt(offset + i) != prefix.chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readDigits(CharSequence text, int offset, int width) {
+        int value = 0;
+        for (int i = offset; i < offset + width; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Horodatage invalide");
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Conversion vers LocalDateTime (fuseau du système), pour compatibilité
+     */
+    public static LocalDateTime toLocalDateTime(long epochMicros) {
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(epochMicros, 1_000_000L),
+                                                Math.floorMod(epochMicros, 1_000_000L) * 1_000L);
+        return LocalDateTime.ofInstant(instant, ZONE);
+    }
+
+    private static void writeDigits(char[] target, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            target[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
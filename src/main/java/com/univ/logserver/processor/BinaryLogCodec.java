@@ -0,0 +1,316 @@
+package com.univ.logserver.processor;
+
+import com.univ.logserver.model.LogEntry;
+import com.univ.logserver.model.LogLevel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Protocole binaire à trames préfixées par leur longueur
+ * Activé par la ligne texte CMD:PROTO:BINARY (réponse OK:PROTO:BINARY);
+ * les réponses du serveur restent des lignes texte.
+ *
+ * Trame: varint longueur | octet type | corps
+ * - LOG:     octet niveau (priorité) | réf application | réf hostname |
+ *            chaîne message | varint nb métadonnées | (réf clé | chaîne valeur)* |
+ *            [varlong horodatage client en µs epoch, optionnel: présent si la trame continue]
+ * - DEFINE:  varint id | chaîne (déclare une chaîne internée, id séquentiels à partir de 1)
+ * - COMMAND: chaîne (même texte qu'après CMD: en mode texte)
+ * Chaîne: varint longueur | octets UTF-8
+ * Réf: varint id interné, ou 0 suivi d'une chaîne en ligne
+ */
+public final class BinaryLogCodec {
+    public static final byte FRAME_LOG = 1;
+    public static final byte FRAME_DEFINE = 2;
+    public static final byte FRAME_COMMAND = 3;
+
+    /** Taille maximale d'une trame (hors préfixe de longueur) */
+    public static final int MAX_FRAME_BYTES = 60 * 1024;
+
+    /** Nombre maximal de chaînes internées par connexion */
+    public static final int MAX_INTERNED = 4096;
+
+    private BinaryLogCodec() {
+    }
+
+    // Varints (7 bits par octet, bit de poids fort = suite)
+
+    public static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("Varint négatif");
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint trop long");
+    }
+
+    /**
+     * Lit un varint sans consommer s'il est incomplet
+     * @return la valeur, ou -1 s'il manque des octets
+     */
+    public static int peekVarint(ByteBuffer buffer) {
+        int value = 0;
+        int position = buffer.position();
+        for (int shift = 0; shift < 32 && position < buffer.limit(); shift += 7) {
+            byte b = buffer.get(position++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("Varint négatif");
+                }
+                buffer.position(position);
+                return value;
+            }
+        }
+        if (position - buffer.position() >= 5) {
+            throw new IllegalArgumentException("Varint trop long");
+        }
+        return -1;
+    }
+
+    public static long readVarlong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varlong trop long");
+    }
+
+    public static String readString(ByteBuffer buffer) {
+        int length = readVarint(buffer);
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("Chaîne tronquée");
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Encodeur côté client: une instance par connexion (table d'internement)
+     */
+    public static final class Encoder {
+        private final Map<String, Integer> interned = new HashMap<>();
+        private byte[] frame = new byte[512];
+        private int length;
+        private byte[] header = new byte[5];
+
+        /**
+         * Écrit une trame LOG (précédée des trames DEFINE nécessaires)
+         * Les métadonnées sont au format texte key=value,key2=value2
+         */
+        public void writeLog(OutputStream out, LogLevel level, String application, String hostname,
+                             String message, String metadata) throws IOException {
+            int applicationId = intern(out, application);
+            int hostnameId = intern(out, hostname);
+
+            // Clés de métadonnées internées avant d'ouvrir la trame LOG;
+            // event_time numérique part dans le champ horodatage dédié
+            String[] pairs = metadata != null && !metadata.isEmpty() ? metadata.split(",") : new String[0];
+            int pairCount = 0;
+            long eventMillis = -1;
+            for (int i = 0; i < pairs.length; i++) {
+                int separator = pairs[i].indexOf('=');
+                if (separator <= 0) {
+                    pairs[i] = null;
+                    continue;
+                }
+                String key = pairs[i].substring(0, separator).trim();
+                if (LogParser.EVENT_TIME_KEY.equals(key)) {
+                    long millis = LogParser.parseMillis(pairs[i].substring(separator + 1).trim());
+                    if (millis >= 0) {
+                        eventMillis = millis;
+                        pairs[i] = null;
+                        continue;
+                    }
+                }
+                intern(out, key);
+                pairCount++;
+            }
+
+            length = 0;
+            writeByte(FRAME_LOG);
+            writeByte(level.getPriority());
+            writeRef(applicationId, application);
+            writeRef(hostnameId, hostname);
+            writeString(message);
+            writeVarint(pairCount);
+            for (String pair : pairs) {
+                if (pair != null) {
+                    int separator = pair.indexOf('=');
+                    String key = pair.substring(0, separator).trim();
+                    writeRef(interned.getOrDefault(key, 0), key);
+                    writeString(pair.substring(separator + 1).trim());
+                }
+            }
+            if (eventMillis >= 0) {
+                writeVarlong(eventMillis * 1000);
+            }
+            flushFrame(out);
+        }
+
+        public void writeCommand(OutputStream out, String command) throws IOException {
+            length = 0;
+            writeByte(FRAME_COMMAND);
+            writeString(command);
+            flushFrame(out);
+        }
+
+        /**
+         * Id interné d'une chaîne, déclaré par une trame DEFINE à la première utilisation
+         * @return 0 si la table est pleine (chaîne envoyée en ligne)
+         */
+        private int intern(OutputStream out, String value) throws IOException {
+            Integer id = interned.get(value);
+            if (id != null) {
+                return id;
+            }
+            if (interned.size() >= MAX_INTERNED) {
+                return 0;
+            }
+            int newId = interned.size() + 1;
+            interned.put(value, newId);
+
+            length = 0;
+            writeByte(FRAME_DEFINE);
+            writeVarint(newId);
+            writeString(value);
+            flushFrame(out);
+            return newId;
+        }
+
+        private void writeRef(int id, String value) {
+            writeVarint(id);
+            if (id == 0) {
+                writeString(value);
+            }
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, frame, length, bytes.length);
+            length += bytes.length;
+        }
+
+        private void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                frame[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            frame[length++] = (byte) value;
+        }
+
+        private void writeVarlong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                frame[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            frame[length++] = (byte) value;
+        }
+
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            frame[length++] = (byte) value;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > frame.length) {
+                byte[] larger = new byte[Math.max(frame.length * 2, length + extra)];
+                System.arraycopy(frame, 0, larger, 0, length);
+                frame = larger;
+            }
+        }
+
+        private void flushFrame(OutputStream out) throws IOException {
+            if (length > MAX_FRAME_BYTES) {
+                throw new IOException("Trame trop longue: " + length + " octets");
+            }
+            int headerLength = 0;
+            int value = length;
+            while ((value & ~0x7F) != 0) {
+                header[headerLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            header[headerLength++] = (byte) value;
+            out.write(header, 0, headerLength);
+            out.write(frame, 0, length);
+        }
+    }
+
+    /**
+     * Décodeur côté serveur: une instance par connexion (table d'internement)
+     */
+    public static final class Decoder {
+        private final List<String> interned = new ArrayList<>();
+
+        /**
+         * Enregistre une chaîne déclarée par une trame DEFINE
+         */
+        public void define(ByteBuffer frame) {
+            int id = readVarint(frame);
+            if (id != interned.size() + 1 || id > MAX_INTERNED) {
+                throw new IllegalArgumentException("Id interné inattendu: " + id);
+            }
+            interned.add(readString(frame));
+        }
+
+        /**
+         * Décode le corps d'une trame LOG (octet type déjà lu)
+         * Ajoute les mêmes métadonnées automatiques que le parser texte
+         */
+        public LogEntry decodeLog(ByteBuffer frame, int frameLength) {
+            LogLevel level = LogLevel.fromPriority(frame.get());
+            String application = readRef(frame);
+            String hostname = readRef(frame);
+            String message = readString(frame);
+
+            int pairCount = readVarint(frame);
+            if (pairCount > frame.remaining()) {
+                throw new IllegalArgumentException("Nombre de métadonnées invalide: " + pairCount);
+            }
+            LogEntry entry = new LogEntry(level, message, application, hostname, null);
+            for (int i = 0; i < pairCount; i++) {
+                String key = readRef(frame);
+                entry.addMetadata(key, readString(frame));
+            }
+            if (frame.hasRemaining()) {
+                entry.setEventTimeMicros(readVarlong(frame));
+            }
+            entry.addMetadata("raw_length", String.valueOf(frameLength));
+            entry.addMetadata("parsed_at", String.valueOf(System.currentTimeMillis()));
+            return entry;
+        }
+
+        private String readRef(ByteBuffer frame) {
+            int id = readVarint(frame);
+            if (id == 0) {
+                return readString(frame);
+            }
+            if (id > interned.size()) {
+                throw new IllegalArgumentException("Id interné inconnu: " + id);
+            }
+            return interned.get(id - 1);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.univ.logserver.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classification par mots-clés en une seule passe (automate d'Aho-Corasick)
+ * Règles ordonnées tag -> mots-clés, comparées sans tenir compte de la casse:
+ * le tag retourné est celui de la première règle dont un mot-clé apparaît
+ * dans le texte, comme une suite de if/else sur contains().
+ * Coût O(longueur du texte) quel que soit le nombre de règles.
+ *
+ * Format texte des règles: tag:mot1,mot2;tag2:mot3
+ */
+public final class KeywordClassifier {
+    private static final int ASCII = 128;
+    private static final int NO_RULE = Integer.MAX_VALUE;
+
+    private final String[] tags;
+    private final String defaultTag;
+
+    // Automate: transitions ASCII complètes, transitions non ASCII creuses + liens d'échec
+    private final int[] asciiNext;
+    private final List<Map<Character, Integer>> otherNext;
+    private final int[] fail;
+    private final int[] bestRule;
+
+    /**
+     * @param rules règles dans l'ordre de priorité (tag -> mots-clés)
+     * @param defaultTag tag retourné sans correspondance (peut être null)
+     */
+    public KeywordClassifier(LinkedHashMap<String, List<String>> rules, String defaultTag) {
+        this.tags = rules.keySet().toArray(new String[0]);
+        this.defaultTag = defaultTag;
+
+        // Construction du trie (mots-clés en minuscules)
+        List<int[]> ascii = new ArrayList<>();
+        List<Map<Character, Integer>> others = new ArrayList<>();
+        List<Integer> rulesOfNode = new ArrayList<>();
+        ascii.add(newRow());
+        others.add(null);
+        rulesOfNode.add(NO_RULE);
+
+        int ruleIndex = 0;
+        for (List<String> keywords : rules.values()) {
+            for (String keyword : keywords) {
+                if (keyword.isEmpty()) {
+                    continue;
+                }
+                int node = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    char c = Character.toLowerCase(keyword.charAt(i));
+                    int next = c < ASCII ? ascii.get(node)[c] : childOf(others.get(node), c);
+                    if (next < 0) {
+                        next = ascii.size();
+                        ascii.add(newRow());
+                        others.add(null);
+                        rulesOfNode.add(NO_RULE);
+                        if (c < ASCII) {
+                            ascii.get(node)[c] = next;
+                        } else {
+                            if (others.get(node) == null) {
+                                others.set(node, new HashMap<>());
+                            }
+                            others.get(node).put(c, next);
+                        }
+                    }
+                    node = next;
+                }
+                rulesOfNode.set(node, Math.min(rulesOfNode.get(node), ruleIndex));
+            }
+            ruleIndex++;
+        }
+
+        int nodeCount = ascii.size();
+        this.asciiNext = new int[nodeCount * ASCII];
+        this.otherNext = others;
+        this.fail = new int[nodeCount];
+        this.bestRule = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            bestRule[node] = rulesOfNode.get(node);
+        }
+
+        // Parcours en largeur: liens d'échec, règle prioritaire atteignable,
+        // et transitions ASCII manquantes résolues (automate déterministe)
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        while (head < tail) {
+            int node = queue[head++];
+            int[] row = ascii.get(node);
+            for (int c = 0; c < ASCII; c++) {
+                int child = row[c];
+                if (child >= 0) {
+                    fail[child] = node == 0 ? 0 : asciiNext[fail[node] * ASCII + c];
+                    bestRule[child] = Math.min(bestRule[child], bestRule[fail[child]]);
+                    asciiNext[node * ASCII + c] = child;
+                    queue[tail++] = child;
+                } else {
+                    asciiNext[node * ASCII + c] = node == 0 ? 0 : asciiNext[fail[node] * ASCII + c];
+                }
+            }
+            if (otherNext.get(node) != null) {
+                for (Map.Entry<Character, Integer> edge : otherNext.get(node).entrySet()) {
+                    int child = edge.getValue();
+                    fail[child] = node == 0 ? 0 : step(fail[node], edge.getKey());
+                    bestRule[child] = Math.min(bestRule[child], bestRule[fail[child]]);
+                    queue[tail++] = child;
+                }
+            }
+        }
+    }
+
+    private static int[] newRow() {
+        int[] row = new int[ASCII];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private static int childOf(Map<Character, Integer> children, char c) {
+        Integer child = children != null ? children.get(c) : null;
+        return child != null ? child : -1;
+    }
+
+    /**
+     * Transition de l'automate pour un caractère déjà en minuscules
+     */
+    private int step(int state, char c) {
+        if (c < ASCII) {
+            return asciiNext[state * ASCII + c];
+        }
+        while (true) {
+            int child = childOf(otherNext.get(state), c);
+            if (child >= 0) {
+                return child;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * Tag de la première règle dont un mot-clé apparaît dans le texte
+     * @return le tag, ou le tag par défaut sans correspondance
+     */
+    public String classify(CharSequence text) {
+        int best = NO_RULE;
+        int state = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            } else if (c >= ASCII) {
+                c = Character.toLowerCase(c);
+            }
+            state = step(state, c);
+            if (bestRule[state] < best) {
+                best = bestRule[state];
+                if (best == 0) {
+                    break; // Règle la plus prioritaire: inutile de continuer
+                }
+            }
+        }
+        return best == NO_RULE ? defaultTag : tags[best];
+    }
+
+    public int getRuleCount() {
+        return tags.length;
+    }
+
+    /**
+     * Construit un classifieur depuis le format texte tag:mot1,mot2;tag2:mot3
+     * Les règles mal formées sont ignorées avec un avertissement
+     */
+    public static KeywordClassifier parse(String spec, String defaultTag) {
+        LinkedHashMap<String, List<String>> rules = new LinkedHashMap<>();
+        if (spec != null) {
+            for (String rule : spec.split(";")) {
+                if (rule.isBlank()) {
+                    continue;
+                }
+                int separator = rule.indexOf(':');
+                if (separator <= 0) {
+                    System.err.println("Règle de classification ignorée: " + rule.trim());
+                    continue;
+                }
+                List<String> keywords = rules.computeIfAbsent(rule.substring(0, separator).trim(), tag -> new ArrayList<>());
+                for (String keyword : rule.substring(separator + 1).split(",")) {
+                    if (!keyword.isBlank()) {
+                        keywords.add(keyword.trim());
+                    }
+                }
+            }
+        }
+        return new KeywordClassifier(rules, defaultTag);
+    }
+}
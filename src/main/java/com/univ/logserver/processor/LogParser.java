@@ -1,9 +1,9 @@
 package com.univ.logserver.processor;
 
+import com.univ.logserver.config.ServerConfig;
 import com.univ.logserver.model.LogEntry;
 import com.univ.logserver.model.LogLevel;
-import java.util.HashMap;
-import java.util.Map;
+import com.univ.logserver.model.Metadata;
 
 /**
  * Parser pour analyser les messages de logs entrants
@@ -11,51 +11,82 @@ import java.util.Map;
  */
 public class LogParser {
     
+    /** Métadonnée portant l'horodatage client (epoch millisecondes) */
+    public static final String EVENT_TIME_KEY = "event_time";
+    
+    /**
+     * Classifieur de catégories construit à la première utilisation
+     * depuis classifier.category.rules
+     */
+    private static final class DefaultCategories {
+        static final KeywordClassifier CLASSIFIER =
+            KeywordClassifier.parse(ServerConfig.getInstance().getCategoryRules(), "general");
+    }
+    
     /**
      * Parse un message de log brut en LogEntry
      * Format attendu: LEVEL|APPLICATION|HOSTNAME|MESSAGE|metadata_key=value,key2=value2
+     *
+     * Analyse en une passe par index (ni regex, ni tableaux intermédiaires):
+     * seuls les champs retenus sont extraits en String, métadonnées ajoutées
+     * directement à l'entrée.
      */
     public static LogEntry parseLogMessage(String rawMessage) {
-        if (rawMessage == null || rawMessage.trim().isEmpty()) {
+        if (rawMessage == null || isBlank(rawMessage, 0, rawMessage.length())) {
             return null;
         }
         
         try {
-            String[] parts = rawMessage.split("\\|", 5);
+            int length = rawMessage.length();
+            
+            // Positions des 4 premiers séparateurs (le 5e champ garde les suivants)
+            int pipe1 = rawMessage.indexOf('|');
+            int pipe2 = pipe1 < 0 ? -1 : rawMessage.indexOf('|', pipe1 + 1);
+            int pipe3 = pipe2 < 0 ? -1 : rawMessage.indexOf('|', pipe2 + 1);
             
             // Validation du format minimum
-            if (parts.length < 4) {
+            if (pipe3 < 0) {
                 // Format simple: level message
-                String[] simpleParts = rawMessage.split(" ", 2);
-                if (simpleParts.length >= 2) {
-                    LogLevel level = LogLevel.fromString(simpleParts[0]);
-                    return new LogEntry(level, simpleParts[1], "unknown");
+                int space = rawMessage.indexOf(' ');
+                if (space >= 0) {
+                    LogLevel level = LogLevel.fromString(rawMessage, 0, space);
+                    return new LogEntry(level, rawMessage.substring(space + 1), "unknown");
                 }
                 return new LogEntry(LogLevel.INFO, rawMessage, "unknown");
             }
+            int pipe4 = rawMessage.indexOf('|', pipe3 + 1);
+            int messageEnd = pipe4 < 0 ? length : pipe4;
             
-            LogLevel level = LogLevel.fromString(parts[0].trim());
-            String application = parts[1].trim();
-            String hostname = parts[2].trim();
-            String message = parts[3].trim();
+            LogLevel level = parseLevel(rawMessage, 0, pipe1);
+            String application = trimmed(rawMessage, pipe1 + 1, pipe2);
+            String hostname = trimmed(rawMessage, pipe2 + 1, pipe3);
+            String message = trimmed(rawMessage, pipe3 + 1, messageEnd);
             
-            Map<String, String> metadata = new HashMap<>();
+            LogEntry entry = new LogEntry(level, message, application, hostname, null);
             
-            // Parser les métadonnées si présentes
-            if (parts.length > 4 && !parts[4].trim().isEmpty()) {
-                String[] metadataPairs = parts[4].split(",");
-                for (String pair : metadataPairs) {
-                    String[] keyValue = pair.split("=", 2);
-                    if (keyValue.length == 2) {
-                        metadata.put(keyValue[0].trim(), keyValue[1].trim());
+            // Parser les métadonnées si présentes: paires key=value séparées par des virgules
+            if (pipe4 >= 0) {
+                int pairStart = pipe4 + 1;
+                while (pairStart <= length) {
+                    int pairEnd = rawMessage.indexOf(',', pairStart);
+                    if (pairEnd < 0) {
+                        pairEnd = length;
+                    }
+                    int equals = rawMessage.indexOf('=', pairStart);
+                    if (equals >= 0 && equals < pairEnd) {
+                        String key = trimmed(rawMessage, pairStart, equals);
+                        String value = trimmed(rawMessage, equals + 1, pairEnd);
+                        // event_time (epoch ms) est conservé à part de l'heure de réception
+                        if (!(EVENT_TIME_KEY.equals(key) && applyEventTime(entry, value))) {
+                            entry.addMetadata(key, value);
+                        }
                     }
+                    pairStart = pairEnd + 1;
                 }
             }
             
-            LogEntry entry = new LogEntry(level, message, application, hostname, metadata);
-            
             // Ajouter des métadonnées automatiques
-            entry.addMetadata("raw_length", String.valueOf(rawMessage.length()));
+            entry.addMetadata("raw_length", String.valueOf(length));
             entry.addMetadata("parsed_at", String.valueOf(System.currentTimeMillis()));
             
             return entry;
@@ -69,12 +100,74 @@ public class LogParser {
         }
     }
     
+    /**
+     * Applique un horodatage client en millisecondes epoch
+     * @return false si la valeur n'est pas un nombre (conservée en métadonnée)
+     */
+    public static boolean applyEventTime(LogEntry entry, String epochMillis) {
+        long millis = parseMillis(epochMillis);
+        if (millis < 0) {
+            return false;
+        }
+        entry.setEventTimeMicros(millis * 1000);
+        return true;
+    }
+    
+    /**
+     * Entier positif en base 10 sans exception
+     * @return -1 si la chaîne n'est pas un nombre valide
+     */
+    public static long parseMillis(String text) {
+        if (text.isEmpty() || text.length() > 15) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+    
+    /**
+     * Niveau du champ [start, end) sans allocation (INFO par défaut, comme LogLevel.fromString)
+     */
+    private static LogLevel parseLevel(String raw, int start, int end) {
+        while (start < end && raw.charAt(start) <= ' ') start++;
+        while (end > start && raw.charAt(end - 1) <= ' ') end--;
+        return LogLevel.fromString(raw, start, end);
+    }
+    
+    /**
+     * Équivalent de substring(start, end).trim() en une seule allocation
+     */
+    private static String trimmed(String raw, int start, int end) {
+        while (start < end && raw.charAt(start) <= ' ') start++;
+        while (end > start && raw.charAt(end - 1) <= ' ') end--;
+        return raw.substring(start, end);
+    }
+    
+    /**
+     * Vrai si [start, end) ne contient que des caractères retirés par trim()
+     */
+    private static boolean isBlank(String raw, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (raw.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     /**
      * Valide si un message de log est bien formé
      */
     public static boolean isValidLogMessage(String message) {
         return message != null && 
-               !message.trim().isEmpty() && 
+               !isBlank(message, 0, message.length()) && 
                message.length() < 10000; // Limite de taille
     }
     
@@ -82,21 +175,40 @@ public class LogParser {
      * Enrichit une entrée de log avec des informations supplémentaires
      */
     public static void enrichLogEntry(LogEntry entry, String clientAddress) {
+        enrichLogEntry(entry, clientAddress, DefaultCategories.CLASSIFIER);
+    }
+    
+    /**
+     * Enrichit une entrée avec un classifieur de catégories explicite
+     */
+    public static void enrichLogEntry(LogEntry entry, String clientAddress, KeywordClassifier categories) {
         if (entry != null) {
             entry.addMetadata("client_ip", clientAddress);
             entry.addMetadata("server_time", String.valueOf(System.currentTimeMillis()));
             
-            // Classification automatique basée sur le message
-            String message = entry.getMessage().toLowerCase();
-            if (message.contains("error") || message.contains("exception")) {
-                entry.addMetadata("category", "error");
-            } else if (message.contains("warning") || message.contains("warn")) {
-                entry.addMetadata("category", "warning");
-            } else if (message.contains("startup") || message.contains("shutdown")) {
-                entry.addMetadata("category", "lifecycle");
-            } else {
-                entry.addMetadata("category", "general");
-            }
+            classify(entry, categories);
+        }
+    }
+    
+    /**
+     * Enrichit une entrée reçue sur une connexion: les métadonnées de connexion
+     * (client_ip, client_id...) sont partagées par référence, pas copiées
+     */
+    public static void enrichLogEntry(LogEntry entry, Metadata connectionMetadata) {
+        if (entry != null) {
+            entry.setSharedMetadata(connectionMetadata);
+            entry.addMetadata("server_time", String.valueOf(System.currentTimeMillis()));
+            classify(entry, DefaultCategories.CLASSIFIER);
+        }
+    }
+    
+    /**
+     * Classification automatique basée sur le message (une passe)
+     */
+    private static void classify(LogEntry entry, KeywordClassifier categories) {
+        String category = categories.classify(entry.getMessage());
+        if (category != null) {
+            entry.addMetadata("category", category);
         }
     }
 }
\ No newline at end of file
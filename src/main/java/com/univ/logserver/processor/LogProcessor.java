@@ -1,11 +1,17 @@
 package com.univ.logserver.processor;
 
-import com.univ.logserver.buffer.CircularBuffer;
+import com.univ.logserver.buffer.LogBuffer;
+import com.univ.logserver.config.ServerConfig;
 import com.univ.logserver.model.LogEntry;
 import com.univ.logserver.storage.LogStorage;
+import com.univ.logserver.storage.WriteAheadLog;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -14,59 +20,59 @@ import java.util.concurrent.atomic.AtomicLong;
  * Traite les logs du buffer et les stocke de manière asynchrone
  */
 public class LogProcessor implements Runnable {
-    private final CircularBuffer buffer;
+    private static final int MAX_STORE_ATTEMPTS = 3;
+    
+    private final LogBuffer buffer;
     private final LogStorage storage;
     private final AtomicBoolean running = new AtomicBoolean(true);
     private final int batchSize;
-    private final long batchTimeoutMs;
+    private final long pollTimeoutMs;
+    private final KeywordClassifier componentClassifier;
+    private final WriteAheadLog wal; // null: pas de journal
     
     // Statistiques
     private final AtomicLong processedLogs = new AtomicLong(0);
     private final AtomicLong batchesProcessed = new AtomicLong(0);
     private volatile long lastProcessTime = System.currentTimeMillis();
     
-    public LogProcessor(CircularBuffer buffer, LogStorage storage, int batchSize) {
+    public LogProcessor(LogBuffer buffer, LogStorage storage, int batchSize) {
+        this(buffer, storage, batchSize,
+             KeywordClassifier.parse(ServerConfig.getInstance().getComponentRules(), null));
+    }
+    
+    public LogProcessor(LogBuffer buffer, LogStorage storage, int batchSize, KeywordClassifier componentClassifier) {
+        this(buffer, storage, batchSize, componentClassifier, null);
+    }
+    
+    /**
+     * @param wal journal notifié des entrées stockées (libération des segments), peut être null
+     */
+    public LogProcessor(LogBuffer buffer, LogStorage storage, int batchSize, KeywordClassifier componentClassifier,
+                        WriteAheadLog wal) {
         this.buffer = buffer;
+        this.wal = wal;
         this.storage = storage;
         this.batchSize = batchSize;
-        this.batchTimeoutMs = 5000; // 5 secondes timeout pour les batch
+        this.pollTimeoutMs = 100; // Attente max avant de revérifier l'arrêt
+        this.componentClassifier = componentClassifier;
     }
     
     @Override
     public void run() {
         System.out.println("Processeur démarré - Thread: " + Thread.currentThread().getName());
         
-        List<LogEntry> batch = new ArrayList<>();
-        long lastBatchTime = System.currentTimeMillis();
+        List<LogEntry> batch = new ArrayList<>(batchSize);
         
         while (running.get() || !buffer.isEmpty()) {
             try {
-                // Collecter les logs par batch pour optimiser le stockage
-                LogEntry entry = buffer.poll(); // Non-bloquant
+                // Bloque sur le buffer jusqu'à la première entrée, puis prend
+                // tout ce qui est disponible (jusqu'à batchSize) en une fois
+                int drained = buffer.drainTo(batch, batchSize, pollTimeoutMs, TimeUnit.MILLISECONDS);
                 
-                if (entry != null) {
-                    batch.add(entry);
+                if (drained > 0) {
                     lastProcessTime = System.currentTimeMillis();
-                }
-                
-                // Traiter le batch si:
-                // 1. Il est plein
-                // 2. Il y a un timeout
-                // 3. Le processeur s'arrête
-                long currentTime = System.currentTimeMillis();
-                boolean shouldProcess = batch.size() >= batchSize ||
-                                      (currentTime - lastBatchTime > batchTimeoutMs && !batch.isEmpty()) ||
-                                      (!running.get() && !batch.isEmpty());
-                
-                if (shouldProcess) {
-                    processBatch(new ArrayList<>(batch));
+                    processBatch(batch);
                     batch.clear();
-                    lastBatchTime = currentTime;
-                }
-                
-                // Petite pause si aucun log à traiter
-                if (entry == null && running.get()) {
-                    Thread.sleep(100);
                 }
                 
             } catch (InterruptedException e) {
@@ -76,6 +82,7 @@ public class LogProcessor implements Runnable {
             } catch (Exception e) {
                 System.err.println("Erreur processeur: " + e.getMessage());
                 e.printStackTrace();
+                batch.clear();
             }
         }
         
@@ -96,8 +103,14 @@ public class LogProcessor implements Runnable {
                 preprocessLog(entry);
             }
             
-            // Stockage par batch (plus efficace)
-            storage.storeBatch(batch);
+            // Stockage par batch (plus efficace), écriture asynchrone;
+            // le journal libère les entrées une fois le lot écrit
+            if (wal != null) {
+                List<LogEntry> written = new ArrayList<>(batch);
+                storage.storeBatch(batch, () -> wal.markStored(written), failed -> requeue(written, failed));
+            } else {
+                storage.storeBatch(batch);
+            }
             
             // Mise à jour statistiques
             processedLogs.addAndGet(batch.size());
@@ -116,9 +129,46 @@ public class LogProcessor implements Runnable {
         } catch (Exception e) {
             System.err.println("Erreur traitement batch: " + e.getMessage());
             e.printStackTrace();
+            if (wal != null) {
+                requeue(new ArrayList<>(batch));
+            }
         }
     }
     
+    /**
+     * Lot en partie stocké (mode WAL): les entrées écrites dans les autres
+     * fichiers sont libérées, seules celles en échec sont remises en file
+     * (sinon elles seraient stockées deux fois)
+     */
+    private void requeue(List<LogEntry> batch, List<LogEntry> failed) {
+        Set<LogEntry> retry = Collections.newSetFromMap(new IdentityHashMap<>(failed.size() * 2));
+        retry.addAll(failed);
+        for (LogEntry entry : batch) {
+            if (!retry.contains(entry)) {
+                wal.markStored(entry);
+            }
+        }
+        requeue(failed);
+    }
+    
+    /**
+     * Lot non stocké (mode WAL): les entrées retournent dans le buffer pour
+     * une nouvelle tentative; au-delà de MAX_STORE_ATTEMPTS échecs, ou si le
+     * buffer les rejette, elles sont abandonnées et libèrent leur segment
+     * (sinon le journal les conserverait jusqu'au prochain redémarrage)
+     */
+    private void requeue(List<LogEntry> entries) {
+        int abandoned = 0;
+        for (LogEntry entry : entries) {
+            if (entry.incrementStoreAttempts() >= MAX_STORE_ATTEMPTS || !buffer.add(entry)) {
+                wal.markStored(entry);
+                abandoned++;
+            }
+        }
+        System.err.println("Lot non stocké: " + (entries.size() - abandoned) + " entrées remises en file, "
+                           + abandoned + " abandonnées");
+    }
+    
     /**
      * Pré-traite une entrée de log
      */
@@ -140,17 +190,10 @@ public class LogProcessor implements Runnable {
      * Classifie automatiquement un log
      */
     private void classifyLog(LogEntry entry) {
-        String message = entry.getMessage().toLowerCase();
-        
-        // Classification par composant
-        if (message.contains("sql") || message.contains("database") || message.contains("query")) {
-            entry.addMetadata("component", "database");
-        } else if (message.contains("http") || message.contains("request") || message.contains("response")) {
-            entry.addMetadata("component", "web");
-        } else if (message.contains("memory") || message.contains("gc") || message.contains("heap")) {
-            entry.addMetadata("component", "memory");
-        } else if (message.contains("security") || message.contains("auth") || message.contains("login")) {
-            entry.addMetadata("component", "security");
+        // Classification par composant (règles classifier.component.rules, une passe)
+        String component = componentClassifier.classify(entry.getMessage());
+        if (component != null) {
+            entry.addMetadata("component", component);
         }
         
         // Classification par sévérité
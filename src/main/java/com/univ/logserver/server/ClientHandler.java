@@ -1,31 +1,59 @@
 package com.univ.logserver.server;
 
-import com.univ.logserver.buffer.CircularBuffer;
-import com.univ.logserver.model.LogEntry;
-import com.univ.logserver.processor.LogParser;
+import com.univ.logserver.buffer.LogBuffer;
+import com.univ.logserver.processor.BinaryLogCodec;
+import com.univ.logserver.storage.WriteAheadLog;
 
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.util.concurrent.atomic.AtomicLong;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Gestionnaire pour chaque client connecté
  * Traite les connexions client de manière asynchrone
+ *
+ * Les réponses passent par une file sortante écrite sur le socket par un
+ * thread d'écriture propre à la connexion: les autres threads (commit du
+ * journal, tick des acquittements) déposent leurs réponses sans jamais
+ * attendre un client qui ne lit pas. File pleine: le thread de la connexion
+ * attend (back-pressure sur son propre client), une réponse d'un autre
+ * thread déconnecte le client.
  */
 public class ClientHandler implements Runnable {
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_PENDING_RESPONSES = 16 * 1024;
+    private static final long WRITER_POLL_MILLIS = 100;
+    private static final long WRITER_DRAIN_MILLIS = 1000; // Réponses en attente à la déconnexion
+
     private final Socket clientSocket;
-    private final CircularBuffer buffer;
-    private final String clientId;
-    private final AtomicLong messagesReceived = new AtomicLong(0);
-    private final AtomicLong messagesRejected = new AtomicLong(0);
-    private volatile boolean running = true;
-    private final long connectTime = System.currentTimeMillis();
-
-    public ClientHandler(Socket clientSocket, CircularBuffer buffer) {
+    private final ClientSession session;
+
+    // Réponses
+    private final BlockingQueue<String> outbound = new LinkedBlockingQueue<>(MAX_PENDING_RESPONSES);
+    private volatile Thread connectionThread;
+    private volatile boolean closing = false;
+    private volatile boolean outputFailed = false;
+    private Thread writerThread;
+
+    // Lecture par octets: lignes texte ou trames binaires sur le même flux
+    private InputStream input;
+    private byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private int readPosition = 0;
+    private int readLimit = 0;
+
+    public ClientHandler(Socket clientSocket, LogBuffer buffer) {
+        this(clientSocket, buffer, null);
+    }
+
+    public ClientHandler(Socket clientSocket, LogBuffer buffer, WriteAheadLog wal) {
         this.clientSocket = clientSocket;
-        this.buffer = buffer;
-        this.clientId = generateClientId();
+        this.session = new ClientSession(generateClientId(clientSocket),
+                clientSocket.getInetAddress().getHostAddress(), buffer, wal);
 
         // Configuration socket
         try {
@@ -36,40 +64,55 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    private String generateClientId() {
+    private static String generateClientId(Socket clientSocket) {
         return String.format("%s:%d-%d",
                 clientSocket.getInetAddress().getHostAddress(),
                 clientSocket.getPort(),
                 System.currentTimeMillis());
     }
 
+    /**
+     * Boucle de lecture bloquante; compatible threads virtuels: les flux
+     * java.io, les sockets et la file sortante n'utilisent pas de moniteur
+     * synchronized. Le thread d'écriture est du même type (virtuel ou non)
+     * que celui de la connexion.
+     */
     @Override
     public void run() {
-        System.out.println("Client connecté: " + clientId);
-
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(clientSocket.getInputStream()));
-                PrintWriter writer = new PrintWriter(
-                        clientSocket.getOutputStream(), true)) {
+        try (InputStream in = clientSocket.getInputStream()) {
+            this.input = in;
+            this.connectionThread = Thread.currentThread();
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                    clientSocket.getOutputStream(), StandardCharsets.UTF_8));
+            Thread.Builder builder = Thread.currentThread().isVirtual()
+                    ? Thread.ofVirtual() : Thread.ofPlatform().daemon();
+            writerThread = builder.name("LogServer-ClientOut-" + session.getClientId())
+                    .start(() -> writeResponses(out));
 
             // Message de bienvenue
-            writer.println("OK:CONNECTED:" + clientId);
-
-            String line;
-            while (running && (line = reader.readLine()) != null) {
-                try {
-                    processMessage(line, writer);
-                } catch (Exception e) {
-                    System.err.println("Erreur traitement message " + clientId + ": " + e.getMessage());
-                    writer.println("ERROR:PROCESSING_FAILED:" + e.getMessage());
+            session.onConnect(this::send);
+
+            while (session.isRunning()) {
+                if (session.isBinaryProtocol()) {
+                    ByteBuffer frame = readFrame();
+                    if (frame == null) {
+                        break;
+                    }
+                    session.onFrame(frame);
+                } else {
+                    String line = readLine();
+                    if (line == null) {
+                        break;
+                    }
+                    session.onLine(line);
                 }
             }
 
         } catch (SocketTimeoutException e) {
-            System.out.println("Timeout client: " + clientId);
+            System.out.println("Timeout client: " + session.getClientId());
         } catch (IOException e) {
-            if (running) {
-                System.err.println("Erreur connexion " + clientId + ": " + e.getMessage());
+            if (session.isRunning()) {
+                System.err.println("Erreur connexion " + session.getClientId() + ": " + e.getMessage());
             }
         } finally {
             cleanup();
@@ -77,106 +120,156 @@ public class ClientHandler implements Runnable {
     }
 
     /**
-     * Traite un message reçu du client
+     * Lit une ligne terminée par '\n' (ou la fin du flux), '\r' final retiré
+     * @return null en fin de flux
      */
-    private void processMessage(String message, PrintWriter writer) {
-        if (message == null || message.trim().isEmpty()) {
-            writer.println("ERROR:EMPTY_MESSAGE");
-            return;
-        }
-
-        messagesReceived.incrementAndGet();
-
-        // Commandes spéciales
-        if (message.startsWith("CMD:")) {
-            handleCommand(message.substring(4), writer);
-            return;
+    private String readLine() throws IOException {
+        int scanned = readPosition;
+        while (true) {
+            for (int i = scanned; i < readLimit; i++) {
+                if (readBuffer[i] == '\n') {
+                    int end = (i > readPosition && readBuffer[i - 1] == '\r') ? i - 1 : i;
+                    String line = new String(readBuffer, readPosition, end - readPosition, StandardCharsets.UTF_8);
+                    readPosition = i + 1;
+                    return line;
+                }
+            }
+            scanned = readLimit - readPosition;
+            if (!fill()) {
+                if (readLimit == readPosition) {
+                    return null;
+                }
+                String line = new String(readBuffer, readPosition, readLimit - readPosition, StandardCharsets.UTF_8);
+                readPosition = readLimit;
+                return line;
+            }
+            scanned += readPosition;
         }
+    }
 
-        // Validation du message
-        if (!LogParser.isValidLogMessage(message)) {
-            messagesRejected.incrementAndGet();
-            writer.println("ERROR:INVALID_MESSAGE_FORMAT");
-            return;
+    /**
+     * Lit une trame binaire complète (préfixe varint de longueur retiré)
+     * La trame référence le tampon de lecture: elle doit être traitée avant la lecture suivante
+     * @return null en fin de flux
+     */
+    private ByteBuffer readFrame() throws IOException {
+        int length;
+        while (true) {
+            ByteBuffer available = ByteBuffer.wrap(readBuffer, readPosition, readLimit - readPosition);
+            length = BinaryLogCodec.peekVarint(available);
+            if (length >= 0) {
+                readPosition = available.position();
+                break;
+            }
+            if (!fill()) {
+                return null;
+            }
         }
-
-        // Parser le message en LogEntry
-        LogEntry logEntry = LogParser.parseLogMessage(message);
-        if (logEntry == null) {
-            messagesRejected.incrementAndGet();
-            writer.println("ERROR:PARSE_FAILED");
-            return;
+        if (length > BinaryLogCodec.MAX_FRAME_BYTES) {
+            throw new IOException("Trame trop longue: " + length + " octets");
         }
-
-        // Enrichir avec infos client
-        LogParser.enrichLogEntry(logEntry, clientSocket.getInetAddress().getHostAddress());
-        logEntry.addMetadata("client_id", clientId);
-
-        // Ajouter au buffer
-        boolean added = buffer.add(logEntry);
-        if (added) {
-            writer.println("OK:QUEUED:" + logEntry.getId());
-
-            // Stats périodiques
-            if (messagesReceived.get() % 1000 == 0) {
-                System.out.println(String.format(
-                        "Client %s - Messages: %d, Rejetés: %d",
-                        clientId, messagesReceived.get(), messagesRejected.get()));
+        while (readLimit - readPosition < length) {
+            if (!fill()) {
+                return null;
             }
-        } else {
-            messagesRejected.incrementAndGet();
-            writer.println("ERROR:BUFFER_FULL:BACKPRESSURE_ACTIVE");
         }
+        ByteBuffer frame = ByteBuffer.wrap(readBuffer, readPosition, length).slice();
+        readPosition += length;
+        return frame;
     }
 
     /**
-     * Traite les commandes spéciales du client
+     * Lit davantage d'octets: compacte le tampon, l'agrandit s'il est plein
+     * @return false en fin de flux
      */
-    private void handleCommand(String command, PrintWriter writer) {
-        String[] parts = command.split(":", 2);
-        String cmd = parts[0].toUpperCase();
-
-        switch (cmd) {
-            case "PING":
-                writer.println("OK:PONG");
-                break;
-
-            case "STATS":
-                writer.println("OK:STATS:" + getClientStats());
-                break;
-
-            case "BUFFER_STATS":
-                writer.println("OK:BUFFER_STATS:" + buffer.getStats());
-                break;
-
-            case "DISCONNECT":
-                writer.println("OK:DISCONNECTING");
-                running = false;
-                break;
-
-            case "HELP":
-                writer.println("OK:COMMANDS:PING,STATS,BUFFER_STATS,DISCONNECT,HELP");
-                break;
-
-            default:
-                writer.println("ERROR:UNKNOWN_COMMAND:" + cmd);
+    private boolean fill() throws IOException {
+        if (readPosition > 0) {
+            System.arraycopy(readBuffer, readPosition, readBuffer, 0, readLimit - readPosition);
+            readLimit -= readPosition;
+            readPosition = 0;
+        }
+        if (readLimit == readBuffer.length) {
+            byte[] larger = new byte[readBuffer.length * 2];
+            System.arraycopy(readBuffer, 0, larger, 0, readLimit);
+            readBuffer = larger;
         }
+        int read = input.read(readBuffer, readLimit, readBuffer.length - readLimit);
+        if (read < 0) {
+            return false;
+        }
+        readLimit += read;
+        return true;
     }
 
     /**
-     * Statistiques du client
+     * Dépose une réponse dans la file sortante (appel depuis tout thread)
      */
-    private String getClientStats() {
-        long uptime = System.currentTimeMillis() - connectTime;
-        double rate = uptime > 0 ? (double) messagesReceived.get() / (uptime / 1000.0) : 0;
+    private void send(String line) {
+        if (outputFailed) {
+            return;
+        }
+        if (Thread.currentThread() == connectionThread) {
+            try {
+                outbound.put(line);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (!outbound.offer(line) && session.isRunning()) {
+            System.err.println("Client " + session.getClientId() + " ne lit pas ses réponses: déconnexion");
+            session.stop();
+            closeSocket();
+        }
+    }
 
-        return String.format(
-                "Messages:%d,Rejected:%d,Rate:%.2f/s,Uptime:%ds",
-                messagesReceived.get(), messagesRejected.get(), rate, uptime / 1000);
+    /**
+     * Thread d'écriture: vide la file sortante sur le socket, flush quand
+     * la file est vide; se termine à la déconnexion une fois la file vidée
+     */
+    private void writeResponses(Writer out) {
+        try {
+            while (true) {
+                String line = outbound.poll(WRITER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (line == null) {
+                    if (closing) {
+                        return;
+                    }
+                    continue;
+                }
+                out.write(line);
+                out.write('\n');
+                if (outbound.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            if (session.isRunning()) {
+                System.err.println("Erreur écriture " + session.getClientId() + ": " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Sortie fermée: les réponses suivantes sont abandonnées, le thread
+        // de la connexion n'attend plus une file que personne ne vide
+        outputFailed = true;
+        outbound.clear();
+        session.stop();
+        closeSocket();
     }
 
     private void cleanup() {
-        running = false;
+        closing = true;
+        if (writerThread != null) {
+            try {
+                writerThread.join(WRITER_DRAIN_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeSocket();
+        session.onDisconnect();
+    }
+
+    private void closeSocket() {
         try {
             if (!clientSocket.isClosed()) {
                 clientSocket.close();
@@ -184,30 +277,29 @@ public class ClientHandler implements Runnable {
         } catch (IOException e) {
             System.err.println("Erreur fermeture socket: " + e.getMessage());
         }
-
-        long duration = System.currentTimeMillis() - connectTime;
-        System.out.println(String.format(
-                "Client déconnecté: %s - Durée: %ds, Messages: %d, Rejetés: %d",
-                clientId, duration / 1000, messagesReceived.get(), messagesRejected.get()));
     }
 
     public void stop() {
-        running = false;
+        session.stop();
+    }
+
+    public ClientSession getSession() {
+        return session;
     }
 
     public String getClientId() {
-        return clientId;
+        return session.getClientId();
     }
 
     public long getMessagesReceived() {
-        return messagesReceived.get();
+        return session.getMessagesReceived();
     }
 
     public long getMessagesRejected() {
-        return messagesRejected.get();
+        return session.getMessagesRejected();
     }
 
     public long getUptime() {
-        return System.currentTimeMillis() - connectTime;
+        return session.getUptime();
     }
-}
\ No newline at end of file
+}
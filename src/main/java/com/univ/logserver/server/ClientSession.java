@@ -0,0 +1,487 @@
+package com.univ.logserver.server;
+
+import com.univ.logserver.buffer.LogBuffer;
+import com.univ.logserver.model.LogEntry;
+import com.univ.logserver.model.Metadata;
+import com.univ.logserver.processor.BinaryLogCodec;
+import com.univ.logserver.processor.LogParser;
+import com.univ.logserver.storage.WriteAheadLog;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * État protocolaire d'une connexion client (OK:/ERROR:/CMD:)
+ * Partagé par le mode bloquant (ClientHandler) et le mode NIO (NioEventLoop)
+ *
+ * Mode d'acquittement négocié par CMD:ACK:<mode>
+ * - EACH (défaut): OK:QUEUED:<id> ou ERROR:... pour chaque ligne
+ * - NONE: aucun acquittement, seuls les rejets sont signalés
+ * - EVERY:<n>: OK:ACK:<seq>:<acceptés>:<rejetés> toutes les n lignes
+ * - INTERVAL:<ms>: même acquittement cumulatif au plus toutes les ms
+ * - DURABLE: OK:DURABLE:<id> pour chaque ligne, une fois l'entrée écrite
+ *   et forcée sur disque par le journal (WAL activé uniquement)
+ * Hors modes EACH et DURABLE, chaque rejet est signalé par ERROR:REJECTED:<seq>:<raison>;
+ * <seq> est le numéro (à partir de 1) de la ligne de log sur la connexion.
+ *
+ * CMD:PROTO:BINARY bascule l'entrée en trames binaires (BinaryLogCodec);
+ * une trame LOG est numérotée et acquittée comme une ligne de log.
+ */
+public class ClientSession {
+
+    /**
+     * Destination des réponses envoyées au client (une ligne par appel)
+     * Doit accepter des appels depuis d'autres threads (commit du journal,
+     * acquittements périodiques) sans bloquer: la réponse est déposée dans la
+     * file sortante de la connexion, aucune écriture réseau sur ces threads
+     */
+    @FunctionalInterface
+    public interface ResponseSink {
+        void send(String line);
+    }
+
+    /**
+     * Modes d'acquittement négociables
+     */
+    public enum AckMode { EACH, NONE, EVERY, INTERVAL, DURABLE }
+
+    private final String clientId;
+    private final String clientAddress;
+    private final LogBuffer buffer;
+    private final WriteAheadLog wal;             // null: pas de journal
+    private final Metadata connectionMetadata;   // Partagé par toutes les entrées de la connexion
+    private final AtomicLong messagesReceived = new AtomicLong(0);
+    private final AtomicLong messagesRejected = new AtomicLong(0);
+    private volatile boolean running = true;
+    private final long connectTime = System.currentTimeMillis();
+    private volatile ResponseSink sink = line -> { };
+
+    // Acquittements
+    private volatile AckMode ackMode = AckMode.EACH;
+    private volatile long ackParameter = 0;
+    private long nextSequence = 0;                              // Thread de la connexion uniquement
+    private long acceptedCount = 0;                             // Thread de la connexion uniquement
+    private long rejectedCount = 0;                             // Thread de la connexion uniquement
+    // Progression publiée après chaque ligne, sans allocation: le tick (autre
+    // thread) lit numéro et comptes cohérents (acceptés + rejetés = numéro)
+    // par lecture optimiste de progressLock
+    private final StampedLock progressLock = new StampedLock();
+    private volatile long publishedSequence = 0;
+    private long publishedAccepted = 0;
+    private long publishedRejected = 0;
+    // Ordre des acquittements cumulatifs entre la connexion et le tick
+    private final ReentrantLock ackLock = new ReentrantLock();
+    private final AtomicLong lastAckedSequence = new AtomicLong(0);
+    private volatile long lastAckTime = System.currentTimeMillis();
+
+    // Protocole d'entrée (texte par défaut)
+    private volatile boolean binaryProtocol = false;
+    private final BinaryLogCodec.Decoder decoder = new BinaryLogCodec.Decoder();
+
+    public ClientSession(String clientId, String clientAddress, LogBuffer buffer) {
+        this(clientId, clientAddress, buffer, null);
+    }
+
+    public ClientSession(String clientId, String clientAddress, LogBuffer buffer, WriteAheadLog wal) {
+        this.clientId = clientId;
+        this.clientAddress = clientAddress;
+        this.buffer = buffer;
+        this.wal = wal;
+        this.connectionMetadata = new Metadata(2);
+        connectionMetadata.put("client_ip", clientAddress);
+        connectionMetadata.put("client_id", clientId);
+        connectionMetadata.freeze();
+    }
+
+    /**
+     * Message de bienvenue envoyé à l'ouverture de la connexion
+     */
+    public void onConnect(ResponseSink sink) {
+        this.sink = sink;
+        System.out.println("Client connecté: " + clientId);
+        sink.send("OK:CONNECTED:" + clientId);
+    }
+
+    /**
+     * Traite une ligne reçue, en isolant les erreurs de traitement
+     */
+    public void onLine(String line) {
+        try {
+            processMessage(line);
+        } catch (Exception e) {
+            System.err.println("Erreur traitement message " + clientId + ": " + e.getMessage());
+            sink.send("ERROR:PROCESSING_FAILED:" + e.getMessage());
+        }
+    }
+
+    /**
+     * Traite un message reçu du client
+     */
+    private void processMessage(String message) {
+        // Commandes spéciales (hors numérotation des lignes de log)
+        if (message != null && message.startsWith("CMD:")) {
+            messagesReceived.incrementAndGet();
+            handleCommand(message.substring(4));
+            return;
+        }
+
+        long sequence = ++nextSequence;
+        try {
+            processLogLine(message, sequence);
+        } catch (RuntimeException e) {
+            System.err.println("Erreur traitement message " + clientId + ": " + e.getMessage());
+            if (acceptedCount + rejectedCount < sequence) { // Pas déjà comptée (acceptée puis erreur de réponse)
+                reject(sequence, "PROCESSING_FAILED:" + e.getMessage());
+            }
+        } finally {
+            publishProgress(sequence);
+        }
+        acknowledgeIfDue(System.currentTimeMillis());
+    }
+
+    private void processLogLine(String message, long sequence) {
+        if (message == null || message.trim().isEmpty()) {
+            reject(sequence, "EMPTY_MESSAGE");
+            return;
+        }
+
+        messagesReceived.incrementAndGet();
+
+        // Validation du message
+        if (!LogParser.isValidLogMessage(message)) {
+            messagesRejected.incrementAndGet();
+            reject(sequence, "INVALID_MESSAGE_FORMAT");
+            return;
+        }
+
+        // Parser le message en LogEntry
+        LogEntry logEntry = LogParser.parseLogMessage(message);
+        if (logEntry == null) {
+            messagesRejected.incrementAndGet();
+            reject(sequence, "PARSE_FAILED");
+            return;
+        }
+
+        accept(logEntry, sequence);
+    }
+
+    /**
+     * Traite une trame binaire complète (sans son préfixe de longueur)
+     */
+    public void onFrame(ByteBuffer frame) {
+        int frameLength = frame.remaining();
+        byte type;
+        try {
+            type = frame.get();
+            if (type == BinaryLogCodec.FRAME_DEFINE) {
+                decoder.define(frame);
+                return;
+            }
+            if (type == BinaryLogCodec.FRAME_COMMAND) {
+                messagesReceived.incrementAndGet();
+                handleCommand(BinaryLogCodec.readString(frame));
+                return;
+            }
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            sink.send("ERROR:INVALID_FRAME:" + e.getMessage());
+            return;
+        }
+        if (type != BinaryLogCodec.FRAME_LOG) {
+            sink.send("ERROR:INVALID_FRAME:TYPE_" + type);
+            return;
+        }
+
+        long sequence = ++nextSequence;
+        try {
+            messagesReceived.incrementAndGet();
+            accept(decoder.decodeLog(frame, frameLength), sequence);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            messagesRejected.incrementAndGet();
+            reject(sequence, "INVALID_FRAME");
+        } catch (RuntimeException e) {
+            System.err.println("Erreur traitement trame " + clientId + ": " + e.getMessage());
+            if (acceptedCount + rejectedCount < sequence) { // Pas déjà comptée (acceptée puis erreur de réponse)
+                reject(sequence, "PROCESSING_FAILED:" + e.getMessage());
+            }
+        } finally {
+            publishProgress(sequence);
+        }
+        acknowledgeIfDue(System.currentTimeMillis());
+    }
+
+    /**
+     * Enrichit une entrée décodée (texte ou binaire), la journalise (WAL)
+     * puis la place dans le buffer
+     */
+    private void accept(LogEntry logEntry, long sequence) {
+        // Enrichir avec infos client (partagées par référence)
+        LogParser.enrichLogEntry(logEntry, connectionMetadata);
+
+        // Journaliser avant le buffer: une entrée acceptée survit à un arrêt brutal
+        long walSequence = wal != null ? wal.append(logEntry) : 0;
+
+        // Ajouter au buffer
+        boolean added = buffer.add(logEntry);
+        if (added) {
+            acceptedCount++;
+            if (ackMode == AckMode.EACH) {
+                sink.send("OK:QUEUED:" + logEntry.getId());
+            } else if (ackMode == AckMode.DURABLE) {
+                // Réponse déposée par le thread de commit du journal dans la file sortante
+                String id = logEntry.getId();
+                wal.whenDurable(walSequence, durable ->
+                        sink.send(durable ? "OK:DURABLE:" + id : "ERROR:WAL_FAILED:" + id));
+            }
+
+            // Stats périodiques
+            if (messagesReceived.get() % 1000 == 0) {
+                System.out.println(String.format(
+                        "Client %s - Messages: %d, Rejetés: %d",
+                        clientId, messagesReceived.get(), messagesRejected.get()));
+            }
+        } else {
+            if (wal != null) {
+                wal.markStored(logEntry); // Rejetée: ne pas retenir son segment
+            }
+            messagesRejected.incrementAndGet();
+            reject(sequence, "BUFFER_FULL:BACKPRESSURE_ACTIVE");
+        }
+    }
+
+    /**
+     * Signale un rejet: immédiat dans tous les modes, avec numéro de ligne hors mode EACH
+     */
+    private void reject(long sequence, String reason) {
+        rejectedCount++;
+        if (ackMode == AckMode.EACH || ackMode == AckMode.DURABLE) {
+            sink.send("ERROR:" + reason);
+        } else {
+            sink.send("ERROR:REJECTED:" + sequence + ":" + reason);
+        }
+    }
+
+    /**
+     * Publie numéro et comptes pour le tick (thread de la connexion)
+     */
+    private void publishProgress(long sequence) {
+        long stamp = progressLock.writeLock();
+        publishedSequence = sequence;
+        publishedAccepted = acceptedCount;
+        publishedRejected = rejectedCount;
+        progressLock.unlockWrite(stamp);
+    }
+
+    /**
+     * Envoie l'acquittement cumulatif si le mode négocié l'exige
+     */
+    private void acknowledgeIfDue(long now) {
+        long pending = publishedSequence - lastAckedSequence.get();
+        if (pending <= 0) {
+            return;
+        }
+        if ((ackMode == AckMode.EVERY && pending >= ackParameter)
+                || (ackMode == AckMode.INTERVAL && now - lastAckTime >= ackParameter)) {
+            sendCumulativeAck(now);
+        }
+    }
+
+    /**
+     * Tick périodique (thread du serveur) pour le mode INTERVAL
+     */
+    public void tick(long now) {
+        if (ackMode == AckMode.INTERVAL && running && publishedSequence > lastAckedSequence.get()
+                && now - lastAckTime >= ackParameter && ackLock.tryLock()) {
+            // Verrou occupé: la connexion acquitte elle-même, le tick passe
+            try {
+                sendCumulativeAck(now);
+            } finally {
+                ackLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * OK:ACK:<seq>:<acceptés>:<rejetés> - toutes les lignes jusqu'à seq sont traitées
+     * (envoyé au plus une fois par numéro; le client retient le plus grand)
+     * Le verrou couvre lecture et dépôt de la réponse: connexion et tick ne
+     * déposent pas un numéro plus ancien après un plus récent; le sink ne
+     * fait que mettre la ligne en file (pas d'écriture réseau sous verrou)
+     */
+    private void sendCumulativeAck(long now) {
+        if (ackMode == AckMode.EACH || ackMode == AckMode.DURABLE) {
+            return; // Chaque ligne a déjà sa réponse
+        }
+        ackLock.lock();
+        try {
+            long stamp = progressLock.tryOptimisticRead();
+            long sequence = publishedSequence;
+            long accepted = publishedAccepted;
+            long rejected = publishedRejected;
+            if (!progressLock.validate(stamp)) {
+                stamp = progressLock.readLock();
+                sequence = publishedSequence;
+                accepted = publishedAccepted;
+                rejected = publishedRejected;
+                progressLock.unlockRead(stamp);
+            }
+            if (sequence > lastAckedSequence.get()) {
+                lastAckedSequence.set(sequence);
+                lastAckTime = now;
+                sink.send("OK:ACK:" + sequence + ":" + accepted + ":" + rejected);
+            }
+        } finally {
+            ackLock.unlock();
+        }
+    }
+
+    /**
+     * Traite les commandes spéciales du client
+     */
+    private void handleCommand(String command) {
+        String[] parts = command.split(":", 2);
+        String cmd = parts[0].toUpperCase();
+
+        switch (cmd) {
+            case "PING":
+                sink.send("OK:PONG");
+                break;
+
+            case "STATS":
+                sink.send("OK:STATS:" + getClientStats());
+                break;
+
+            case "BUFFER_STATS":
+                sink.send("OK:BUFFER_STATS:" + buffer.getStats());
+                break;
+
+            case "ACK":
+                negotiateAckMode(parts.length > 1 ? parts[1] : "");
+                break;
+
+            case "PROTO":
+                switchProtocol(parts.length > 1 ? parts[1].trim().toUpperCase() : "");
+                break;
+
+            case "SYNC":
+                sendCumulativeAck(System.currentTimeMillis());
+                sink.send("OK:SYNC:" + nextSequence + ":" + acceptedCount + ":" + rejectedCount);
+                break;
+
+            case "DISCONNECT":
+                sendCumulativeAck(System.currentTimeMillis());
+                sink.send("OK:DISCONNECTING");
+                running = false;
+                break;
+
+            case "HELP":
+                sink.send("OK:COMMANDS:PING,STATS,BUFFER_STATS,ACK,PROTO,SYNC,DISCONNECT,HELP");
+                break;
+
+            default:
+                sink.send("ERROR:UNKNOWN_COMMAND:" + cmd);
+        }
+    }
+
+    /**
+     * CMD:ACK:EACH | NONE | EVERY:<n> | INTERVAL:<ms> | DURABLE
+     */
+    private void negotiateAckMode(String argument) {
+        String[] parts = argument.split(":", 2);
+        try {
+            AckMode mode = AckMode.valueOf(parts[0].trim().toUpperCase());
+            long parameter = 0;
+            if (mode == AckMode.EVERY || mode == AckMode.INTERVAL) {
+                parameter = Long.parseLong(parts.length > 1 ? parts[1].trim() : "");
+                if (parameter <= 0) {
+                    throw new IllegalArgumentException("Paramètre d'acquittement invalide: " + parameter);
+                }
+            }
+            if (mode == AckMode.DURABLE && wal == null) {
+                sink.send("ERROR:WAL_DISABLED");
+                return;
+            }
+            // Acquitter ce qui précède avant de changer de mode
+            sendCumulativeAck(System.currentTimeMillis());
+            ackParameter = parameter;
+            ackMode = mode;
+            sink.send("OK:ACK_MODE:" + mode + (parameter > 0 ? ":" + parameter : ""));
+        } catch (IllegalArgumentException e) {
+            sink.send("ERROR:INVALID_ACK_MODE:" + argument);
+        }
+    }
+
+    /**
+     * CMD:PROTO:BINARY | TEXT - la réponse est envoyée avant la première trame du nouveau protocole
+     */
+    private void switchProtocol(String protocol) {
+        if (protocol.equals("BINARY") || protocol.equals("TEXT")) {
+            binaryProtocol = protocol.equals("BINARY");
+            sink.send("OK:PROTO:" + protocol);
+        } else {
+            sink.send("ERROR:UNKNOWN_PROTOCOL:" + protocol);
+        }
+    }
+
+    /**
+     * Statistiques du client
+     */
+    private String getClientStats() {
+        long uptime = System.currentTimeMillis() - connectTime;
+        double rate = uptime > 0 ? (double) messagesReceived.get() / (uptime / 1000.0) : 0;
+
+        return String.format(
+                "Messages:%d,Rejected:%d,Rate:%.2f/s,Uptime:%ds,AckMode:%s,Protocol:%s",
+                messagesReceived.get(), messagesRejected.get(), rate, uptime / 1000, ackMode,
+                binaryProtocol ? "BINARY" : "TEXT");
+    }
+
+    /**
+     * Trace de fin de session
+     */
+    public void onDisconnect() {
+        running = false;
+        long duration = System.currentTimeMillis() - connectTime;
+        System.out.println(String.format(
+                "Client déconnecté: %s - Durée: %ds, Messages: %d, Rejetés: %d",
+                clientId, duration / 1000, messagesReceived.get(), messagesRejected.get()));
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getClientAddress() {
+        return clientAddress;
+    }
+
+    public boolean isBinaryProtocol() {
+        return binaryProtocol;
+    }
+
+    public AckMode getAckMode() {
+        return ackMode;
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived.get();
+    }
+
+    public long getMessagesRejected() {
+        return messagesRejected.get();
+    }
+
+    public long getUptime() {
+        return System.currentTimeMillis() - connectTime;
+    }
+}
@@ -1,60 +1,101 @@
 package com.univ.logserver.server;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import com.univ.logserver.buffer.CircularBuffer;
+import com.univ.logserver.buffer.LockFreeRingBuffer;
+import com.univ.logserver.buffer.LogBuffer;
+import com.univ.logserver.buffer.ShardedLogBuffer;
+import com.univ.logserver.buffer.SpillFile;
 import com.univ.logserver.config.ServerConfig;
+import com.univ.logserver.model.LogEntry;
+import com.univ.logserver.model.TimeOrderedIdGenerator;
+import com.univ.logserver.processor.KeywordClassifier;
 import com.univ.logserver.processor.LogProcessor;
+import com.univ.logserver.storage.BlockCodec;
+import com.univ.logserver.storage.DurabilityPolicy;
 import com.univ.logserver.storage.FileLogStorage;
 import com.univ.logserver.storage.LogStorage;
+import com.univ.logserver.storage.WriteAheadLog;
 
 /**
  * Serveur principal de logs centralisé
  * Gère les connexions clients et coordonne le traitement des logs
  */
 public class LogServer {
+    private static final long ACK_TICK_MS = 10;
+    private static final long REPLAY_ADD_TIMEOUT_MS = 10_000; // Attente de place par entrée rejouée
+    
     private final ServerConfig config;
-    private final CircularBuffer buffer;
+    private final LogBuffer buffer;
     private final LogStorage storage;
+    private final WriteAheadLog wal; // null: journal désactivé
     private final ExecutorService clientExecutor;
     private final ExecutorService processorExecutor;
     private final ScheduledExecutorService statsExecutor;
     
     private ServerSocket serverSocket;
+    private ServerSocketChannel serverChannel;
+    private NioEventLoop[] eventLoops;
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final AtomicInteger clientCount = new AtomicInteger(0);
-    private final ConcurrentHashMap<String, ClientHandler> clients = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ClientSession> clients = new ConcurrentHashMap<>();
     
     private LogProcessor[] processors;
     private final long startTime = System.currentTimeMillis();
     
     public LogServer() {
         this.config = ServerConfig.getInstance();
-        this.buffer = new CircularBuffer(config.getBufferSize());
-        this.storage = new FileLogStorage(config.getStorageType());
+        LogEntry.setIdGenerator(new TimeOrderedIdGenerator(config.getNodeId()));
+        this.wal = openWriteAheadLog(config);
+        // Entrées évincées par le back-pressure: plus à stocker, segment WAL libéré
+        this.buffer = createBuffer(config, wal != null ? wal::markStored : null);
+        this.storage = new FileLogStorage(config.getStorageType(), parseDurability(config),
+                                          config.getStorageSegmentMaxBytes(), config.getStorageSegmentMaxAgeSeconds(),
+                                          parseCompression(config), config.getStorageBlockBytes(),
+                                          config.getStorageIndexInterval(), config.isStorageSearchIndex(),
+                                          parseBloomKeys(config), config.getStorageReadMappedSegments());
         
-        // Pool threads pour clients
-        this.clientExecutor = Executors.newCachedThreadPool(r -> {
-            Thread t = new Thread(r, "LogServer-Client-" + clientCount.incrementAndGet());
-            t.setDaemon(true);
-            return t;
-        });
-        
-        // Pool threads pour processeurs
-        this.processorExecutor = Executors.newFixedThreadPool(
-            config.getThreadPoolSize(),
-            r -> {
-                Thread t = new Thread(r, "LogServer-Processor-" + Math.random());
+        if (config.isVirtualThreads()) {
+            // Un thread virtuel par client et par processeur: les attentes
+            // (socket, Condition du buffer) libèrent le thread porteur
+            this.clientExecutor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("LogServer-Client-", 1).factory());
+            this.processorExecutor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("LogServer-Processor-", 0).factory());
+        } else {
+            // Pool threads pour clients
+            this.clientExecutor = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "LogServer-Client-" + clientCount.incrementAndGet());
                 t.setDaemon(true);
                 return t;
-            }
-        );
+            });
+            
+            // Pool threads pour processeurs
+            this.processorExecutor = Executors.newFixedThreadPool(
+                config.getThreadPoolSize(),
+                r -> {
+                    Thread t = new Thread(r, "LogServer-Processor-" + Math.random());
+                    t.setDaemon(true);
+                    return t;
+                }
+            );
+        }
         
         // Thread pour statistiques
         this.statsExecutor = Executors.newScheduledThreadPool(1, r -> {
@@ -66,6 +107,112 @@ public class LogServer {
         System.out.println("Serveur initialisé - Port: " + config.getPort());
     }
     
+    /**
+     * Politique storage.durability; invalide: none
+     */
+    private static DurabilityPolicy parseDurability(ServerConfig config) {
+        try {
+            return DurabilityPolicy.parse(config.getStorageDurability());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ", utilisation de none");
+            return DurabilityPolicy.NONE;
+        }
+    }
+    
+    /**
+     * Codec storage.compression (null: segments texte); invalide: segments texte
+     */
+    private static String parseCompression(ServerConfig config) {
+        if (!config.isStorageCompressed()) {
+            return null;
+        }
+        try {
+            return BlockCodec.name(config.getStorageCompression());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ", segments non compressés");
+            return null;
+        }
+    }
+    
+    /**
+     * Clés storage.bloom.keys séparées par des virgules (vide: pas de filtre de Bloom)
+     */
+    private static List<String> parseBloomKeys(ServerConfig config) {
+        List<String> keys = new ArrayList<>();
+        for (String key : config.getStorageBloomKeys().split(",")) {
+            if (!key.trim().isEmpty()) {
+                keys.add(key.trim());
+            }
+        }
+        return keys;
+    }
+    
+    /**
+     * Journal d'écriture anticipée (wal.enabled); en cas d'erreur le serveur démarre sans
+     */
+    private static WriteAheadLog openWriteAheadLog(ServerConfig config) {
+        if (!config.isWalEnabled()) {
+            return null;
+        }
+        try {
+            return new WriteAheadLog(config.getWalDirectory(), config.getWalGroupCommitMs(),
+                                     config.getWalGroupCommitBytes(), config.getWalSegmentBytes());
+        } catch (IOException e) {
+            System.err.println("WAL désactivé (" + config.getWalDirectory() + "): " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Choisit l'implémentation du buffer selon buffer.type et buffer.shards
+     * (buffer.shards=0: un shard par processeur)
+     * @param evictionListener reçoit les entrées évincées (peut être null)
+     */
+    private static LogBuffer createBuffer(ServerConfig config, Consumer<LogEntry> evictionListener) {
+        String spillDirectory = config.getBufferSpillDirectory();
+        if ("lockfree".equalsIgnoreCase(config.getBufferType()) && spillDirectory != null && !spillDirectory.isEmpty()) {
+            System.err.println("buffer.spill.directory ignoré: le débordement disque nécessite buffer.type=circular");
+        }
+        int shards = config.getBufferShards() == 0 ? config.getThreadPoolSize() : config.getBufferShards();
+        if (shards > 1) {
+            int capacityPerShard = Math.max(1, config.getBufferSize() / shards);
+            long maxBytesPerShard = config.getBufferMaxBytes() / shards;
+            long spillBytesPerShard = config.getBufferSpillMaxBytes() / shards;
+            AtomicInteger shardIndex = new AtomicInteger(0);
+            return new ShardedLogBuffer(shards, capacityPerShard, capacity ->
+                    createShard(config, capacity, maxBytesPerShard, shardIndex.getAndIncrement(), spillBytesPerShard,
+                                evictionListener));
+        }
+        return createShard(config, config.getBufferSize(), config.getBufferMaxBytes(), 0, config.getBufferSpillMaxBytes(),
+                           evictionListener);
+    }
+    
+    private static LogBuffer createShard(ServerConfig config, int capacity, long maxBytes, int shardIndex, long spillBytes,
+                                         Consumer<LogEntry> evictionListener) {
+        if ("lockfree".equalsIgnoreCase(config.getBufferType())) {
+            return new LockFreeRingBuffer(capacity, maxBytes, evictionListener);
+        }
+        return new CircularBuffer(capacity, maxBytes, openSpill(config, shardIndex, spillBytes), evictionListener);
+    }
+    
+    /**
+     * Fichier de débordement d'un shard (buffer.spill.directory vide: désactivé)
+     * En cas d'erreur, le buffer fonctionne sans débordement
+     */
+    private static SpillFile openSpill(ServerConfig config, int shardIndex, long spillBytes) {
+        String directory = config.getBufferSpillDirectory();
+        if (directory == null || directory.isEmpty()) {
+            return null;
+        }
+        Path path = Paths.get(directory, "spill-" + shardIndex + ".dat");
+        try {
+            return new SpillFile(path, spillBytes);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Débordement disque désactivé (" + path + "): " + e.getMessage());
+            return null;
+        }
+    }
+    
     /**
      * Démarre le serveur
      */
@@ -74,23 +221,46 @@ public class LogServer {
             throw new IllegalStateException("Serveur déjà en cours");
         }
         
-        serverSocket = new ServerSocket(config.getPort());
-        serverSocket.setSoTimeout(5000); // Timeout pour accept()
+        if (config.isNioIngestion()) {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(config.getPort()));
+        } else {
+            serverSocket = new ServerSocket(config.getPort());
+            serverSocket.setSoTimeout(5000); // Timeout pour accept()
+        }
         running.set(true);
         
         // Démarrer processeurs et stats
         startProcessors();
+        replayWriteAheadLog();
         startStatsReporting();
+        startAckTicker();
         
         System.out.println("=== SERVEUR DE LOGS CENTRALISÉ DÉMARRÉ ===");
         System.out.println("Port: " + config.getPort());
         System.out.println("Clients max: " + config.getBufferSize());
-        System.out.println("Buffer: " + config.getBufferSize());
+        System.out.println("Buffer: " + config.getBufferSize() + " (" + config.getBufferType() + ")");
         System.out.println("Processeurs: " + config.getThreadPoolSize());
         System.out.println("Stockage: " + config.getStorageType());
+        System.out.println("WAL: " + (wal != null ? config.getWalDirectory()
+                + " (commit " + config.getWalGroupCommitMs() + "ms / " + config.getWalGroupCommitBytes() + " octets)" : "désactivé"));
+        System.out.println("Ingestion: " + config.getIngestionMode()
+                + (config.isVirtualThreads() ? " (threads virtuels)" : ""));
         System.out.println("==========================================");
         
-        // Boucle principale d'acceptation
+        if (config.isNioIngestion()) {
+            acceptNio();
+        } else {
+            acceptBlocking();
+        }
+        
+        System.out.println("Serveur arrêté");
+    }
+    
+    /**
+     * Mode bloquant: un thread par client
+     */
+    private void acceptBlocking() {
         while (running.get()) {
             try {
                 Socket clientSocket = serverSocket.accept();
@@ -104,8 +274,8 @@ public class LogServer {
                 }
                 
                 // Créer gestionnaire client
-                ClientHandler clientHandler = new ClientHandler(clientSocket, buffer);
-                clients.put(clientHandler.getClientId(), clientHandler);
+                ClientHandler clientHandler = new ClientHandler(clientSocket, buffer, wal);
+                clients.put(clientHandler.getClientId(), clientHandler.getSession());
                 
                 // Traiter dans thread séparé
                 clientExecutor.submit(() -> {
@@ -125,8 +295,42 @@ public class LogServer {
                 }
             }
         }
+    }
+    
+    /**
+     * Mode NIO: l'acceptation reste sur ce thread, les connexions sont
+     * réparties en round-robin sur un petit nombre de boucles Selector
+     */
+    private void acceptNio() throws IOException {
+        int loopCount = Math.max(1, config.getNioEventLoops());
+        eventLoops = new NioEventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            eventLoops[i] = new NioEventLoop("LogServer-NIO-" + i, buffer, clients, wal);
+            eventLoops[i].start();
+        }
         
-        System.out.println("Serveur arrêté");
+        int next = 0;
+        while (running.get()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                
+                // Vérifier limite clients
+                if (clients.size() >= config.getBufferSize()) {
+                    System.err.println("Limite clients atteinte: " + channel.getRemoteAddress());
+                    channel.close();
+                    continue;
+                }
+                
+                channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                eventLoops[next].register(channel);
+                next = (next + 1) % loopCount;
+                
+            } catch (IOException e) {
+                if (running.get()) {
+                    System.err.println("Erreur acceptation client: " + e.getMessage());
+                }
+            }
+        }
     }
     
     private void startProcessors() {
@@ -134,14 +338,69 @@ public class LogServer {
         processors = new LogProcessor[processorCount];
         
         int batchSize = Math.max(10, config.getBufferSize() / (processorCount * 10));
+        // Automate compilé une fois, partagé (lecture seule) par les processeurs
+        KeywordClassifier components = KeywordClassifier.parse(config.getComponentRules(), null);
         
         for (int i = 0; i < processorCount; i++) {
-            processors[i] = new LogProcessor(buffer, storage, batchSize);
+            // En mode partitionné, chaque processeur possède son shard
+            LogBuffer source = buffer instanceof ShardedLogBuffer
+                ? ((ShardedLogBuffer) buffer).consumer(i)
+                : buffer;
+            processors[i] = new LogProcessor(source, storage, batchSize, components, wal);
             processorExecutor.submit(processors[i]);
             System.out.println("Processeur " + i + " démarré (batch=" + batchSize + ")");
         }
     }
     
+    /**
+     * Rejoue les entrées journalisées mais non stockées avant l'arrêt précédent
+     * (processeurs démarrés: le buffer se vide pendant le replay)
+     */
+    private void replayWriteAheadLog() {
+        if (wal == null) {
+            return;
+        }
+        try {
+            long replayed = wal.replay(entry -> {
+                wal.append(entry);
+                boolean added;
+                try {
+                    // Attente que les processeurs libèrent de la place, puis back-pressure
+                    added = buffer.add(entry, REPLAY_ADD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    added = false;
+                }
+                if (!added) {
+                    wal.markStored(entry);
+                }
+            });
+            if (replayed > 0) {
+                System.out.println("WAL: " + replayed + " entrées rejouées");
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur replay WAL: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Acquittements cumulatifs des sessions en mode INTERVAL
+     */
+    private void startAckTicker() {
+        statsExecutor.scheduleAtFixedRate(() -> {
+            long now = System.currentTimeMillis();
+            for (ClientSession client : clients.values()) {
+                try {
+                    client.tick(now);
+                } catch (Exception e) {
+                    System.err.println("Erreur acquittement " + client.getClientId() + ": " + e.getMessage());
+                }
+            }
+        }, ACK_TICK_MS, ACK_TICK_MS, TimeUnit.MILLISECONDS);
+    }
+    
     private void startStatsReporting() {
         statsExecutor.scheduleAtFixedRate(() -> {
             try {
@@ -150,6 +409,9 @@ public class LogServer {
                 System.out.println("Clients: " + clients.size());
                 System.out.println(buffer.getStats());
                 System.out.println(storage.getStorageStats());
+                if (wal != null) {
+                    System.out.println(wal.getStats());
+                }
                 
                 // Stats processeurs
                 long totalProcessed = 0;
@@ -162,7 +424,7 @@ public class LogServer {
                 
                 // Stats clients
                 long totalReceived = 0, totalRejected = 0;
-                for (ClientHandler client : clients.values()) {
+                for (ClientSession client : clients.values()) {
                     totalReceived += client.getMessagesReceived();
                     totalRejected += client.getMessagesRejected();
                 }
@@ -189,12 +451,20 @@ public class LogServer {
             if (serverSocket != null) {
                 serverSocket.close();
             }
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
             
             // Arrêter clients
             System.out.println("Fermeture clients (" + clients.size() + ")...");
-            for (ClientHandler client : clients.values()) {
+            for (ClientSession client : clients.values()) {
                 client.stop();
             }
+            if (eventLoops != null) {
+                for (NioEventLoop loop : eventLoops) {
+                    loop.stop();
+                }
+            }
             
             // Arrêter processeurs
             System.out.println("Arrêt processeurs...");
@@ -209,8 +479,12 @@ public class LogServer {
             shutdownExecutor(processorExecutor, "Processor", 30);
             shutdownExecutor(statsExecutor, "Stats", 5);
             
-            // Fermer stockage
+            // Fermer stockage, journal et débordement
             storage.close();
+            if (wal != null) {
+                wal.close();
+            }
+            buffer.close();
             
             System.out.println("=== SERVEUR ARRÊTÉ ===");
             System.out.println("Durée: " + getUptimeString());
@@ -256,6 +530,6 @@ public class LogServer {
     // Getters pour tests et monitoring
     public boolean isRunning() { return running.get(); }
     public int getClientCount() { return clients.size(); }
-    public CircularBuffer getBuffer() { return buffer; }
+    public LogBuffer getBuffer() { return buffer; }
     public LogStorage getStorage() { return storage; }
 }
\ No newline at end of file
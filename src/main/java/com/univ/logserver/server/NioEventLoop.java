@@ -0,0 +1,432 @@
+package com.univ.logserver.server;
+
+import com.univ.logserver.buffer.LogBuffer;
+import com.univ.logserver.processor.BinaryLogCodec;
+import com.univ.logserver.storage.WriteAheadLog;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Boucle d'événements NIO (un Selector par thread)
+ * Découpe les lignes directement dans les ByteBuffer et alimente le buffer d'ingestion
+ * sans bloquer un thread par connexion
+ */
+public class NioEventLoop implements Runnable {
+    private static final int INITIAL_READ_BUFFER = 8 * 1024;
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+    private static final int INITIAL_WRITE_BUFFER = 4 * 1024;
+    // Réponses en attente: lecture suspendue au-delà, connexion fermée au-delà du maximum
+    private static final int OUTPUT_PAUSE_BYTES = 64 * 1024;
+    private static final int MAX_OUTPUT_BYTES = 1024 * 1024;
+    private static final long IDLE_TIMEOUT_MS = 30000;
+    private static final long SELECT_TIMEOUT_MS = 1000;
+
+    private final String name;
+    private final Selector selector;
+    private final LogBuffer buffer;
+    private final WriteAheadLog wal; // null: pas de journal
+    private final Map<String, ClientSession> clients;
+    private final Queue<SocketChannel> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    private volatile Thread thread;
+    private long lastIdleCheck = System.currentTimeMillis();
+
+    public NioEventLoop(String name, LogBuffer buffer, Map<String, ClientSession> clients) throws IOException {
+        this(name, buffer, clients, null);
+    }
+
+    public NioEventLoop(String name, LogBuffer buffer, Map<String, ClientSession> clients,
+                        WriteAheadLog wal) throws IOException {
+        this.name = name;
+        this.selector = Selector.open();
+        this.buffer = buffer;
+        this.wal = wal;
+        this.clients = clients;
+    }
+
+    public void start() {
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Confie une connexion acceptée à cette boucle (appelable depuis n'importe quel thread)
+     */
+    public void register(SocketChannel channel) {
+        pendingRegistrations.add(channel);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        System.out.println("Boucle NIO démarrée - Thread: " + name);
+
+        while (running) {
+            try {
+                selector.select(SELECT_TIMEOUT_MS);
+                registerPending();
+                flushPendingWrites();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        if (connection.session.isRunning()) {
+                            System.err.println("Erreur connexion " + connection.session.getClientId() + ": " + e.getMessage());
+                        }
+                        connection.close();
+                    }
+                }
+
+                closeIdleConnections();
+
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Erreur boucle NIO " + name + ": " + e.getMessage());
+                }
+            }
+        }
+
+        closeAll();
+        System.out.println("Boucle NIO arrêtée - Thread: " + name);
+    }
+
+    private void registerPending() {
+        SocketChannel channel;
+        while ((channel = pendingRegistrations.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+                String address = remote.getAddress().getHostAddress();
+                String clientId = String.format("%s:%d-%d", address, remote.getPort(), System.currentTimeMillis());
+
+                Connection connection = new Connection(channel, new ClientSession(clientId, address, buffer, wal));
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                clients.put(clientId, connection.session);
+
+                connection.session.onConnect(connection::send);
+                connection.flush();
+            } catch (IOException e) {
+                System.err.println("Erreur enregistrement client NIO: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Déjà fermé
+                }
+            }
+        }
+    }
+
+    /**
+     * Transfère les réponses émises hors de la boucle (acquittements périodiques)
+     */
+    private void flushPendingWrites() {
+        Connection connection;
+        while ((connection = pendingWrites.poll()) != null) {
+            try {
+                connection.drainOutbound();
+                connection.flush();
+            } catch (IOException | CancelledKeyException e) {
+                connection.close();
+            }
+        }
+    }
+
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        if (now - lastIdleCheck < SELECT_TIMEOUT_MS) {
+            return;
+        }
+        lastIdleCheck = now;
+
+        for (SelectionKey key : selector.keys()) {
+            Connection connection = (Connection) key.attachment();
+            if (connection != null && now - connection.lastActivity > IDLE_TIMEOUT_MS) {
+                System.out.println("Timeout client: " + connection.session.getClientId());
+                connection.close();
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            Connection connection = (Connection) key.attachment();
+            if (connection != null) {
+                connection.close();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Erreur fermeture selector: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Arrête la boucle et ferme ses connexions
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        if (thread != null) {
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public int getConnectionCount() {
+        return selector.isOpen() ? selector.keys().size() : 0;
+    }
+
+    /**
+     * Connexion NIO: découpage des lignes en entrée, tampon de réponses en sortie
+     * Un client qui ne lit pas ses réponses n'est plus lu (OP_READ retiré)
+     * tant que sa sortie dépasse OUTPUT_PAUSE_BYTES, et il est déconnecté si
+     * elle dépasse MAX_OUTPUT_BYTES (réponses émises hors lecture).
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final ClientSession session;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+        private ByteBuffer out = ByteBuffer.allocate(INITIAL_WRITE_BUFFER);
+        private final Queue<String> outbound = new ConcurrentLinkedQueue<>();
+        private boolean discardingLine = false;
+        private boolean closed = false;
+        private long lastActivity = System.currentTimeMillis();
+
+        Connection(SocketChannel channel, ClientSession session) {
+            this.channel = channel;
+            this.session = session;
+        }
+
+        void onReadable() throws IOException {
+            int read = channel.read(in);
+            if (read < 0) {
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+
+            in.flip();
+            try {
+                frameInput();
+            } catch (IllegalArgumentException e) {
+                // Préfixe de longueur invalide: le flux n'est plus synchronisable
+                send("ERROR:INVALID_FRAME:" + e.getMessage());
+                session.stop();
+                in.position(in.limit());
+            }
+            in.compact();
+
+            // Ligne ou trame plus longue que le tampon: agrandir ou abandonner la ligne
+            // (une trame de MAX_FRAME_BYTES tient toujours dans le tampon maximal)
+            if (!in.hasRemaining()) {
+                if (in.capacity() < MAX_LINE_BYTES) {
+                    ByteBuffer larger = ByteBuffer.allocate(Math.min(in.capacity() * 2, MAX_LINE_BYTES));
+                    in.flip();
+                    larger.put(in);
+                    in = larger;
+                } else {
+                    in.clear();
+                    discardingLine = true;
+                    send("ERROR:INVALID_MESSAGE_FORMAT");
+                }
+            }
+
+            flush();
+            if (!session.isRunning() && out.position() == 0) {
+                close();
+            }
+        }
+
+        /**
+         * Transmet à la session les lignes puis, après CMD:PROTO:BINARY, les trames complètes
+         */
+        private void frameInput() {
+            while (session.isRunning() && in.hasRemaining()
+                    && (session.isBinaryProtocol() ? frameBinary() : frameLine())) {
+                // Une ligne ou une trame par tour: le protocole peut changer entre deux
+            }
+        }
+
+        /**
+         * Extrait la prochaine ligne terminée par '\n'
+         * @return false si aucune ligne complète n'est disponible
+         */
+        private boolean frameLine() {
+            byte[] array = in.array();
+            int start = in.position();
+            int limit = in.limit();
+
+            for (int i = start; i < limit; i++) {
+                if (array[i] != '\n') {
+                    continue;
+                }
+                in.position(i + 1);
+                if (discardingLine) {
+                    discardingLine = false;
+                } else {
+                    int end = i;
+                    if (end > start && array[end - 1] == '\r') {
+                        end--;
+                    }
+                    session.onLine(new String(array, start, end - start, StandardCharsets.UTF_8));
+                }
+                return true;
+            }
+
+            if (discardingLine) {
+                in.position(limit);
+            }
+            return false;
+        }
+
+        /**
+         * Extrait la prochaine trame binaire si elle est entièrement reçue
+         * @return false s'il manque des octets
+         */
+        private boolean frameBinary() {
+            int start = in.position();
+            int length = BinaryLogCodec.peekVarint(in);
+            if (length < 0) {
+                return false;
+            }
+            if (length > BinaryLogCodec.MAX_FRAME_BYTES) {
+                throw new IllegalArgumentException("Trame trop longue: " + length + " octets");
+            }
+            if (in.remaining() < length) {
+                in.position(start);
+                return false;
+            }
+            ByteBuffer frame = in.slice(in.position(), length);
+            in.position(in.position() + length);
+            session.onFrame(frame);
+            return true;
+        }
+
+        /**
+         * Envoie une ligne: directement depuis la boucle, sinon via la file
+         * sortante et un réveil du selector
+         */
+        void send(String line) {
+            if (Thread.currentThread() == thread) {
+                append(line);
+            } else {
+                outbound.add(line);
+                pendingWrites.add(this);
+                selector.wakeup();
+            }
+        }
+
+        void drainOutbound() {
+            String line;
+            while ((line = outbound.poll()) != null) {
+                append(line);
+            }
+        }
+
+        /**
+         * Ajoute une ligne de réponse au tampon de sortie
+         */
+        private void append(String line) {
+            if (closed) {
+                return;
+            }
+            int needed = line.length() * 3 + 1;
+            if (out.position() + needed > MAX_OUTPUT_BYTES) {
+                System.err.println("Client " + session.getClientId() + " ne lit pas ses réponses: déconnexion");
+                session.stop();
+                close();
+                return;
+            }
+            if (out.remaining() < needed) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + needed));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c < 0x80) {
+                    out.put((byte) c);
+                } else {
+                    out.put(line.substring(i).getBytes(StandardCharsets.UTF_8));
+                    break;
+                }
+            }
+            out.put((byte) '\n');
+        }
+
+        /**
+         * Écrit autant que possible, sinon attend OP_WRITE; la lecture est
+         * suspendue tant que la sortie en attente dépasse OUTPUT_PAUSE_BYTES
+         */
+        void flush() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (out.position() > 0) {
+                out.flip();
+                channel.write(out);
+                out.compact();
+            }
+
+            int ops = key.interestOps();
+            int wanted = out.position() > 0 ? ops | SelectionKey.OP_WRITE : ops & ~SelectionKey.OP_WRITE;
+            wanted = out.position() > OUTPUT_PAUSE_BYTES ? wanted & ~SelectionKey.OP_READ : wanted | SelectionKey.OP_READ;
+            if (wanted != ops) {
+                key.interestOps(wanted);
+            }
+        }
+
+        void onWritable() throws IOException {
+            flush();
+            if (!session.isRunning() && out.position() == 0) {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Erreur fermeture socket: " + e.getMessage());
+            }
+            clients.remove(session.getClientId());
+            session.onDisconnect();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.univ.logserver.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Codec de compression des blocs de segments
+ * Une instance par thread (les codecs gardent leur état et leurs tampons),
+ * fermée par son propriétaire (mémoire native de zlib); l'identifiant est
+ * enregistré dans l'en-tête de chaque bloc pour la lecture.
+ */
+public interface BlockCodec extends AutoCloseable {
+
+    /**
+     * Identifiant enregistré dans l'en-tête de bloc
+     */
+    byte getId();
+
+    String getName();
+
+    /**
+     * Compresse raw[0, length)
+     * @return vue sur un tampon interne réutilisé (valide jusqu'à l'appel suivant)
+     */
+    ByteBuffer compress(byte[] raw, int length);
+
+    /**
+     * Décompresse un bloc dans raw, qui reçoit exactement rawLength octets
+     * @throws IOException si le bloc est corrompu
+     */
+    void decompress(ByteBuffer compressed, byte[] raw, int rawLength) throws IOException;
+
+    /**
+     * Libère les ressources natives (le codec n'est plus utilisable)
+     */
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Nom d'un codec de la configuration, validé sans l'instancier (getName
+     * du codec que create retournerait)
+     * @throws IllegalArgumentException si le codec est inconnu
+     */
+    static String name(String spec) {
+        String[] parts = spec.trim().toLowerCase().split(":", 2);
+        switch (parts[0]) {
+            case "deflate":
+                int level;
+                try {
+                    level = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : DeflateBlockCodec.DEFAULT_LEVEL;
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Niveau de compression invalide: " + spec);
+                }
+                return DeflateBlockCodec.name(level);
+            case "identity":
+                return "identity";
+            default:
+                throw new IllegalArgumentException("Codec de compression inconnu: " + spec);
+        }
+    }
+
+    /**
+     * Codec à partir de la configuration: deflate, deflate:<niveau 1-9> ou identity
+     * @throws IllegalArgumentException si le codec est inconnu
+     */
+    static BlockCodec create(String spec) {
+        String name = name(spec);
+        return name.equals("identity")
+                ? new IdentityBlockCodec()
+                : new DeflateBlockCodec(Integer.parseInt(name.substring(name.indexOf(':') + 1)));
+    }
+
+    /**
+     * Codec de lecture d'après l'identifiant d'un en-tête de bloc
+     */
+    static BlockCodec forId(byte id) throws IOException {
+        switch (id) {
+            case DeflateBlockCodec.ID:
+                return new DeflateBlockCodec(DeflateBlockCodec.DEFAULT_LEVEL);
+            case IdentityBlockCodec.ID:
+                return new IdentityBlockCodec();
+            default:
+                throw new IOException("Codec de bloc inconnu: " + id);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.univ.logserver.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * En-tête d'un bloc de segment compressé
+ * Format: magic | version | codec | nombre d'entrées | horodatage min/max (µs)
+ *         | position dans le flux non compressé | longueur non compressée
+ *         | longueur compressée | CRC32 des données compressées
+ * Chaque bloc contient des lignes entières et se lit indépendamment.
+ */
+public final class BlockHeader {
+    static final int MAGIC = 0x4C424C4B; // "LBLK"
+    static final byte VERSION = 1;
+    public static final int BYTES = 4 + 1 + 1 + 4 + 8 + 8 + 8 + 4 + 4 + 4;
+
+    private final long fileOffset;
+    private final byte codecId;
+    private final int entryCount;
+    private final long minTimestampMicros;
+    private final long maxTimestampMicros;
+    private final long rawOffset;
+    private final int rawLength;
+    private final int compressedLength;
+    private final int crc;
+
+    BlockHeader(long fileOffset, byte codecId, int entryCount, long minTimestampMicros, long maxTimestampMicros,
+                long rawOffset, int rawLength, int compressedLength, int crc) {
+        this.fileOffset = fileOffset;
+        this.codecId = codecId;
+        this.entryCount = entryCount;
+        this.minTimestampMicros = minTimestampMicros;
+        this.maxTimestampMicros = maxTimestampMicros;
+        this.rawOffset = rawOffset;
+        this.rawLength = rawLength;
+        this.compressedLength = compressedLength;
+        this.crc = crc;
+    }
+
+    void write(ByteBuffer out) {
+        out.putInt(MAGIC)
+           .put(VERSION)
+           .put(codecId)
+           .putInt(entryCount)
+           .putLong(minTimestampMicros)
+           .putLong(maxTimestampMicros)
+           .putLong(rawOffset)
+           .putInt(rawLength)
+           .putInt(compressedLength)
+           .putInt(crc);
+    }
+
+    /**
+     * @throws IOException si l'en-tête est invalide (fichier corrompu ou non compressé)
+     */
+    static BlockHeader read(ByteBuffer in, long fileOffset) throws IOException {
+        if (in.getInt() != MAGIC) {
+            throw new IOException("En-tête de bloc invalide à la position " + fileOffset);
+        }
+        byte version = in.get();
+        if (version != VERSION) {
+            throw new IOException("Version de bloc inconnue: " + version);
+        }
+        return new BlockHeader(fileOffset, in.get(), in.getInt(), in.getLong(), in.getLong(),
+                               in.getLong(), in.getInt(), in.getInt(), in.getInt());
+    }
+
+    /** Position de l'en-tête dans le fichier */
+    public long getFileOffset() { return fileOffset; }
+    /** Position du bloc suivant dans le fichier */
+    public long getNextOffset() { return fileOffset + BYTES + compressedLength; }
+    public byte getCodecId() { return codecId; }
+    public int getEntryCount() { return entryCount; }
+    public long getMinTimestampMicros() { return minTimestampMicros; }
+    public long getMaxTimestampMicros() { return maxTimestampMicros; }
+    public long getRawOffset() { return rawOffset; }
+    public int getRawLength() { return rawLength; }
+    public int getCompressedLength() { return compressedLength; }
+    public int getCrc() { return crc; }
+}
@@ -0,0 +1,137 @@
+package com.univ.logserver.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Lecture d'un segment compressé bloc par bloc
+ * Les en-têtes se parcourent sans décompresser (saut de la longueur
+ * compressée); un bloc se lit seul. Un bloc incomplet en fin de fichier
+ * (écriture en cours ou interrompue) est ignoré.
+ *
+ * Non thread-safe: une instance par lecture.
+ */
+public class BlockSegmentReader implements Closeable {
+    private final Path path;
+    private final FileChannel channel;
+    private final Map<Byte, BlockCodec> codecs = new HashMap<>();
+    private final CRC32 crc = new CRC32();
+
+    public BlockSegmentReader(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    /**
+     * En-têtes de tous les blocs complets, dans l'ordre du fichier
+     */
+    public List<BlockHeader> readHeaders() throws IOException {
+        return readHeaders(0, Long.MAX_VALUE);
+    }
+
+    /**
+     * En-têtes des blocs complets commençant dans [start, end)
+     * @param start position d'un en-tête (début de fichier ou fin d'un bloc)
+     */
+    public List<BlockHeader> readHeaders(long start, long end) throws IOException {
+        List<BlockHeader> headers = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(BlockHeader.BYTES);
+        long size = channel.size();
+        long offset = start;
+        while (offset < end && offset + BlockHeader.BYTES <= size) {
+            buffer.clear();
+            readFully(buffer, offset);
+            buffer.flip();
+            BlockHeader header = BlockHeader.read(buffer, offset);
+            if (header.getNextOffset() > size) {
+                break;
+            }
+            headers.add(header);
+            offset = header.getNextOffset();
+        }
+        return headers;
+    }
+
+    /**
+     * Lit, vérifie (CRC) et décompresse un bloc
+     * @return le contenu non compressé (lignes terminées par '\n')
+     */
+    public byte[] readBlock(BlockHeader header) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(header.getCompressedLength());
+        readFully(compressed, header.getFileOffset() + BlockHeader.BYTES);
+        compressed.flip();
+
+        crc.reset();
+        crc.update(compressed.duplicate());
+        if ((int) crc.getValue() != header.getCrc()) {
+            throw new IOException("CRC invalide pour le bloc à la position " + header.getFileOffset()
+                                  + " de " + path.getFileName());
+        }
+
+        BlockCodec codec = codecs.get(header.getCodecId());
+        if (codec == null) {
+            codec = BlockCodec.forId(header.getCodecId());
+            codecs.put(header.getCodecId(), codec);
+        }
+        byte[] raw = new byte[header.getRawLength()];
+        codec.decompress(compressed, raw, raw.length);
+        return raw;
+    }
+
+    /**
+     * Parcourt les lignes (UTF-8) d'un bloc décompressé
+     * @param action retourne false pour arrêter le parcours
+     * @return false si le parcours a été arrêté
+     */
+    public static boolean forEachLine(byte[] raw, Predicate<String> action) {
+        return forEachLine(raw, 0, raw.length, action);
+    }
+
+    /**
+     * Parcourt les lignes complètes de raw[from, to)
+     */
+    public static boolean forEachLine(byte[] raw, int from, int to, Predicate<String> action) {
+        int start = from;
+        for (int i = from; i < to; i++) {
+            if (raw[i] == '\n') {
+                if (!action.test(new String(raw, start, i - start, StandardCharsets.UTF_8))) {
+                    return false;
+                }
+                start = i + 1;
+            }
+        }
+        return true;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Fin de fichier inattendue: " + path.getFileName());
+            }
+            position += read;
+        }
+    }
+
+    public Path getPath() { return path; }
+
+    @Override
+    public void close() throws IOException {
+        for (BlockCodec codec : codecs.values()) {
+            codec.close();
+        }
+        codecs.clear();
+        channel.close();
+    }
+}
@@ -0,0 +1,101 @@
+package com.univ.logserver.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression Deflate brute (sans en-tête zlib: le bloc porte son CRC)
+ * Deflater et Inflater sont créés au premier usage (un étage d'écriture ne
+ * décompresse pas, une lecture ne compresse pas), réutilisés d'un bloc à
+ * l'autre (reset) et libérés par close.
+ */
+public class DeflateBlockCodec implements BlockCodec {
+    static final byte ID = 1;
+    static final int DEFAULT_LEVEL = 6;
+
+    private final int level;
+    private Deflater deflater;
+    private Inflater inflater;
+    private byte[] output;
+
+    public DeflateBlockCodec(int level) {
+        name(level);
+        this.level = level;
+    }
+
+    /**
+     * Nom du codec d'un niveau
+     * @throws IllegalArgumentException si le niveau est hors de [1, 9]
+     */
+    static String name(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Niveau de compression invalide: " + level);
+        }
+        return "deflate:" + level;
+    }
+
+    @Override
+    public byte getId() { return ID; }
+
+    @Override
+    public String getName() { return name(level); }
+
+    @Override
+    public ByteBuffer compress(byte[] raw, int length) {
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+            output = new byte[64 * 1024];
+        }
+        deflater.reset();
+        deflater.setInput(raw, 0, length);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            size += deflater.deflate(output, size, output.length - size);
+        }
+        return ByteBuffer.wrap(output, 0, size);
+    }
+
+    @Override
+    public void decompress(ByteBuffer compressed, byte[] raw, int rawLength) throws IOException {
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int size = 0;
+            while (size < rawLength) {
+                int inflated = inflater.inflate(raw, size, rawLength - size);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size != rawLength) {
+                throw new IOException("Bloc tronqué: " + size + "/" + rawLength + " octets");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Bloc corrompu: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.univ.logserver.storage;
+
+/**
+ * Politique de synchronisation disque (FileChannel.force) du stockage
+ * - none: pas de force, les données restent dans le cache du système
+ * - interval:<ms>: force au plus toutes les ms
+ * - every-batch: force après chaque écriture (lots concurrents regroupés)
+ * - bytes:<n>[:<ms>]: force dès n octets écrits depuis le dernier force, ou
+ *   au plus tard ms (DEFAULT_MAX_DELAY_MILLIS par défaut) après la première
+ *   écriture non forcée: un reste sous le seuil ne retient pas les
+ *   notifications d'écriture (onStored, libération du WAL) jusqu'à l'arrêt
+ */
+public final class DurabilityPolicy {
+
+    public enum Mode { NONE, INTERVAL, EVERY_BATCH, BYTES }
+
+    public static final DurabilityPolicy NONE = new DurabilityPolicy(Mode.NONE, 0);
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 1000;
+
+    private final Mode mode;
+    private final long parameter;
+    private final long maxDelayMillis; // bytes: délai maximum d'un reste non forcé
+
+    private DurabilityPolicy(Mode mode, long parameter) {
+        this(mode, parameter, 0);
+    }
+
+    private DurabilityPolicy(Mode mode, long parameter, long maxDelayMillis) {
+        this.mode = mode;
+        this.parameter = parameter;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * @throws IllegalArgumentException si la politique est inconnue ou son paramètre invalide
+     */
+    public static DurabilityPolicy parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            return NONE;
+        }
+        String[] parts = spec.trim().toLowerCase().split(":", 2);
+        switch (parts[0]) {
+            case "none":
+                return NONE;
+            case "every-batch":
+                return new DurabilityPolicy(Mode.EVERY_BATCH, 0);
+            case "interval":
+                return new DurabilityPolicy(Mode.INTERVAL, positive(parts.length > 1 ? parts[1] : null, spec));
+            case "bytes":
+                String[] values = parts.length > 1 ? parts[1].split(":", 2) : new String[0];
+                return new DurabilityPolicy(Mode.BYTES, positive(values.length > 0 ? values[0] : null, spec),
+                                            values.length > 1 ? positive(values[1], spec) : DEFAULT_MAX_DELAY_MILLIS);
+            default:
+                throw new IllegalArgumentException("Politique de durabilité inconnue: " + spec);
+        }
+    }
+
+    private static long positive(String text, String spec) {
+        try {
+            long value = Long.parseLong(text != null ? text.trim() : "");
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Message commun ci-dessous
+        }
+        throw new IllegalArgumentException("Paramètre de durabilité invalide: " + spec);
+    }
+
+    public Mode getMode() { return mode; }
+    public long getParameter() { return parameter; }
+    public long getMaxDelayMillis() { return maxDelayMillis; }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+            case INTERVAL: return "interval:" + parameter;
+            case BYTES:
+                return "bytes:" + parameter + (maxDelayMillis != DEFAULT_MAX_DELAY_MILLIS ? ":" + maxDelayMillis : "");
+            case EVERY_BATCH: return "every-batch";
+            default: return "none";
+        }
+    }
+}
@@ -2,32 +2,195 @@ package com.univ.logserver.storage;
 
 import com.univ.logserver.model.LogEntry;
 import com.univ.logserver.model.LogLevel;
+import com.univ.logserver.model.TimestampFormatter;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Stockage des logs dans des fichiers
- * Rotation quotidienne des fichiers par application
+ * Un segment courant par application (ApplicationName_YYYY-MM-DD_NNNN.log),
+ * remplacé au changement de jour, à la taille ou à l'âge maximum. La
+ * rotation et la fermeture des anciens segments se font sur un thread de
+ * fond (roller): le chemin d'écriture ne fait qu'une lecture de Map.
+ * Avec un codec (storage.compression), les segments (.logz) sont une suite
+ * de blocs compressés indépendants, lisibles un à un (BlockSegmentReader).
+ *
+ * Les processeurs encodent leurs lignes en UTF-8 directement dans des
+ * ByteBuffer directs puis confient le lot à l'étage d'écriture du fichier
+ * (FileWriterStage): aucun appel système sur les threads processeurs.
+ * La synchronisation disque suit la DurabilityPolicy: un seul thread
+ * (StorageFlusher) force les fichiers modifiés pour tous les processeurs.
+ *
+ * Les lectures projettent les segments texte fermés en mémoire (LRU borné,
+ * MappedSegmentCache) et filtrent les lignes sur leurs octets: seules les
+ * lignes retenues sont décodées et parsées en LogEntry.
  */
 public class FileLogStorage implements LogStorage {
+    private static final int CHUNK_BYTES = 64 * 1024;
+    private static final int MAX_POOLED_CHUNKS = 256;
+    private static final long FLUSH_TIMEOUT_SECONDS = 10;
+    private static final long ROLL_CHECK_MILLIS = 1000;
+    public static final long DEFAULT_SEGMENT_MAX_BYTES = 128L * 1024 * 1024;
+    public static final int DEFAULT_BLOCK_BYTES = 64 * 1024;
+    public static final int DEFAULT_INDEX_INTERVAL = 128;
+    // Coût maximum de l'index inversé sur le débit d'ingestion (parsing + stockage),
+    // en temps CPU du processus: découpage par les processeurs, table du thread
+    // d'écriture et ramasse-miettes comptés même s'ils se recouvrent sur
+    // plusieurs cœurs (environ 9 termes par log de simulateLoad: 25 à 35% mesurés)
+    public static final double SEARCH_INDEX_BUDGET = 0.40;
+    public static final List<String> DEFAULT_BLOOM_KEYS = List.of("request_id", "user_id", "session");
+    public static final int DEFAULT_MAPPED_SEGMENTS = 64;
+    private static final int SCAN_CHUNK_BYTES = 1024 * 1024;
+    private static final String TEXT_EXTENSION = ".log";
+    private static final String COMPRESSED_EXTENSION = ".logz";
+
     private final String baseDirectory;
-    private final Map<String, PrintWriter> writers = new ConcurrentHashMap<>();
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Segment> segments = new ConcurrentHashMap<>(); // Segment courant par application
+    private final Set<FileWriterStage> closing = ConcurrentHashMap.newKeySet();
+    private final Map<String, Integer> lastSequences = new HashMap<>(); // Sous verrou segments
+    private final long segmentMaxBytes; // 0: pas de limite de taille
+    private final long segmentMaxAgeNanos; // 0: rotation quotidienne seule
+    private final String compression; // null: lignes de texte
+    private final int blockBytes;
+    private final int indexInterval;
+    private final boolean searchIndex;
+    private final List<String> bloomKeys; // Métadonnées du filtre de Bloom des segments
+    private final ScheduledExecutorService roller;
+    private final FileWriterStage.BufferPool bufferPool = new FileWriterStage.BufferPool(CHUNK_BYTES, MAX_POOLED_CHUNKS);
+    private final MappedSegmentCache mappedSegments;
+    private final ThreadLocal<LineEncoder> encoders = ThreadLocal.withInitial(LineEncoder::new);
     private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private final StorageFlusher flusher; // null: politique none
+    private volatile boolean closed = false;
     
     // Statistiques
-    private long totalLogsStored = 0;
-    private long totalBytesWritten = 0;
+    private final AtomicLong totalLogsStored = new AtomicLong(0);
+    private final AtomicLong totalBytesWritten = new AtomicLong(0);
+    private final AtomicLong totalSegments = new AtomicLong(0);
+    private final AtomicLong totalRolled = new AtomicLong(0);
+    private final AtomicLong rolledRawBytes = new AtomicLong(0); // Segments fermés, avant compression
+    private final AtomicLong rolledDiskBytes = new AtomicLong(0);
+    private final AtomicLong skippedByLevel = new AtomicLong(0); // Segments écartés par les comptes de niveau
+    private final AtomicLong skippedByBloom = new AtomicLong(0); // Segments écartés par le filtre de Bloom
+    
+    /**
+     * Segment d'une application (date, numéro, octets confiés)
+     */
+    private static final class Segment {
+        final String application;
+        final LocalDate date;
+        final FileWriterStage stage;
+        final long createdNanos = System.nanoTime();
+        final AtomicLong bytes = new AtomicLong(0);
+        
+        Segment(String application, LocalDate date, FileWriterStage stage) {
+            this.application = application;
+            this.date = date;
+            this.stage = stage;
+        }
+    }
     
     public FileLogStorage(String baseDirectory) {
+        this(baseDirectory, DurabilityPolicy.NONE);
+    }
+    
+    public FileLogStorage(String baseDirectory, DurabilityPolicy durability) {
+        this(baseDirectory, durability, DEFAULT_SEGMENT_MAX_BYTES, 0);
+    }
+    
+    /**
+     * @param segmentMaxBytes taille approximative d'un segment (0: pas de limite)
+     * @param segmentMaxAgeSeconds âge maximum d'un segment (0: rotation quotidienne seule)
+     */
+    public FileLogStorage(String baseDirectory, DurabilityPolicy durability,
+                          long segmentMaxBytes, long segmentMaxAgeSeconds) {
+        this(baseDirectory, durability, segmentMaxBytes, segmentMaxAgeSeconds, null, DEFAULT_BLOCK_BYTES,
+             DEFAULT_INDEX_INTERVAL);
+    }
+    
+    public FileLogStorage(String baseDirectory, DurabilityPolicy durability, long segmentMaxBytes,
+                          long segmentMaxAgeSeconds, String compression, int blockBytes) {
+        this(baseDirectory, durability, segmentMaxBytes, segmentMaxAgeSeconds, compression, blockBytes,
+             DEFAULT_INDEX_INTERVAL);
+    }
+    
+    public FileLogStorage(String baseDirectory, DurabilityPolicy durability, long segmentMaxBytes,
+                          long segmentMaxAgeSeconds, String compression, int blockBytes, int indexInterval) {
+        this(baseDirectory, durability, segmentMaxBytes, segmentMaxAgeSeconds, compression, blockBytes,
+             indexInterval, true);
+    }
+    
+    public FileLogStorage(String baseDirectory, DurabilityPolicy durability, long segmentMaxBytes,
+                          long segmentMaxAgeSeconds, String compression, int blockBytes, int indexInterval,
+                          boolean searchIndex) {
+        this(baseDirectory, durability, segmentMaxBytes, segmentMaxAgeSeconds, compression, blockBytes,
+             indexInterval, searchIndex, DEFAULT_BLOOM_KEYS);
+    }
+    
+    public FileLogStorage(String baseDirectory, DurabilityPolicy durability, long segmentMaxBytes,
+                          long segmentMaxAgeSeconds, String compression, int blockBytes, int indexInterval,
+                          boolean searchIndex, List<String> bloomKeys) {
+        this(baseDirectory, durability, segmentMaxBytes, segmentMaxAgeSeconds, compression, blockBytes,
+             indexInterval, searchIndex, bloomKeys, DEFAULT_MAPPED_SEGMENTS);
+    }
+    
+    /**
+     * @param compression codec des segments (voir BlockCodec.create), null: lignes de texte
+     * @param blockBytes taille minimum d'un bloc avant compression
+     * @param indexInterval entrées par enregistrement de l'index temporel (segments texte)
+     * @param searchIndex index inversé des termes (search), construit à l'écriture
+     * @param bloomKeys métadonnées couvertes par le filtre de Bloom des segments (vide: aucun filtre)
+     * @param mappedSegments segments texte fermés projetés en mémoire au plus pour les lectures (LRU)
+     * @throws IllegalArgumentException si le codec est inconnu
+     */
+    public FileLogStorage(String baseDirectory, DurabilityPolicy durability, long segmentMaxBytes,
+                          long segmentMaxAgeSeconds, String compression, int blockBytes, int indexInterval,
+                          boolean searchIndex, List<String> bloomKeys, int mappedSegments) {
+        if (compression != null) {
+            BlockCodec.name(compression); // Validation au démarrage
+        }
+        this.compression = compression;
+        this.blockBytes = Math.max(4096, blockBytes);
+        this.indexInterval = Math.max(1, indexInterval);
+        this.searchIndex = searchIndex;
+        this.bloomKeys = List.copyOf(bloomKeys);
+        this.mappedSegments = new MappedSegmentCache(mappedSegments);
         this.baseDirectory = baseDirectory;
+        this.flusher = durability.getMode() == DurabilityPolicy.Mode.NONE ? null : new StorageFlusher(durability);
+        this.segmentMaxBytes = Math.max(0, segmentMaxBytes);
+        this.segmentMaxAgeNanos = TimeUnit.SECONDS.toNanos(Math.max(0, segmentMaxAgeSeconds));
+        this.roller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "LogStorage-Roller");
+            t.setDaemon(true);
+            return t;
+        });
+        roller.scheduleWithFixedDelay(this::rollSegments, ROLL_CHECK_MILLIS, ROLL_CHECK_MILLIS, TimeUnit.MILLISECONDS);
         createDirectoryIfNotExists();
     }
     
@@ -45,201 +208,974 @@ public class FileLogStorage implements LogStorage {
     
     @Override
     public void store(LogEntry entry) {
-        lock.readLock().lock();
-        try {
-            PrintWriter writer = getWriter(entry.getApplicationName());
-            if (writer != null) {
-                String logLine = formatLogEntry(entry);
-                writer.println(logLine);
-                writer.flush();
-                
-                totalLogsStored++;
-                totalBytesWritten += logLine.length();
-            }
-        } finally {
-            lock.readLock().unlock();
-        }
+        storeBatch(Collections.singletonList(entry), null);
     }
     
     @Override
     public void storeBatch(List<LogEntry> entries) {
+        storeBatch(entries, null, null);
+    }
+    
+    /**
+     * Encode le lot (un lot par fichier) et le confie aux étages d'écriture
+     * onStored est appelé une fois tous les fichiers du lot écrits
+     * (et forcés sur disque si la politique de durabilité n'est pas none),
+     * onFailed à la place, avec les entrées des fichiers qui n'ont pas pu
+     * être créés ou écrits, une fois tous les fichiers terminés
+     * Stockage fermé: aucun des deux (les entrées restent dans le WAL)
+     */
+    @Override
+    public void storeBatch(List<LogEntry> entries, Runnable onStored, Consumer<List<LogEntry>> onFailed) {
         if (entries.isEmpty()) return;
+        if (closed) {
+            System.err.println("Stockage fermé: " + entries.size() + " logs ignorés");
+            return;
+        }
+        
+        // Grouper par fichier, en encodant au fil de l'eau; entrées de chaque
+        // fichier retenues pour onFailed (un échec ne concerne que son fichier)
+        LineEncoder encoder = encoders.get();
+        Map<Segment, FileWriterStage.EncodedBatch> byFile = encoder.byFile;
+        byFile.clear();
+        boolean notify = onStored != null || onFailed != null;
+        Map<Segment, List<LogEntry>> sources = onFailed != null ? new HashMap<>() : null;
+        Queue<LogEntry> failed = notify ? new ConcurrentLinkedQueue<>() : null;
+        for (LogEntry entry : entries) {
+            Segment segment = getSegment(entry.getApplicationName());
+            if (segment != null) {
+                encoder.encode(entry, byFile.computeIfAbsent(segment, s -> new FileWriterStage.EncodedBatch()));
+                if (sources != null) {
+                    sources.computeIfAbsent(segment, s -> new ArrayList<>()).add(entry);
+                }
+            } else if (failed != null) {
+                failed.add(entry); // Fichier impossible à créer
+            }
+        }
+        if (byFile.isEmpty()) {
+            if (onFailed != null) {
+                onFailed.accept(new ArrayList<>(entries));
+            }
+            return;
+        }
         
-        lock.readLock().lock();
+        // Le dernier fichier terminé notifie le lot
+        AtomicInteger remaining = new AtomicInteger(byFile.size());
+        int submitted = 0;
         try {
-            // Grouper par application pour optimiser l'écriture
-            Map<String, List<LogEntry>> byApplication = new HashMap<>();
-            for (LogEntry entry : entries) {
-                byApplication.computeIfAbsent(entry.getApplicationName(), 
-                    k -> new ArrayList<>()).add(entry);
+            for (Map.Entry<Segment, FileWriterStage.EncodedBatch> file : byFile.entrySet()) {
+                FileWriterStage.EncodedBatch batch = file.getValue();
+                if (notify) {
+                    List<LogEntry> fileEntries = sources != null ? sources.get(file.getKey()) : List.of();
+                    batch.onWritten = () -> fileDone(remaining, failed, onStored, onFailed);
+                    batch.onFailed = () -> {
+                        failed.addAll(fileEntries);
+                        fileDone(remaining, failed, onStored, onFailed);
+                    };
+                }
+                totalLogsStored.addAndGet(batch.entries);
+                totalBytesWritten.addAndGet(batch.bytes);
+                submit(file.getKey(), batch);
+                submitted++;
             }
-            
-            // Écrire par lot pour chaque application
-            for (Map.Entry<String, List<LogEntry>> appEntry : byApplication.entrySet()) {
-                PrintWriter writer = getWriter(appEntry.getKey());
-                if (writer != null) {
-                    for (LogEntry logEntry : appEntry.getValue()) {
-                        String logLine = formatLogEntry(logEntry);
-                        writer.println(logLine);
-                        totalLogsStored++;
-                        totalBytesWritten += logLine.length();
-                    }
-                    writer.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Stockage interrompu: lot partiellement confié");
+            int index = 0;
+            for (FileWriterStage.EncodedBatch batch : byFile.values()) {
+                if (index++ >= submitted && batch.onFailed != null) {
+                    batch.onFailed.run();
                 }
             }
         } finally {
-            lock.readLock().unlock();
+            byFile.clear();
         }
     }
     
     /**
-     * Obtient le writer pour une application
-     * Nom de fichier: ApplicationName_YYYY-MM-DD.log
+     * Un fichier du lot terminé (entrées ajoutées à failed avant en cas
+     * d'échec); le dernier notifie le lot
      */
-    private PrintWriter getWriter(String applicationName) {
-        String fileName = getFileName(applicationName);
-        PrintWriter writer = writers.get(fileName);
-        
-        if (writer == null) {
-            lock.readLock().unlock();
-            lock.writeLock().lock();
+    private static void fileDone(AtomicInteger remaining, Queue<LogEntry> failed,
+                                 Runnable onStored, Consumer<List<LogEntry>> onFailed) {
+        if (remaining.decrementAndGet() == 0) {
+            if (failed.isEmpty()) {
+                if (onStored != null) {
+                    onStored.run();
+                }
+            } else if (onFailed != null) {
+                onFailed.accept(new ArrayList<>(failed));
+            }
+        }
+    }
+    
+    /**
+     * Confie un lot au segment; si le roller l'a retiré entre-temps, le lot
+     * (déjà encodé) va au segment suivant. Le lot qui franchit la taille
+     * maximum détache le segment (le suivant est créé au prochain log) et
+     * sa fermeture est confiée au roller.
+     */
+    private void submit(Segment segment, FileWriterStage.EncodedBatch batch) throws InterruptedException {
+        while (!segment.stage.submit(batch)) {
+            segment = getSegment(segment.application);
+            if (segment == null) {
+                System.err.println("Stockage fermé: " + batch.entries + " logs ignorés");
+                return;
+            }
+        }
+        long size = segment.bytes.addAndGet(batch.bytes);
+        if (segmentMaxBytes > 0 && size >= segmentMaxBytes && size - batch.bytes < segmentMaxBytes
+                && segments.remove(segment.application, segment)) {
+            closing.add(segment.stage);
+            Segment full = segment;
             try {
-                writer = writers.get(fileName);
-                if (writer == null) {
-                    try {
-                        Path filePath = Paths.get(baseDirectory, fileName);
-                        FileWriter fileWriter = new FileWriter(filePath.toFile(), true);
-                        writer = new PrintWriter(fileWriter);
-                        writers.put(fileName, writer);
-                        
-                        System.out.println("Nouveau fichier log: " + fileName);
-                    } catch (IOException e) {
-                        System.err.println("Erreur création fichier: " + e.getMessage());
-                        return null;
-                    }
+                roller.execute(() -> closeSegments(Collections.singletonList(full)));
+            } catch (RejectedExecutionException e) {
+                // Stockage en cours de fermeture: fermé sur place
+                closeSegments(Collections.singletonList(full));
+            }
+        }
+    }
+    
+    /**
+     * Segment courant d'une application, créé au premier log
+     * Nom de fichier: ApplicationName_YYYY-MM-DD_NNNN.log (.logz compressé)
+     */
+    private Segment getSegment(String applicationName) {
+        Segment segment = segments.get(applicationName);
+        if (segment != null) {
+            return segment;
+        }
+        synchronized (segments) {
+            segment = segments.get(applicationName);
+            if (segment == null && !closed) {
+                LocalDate date = LocalDate.now();
+                String fileName = String.format("%s_%s_%04d%s", applicationName, date.format(dateFormatter),
+                                                nextSequence(applicationName, date),
+                                                compression != null ? COMPRESSED_EXTENSION : TEXT_EXTENSION);
+                try {
+                    // Codec propre à l'étage: il compresse sur le thread d'écriture
+                    FileWriterStage stage = compression != null
+                            ? new FileWriterStage(Paths.get(baseDirectory, fileName), bufferPool, flusher,
+                                                  BlockCodec.create(compression), blockBytes, searchIndex, bloomKeys)
+                            : new FileWriterStage(Paths.get(baseDirectory, fileName), bufferPool, flusher, indexInterval,
+                                                  searchIndex, bloomKeys);
+                    segment = new Segment(applicationName, date, stage);
+                    segments.put(applicationName, segment);
+                    totalSegments.incrementAndGet();
+                    System.out.println("Nouveau segment log: " + fileName);
+                } catch (IOException e) {
+                    System.err.println("Erreur création fichier: " + e.getMessage());
+                    return null;
+                }
+            }
+            return segment;
+        }
+    }
+    
+    /**
+     * Numéro du prochain segment du jour (sous verrou segments); après un
+     * redémarrage, reprend après le dernier segment présent sur disque
+     */
+    private int nextSequence(String applicationName, LocalDate date) {
+        String prefix = applicationName + "_" + date.format(dateFormatter) + "_";
+        Integer last = lastSequences.get(prefix);
+        if (last == null) {
+            last = 0;
+            for (Path file : listSegments(applicationName)) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(prefix)) {
+                    last = Math.max(last, Integer.parseInt(name.substring(prefix.length(), name.lastIndexOf('.'))));
                 }
-                
-                lock.readLock().lock();
+            }
+        }
+        lastSequences.put(prefix, last + 1);
+        return last + 1;
+    }
+    
+    /**
+     * Segments d'une application sur disque (toutes si null), du plus ancien
+     * au plus récent: par jour puis par numéro; le fichier d'un jour sans
+     * numéro (App_YYYY-MM-DD.log, format antérieur aux segments) précède les
+     * segments numérotés du même jour
+     */
+    private List<Path> listSegments(String applicationName) {
+        Pattern pattern = Pattern.compile((applicationName != null ? Pattern.quote(applicationName) : ".+")
+                                          + "_(\\d{4}-\\d{2}-\\d{2})(_\\d{4,})?\\.logz?");
+        List<Path> files = new ArrayList<>();
+        Map<Path, String> order = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(baseDirectory))) {
+            for (Path file : stream) {
+                Matcher matcher = pattern.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    // Clé jour_numéro sur 10 chiffres; sans numéro, le jour seul est trié en premier
+                    String sequence = matcher.group(2) != null ? matcher.group(2).substring(1) : null;
+                    order.put(file, sequence == null ? matcher.group(1)
+                        : matcher.group(1) + "_" + "0".repeat(Math.max(0, 10 - sequence.length())) + sequence);
+                    files.add(file);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur parcours fichiers: " + e.getMessage());
+        }
+        files.sort(Comparator.comparing((Path file) -> order.get(file))
+                             .thenComparing(file -> file.getFileName().toString()));
+        return files;
+    }
+    
+    /**
+     * Segments du plus récent au plus ancien (ordre inverse de listSegments)
+     */
+    private List<Path> segmentsNewestFirst(String applicationName) {
+        List<Path> files = listSegments(applicationName);
+        Collections.reverse(files);
+        return files;
+    }
+    
+    /**
+     * Tâche du roller: retire les segments arrivés au changement de jour, à la
+     * taille ou à l'âge maximum, puis les ferme hors du chemin d'écriture.
+     * Le segment suivant est créé par le prochain log de l'application.
+     */
+    private void rollSegments() {
+        LocalDate today = LocalDate.now();
+        long now = System.nanoTime();
+        List<Segment> retired = new ArrayList<>();
+        synchronized (segments) {
+            Iterator<Segment> iterator = segments.values().iterator();
+            while (iterator.hasNext()) {
+                Segment segment = iterator.next();
+                if (!segment.date.equals(today)
+                        || (segmentMaxBytes > 0 && segment.bytes.get() >= segmentMaxBytes)
+                        || (segmentMaxAgeNanos > 0 && now - segment.createdNanos >= segmentMaxAgeNanos)) {
+                    iterator.remove();
+                    closing.add(segment.stage);
+                    retired.add(segment);
+                }
+            }
+            // Numéros des jours passés inutiles
+            String suffix = "_" + today.format(dateFormatter) + "_";
+            lastSequences.keySet().removeIf(prefix -> !prefix.endsWith(suffix));
+        }
+        closeSegments(retired);
+    }
+    
+    /**
+     * Ferme des segments retirés (lots en attente écrits, forcés si besoin)
+     */
+    private void closeSegments(List<Segment> retired) {
+        for (Segment segment : retired) {
+            try {
+                segment.stage.close();
+                totalRolled.incrementAndGet();
+                rolledRawBytes.addAndGet(segment.stage.getRawBytes());
+                rolledDiskBytes.addAndGet(segment.stage.getTotalBytes());
+            } catch (IOException e) {
+                System.err.println("Erreur fermeture " + segment.stage.getPath().getFileName() + ": " + e.getMessage());
             } finally {
-                lock.writeLock().unlock();
+                closing.remove(segment.stage);
             }
         }
-        
-        return writer;
     }
     
-    private String getFileName(String applicationName) {
-        String date = LocalDate.now().format(dateFormatter);
-        return String.format("%s_%s.log", applicationName, date);
+    /**
+     * Attend l'écriture des lots déjà confiés (lecture cohérente après storeBatch)
+     */
+    public void flush() {
+        try {
+            List<FileWriterStage> stages = new ArrayList<>(closing);
+            for (Segment segment : segments.values()) {
+                stages.add(segment.stage);
+            }
+            for (FileWriterStage writer : stages) {
+                if (!writer.flush(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    System.err.println("Délai d'écriture dépassé: " + writer.getPath().getFileName());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
     
     /**
-     * Formate une entrée pour l'écriture fichier
+     * Ajoute une entrée au format fichier
      * Format: [TIMESTAMP] [LEVEL] [APP] [HOST] MESSAGE {metadata}
      */
-    private String formatLogEntry(LogEntry entry) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(entry.toFormattedString());
+    private static void appendLogLine(LogEntry entry, StringBuilder sb) {
+        entry.appendFormatted(sb);
         
-        // Ajouter métadonnées si présentes
-        if (!entry.getMetadata().isEmpty()) {
+        // Ajouter métadonnées si présentes (horodatage client en µs inclus), sans copie
+        if (entry.getMetadataCount() > 0 || entry.hasEventTime()) {
             sb.append(" {");
-            boolean first = true;
-            for (Map.Entry<String, String> meta : entry.getMetadata().entrySet()) {
-                if (!first) sb.append(", ");
-                sb.append(meta.getKey()).append("=").append(meta.getValue());
-                first = false;
+            if (entry.hasEventTime()) {
+                sb.append("event_time=").append(entry.getEventTimeMicros());
             }
+            int start = sb.length();
+            boolean eventTime = entry.hasEventTime();
+            entry.forEachMetadata((key, value) -> {
+                if (eventTime || sb.length() > start) sb.append(", ");
+                sb.append(key).append("=").append(value);
+            });
             sb.append("}");
         }
+    }
+    
+    /**
+     * Encodeur d'un thread processeur: ligne formatée dans un StringBuilder
+     * réutilisé, puis encodée en UTF-8 directement dans les ByteBuffer du lot
+     */
+    private final class LineEncoder {
+        final Map<Segment, FileWriterStage.EncodedBatch> byFile = new HashMap<>();
+        private final StringBuilder line = new StringBuilder(256);
+        private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private char[] chars = new char[256];
+        private CharBuffer input = CharBuffer.wrap(chars);
+        private final TermIndex.Tokenizer tokenizer = new TermIndex.Tokenizer();
         
-        return sb.toString();
+        void encode(LogEntry entry, FileWriterStage.EncodedBatch batch) {
+            line.setLength(0);
+            appendLogLine(entry, line);
+            line.append('\n');
+            
+            int length = line.length();
+            if (length > chars.length) {
+                chars = new char[Math.max(chars.length * 2, length)];
+                input = CharBuffer.wrap(chars);
+            }
+            line.getChars(0, length, chars, 0);
+            input.clear().limit(length);
+            
+            if (batch.chunks.isEmpty()) {
+                batch.chunks.add(bufferPool.acquire());
+            }
+            ByteBuffer out = batch.chunks.get(batch.chunks.size() - 1);
+            long before = out.position();
+            long bytes = 0;
+            utf8.reset();
+            while (true) {
+                CoderResult result = utf8.encode(input, out, true);
+                if (result.isUnderflow()) {
+                    result = utf8.flush(out);
+                }
+                if (!result.isOverflow()) {
+                    break;
+                }
+                // Tampon plein: la suite de la ligne va dans un nouveau tampon
+                bytes += out.position() - before;
+                out = bufferPool.acquire();
+                batch.chunks.add(out);
+                before = 0;
+            }
+            bytes += out.position() - before;
+            if (searchIndex) {
+                batch.addSearchTerms(bufferPool, tokenizer, entry);
+            }
+            for (int i = 0; i < bloomKeys.size(); i++) {
+                String value = entry.getMetadataValue(bloomKeys.get(i));
+                if (value != null) {
+                    batch.addMetadataHash(MetadataBloomFilter.hash(bloomKeys.get(i), value));
+                }
+            }
+            batch.addEntry(bytes, entry.getTimestampMicros(), entry.getLevel());
+        }
     }
     
     @Override
     public List<LogEntry> getLogsByApplication(String applicationName, int limit) {
         // Implémentation basique - pour lecture des logs stockés
+        flush();
         List<LogEntry> logs = new ArrayList<>();
-        String fileName = getFileName(applicationName);
-        Path filePath = Paths.get(baseDirectory, fileName);
+        Predicate<String> collect = line -> {
+            LogEntry entry = parseLogLine(line);
+            if (entry != null) {
+                logs.add(entry);
+            }
+            return logs.size() < limit;
+        };
         
-        if (!Files.exists(filePath)) {
-            return logs;
+        for (Path segment : listSegments(applicationName)) {
+            if (logs.size() >= limit) {
+                break;
+            }
+            scanSegment(segment, line -> true, collect);
         }
         
-        try (BufferedReader reader = Files.newBufferedReader(filePath)) {
-            String line;
-            while ((line = reader.readLine()) != null && logs.size() < limit) {
-                LogEntry entry = parseLogLine(line);
-                if (entry != null) {
-                    logs.add(entry);
+        return logs;
+    }
+    
+    /**
+     * Logs d'un niveau, toutes applications confondues
+     * Les comptes par niveau (étage d'écriture pour un segment ouvert, fichier
+     * .lvl sinon) écartent les segments sans entrée de ce niveau; dans les
+     * autres, seuls les intervalles marqués dans le bitmap du niveau et la
+     * fin non indexée sont lus. Les plus récents d'abord (NewestFirst).
+     */
+    @Override
+    public List<LogEntry> getLogsByLevel(LogLevel level, int limit) {
+        flush();
+        NewestFirst collect = new NewestFirst(limit, entry -> true);
+        
+        Map<Path, FileWriterStage> openStages = openStages();
+        for (Path segment : segmentsNewestFirst(null)) {
+            if (collect.isFull()) {
+                break;
+            }
+            FileWriterStage stage = openStages.get(segment);
+            long[] counts = stage != null ? stage.getLevelCounts() : TimeIndex.loadLevelCounts(segment);
+            if (counts != null && counts[level.ordinal()] == 0) {
+                skippedByLevel.incrementAndGet();
+                continue;
+            }
+            if (!scanLevel(segment, level, collect)) {
+                break;
+            }
+        }
+        return collect.result();
+    }
+    
+    /**
+     * Étages des segments encore ouverts (courants ou en fermeture), par fichier
+     */
+    private Map<Path, FileWriterStage> openStages() {
+        Map<Path, FileWriterStage> stages = new HashMap<>();
+        for (FileWriterStage stage : closing) {
+            stages.put(stage.getPath(), stage);
+        }
+        for (Segment segment : segments.values()) {
+            stages.put(segment.stage.getPath(), segment.stage);
+        }
+        return stages;
+    }
+    
+    private boolean isOpen(Path segment) {
+        for (FileWriterStage stage : closing) {
+            if (stage.getPath().equals(segment)) {
+                return true;
+            }
+        }
+        for (Segment current : segments.values()) {
+            if (current.stage.getPath().equals(segment)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Parcourt les intervalles d'un segment pouvant contenir le niveau, du
+     * plus récent (fin non indexée) au plus ancien
+     * @return false si la limite est atteinte
+     */
+    private boolean scanLevel(Path segment, LogLevel level, NewestFirst collect) {
+        TimeIndex index = TimeIndex.load(segment);
+        BitSet bitmap = index.levelBitmap(level);
+        Predicate<LineBytes> filter = line -> isLevel(line, level);
+        
+        try (SegmentScan scan = new SegmentScan(segment)) {
+            if (!collect.read(scan, index.getCoveredEnd(), Long.MAX_VALUE, filter)) {
+                return false;
+            }
+            for (int i = bitmap.previousSetBit(bitmap.length() - 1); i >= 0; i = bitmap.previousSetBit(i - 1)) {
+                if (!collect.read(scan, index.getStart(i), index.getEnd(i), filter)) {
+                    return false;
                 }
             }
+            return true;
         } catch (IOException e) {
             System.err.println("Erreur lecture fichier: " + e.getMessage());
+            return true;
         }
+    }
+    
+    /**
+     * Niveau d'une ligne stockée comparé sans parsing complet
+     * Format: [TIMESTAMP] LEVEL [APP] ...
+     */
+    private static boolean isLevel(CharSequence line, LogLevel level) {
+        String name = level.getName();
+        if (line.length() <= 26 + name.length() || line.charAt(26 + name.length()) != ' ') {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.toUpperCase(line.charAt(26 + i)) != Character.toUpperCase(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Parcourt toutes les lignes d'un segment
+     * @param filter test sur les octets de la ligne, avant décodage
+     * @param action retourne false pour arrêter le parcours
+     * @return false si le parcours a été arrêté par action
+     */
+    private boolean scanSegment(Path segment, Predicate<LineBytes> filter, Predicate<String> action) {
+        try (SegmentScan scan = new SegmentScan(segment)) {
+            return scan.range(0, Long.MAX_VALUE, filter, action);
+        } catch (IOException e) {
+            System.err.println("Erreur lecture fichier: " + e.getMessage());
+            return true;
+        }
+    }
+    
+    /**
+     * Logs d'une application sur un intervalle de temps
+     * Pour chaque segment, l'index temporel donne les intervalles candidats
+     * (dichotomie puis lecture directe à leur position); seule la fin non
+     * indexée du segment est parcourue. Les lignes ayant une précision à la
+     * milliseconde, les bornes sont comparées à la milliseconde.
+     * Les plus récents d'abord (NewestFirst).
+     */
+    @Override
+    public List<LogEntry> getLogsBetween(String applicationName, long fromMicros, long toMicros, int limit) {
+        flush();
+        NewestFirst collect = new NewestFirst(limit, entry -> true);
         
-        return logs;
+        for (Path segment : segmentsNewestFirst(applicationName)) {
+            if (collect.isFull() || !scanBetween(segment, fromMicros, toMicros, inRange(fromMicros, toMicros),
+                                                 collect)) {
+                break;
+            }
+        }
+        return collect.result();
+    }
+    
+    /**
+     * Filtre des lignes dont l'horodatage (ms) est dans [from, to]
+     */
+    private static Predicate<LineBytes> inRange(long fromMicros, long toMicros) {
+        long fromMillis = Math.floorDiv(fromMicros, 1000L);
+        long toMillis = Math.floorDiv(toMicros, 1000L);
+        return line -> {
+            long millis = lineMillis(line);
+            return millis >= fromMillis && millis <= toMillis;
+        };
     }
     
+    /**
+     * Parcourt les lignes d'un segment pouvant appartenir à [from, to], du
+     * plus récent au plus ancien intervalle
+     * @return false si la limite est atteinte
+     */
+    private boolean scanBetween(Path segment, long fromMicros, long toMicros, Predicate<LineBytes> filter,
+                                NewestFirst collect) {
+        TimeIndex index = TimeIndex.load(segment);
+        // Les lignes sont à la milliseconde: élargir pour ne pas écarter un intervalle limite
+        long from = startOfMillisecond(fromMicros);
+        long to = endOfMillisecond(toMicros);
+        
+        try (SegmentScan scan = new SegmentScan(segment)) {
+            // Fin du segment non couverte par l'index (intervalle en cours)
+            if (!collect.read(scan, index.getCoveredEnd(), Long.MAX_VALUE, filter)) {
+                return false;
+            }
+            int first = index.firstCandidate(from);
+            int past = first;
+            while (!index.isPast(past, to)) {
+                past++;
+            }
+            for (int i = past - 1; i >= first; i--) {
+                if (index.intersects(i, from, to)
+                        && !collect.read(scan, index.getStart(i), index.getEnd(i), filter)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Erreur lecture fichier: " + e.getMessage());
+            return true;
+        }
+    }
+    
+    /**
+     * Logs contenant tous les termes (message ou valeur de métadonnée, sans
+     * distinction de casse), toutes applications, horodatage dans [from, to]
+     * Par segment, l'intersection des listes de l'index inversé donne les
+     * intervalles à lire (croisés avec l'index temporel); un segment où un
+     * terme est absent n'est pas lu. Sans index inversé, le segment est
+     * parcouru sur l'intervalle de temps. Les plus récents d'abord (NewestFirst).
+     */
     @Override
-    public List<LogEntry> getLogsByLevel(LogLevel level, int limit) {
-        // Parcours de tous les fichiers pour trouver les logs de ce niveau
+    public List<LogEntry> search(List<String> terms, long fromMicros, long toMicros, int limit) {
+        Set<String> wanted = TermIndex.tokenize(terms);
         List<LogEntry> logs = new ArrayList<>();
+        if (wanted.isEmpty()) {
+            return logs;
+        }
+        flush();
+        TermIndex.Tokenizer tokenizer = new TermIndex.Tokenizer();
+        NewestFirst collect = new NewestFirst(limit, entry -> containsTerms(tokenizer, entry, wanted));
+        // Termes ASCII cherchés dans les octets avant décodage (les autres: vérification seule)
+        List<byte[]> asciiTerms = new ArrayList<>();
+        for (String term : wanted) {
+            if (term.chars().allMatch(c -> c < 0x80)) {
+                asciiTerms.add(term.getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        Predicate<LineBytes> filter = inRange(fromMicros, toMicros).and(line -> {
+            for (byte[] term : asciiTerms) {
+                if (!line.containsIgnoreCase(term)) {
+                    return false;
+                }
+            }
+            return true;
+        });
         
-        try {
-            Files.walk(Paths.get(baseDirectory))
-                .filter(Files::isRegularFile)
-                .filter(path -> path.toString().endsWith(".log"))
-                .forEach(path -> {
-                    try (BufferedReader reader = Files.newBufferedReader(path)) {
-                        String line;
-                        while ((line = reader.readLine()) != null && logs.size() < limit) {
-                            LogEntry entry = parseLogLine(line);
-                            if (entry != null && entry.getLevel() == level) {
-                                logs.add(entry);
-                            }
-                        }
-                    } catch (IOException e) {
-                        System.err.println("Erreur lecture: " + e.getMessage());
-                    }
-                });
+        Map<Path, FileWriterStage> openStages = openStages();
+        for (Path segment : segmentsNewestFirst(null)) {
+            if (collect.isFull()) {
+                break;
+            }
+            FileWriterStage stage = openStages.get(segment);
+            Map<String, int[]> postings = stage != null ? stage.lookupTerms(wanted) : TermIndex.lookup(segment, wanted);
+            boolean complete = postings == null
+                    ? scanBetween(segment, fromMicros, toMicros, filter, collect)
+                    : postings.size() < wanted.size()
+                    || scanIntervals(segment, intersect(postings.values()), fromMicros, toMicros, filter, collect);
+            if (!complete) {
+                break;
+            }
+        }
+        return collect.result();
+    }
+    
+    /**
+     * Logs dont la métadonnée key vaut exactement value, toutes applications
+     * Pour une clé couverte par les filtres de Bloom (bloomKeys), seuls les
+     * segments dont le filtre (étage d'écriture pour un segment ouvert,
+     * fichier .bloom sinon) peut contenir le couple sont lus; les autres
+     * clés, ou un segment sans filtre, sont parcourus entièrement.
+     * Les plus récents d'abord (NewestFirst).
+     */
+    @Override
+    public List<LogEntry> getLogsByMetadata(String key, String value, int limit) {
+        flush();
+        byte[] pair = (key + "=" + value).getBytes(StandardCharsets.UTF_8);
+        NewestFirst collect = new NewestFirst(limit, entry -> value.equals(entry.getMetadataValue(key)));
+        
+        long hash = MetadataBloomFilter.hash(key, value);
+        boolean filtered = bloomKeys.contains(key);
+        Map<Path, FileWriterStage> openStages = filtered ? openStages() : Collections.emptyMap();
+        for (Path segment : segmentsNewestFirst(null)) {
+            if (collect.isFull()) {
+                break;
+            }
+            if (filtered) {
+                FileWriterStage stage = openStages.get(segment);
+                MetadataBloomFilter filter = stage != null ? null : MetadataBloomFilter.load(segment);
+                boolean candidate = stage != null
+                        ? stage.mightContainMetadata(key, hash)
+                        : filter == null || !filter.covers(key) || filter.mightContain(hash);
+                if (!candidate) {
+                    skippedByBloom.incrementAndGet();
+                    continue;
+                }
+            }
+            try (SegmentScan scan = new SegmentScan(segment)) {
+                collect.read(scan, 0, Long.MAX_VALUE, line -> line.contains(pair));
+            } catch (IOException e) {
+                System.err.println("Erreur lecture fichier: " + e.getMessage());
+            }
+        }
+        return collect.result();
+    }
+    
+    /**
+     * Intersection de listes croissantes d'intervalles
+     */
+    private static int[] intersect(Collection<int[]> lists) {
+        int[] result = null;
+        for (int[] list : lists) {
+            if (result == null) {
+                result = list;
+                continue;
+            }
+            int[] merged = new int[Math.min(result.length, list.length)];
+            int count = 0;
+            for (int i = 0, j = 0; i < result.length && j < list.length; ) {
+                if (result[i] < list[j]) {
+                    i++;
+                } else if (result[i] > list[j]) {
+                    j++;
+                } else {
+                    merged[count++] = result[i];
+                    i++;
+                    j++;
+                }
+            }
+            result = Arrays.copyOf(merged, count);
+        }
+        return result == null ? new int[0] : result;
+    }
+    
+    /**
+     * Parcourt les intervalles désignés par l'index inversé qui croisent
+     * [from, to], du plus récent au plus ancien; ceux pas encore dans
+     * l'index temporel sont dans la fin non indexée du segment
+     * @return false si la limite est atteinte
+     */
+    private boolean scanIntervals(Path segment, int[] intervals, long fromMicros, long toMicros,
+                                  Predicate<LineBytes> filter, NewestFirst collect) {
+        if (intervals.length == 0) {
+            return true;
+        }
+        TimeIndex index = TimeIndex.load(segment);
+        long from = startOfMillisecond(fromMicros);
+        long to = endOfMillisecond(toMicros);
+        
+        try (SegmentScan scan = new SegmentScan(segment)) {
+            int i = intervals.length - 1;
+            if (intervals[i] >= index.size()
+                    && !collect.read(scan, index.getCoveredEnd(), Long.MAX_VALUE, filter)) {
+                return false;
+            }
+            while (i >= 0 && intervals[i] >= index.size()) {
+                i--;
+            }
+            for (; i >= 0; i--) {
+                int interval = intervals[i];
+                if (index.intersects(interval, from, to)
+                        && !collect.read(scan, index.getStart(interval), index.getEnd(interval), filter)) {
+                    return false;
+                }
+            }
+            return true;
         } catch (IOException e) {
-            System.err.println("Erreur parcours fichiers: " + e.getMessage());
+            System.err.println("Erreur lecture fichier: " + e.getMessage());
+            return true;
+        }
+    }
+    
+    /**
+     * Vérifie sur l'entrée relue que chaque terme est présent (les
+     * intervalles de l'index ne désignent que des candidats)
+     */
+    private static boolean containsTerms(TermIndex.Tokenizer tokenizer, LogEntry entry, Set<String> wanted) {
+        Set<String> found = new HashSet<>();
+        tokenizer.tokenize(entry, found::add);
+        return found.containsAll(wanted);
+    }
+    
+    /**
+     * Collecte des entrées les plus récentes d'abord, jusqu'à la limite
+     * Les plages d'un segment sont visitées de la plus récente à la plus
+     * ancienne mais lues dans l'ordre du fichier: seules les dernières
+     * entrées retenues d'une plage (ce qui manque pour atteindre la limite)
+     * sont gardées, puis ajoutées en sens inverse. Le résultat est trié par
+     * horodatage décroissant (segments de plusieurs applications).
+     * Non thread-safe: une instance par requête.
+     */
+    private final class NewestFirst {
+        private final List<LogEntry> logs = new ArrayList<>();
+        private final ArrayDeque<LogEntry> range = new ArrayDeque<>();
+        private final int limit;
+        private final Predicate<LogEntry> accept;
+        
+        NewestFirst(int limit, Predicate<LogEntry> accept) {
+            this.limit = limit;
+            this.accept = accept;
         }
         
-        return logs;
+        boolean isFull() {
+            return logs.size() >= limit;
+        }
+        
+        /**
+         * Lit une plage [start, end) du segment
+         * @return false si la limite est atteinte
+         */
+        boolean read(SegmentScan scan, long start, long end, Predicate<LineBytes> filter) throws IOException {
+            if (isFull()) {
+                return false;
+            }
+            scan.range(start, end, filter, this::keep);
+            while (!range.isEmpty()) {
+                logs.add(range.pollLast());
+            }
+            return !isFull();
+        }
+        
+        private boolean keep(String line) {
+            LogEntry entry = parseLogLine(line);
+            if (entry != null && accept.test(entry)) {
+                if (range.size() >= limit - logs.size()) {
+                    range.pollFirst();
+                }
+                range.addLast(entry);
+            }
+            return true;
+        }
+        
+        List<LogEntry> result() {
+            logs.sort(Comparator.comparingLong(LogEntry::getTimestampMicros).reversed());
+            return logs;
+        }
     }
     
     /**
-     * Parse une ligne de log (implémentation basique)
+     * Lecture d'un segment par plages d'octets, lignes filtrées sur leurs
+     * octets (LineBytes) avant décodage: segment texte fermé projeté en
+     * mémoire (MappedSegmentCache), segment texte ouvert lu par tranches
+     * (FileChannel), segment compressé bloc par bloc.
+     * Non thread-safe: une instance par lecture.
+     */
+    private final class SegmentScan implements Closeable {
+        private final LineBytes line = new LineBytes();
+        private final BlockSegmentReader blocks; // Segment compressé
+        private final ByteBuffer mapped; // Segment texte fermé
+        private final FileChannel channel; // Segment texte ouvert (ou de plus de 2 Go)
+        private ByteBuffer buffer;
+        
+        SegmentScan(Path segment) throws IOException {
+            if (segment.getFileName().toString().endsWith(COMPRESSED_EXTENSION)) {
+                this.blocks = new BlockSegmentReader(segment);
+                this.mapped = null;
+                this.channel = null;
+            } else {
+                this.blocks = null;
+                this.mapped = isOpen(segment) ? null : mappedSegments.get(segment);
+                this.channel = mapped == null ? FileChannel.open(segment, StandardOpenOption.READ) : null;
+            }
+        }
+        
+        /**
+         * Parcourt les lignes complètes de [start, end) (end au-delà de la
+         * fin du fichier: jusqu'à la fin)
+         * @return false si le parcours a été arrêté par action
+         */
+        boolean range(long start, long end, Predicate<LineBytes> filter, Predicate<String> action)
+                throws IOException {
+            if (blocks != null) {
+                for (BlockHeader header : blocks.readHeaders(start, end)) {
+                    byte[] raw = blocks.readBlock(header);
+                    if (!line.forEachLine(ByteBuffer.wrap(raw), 0, raw.length, filter, action)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (mapped != null) {
+                int size = mapped.capacity();
+                return line.forEachLine(mapped, (int) Math.min(start, size), (int) Math.min(end, size), filter, action);
+            }
+            end = Math.min(end, channel.size());
+            if (buffer == null) {
+                buffer = ByteBuffer.allocate((int) Math.min(SCAN_CHUNK_BYTES, Math.max(4096, end - start)));
+            }
+            buffer.clear();
+            long position = start;
+            while (position < end) {
+                buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + (end - position)));
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+                // Lignes complètes de la tranche, la fin incomplète est reportée en tête du tampon
+                int filled = buffer.position();
+                int lastNewline = filled - 1;
+                while (lastNewline >= 0 && buffer.get(lastNewline) != '\n') {
+                    lastNewline--;
+                }
+                if (!line.forEachLine(buffer, 0, lastNewline + 1, filter, action)) {
+                    return false;
+                }
+                buffer.limit(filled).position(lastNewline + 1);
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    // Ligne plus longue que le tampon
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (blocks != null) {
+                blocks.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Première µs de la milliseconde de micros (sans dépassement pour Long.MIN_VALUE)
+     */
+    private static long startOfMillisecond(long micros) {
+        long millis = Math.floorDiv(micros, 1000L);
+        return millis <= Long.MIN_VALUE / 1000L ? Long.MIN_VALUE : millis * 1000L;
+    }
+    
+    /**
+     * Dernière µs de la milliseconde de micros (sans dépassement pour Long.MAX_VALUE)
+     */
+    private static long endOfMillisecond(long micros) {
+        long millis = Math.floorDiv(micros, 1000L);
+        return millis >= Long.MAX_VALUE / 1000L ? Long.MAX_VALUE : millis * 1000L + 999;
+    }
+    
+    /**
+     * Horodatage (ms) d'une ligne stockée, Long.MIN_VALUE si illisible
+     */
+    private static long lineMillis(CharSequence line) {
+        try {
+            return line.length() > 24 && line.charAt(0) == '['
+                    ? TimestampFormatter.parse(line, 1) / 1000L : Long.MIN_VALUE;
+        } catch (IllegalArgumentException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+    
+    /**
+     * Parse une ligne stockée (format de appendLogLine), horodatage conservé
+     * Format: [TIMESTAMP] LEVEL [APP] HOST - MESSAGE {metadata}
+     * Les métadonnées sont reconnues si la ligne se termine par " {...}".
      */
     private LogEntry parseLogLine(String line) {
         try {
-            // Parsing basique - peut être amélioré avec regex
-            if (line.startsWith("[") && line.contains("] ")) {
-                String[] parts = line.split("] ", 3);
-                if (parts.length >= 3) {
-                    String levelPart = parts[1];
-                    String rest = parts[2];
-                    
-                    LogLevel level = LogLevel.fromString(levelPart);
-                    
-                    if (rest.contains(" - ")) {
-                        String[] restParts = rest.split(" - ", 2);
-                        String appHost = restParts[0];
-                        String message = restParts[1];
-                        
-                        if (appHost.startsWith("[") && appHost.contains("] ")) {
-                            String[] appHostParts = appHost.substring(1).split("] ", 2);
-                            String app = appHostParts[0];
-                            
-                            return new LogEntry(level, message, app);
-                        }
+            if (line.length() < 27 || line.charAt(0) != '[' || line.charAt(24) != ']') {
+                return null;
+            }
+            long timestamp = TimestampFormatter.parse(line, 1);
+            int levelEnd = line.indexOf(" [", 26);
+            int appEnd = levelEnd < 0 ? -1 : line.indexOf("] ", levelEnd + 2);
+            int hostEnd = appEnd < 0 ? -1 : line.indexOf(" - ", appEnd + 2);
+            if (hostEnd < 0) {
+                return null;
+            }
+            
+            String message = line.substring(hostEnd + 3);
+            String metadata = null;
+            int metadataStart = message.endsWith("}") ? message.lastIndexOf(" {") : -1;
+            if (metadataStart >= 0) {
+                metadata = message.substring(metadataStart + 2, message.length() - 1);
+                message = message.substring(0, metadataStart);
+            }
+            
+            LogEntry entry = new LogEntry(timestamp, LogLevel.fromString(line, 26, levelEnd), message,
+                                          line.substring(levelEnd + 2, appEnd), line.substring(appEnd + 2, hostEnd));
+            if (metadata != null) {
+                for (String pair : metadata.split(", ")) {
+                    int equals = pair.indexOf('=');
+                    if (equals <= 0) {
+                        continue;
+                    }
+                    String key = pair.substring(0, equals);
+                    String value = pair.substring(equals + 1);
+                    if ("event_time".equals(key)) {
+                        entry.setEventTimeMicros(Long.parseLong(value));
+                    } else {
+                        entry.addMetadata(key, value);
                     }
                 }
             }
-        } catch (Exception e) {
+            return entry;
+        } catch (RuntimeException e) {
             System.err.println("Erreur parsing: " + e.getMessage());
         }
         return null;
@@ -247,25 +1183,71 @@ public class FileLogStorage implements LogStorage {
     
     @Override
     public void close() {
-        lock.writeLock().lock();
+        synchronized (segments) {
+            closed = true;
+        }
+        // Fin des rotations, puis chaque étage écrit ses lots en attente, le
+        // flusher force ce qui reste et les fichiers sont fermés
+        roller.shutdown();
         try {
-            for (PrintWriter writer : writers.values()) {
-                if (writer != null) {
-                    writer.close();
-                }
+            roller.awaitTermination(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<FileWriterStage> writers = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            writers.add(segment.stage);
+        }
+        for (FileWriterStage writer : writers) {
+            writer.stop();
+        }
+        if (flusher != null) {
+            flusher.close();
+        }
+        for (FileWriterStage writer : writers) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                System.err.println("Erreur fermeture " + writer.getPath().getFileName() + ": " + e.getMessage());
             }
-            writers.clear();
-            System.out.println("Stockage fermé - " + getStorageStats());
-        } finally {
-            lock.writeLock().unlock();
         }
+        System.out.println("Stockage fermé - " + getStorageStats());
+        segments.clear();
     }
     
     @Override
     public String getStorageStats() {
+        long writes = 0;
+        long rawBytes = rolledRawBytes.get();
+        long diskBytes = rolledDiskBytes.get();
+        for (Segment segment : segments.values()) {
+            writes += segment.stage.getTotalWrites();
+            rawBytes += segment.stage.getRawBytes();
+            diskBytes += segment.stage.getTotalBytes();
+        }
+        String compressionStats = compression == null ? "" : String.format(
+            ", Compression: %s x%.1f", compression, diskBytes == 0 ? 1.0 : (double) rawBytes / diskBytes);
+        return String.format(
+            "Storage Stats - Files: %d, Segments: %d, Rolled: %d, Logs: %d, Bytes: %d MB, Writes: %d%s, "
+            + "Level skips: %d, Bloom skips: %d, Mapped: %d (hits %d, maps %d), %s",
+            segments.size(), totalSegments.get(), totalRolled.get(), totalLogsStored.get(),
+            totalBytesWritten.get() / (1024 * 1024), writes, compressionStats, skippedByLevel.get(), skippedByBloom.get(),
+            mappedSegments.size(), mappedSegments.getHits(), mappedSegments.getMisses(), getFsyncStats()
+        );
+    }
+    
+    private String getFsyncStats() {
+        if (flusher == null) {
+            return "Durability: none";
+        }
+        double[] latencies = flusher.getLatencyPercentiles();
+        if (latencies == null) {
+            return String.format("Durability: %s, Fsyncs: 0", flusher.getPolicy());
+        }
         return String.format(
-            "Storage Stats - Files: %d, Logs: %d, Bytes: %d MB",
-            writers.size(), totalLogsStored, totalBytesWritten / (1024 * 1024)
+            "Durability: %s, Fsyncs: %d (%d cycles), Fsync p50/p95/p99/max: %.2f/%.2f/%.2f/%.2f ms",
+            flusher.getPolicy(), flusher.getTotalForces(), flusher.getTotalFlushCycles(),
+            latencies[0], latencies[1], latencies[2], latencies[3]
         );
     }
 }
\ No newline at end of file
@@ -0,0 +1,646 @@
+package com.univ.logserver.storage;
+
+import com.univ.logserver.model.LogEntry;
+import com.univ.logserver.model.LogLevel;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Étage d'écriture asynchrone d'un fichier de logs
+ * Un thread dédié par fichier: les processeurs déposent des lots déjà encodés
+ * (UTF-8 dans des ByteBuffer directs) dans une file bornée, le thread écrit
+ * tous les lots en attente par un FileChannel.write groupé (gathering).
+ * File pleine: le processeur attend (back-pressure vers le buffer).
+ * Avec un flusher, les notifications d'écriture attendent le force disque.
+ *
+ * Avec un codec, les lots sont accumulés en blocs d'au moins blockBytes
+ * octets, compressés sur ce thread et écrits précédés d'un BlockHeader
+ * (bloc partiel écrit après BLOCK_LINGER_MILLIS sans nouveau lot).
+ * L'index temporel du segment (TimeIndex) est tenu par ce même thread,
+ * après chaque écriture: un enregistrement toutes les N entrées ou par bloc.
+ * Les termes des entrées, découpés par les processeurs, y sont rattachés à
+ * leur intervalle dans l'index inversé (TermIndex), et les hash des métadonnées
+ * configurées ajoutés au filtre de Bloom du segment (MetadataBloomFilter).
+ */
+class FileWriterStage implements Closeable {
+    private static final int QUEUE_CAPACITY = 64;
+    private static final long BLOCK_LINGER_MILLIS = 50;
+
+    /**
+     * Lot encodé pour un fichier; onWritten est appelé par le thread
+     * d'écriture une fois les octets transmis au système, onFailed en cas d'erreur
+     */
+    static final class EncodedBatch {
+        final List<ByteBuffer> chunks = new ArrayList<>(4);
+        int entries;
+        long bytes;
+        long minTimestampMicros = Long.MAX_VALUE;
+        long maxTimestampMicros = Long.MIN_VALUE;
+        int[] entryEnds = new int[16]; // Fin de chaque entrée dans le lot (octets)
+        long[] entryTimestamps = new long[16];
+        byte[] entryLevels = new byte[16]; // Ordinal du niveau
+        int levelMask;
+        TermIndex.BatchTerms searchTerms; // Termes pour l'index inversé, null: pas d'index
+        long[] metadataHashes; // MetadataBloomFilter.hash des métadonnées configurées
+        int metadataHashCount;
+        Runnable onWritten;
+        Runnable onFailed;
+
+        void addMetadataHash(long hash) {
+            if (metadataHashes == null) {
+                metadataHashes = new long[64];
+            } else if (metadataHashCount == metadataHashes.length) {
+                metadataHashes = Arrays.copyOf(metadataHashes, metadataHashCount * 2);
+            }
+            metadataHashes[metadataHashCount++] = hash;
+        }
+
+        /**
+         * Découpe l'entrée en cours d'encodage pour l'index inversé (thread
+         * du processeur)
+         */
+        void addSearchTerms(BufferPool pool, TermIndex.Tokenizer tokenizer, LogEntry entry) {
+            if (searchTerms == null) {
+                searchTerms = pool.acquireTerms();
+            }
+            searchTerms.add(tokenizer, entry, entries);
+        }
+
+        /**
+         * Enregistre une entrée de entryBytes octets déjà encodée dans les chunks
+         */
+        void addEntry(long entryBytes, long timestampMicros, LogLevel level) {
+            if (entries == entryEnds.length) {
+                entryEnds = Arrays.copyOf(entryEnds, entries * 2);
+                entryTimestamps = Arrays.copyOf(entryTimestamps, entries * 2);
+                entryLevels = Arrays.copyOf(entryLevels, entries * 2);
+            }
+            bytes += entryBytes;
+            entryEnds[entries] = (int) bytes;
+            entryTimestamps[entries] = timestampMicros;
+            entryLevels[entries] = (byte) level.ordinal();
+            levelMask |= 1 << level.ordinal();
+            entries++;
+            minTimestampMicros = Math.min(minTimestampMicros, timestampMicros);
+            maxTimestampMicros = Math.max(maxTimestampMicros, timestampMicros);
+        }
+    }
+
+    /**
+     * Réserve de ByteBuffer directs de taille fixe, et de termes de lots
+     * (TermIndex.BatchTerms), partagée par les étages
+     */
+    static final class BufferPool {
+        private static final int MAX_POOLED_TERMS = QUEUE_CAPACITY;
+        private final int chunkSize;
+        private final int maxPooled;
+        private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooled = new AtomicInteger(0);
+        private final ConcurrentLinkedQueue<TermIndex.BatchTerms> freeTerms = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooledTerms = new AtomicInteger(0);
+
+        BufferPool(int chunkSize, int maxPooled) {
+            this.chunkSize = chunkSize;
+            this.maxPooled = maxPooled;
+        }
+
+        ByteBuffer acquire() {
+            ByteBuffer buffer = free.poll();
+            if (buffer == null) {
+                return ByteBuffer.allocateDirect(chunkSize);
+            }
+            pooled.decrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+
+        void release(ByteBuffer buffer) {
+            if (pooled.incrementAndGet() <= maxPooled) {
+                free.add(buffer);
+            } else {
+                pooled.decrementAndGet();
+            }
+        }
+
+        TermIndex.BatchTerms acquireTerms() {
+            TermIndex.BatchTerms terms = freeTerms.poll();
+            if (terms == null) {
+                return new TermIndex.BatchTerms();
+            }
+            pooledTerms.decrementAndGet();
+            return terms;
+        }
+
+        void releaseTerms(TermIndex.BatchTerms terms) {
+            if (pooledTerms.incrementAndGet() <= MAX_POOLED_TERMS) {
+                terms.clear();
+                freeTerms.add(terms);
+            } else {
+                pooledTerms.decrementAndGet();
+            }
+        }
+    }
+
+    private static final EncodedBatch END = new EncodedBatch();
+
+    private final Path path;
+    private final FileChannel channel;
+    private final BufferPool pool;
+    private final StorageFlusher flusher; // null: politique none
+    private final BlockingQueue<EncodedBatch> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread thread;
+
+    // Suivi des lots pour flush()
+    private final AtomicLong submitted = new AtomicLong(0);
+    private volatile long completed = 0;
+    private final ReentrantLock progressLock = new ReentrantLock();
+    private final Condition progress = progressLock.newCondition();
+
+    // Statistiques
+    private volatile long totalWrites = 0;
+    private volatile long totalBytes = 0;
+
+    // Retrait (rotation): plus aucun lot accepté une fois retired positionné
+    private volatile boolean retired = false;
+    private final AtomicInteger submitting = new AtomicInteger(0);
+    private volatile boolean stopped = false;
+
+    // Bloc en cours (thread d'écriture uniquement), codec null: lignes brutes
+    private final BlockCodec codec;
+    private final int blockBytes;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(BlockHeader.BYTES);
+    private final List<EncodedBatch> blockBatches = new ArrayList<>();
+    private byte[] blockRaw;
+    private int blockLength = 0;
+    private int blockEntries = 0;
+    private long blockMinTimestamp = Long.MAX_VALUE;
+    private long blockMaxTimestamp = Long.MIN_VALUE;
+    private int blockLevelMask = 0;
+    private long fileOffset;
+    private volatile long rawBytes = 0;
+    private volatile TimeIndex.Writer index; // null: index désactivé après une erreur
+    private volatile TermIndex.Writer terms; // null: pas d'index inversé
+    private final MetadataBloomFilter.Writer bloom; // null: aucune clé configurée
+    private int[] entryIntervals = new int[16]; // Intervalle de chaque entrée du lot (segment texte)
+
+    /**
+     * Segment texte, un enregistrement d'index toutes les indexInterval entrées
+     */
+    FileWriterStage(Path path, BufferPool pool, StorageFlusher flusher, int indexInterval, boolean termIndex,
+                    Collection<String> bloomKeys) throws IOException {
+        this(path, pool, flusher, null, 0, indexInterval, termIndex, bloomKeys);
+    }
+
+    /**
+     * Segment compressé (codec non null), un enregistrement d'index par bloc
+     */
+    FileWriterStage(Path path, BufferPool pool, StorageFlusher flusher, BlockCodec codec, int blockBytes,
+                    boolean termIndex, Collection<String> bloomKeys) throws IOException {
+        this(path, pool, flusher, codec, blockBytes, 1, termIndex, bloomKeys);
+    }
+
+    private FileWriterStage(Path path, BufferPool pool, StorageFlusher flusher, BlockCodec codec, int blockBytes,
+                            int indexInterval, boolean termIndex, Collection<String> bloomKeys) throws IOException {
+        this.path = path;
+        this.pool = pool;
+        this.flusher = flusher;
+        this.codec = codec;
+        this.blockBytes = blockBytes;
+        this.blockRaw = codec != null ? new byte[blockBytes] : null;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                        StandardOpenOption.APPEND);
+        this.fileOffset = channel.size();
+        this.index = new TimeIndex.Writer(path, indexInterval);
+        this.terms = termIndex ? new TermIndex.Writer(path) : null;
+        this.bloom = bloomKeys.isEmpty() ? null : new MetadataBloomFilter.Writer(path, bloomKeys);
+        this.thread = new Thread(this::writeLoop, "LogWriter-" + path.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Dépose un lot (bloquant si la file est pleine)
+     * @return false si l'étage est retiré: le lot est à confier au segment suivant
+     */
+    boolean submit(EncodedBatch batch) throws InterruptedException {
+        submitting.incrementAndGet();
+        try {
+            if (retired) {
+                return false;
+            }
+            submitted.incrementAndGet();
+            queue.put(batch);
+            return true;
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Attend que tous les lots déposés avant l'appel soient écrits
+     */
+    boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = submitted.get();
+        long remaining = unit.toNanos(timeout);
+        progressLock.lock();
+        try {
+            while (completed < target) {
+                if (remaining <= 0 || !thread.isAlive()) {
+                    return false;
+                }
+                remaining = progress.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        List<EncodedBatch> pending = new ArrayList<>(QUEUE_CAPACITY);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                EncodedBatch first = !blockBatches.isEmpty()
+                        ? queue.poll(BLOCK_LINGER_MILLIS, TimeUnit.MILLISECONDS)
+                        : queue.take();
+                if (first == null) {
+                    // Plus de lot: le bloc partiel est écrit
+                    writeBlock();
+                    continue;
+                }
+                pending.add(first);
+                queue.drainTo(pending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (pending.get(pending.size() - 1) == END) {
+                pending.remove(pending.size() - 1);
+                stopping = true;
+            }
+            if (codec == null) {
+                writeAll(pending);
+            } else {
+                appendToBlocks(pending);
+                if (stopping) {
+                    writeBlock();
+                }
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * Copie les lots dans le bloc en cours; chaque bloc plein est compressé et écrit
+     */
+    private void appendToBlocks(List<EncodedBatch> batches) {
+        for (EncodedBatch batch : batches) {
+            if (blockLength + batch.bytes > blockRaw.length) {
+                blockRaw = Arrays.copyOf(blockRaw, (int) Math.max(blockRaw.length * 2L, blockLength + batch.bytes));
+            }
+            for (ByteBuffer chunk : batch.chunks) {
+                chunk.flip();
+                int length = chunk.remaining();
+                chunk.get(blockRaw, blockLength, length);
+                blockLength += length;
+                pool.release(chunk);
+            }
+            batch.chunks.clear();
+            blockEntries += batch.entries;
+            blockMinTimestamp = Math.min(blockMinTimestamp, batch.minTimestampMicros);
+            blockMaxTimestamp = Math.max(blockMaxTimestamp, batch.maxTimestampMicros);
+            blockLevelMask |= batch.levelMask;
+            blockBatches.add(batch);
+            if (blockLength >= blockBytes) {
+                writeBlock();
+            }
+        }
+    }
+
+    /**
+     * Compresse et écrit le bloc en cours (en-tête + données en un write groupé)
+     */
+    private void writeBlock() {
+        if (blockBatches.isEmpty()) {
+            return;
+        }
+        ByteBuffer payload = codec.compress(blockRaw, blockLength);
+        crc.reset();
+        crc.update(payload.duplicate());
+        headerBuffer.clear();
+        new BlockHeader(fileOffset, codec.getId(), blockEntries, blockMinTimestamp, blockMaxTimestamp,
+                        rawBytes, blockLength, payload.remaining(), (int) crc.getValue()).write(headerBuffer);
+        headerBuffer.flip();
+
+        long bytes = BlockHeader.BYTES + payload.remaining();
+        boolean written = false;
+        try {
+            ByteBuffer[] buffers = { headerBuffer, payload };
+            long remaining = bytes;
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            written = true;
+            totalWrites++;
+            totalBytes += bytes;
+            rawBytes += blockLength;
+            indexBlock(fileOffset, fileOffset + bytes);
+            addMetadataHashes(blockBatches);
+            fileOffset += bytes;
+        } catch (IOException e) {
+            System.err.println("Erreur écriture " + path.getFileName() + ": " + e.getMessage());
+        }
+
+        complete(blockBatches, written, bytes);
+        blockBatches.clear();
+        blockLength = 0;
+        blockEntries = 0;
+        blockMinTimestamp = Long.MAX_VALUE;
+        blockMaxTimestamp = Long.MIN_VALUE;
+        blockLevelMask = 0;
+        if (blockRaw.length > blockBytes * 4) {
+            blockRaw = new byte[blockBytes]; // Pas de rétention après un lot exceptionnel
+        }
+    }
+
+    /**
+     * Un seul write groupé pour tous les lots en attente (répété si écriture partielle)
+     */
+    private void writeAll(List<EncodedBatch> batches) {
+        int chunkCount = 0;
+        for (EncodedBatch batch : batches) {
+            chunkCount += batch.chunks.size();
+        }
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount];
+        int index = 0;
+        long bytes = 0;
+        for (EncodedBatch batch : batches) {
+            for (ByteBuffer chunk : batch.chunks) {
+                chunk.flip();
+                chunks[index++] = chunk;
+            }
+            bytes += batch.bytes;
+        }
+
+        boolean written = false;
+        try {
+            long remaining = bytes;
+            while (remaining > 0) {
+                remaining -= channel.write(chunks);
+            }
+            written = true;
+            totalWrites++;
+            totalBytes += bytes;
+        } catch (IOException e) {
+            System.err.println("Erreur écriture " + path.getFileName() + ": " + e.getMessage());
+        }
+        if (written) {
+            indexEntries(batches);
+            addMetadataHashes(batches);
+            fileOffset += bytes;
+        }
+
+        for (EncodedBatch batch : batches) {
+            for (ByteBuffer chunk : batch.chunks) {
+                pool.release(chunk);
+            }
+        }
+        complete(batches, written, bytes);
+    }
+
+    /**
+     * Index des entrées d'un write texte (écrites à partir de fileOffset)
+     */
+    private void indexEntries(List<EncodedBatch> batches) {
+        if (index == null) {
+            return;
+        }
+        try {
+            long batchStart = fileOffset;
+            for (EncodedBatch batch : batches) {
+                if (batch.entries > entryIntervals.length) {
+                    entryIntervals = new int[batch.entries];
+                }
+                int entryStart = 0;
+                for (int i = 0; i < batch.entries; i++) {
+                    entryIntervals[i] = index.currentInterval();
+                    index.onEntry(batchStart + entryStart, batchStart + batch.entryEnds[i], batch.entryTimestamps[i],
+                                  batch.entryLevels[i]);
+                    entryStart = batch.entryEnds[i];
+                }
+                indexTerms(batch, entryIntervals, -1);
+                batchStart += batch.bytes;
+            }
+            index.flush();
+        } catch (IOException e) {
+            disableIndex(e);
+        }
+    }
+
+    private void indexBlock(long start, long end) {
+        if (index == null) {
+            return;
+        }
+        try {
+            int interval = index.currentInterval();
+            index.onBlock(start, end, blockMinTimestamp, blockMaxTimestamp, blockLevelMask);
+            for (EncodedBatch batch : blockBatches) {
+                for (int i = 0; i < batch.entries; i++) {
+                    index.countLevel(batch.entryLevels[i]);
+                }
+                indexTerms(batch, null, interval);
+            }
+            index.flush();
+        } catch (IOException e) {
+            disableIndex(e);
+        }
+    }
+
+    /**
+     * Rattache les termes des entrées du lot à leur intervalle, ou à celui du bloc
+     */
+    private void indexTerms(EncodedBatch batch, int[] intervals, int blockInterval) {
+        TermIndex.Writer writer = terms;
+        if (writer != null && batch.searchTerms != null) {
+            writer.add(batch.searchTerms, intervals, blockInterval);
+        }
+    }
+
+    /**
+     * Valeurs des lots écrits ajoutées au filtre (indépendant de l'index temporel)
+     */
+    private void addMetadataHashes(List<EncodedBatch> batches) {
+        if (bloom != null) {
+            for (EncodedBatch batch : batches) {
+                bloom.add(batch.metadataHashes, batch.metadataHashCount);
+            }
+        }
+    }
+
+    /**
+     * Index partiel conservé: la suite du segment sera parcourue séquentiellement.
+     * L'index inversé, dont les intervalles ne seraient plus tenus, est abandonné.
+     */
+    private void disableIndex(IOException e) {
+        System.err.println("Index désactivé pour " + path.getFileName() + ": " + e.getMessage());
+        try {
+            index.close();
+        } catch (IOException ignored) {
+            // Déjà en erreur
+        }
+        index = null;
+        terms = null;
+    }
+
+    /**
+     * Notifie les lots écrits (directement ou après le force du flusher)
+     * ou en échec, et débloque les flush() en attente
+     */
+    private void complete(List<EncodedBatch> batches, boolean written, long bytes) {
+        List<Runnable> callbacks = new ArrayList<>(batches.size());
+        for (EncodedBatch batch : batches) {
+            if (batch.searchTerms != null) {
+                pool.releaseTerms(batch.searchTerms); // Termes déjà rattachés à l'index
+                batch.searchTerms = null;
+            }
+            Runnable callback = written ? batch.onWritten : batch.onFailed;
+            if (callback != null) {
+                callbacks.add(callback);
+            }
+        }
+        if (written && flusher != null) {
+            flusher.onWritten(this, bytes, callbacks);
+        } else {
+            for (Runnable callback : callbacks) {
+                try {
+                    callback.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Erreur notification écriture: " + e.getMessage());
+                }
+            }
+        }
+
+        progressLock.lock();
+        try {
+            completed += batches.size();
+            progress.signalAll();
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    /**
+     * Synchronise le contenu du fichier sur disque (appelé par le flusher)
+     */
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    long getTotalWrites() { return totalWrites; }
+    /**
+     * Entrées écrites par niveau (ordinal), null si l'index est désactivé
+     */
+    long[] getLevelCounts() {
+        TimeIndex.Writer writer = index;
+        return writer != null ? writer.getLevelCounts() : null;
+    }
+
+    /**
+     * Intervalles des termes recherchés (voir TermIndex.lookup), null sans index inversé
+     */
+    Map<String, int[]> lookupTerms(Collection<String> wanted) {
+        TermIndex.Writer writer = terms;
+        return writer != null ? writer.lookup(wanted) : null;
+    }
+
+    /**
+     * false si aucune entrée écrite n'a ce couple clé=valeur (réponse exacte,
+     * segment ouvert); true aussi sans filtre ou pour une clé non couverte
+     */
+    boolean mightContainMetadata(String key, long hash) {
+        return bloom == null || !bloom.covers(key) || bloom.mightContain(hash);
+    }
+
+    /** Octets avant compression (égal à getTotalBytes sans codec) */
+    long getRawBytes() { return codec != null ? rawBytes : totalBytes; }
+    long getTotalBytes() { return totalBytes; }
+    Path getPath() { return path; }
+
+    /**
+     * Écrit les lots en attente et arrête le thread, sans fermer le fichier
+     * (le flusher peut encore le forcer)
+     */
+    void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        retired = true;
+        try {
+            // Les dépôts déjà engagés passent avant la fin de file
+            while (submitting.get() > 0) {
+                Thread.sleep(1);
+            }
+            queue.put(END);
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Écrit les lots en attente puis ferme le fichier (forcé sur disque
+     * auparavant si un flusher est actif)
+     */
+    @Override
+    public void close() throws IOException {
+        stop();
+        if (index != null) {
+            try {
+                index.close();
+                if (terms != null) {
+                    terms.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Erreur fermeture index " + path.getFileName() + ": " + e.getMessage());
+            }
+        }
+        if (bloom != null) {
+            try {
+                bloom.close();
+            } catch (IOException e) {
+                System.err.println("Erreur écriture filtre " + path.getFileName() + ": " + e.getMessage());
+            }
+        }
+        try {
+            if (flusher != null) {
+                channel.force(false);
+            }
+        } finally {
+            if (codec != null && !thread.isAlive()) {
+                codec.close(); // Sinon encore utilisé: libéré par le ramasse-miettes
+            }
+            channel.close();
+        }
+    }
+}
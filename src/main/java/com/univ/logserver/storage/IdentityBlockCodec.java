@@ -0,0 +1,30 @@
+package com.univ.logserver.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Blocs non compressés (mêmes en-têtes et index que les blocs compressés)
+ */
+public class IdentityBlockCodec implements BlockCodec {
+    static final byte ID = 0;
+
+    @Override
+    public byte getId() { return ID; }
+
+    @Override
+    public String getName() { return "identity"; }
+
+    @Override
+    public ByteBuffer compress(byte[] raw, int length) {
+        return ByteBuffer.wrap(raw, 0, length);
+    }
+
+    @Override
+    public void decompress(ByteBuffer compressed, byte[] raw, int rawLength) throws IOException {
+        if (compressed.remaining() != rawLength) {
+            throw new IOException("Bloc tronqué: " + compressed.remaining() + "/" + rawLength + " octets");
+        }
+        compressed.get(raw, 0, rawLength);
+    }
+}
@@ -0,0 +1,113 @@
+package com.univ.logserver.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+/**
+ * Vue réutilisable sur une ligne stockée (octets UTF-8 d'un ByteBuffer,
+ * segment projeté en mémoire ou bloc décompressé), pour filtrer les lignes
+ * sans les décoder: charAt lit un octet (exact pour la partie ASCII de la
+ * ligne: horodatage, niveau), contains compare des octets UTF-8. Seules les
+ * lignes retenues par le filtre sont décodées en String.
+ *
+ * Non thread-safe: une instance par lecture.
+ */
+final class LineBytes implements CharSequence {
+    private ByteBuffer buffer;
+    private int start;
+    private int length;
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Parcourt les lignes complètes de buffer[from, to) (lectures absolues,
+     * position du buffer inchangée)
+     * @param filter test sur les octets, sans allocation
+     * @param action reçoit les lignes retenues; retourne false pour arrêter
+     * @return false si le parcours a été arrêté
+     */
+    boolean forEachLine(ByteBuffer buffer, int from, int to, Predicate<LineBytes> filter, Predicate<String> action) {
+        this.buffer = buffer;
+        int lineStart = from;
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                start = lineStart;
+                length = i - lineStart;
+                if (filter.test(this) && !action.test(toString())) {
+                    return false;
+                }
+                lineStart = i + 1;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer.get(start + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return toString().subSequence(from, to);
+    }
+
+    /**
+     * La ligne contient la séquence d'octets
+     */
+    boolean contains(byte[] needle) {
+        return indexOf(needle, false) >= 0;
+    }
+
+    /**
+     * La ligne contient la séquence, lettres ASCII sans distinction de casse
+     * @param lowerNeedle séquence en minuscules
+     */
+    boolean containsIgnoreCase(byte[] lowerNeedle) {
+        return indexOf(lowerNeedle, true) >= 0;
+    }
+
+    private int indexOf(byte[] needle, boolean ignoreCase) {
+        if (needle.length == 0) {
+            return 0;
+        }
+        byte first = needle[0];
+        for (int i = start, last = start + length - needle.length; i <= last; i++) {
+            if (fold(buffer.get(i), ignoreCase) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < needle.length && fold(buffer.get(i + j), ignoreCase) == needle[j]) {
+                j++;
+            }
+            if (j == needle.length) {
+                return i - start;
+            }
+        }
+        return -1;
+    }
+
+    private static byte fold(byte b, boolean ignoreCase) {
+        return ignoreCase && b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * Ligne décodée (UTF-8); tampon de copie réutilisé d'une ligne à l'autre
+     */
+    @Override
+    public String toString() {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        }
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(scratch.length * 2, length)];
+        }
+        buffer.get(start, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -3,6 +3,7 @@ package com.univ.logserver.storage;
 import com.univ.logserver.model.LogEntry;
 import com.univ.logserver.model.LogLevel;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Interface pour le stockage des logs
@@ -20,6 +21,27 @@ public interface LogStorage {
      */
     void storeBatch(List<LogEntry> entries);
     
+    /**
+     * Stocke plusieurs entrées et appelle onStored une fois le lot écrit
+     * (éventuellement depuis un autre thread; jamais en cas d'échec d'écriture)
+     */
+    default void storeBatch(List<LogEntry> entries, Runnable onStored) {
+        storeBatch(entries, onStored, null);
+    }
+    
+    /**
+     * Comme storeBatch(entries, onStored), onFailed étant appelé à la place
+     * de onStored, avec les seules entrées non écrites, si une partie du lot
+     * n'a pas pu être écrite: les autres le sont (une exception levée par
+     * l'appel lui-même n'appelle ni l'un ni l'autre)
+     */
+    default void storeBatch(List<LogEntry> entries, Runnable onStored, Consumer<List<LogEntry>> onFailed) {
+        storeBatch(entries);
+        if (onStored != null) {
+            onStored.run();
+        }
+    }
+    
     /**
      * Récupère les logs par application
      */
@@ -30,6 +52,23 @@ public interface LogStorage {
      */
     List<LogEntry> getLogsByLevel(LogLevel level, int limit);
     
+    /**
+     * Récupère les logs d'une application dont l'horodatage (µs depuis
+     * l'epoch) est compris dans [fromMicros, toMicros]
+     */
+    List<LogEntry> getLogsBetween(String applicationName, long fromMicros, long toMicros, int limit);
+    
+    /**
+     * Recherche les logs contenant tous les termes (message ou valeurs de
+     * métadonnées), horodatage dans [fromMicros, toMicros]
+     */
+    List<LogEntry> search(List<String> terms, long fromMicros, long toMicros, int limit);
+    
+    /**
+     * Récupère les logs dont la métadonnée key vaut exactement value
+     */
+    List<LogEntry> getLogsByMetadata(String key, String value, int limit);
+    
     /**
      * Ferme les ressources de stockage
      */
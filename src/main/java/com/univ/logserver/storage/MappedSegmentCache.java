@@ -0,0 +1,73 @@
+package com.univ.logserver.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Segments texte fermés projetés en mémoire (FileChannel.map), en lecture
+ * seule: un segment fermé n'est plus modifié (projection refaite si sa
+ * taille a changé, segment lu pendant sa rotation). Au plus maxMapped
+ * projections, la moins récemment lue est abandonnée au-delà; Java ne
+ * permet pas de libérer une projection explicitement, elle l'est quand le
+ * ramasse-miettes collecte le buffer (aucune lecture en cours ne la perd).
+ */
+final class MappedSegmentCache {
+    private final int maxMapped;
+    private final Map<Path, MappedByteBuffer> mapped;
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    MappedSegmentCache(int maxMapped) {
+        this.maxMapped = Math.max(1, maxMapped);
+        this.mapped = new LinkedHashMap<Path, MappedByteBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, MappedByteBuffer> eldest) {
+                return size() > MappedSegmentCache.this.maxMapped;
+            }
+        };
+    }
+
+    /**
+     * Contenu du segment fermé (vue propre à l'appelant)
+     * @return null si le segment dépasse 2 Go (lecture par le FileChannel)
+     */
+    ByteBuffer get(Path segment) throws IOException {
+        long size = Files.size(segment);
+        synchronized (mapped) {
+            MappedByteBuffer buffer = mapped.get(segment);
+            if (buffer != null && buffer.capacity() == size) {
+                hits.incrementAndGet();
+                return buffer.duplicate();
+            }
+        }
+        misses.incrementAndGet();
+        MappedByteBuffer buffer;
+        if (size > Integer.MAX_VALUE) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        synchronized (mapped) {
+            mapped.put(segment, buffer);
+        }
+        return buffer.duplicate();
+    }
+
+    int size() {
+        synchronized (mapped) {
+            return mapped.size();
+        }
+    }
+
+    long getHits() { return hits.get(); }
+    long getMisses() { return misses.get(); }
+}
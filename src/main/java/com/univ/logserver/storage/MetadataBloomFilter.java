@@ -0,0 +1,225 @@
+package com.univ.logserver.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Filtre de Bloom d'un segment sur les valeurs de métadonnées configurées
+ * (fichier voisin SEGMENT.bloom), pour les recherches par valeur exacte
+ * (request_id=4711). Les processeurs calculent le hash de chaque couple
+ * clé=valeur; tant que le segment est ouvert, les hash distincts sont tenus
+ * en mémoire (réponse exacte), le filtre est dimensionné et écrit à la
+ * fermeture (~1% de faux positifs). Les clés couvertes sont enregistrées
+ * dans le fichier: une clé ajoutée à la configuration n'écarte pas à tort
+ * les segments plus anciens.
+ *
+ * Format: magic | nombre de clés | par clé: longueur, UTF-8 | nombre de
+ * fonctions de hachage | nombre de mots | mots de 64 bits.
+ */
+public final class MetadataBloomFilter {
+    static final String EXTENSION = ".bloom";
+    private static final int MAGIC = 0x4C424C4D; // "LBLM"
+    private static final int BITS_PER_VALUE = 10;
+    private static final int HASH_FUNCTIONS = 7; // Optimum pour 10 bits par valeur
+
+    private final Set<String> keys;
+    private final int hashFunctions;
+    private final long[] words;
+
+    private MetadataBloomFilter(Set<String> keys, int hashFunctions, long[] words) {
+        this.keys = keys;
+        this.hashFunctions = hashFunctions;
+        this.words = words;
+    }
+
+    static Path bloomPath(Path segment) {
+        return Paths.get(segment.toString() + EXTENSION);
+    }
+
+    /**
+     * Hash 64 bits d'un couple clé=valeur (FNV-1a puis mélange final de
+     * MurmurHash3), jamais nul
+     */
+    public static long hash(String key, String value) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        h = (h ^ '=') * 0x100000001B3L;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h != 0 ? h : 1;
+    }
+
+    /**
+     * Charge le filtre d'un segment fermé
+     * @return null si le filtre n'existe pas ou est illisible
+     */
+    public static MetadataBloomFilter load(Path segment) {
+        Path path = bloomPath(segment);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException("en-tête invalide");
+            }
+            Set<String> keys = new HashSet<>();
+            for (int count = buffer.getInt(); count > 0; count--) {
+                byte[] key = new byte[buffer.getInt()];
+                buffer.get(key);
+                keys.add(new String(key, StandardCharsets.UTF_8));
+            }
+            int hashFunctions = buffer.getInt();
+            long[] words = new long[buffer.getInt()];
+            buffer.asLongBuffer().get(words);
+            return new MetadataBloomFilter(keys, hashFunctions, words);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Filtre de Bloom illisible " + path.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Le filtre couvre la clé (sinon il ne permet pas d'écarter le segment)
+     */
+    public boolean covers(String key) {
+        return keys.contains(key);
+    }
+
+    /**
+     * false: aucune entrée du segment n'a ce couple clé=valeur
+     * @param hash voir hash(key, value)
+     */
+    public boolean mightContain(long hash) {
+        long bits = words.length * 64L;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = ((h1 + i * h2) & 0x7FFFFFFFL) % bits;
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Taille du filtre en octets (statistiques, tests) */
+    public int sizeBytes() {
+        return words.length * Long.BYTES;
+    }
+
+    private void set(long hash) {
+        long bits = words.length * 64L;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = ((h1 + i * h2) & 0x7FFFFFFFL) % bits;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Construction du filtre par le thread d'écriture du segment
+     * Ensemble de hash distincts à adressage ouvert (0: case vide); les
+     * recherches d'autres threads prennent le verrou de l'instance.
+     */
+    static final class Writer implements Closeable {
+        private final Path segment;
+        private final Set<String> keys;
+        private long[] hashes = new long[1024]; // Puissance de 2
+        private int size = 0;
+
+        Writer(Path segment, Collection<String> keys) {
+            this.segment = segment;
+            this.keys = new HashSet<>(keys);
+        }
+
+        synchronized void add(long[] values, int count) {
+            for (int i = 0; i < count; i++) {
+                long hash = values[i];
+                int slot = slot(hashes, hash);
+                if (hashes[slot] == 0) {
+                    hashes[slot] = hash;
+                    if (++size * 2 > hashes.length) {
+                        resize();
+                    }
+                }
+            }
+        }
+
+        private static int slot(long[] table, long hash) {
+            int mask = table.length - 1;
+            int slot = (int) (hash >>> 32) & mask;
+            while (table[slot] != 0 && table[slot] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void resize() {
+            long[] table = new long[hashes.length * 2];
+            for (long hash : hashes) {
+                if (hash != 0) {
+                    table[slot(table, hash)] = hash;
+                }
+            }
+            hashes = table;
+        }
+
+        boolean covers(String key) {
+            return keys.contains(key);
+        }
+
+        /**
+         * Segment ouvert: réponse exacte sur les hash déjà écrits
+         */
+        synchronized boolean mightContain(long hash) {
+            return hashes[slot(hashes, hash)] == hash;
+        }
+
+        /**
+         * Écrit le filtre dimensionné pour les valeurs distinctes du segment
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            long[] words = new long[Math.max(1, (int) ((size * (long) BITS_PER_VALUE + 63) / 64))];
+            MetadataBloomFilter filter = new MetadataBloomFilter(keys, HASH_FUNCTIONS, words);
+            for (long hash : hashes) {
+                if (hash != 0) {
+                    filter.set(hash);
+                }
+            }
+            byte[][] names = new byte[keys.size()][];
+            int bytes = 16 + words.length * Long.BYTES;
+            int n = 0;
+            for (String key : keys) {
+                names[n] = key.getBytes(StandardCharsets.UTF_8);
+                bytes += 4 + names[n++].length;
+            }
+            ByteBuffer out = ByteBuffer.allocate(bytes);
+            out.putInt(MAGIC).putInt(names.length);
+            for (byte[] name : names) {
+                out.putInt(name.length).put(name);
+            }
+            out.putInt(HASH_FUNCTIONS).putInt(words.length);
+            out.asLongBuffer().put(words);
+            Files.write(bloomPath(segment), out.array());
+        }
+    }
+}
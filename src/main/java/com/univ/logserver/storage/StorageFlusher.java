@@ -0,0 +1,211 @@
+package com.univ.logserver.storage;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread unique de synchronisation disque du stockage
+ * Les étages d'écriture signalent leurs écritures; selon la politique, le
+ * flusher force une seule fois chaque fichier modifié depuis le dernier
+ * passage, quel que soit le nombre de lots et de processeurs concernés.
+ * Les notifications d'écriture (onStored) sont différées jusqu'au force;
+ * en mode bytes, un reste sous le seuil est forcé après le délai maximum
+ * de la politique.
+ */
+class StorageFlusher {
+    private static final int LATENCY_SAMPLES = 1024;
+
+    private final DurabilityPolicy policy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Set<FileWriterStage> dirty = new LinkedHashSet<>();
+    private final List<Runnable> pendingCallbacks = new ArrayList<>();
+    private long pendingBytes = 0;
+    private long firstPendingNanos; // Première écriture non forcée (dirty non vide)
+    private long lastForceNanos = System.nanoTime();
+    private boolean running = true;
+    private final Thread thread;
+
+    // Latences de force (fenêtre glissante des derniers échantillons)
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latencyCount = 0;
+    private volatile long totalForces = 0;
+    private volatile long totalFlushCycles = 0;
+
+    StorageFlusher(DurabilityPolicy policy) {
+        this.policy = policy;
+        this.thread = new Thread(this::flushLoop, "LogStorage-Flusher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Appelé par un étage après une écriture (ses notifications attendent le force)
+     */
+    void onWritten(FileWriterStage stage, long bytes, List<Runnable> callbacks) {
+        lock.lock();
+        try {
+            boolean first = dirty.isEmpty();
+            if (first) {
+                firstPendingNanos = System.nanoTime();
+            }
+            dirty.add(stage);
+            pendingBytes += bytes;
+            pendingCallbacks.addAll(callbacks);
+            // bytes: réveil au seuil, ou à la première écriture pour attendre le délai maximum
+            if (policy.getMode() != DurabilityPolicy.Mode.BYTES || pendingBytes >= policy.getParameter() || first) {
+                work.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        List<FileWriterStage> toForce = new ArrayList<>();
+        List<Runnable> callbacks = new ArrayList<>();
+        while (true) {
+            lock.lock();
+            try {
+                while (running && !due()) {
+                    long deadline = deadline();
+                    if (deadline != Long.MAX_VALUE) {
+                        work.awaitNanos(Math.max(1, deadline - System.nanoTime()));
+                    } else {
+                        work.await();
+                    }
+                }
+                if (!running && dirty.isEmpty()) {
+                    return;
+                }
+                toForce.addAll(dirty);
+                dirty.clear();
+                callbacks.addAll(pendingCallbacks);
+                pendingCallbacks.clear();
+                pendingBytes = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            forceAll(toForce);
+            for (Runnable callback : callbacks) {
+                try {
+                    callback.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Erreur notification écriture: " + e.getMessage());
+                }
+            }
+            toForce.clear();
+            callbacks.clear();
+        }
+    }
+
+    /**
+     * Sous verrou: un force est-il dû selon la politique
+     */
+    private boolean due() {
+        if (dirty.isEmpty()) {
+            return false;
+        }
+        switch (policy.getMode()) {
+            case INTERVAL:
+                return System.nanoTime() - deadline() >= 0;
+            case BYTES:
+                return pendingBytes >= policy.getParameter() || System.nanoTime() - deadline() >= 0;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Sous verrou: échéance du prochain force (System.nanoTime), Long.MAX_VALUE
+     * s'il n'attend qu'un signal
+     */
+    private long deadline() {
+        if (dirty.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        switch (policy.getMode()) {
+            case INTERVAL:
+                return lastForceNanos + TimeUnit.MILLISECONDS.toNanos(policy.getParameter());
+            case BYTES:
+                return firstPendingNanos + TimeUnit.MILLISECONDS.toNanos(policy.getMaxDelayMillis());
+            default:
+                return Long.MAX_VALUE;
+        }
+    }
+
+    private void forceAll(List<FileWriterStage> stages) {
+        for (FileWriterStage stage : stages) {
+            long start = System.nanoTime();
+            try {
+                stage.force();
+            } catch (ClosedChannelException e) {
+                // Segment fermé par la rotation: forcé avant sa fermeture
+                continue;
+            } catch (IOException e) {
+                System.err.println("Erreur force " + stage.getPath().getFileName() + ": " + e.getMessage());
+                continue;
+            }
+            recordLatency(System.nanoTime() - start);
+        }
+        lastForceNanos = System.nanoTime();
+        totalFlushCycles++;
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = nanos;
+        totalForces++;
+    }
+
+    /**
+     * Percentiles des derniers force (ms): p50, p95, p99, max; null sans échantillon
+     */
+    synchronized double[] getLatencyPercentiles() {
+        int count = (int) Math.min(latencyCount, LATENCY_SAMPLES);
+        if (count == 0) {
+            return null;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return new double[] {
+            sorted[(count - 1) * 50 / 100] / 1e6,
+            sorted[(count - 1) * 95 / 100] / 1e6,
+            sorted[(count - 1) * 99 / 100] / 1e6,
+            sorted[count - 1] / 1e6
+        };
+    }
+
+    DurabilityPolicy getPolicy() { return policy; }
+    long getTotalForces() { return totalForces; }
+    long getTotalFlushCycles() { return totalFlushCycles; }
+
+    /**
+     * Force tout ce qui reste puis arrête le thread (étages déjà vidés)
+     */
+    void close() {
+        lock.lock();
+        try {
+            running = false;
+            work.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
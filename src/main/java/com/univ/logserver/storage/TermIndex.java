@@ -0,0 +1,740 @@
+package com.univ.logserver.storage;
+
+import com.univ.logserver.model.LogEntry;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Index inversé d'un segment (fichier voisin SEGMENT.terms)
+ * Les messages et valeurs de métadonnées sont découpés en termes par les
+ * processeurs (Tokenizer, BatchTerms); pour chaque terme, la liste des intervalles de
+ * l'index temporel (TimeIndex) où il apparaît, numéros croissants encodés
+ * en deltas varint. Tenu en mémoire tant que le segment est ouvert, écrit
+ * à la fermeture, termes triés.
+ *
+ * Format: magic | nombre de termes | nombre de blocs | position du
+ * répertoire | puis par terme: longueur varint, terme UTF-8, nombre
+ * d'intervalles varint, longueur des deltas varint, deltas | répertoire:
+ * par bloc de TERMS_PER_BLOCK termes, sa position et son premier terme
+ * (longueur varint, UTF-8). Une recherche lit l'en-tête et le répertoire,
+ * cherche le bloc par dichotomie puis ne lit et ne parcourt que ce bloc.
+ */
+public final class TermIndex {
+    static final String EXTENSION = ".terms";
+    private static final int MAGIC = 0x4C544932; // "LTI2"
+    private static final int HEADER_BYTES = 16;
+    // Termes par bloc du répertoire: un bloc lu par terme recherché, un
+    // répertoire d'environ 1/64 des termes lu par recherche
+    private static final int TERMS_PER_BLOCK = 64;
+    static final int MIN_TERM_LENGTH = 2;
+    static final int MAX_TERM_LENGTH = 64;
+    // Métadonnées ajoutées par le serveur (horodatages, tailles): une valeur
+    // distincte par log, jamais recherchée
+    private static final String[] UNINDEXED_KEYS = {
+            "parsed_at", "processed_at", "server_time", "raw_length", "processor_thread" };
+
+    // Caractère ASCII de terme en minuscule, 0: séparateur
+    private static final char[] ASCII_TERM_CHARS = new char[0x80];
+
+    static {
+        for (char c = 0; c < 0x80; c++) {
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' || c == '-' || c == '.') {
+                ASCII_TERM_CHARS[c] = c;
+            } else if (c >= 'A' && c <= 'Z') {
+                ASCII_TERM_CHARS[c] = (char) (c + ('a' - 'A'));
+            }
+        }
+    }
+
+    private TermIndex() {
+    }
+
+    static Path termsPath(Path segment) {
+        return Paths.get(segment.toString() + EXTENSION);
+    }
+
+    /**
+     * Termes distincts d'une recherche (même découpage qu'à l'écriture)
+     */
+    public static Set<String> tokenize(Collection<String> texts) {
+        Tokenizer tokenizer = new Tokenizer();
+        Set<String> terms = new HashSet<>();
+        for (String text : texts) {
+            tokenizer.tokenize(text, terms::add);
+        }
+        return terms;
+    }
+
+    /**
+     * Reçoit les termes d'un découpage, sans copie
+     */
+    @FunctionalInterface
+    interface TermSink {
+        /**
+         * Terme chars[start, end) en minuscules (tableau réutilisé par le découpage)
+         * @param hash hash de la String du terme (String.hashCode)
+         */
+        void accept(char[] chars, int start, int end, int hash);
+    }
+
+    /**
+     * Découpage en termes, en minuscules: suites de lettres, chiffres, '_',
+     * '-' et '.' (sans '.' ni '-' aux extrémités), de 2 à 64 caractères.
+     * Un terme pointé (nom de classe) produit aussi sa dernière partie.
+     *
+     * Minuscules caractère par caractère (même règle à l'écriture et à la
+     * recherche), copiées dans un tableau réutilisé avec le hash calculé
+     * pendant le parcours: à l'écriture, aucune String par terme (une valeur
+     * par log: request_id, numéros), le lot et l'index copient et comparent
+     * les caractères. Non thread-safe: une instance par processeur ou par
+     * recherche.
+     */
+    static final class Tokenizer {
+        private char[] scratch = new char[256];
+
+        /**
+         * Termes du message et des valeurs de métadonnées indexées d'un log
+         */
+        void tokenize(LogEntry entry, TermSink terms) {
+            tokenize(entry.getMessage(), terms);
+            entry.forEachMetadata((key, value) -> {
+                if (isIndexed(key)) {
+                    tokenize(value, terms);
+                }
+            });
+        }
+
+        /**
+         * Termes d'un log en String (recherche)
+         */
+        void tokenize(LogEntry entry, Consumer<String> terms) {
+            tokenize(entry, strings(terms));
+        }
+
+        void tokenize(CharSequence text, Consumer<String> terms) {
+            tokenize(text, strings(terms));
+        }
+
+        private static TermSink strings(Consumer<String> terms) {
+            return (chars, start, end, hash) -> terms.accept(new String(chars, start, end - start));
+        }
+
+        /**
+         * Comparaison directe: les clés des logs parsés n'ont pas de hash en cache
+         */
+        private static boolean isIndexed(String key) {
+            for (String unindexed : UNINDEXED_KEYS) {
+                if (unindexed.length() == key.length() && unindexed.equals(key)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void tokenize(CharSequence text, TermSink terms) {
+            int length = text.length();
+            if (length > scratch.length) {
+                scratch = new char[Math.max(scratch.length * 2, length)];
+            }
+            char[] chars = scratch; // Copie du texte, termes passés en minuscules sur place
+            if (text instanceof String) {
+                ((String) text).getChars(0, length, chars, 0);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    chars[i] = text.charAt(i);
+                }
+            }
+            int i = 0;
+            while (i < length) {
+                while (i < length && termChar(chars[i]) == 0) {
+                    i++;
+                }
+                // Minuscules, hash et dernier point calculés pendant le parcours
+                int start = i;
+                int hash = 0;
+                int lastDot = -1;
+                while (i < length) {
+                    char c = termChar(chars[i]);
+                    if (c == 0) {
+                        break;
+                    }
+                    if (c == '.') {
+                        lastDot = i;
+                    }
+                    chars[i++] = c;
+                    hash = 31 * hash + c;
+                }
+                int end = i;
+                if (end - start < MIN_TERM_LENGTH) {
+                    continue;
+                }
+                if (isEdgeChar(chars[start]) || isEdgeChar(chars[end - 1])) {
+                    // Extrémités retirées: hash recalculé
+                    while (start < end && isEdgeChar(chars[start])) {
+                        start++;
+                    }
+                    while (end > start && isEdgeChar(chars[end - 1])) {
+                        end--;
+                    }
+                    hash = hash(chars, start, end);
+                    lastDot = -1;
+                    for (int j = end - 1; j > start; j--) {
+                        if (chars[j] == '.') {
+                            lastDot = j;
+                            break;
+                        }
+                    }
+                }
+                if (end - start < MIN_TERM_LENGTH || end - start > MAX_TERM_LENGTH) {
+                    continue;
+                }
+                terms.accept(chars, start, end, hash);
+                if (lastDot >= 0 && end - lastDot - 1 >= MIN_TERM_LENGTH) {
+                    terms.accept(chars, lastDot + 1, end, hash(chars, lastDot + 1, end));
+                }
+            }
+        }
+
+        private static int hash(char[] chars, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + chars[i];
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * Termes découpés d'un lot encodé, à la suite dans deux tableaux (aucun
+     * objet par terme): caractères, puis début, longueur, hash et numéro
+     * d'entrée de chaque terme. Rempli par le processeur qui encode le lot,
+     * relu par le thread d'écriture qui rattache les termes à l'intervalle
+     * de leur entrée (Writer.add); les doublons sont écartés par la table.
+     * Réutilisé d'un lot à l'autre (FileWriterStage.BufferPool): pas de
+     * tableaux agrandis puis abandonnés à chaque lot.
+     */
+    static final class BatchTerms implements TermSink {
+        private static final int INITIAL_CHARS = 8 * 1024;
+        private static final int INITIAL_TERMS = 1024;
+        private static final int FIELDS = 4;
+        private static final int START = 0;
+        private static final int LENGTH = 1;
+        private static final int HASH = 2;
+        private static final int ENTRY = 3;
+        private char[] chars = new char[INITIAL_CHARS];
+        private int charCount = 0;
+        private int[] terms = new int[INITIAL_TERMS * FIELDS];
+        private int count = 0;
+        private int entry = 0; // Entrée en cours de découpage
+
+        /**
+         * Découpe une entrée du lot (numéro dans le lot)
+         */
+        void add(Tokenizer tokenizer, LogEntry logEntry, int entry) {
+            this.entry = entry;
+            tokenizer.tokenize(logEntry, this);
+        }
+
+        @Override
+        public void accept(char[] term, int start, int end, int hash) {
+            int length = end - start;
+            if (charCount + length > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+            }
+            if ((count + 1) * FIELDS > terms.length) {
+                terms = Arrays.copyOf(terms, terms.length * 2);
+            }
+            System.arraycopy(term, start, chars, charCount, length);
+            int field = count++ * FIELDS;
+            terms[field + START] = charCount;
+            terms[field + LENGTH] = length;
+            terms[field + HASH] = hash;
+            terms[field + ENTRY] = entry;
+            charCount += length;
+        }
+
+        int size() {
+            return count;
+        }
+
+        /**
+         * Vide le lot pour réutilisation
+         */
+        void clear() {
+            count = 0;
+            charCount = 0;
+            if (chars.length > INITIAL_CHARS * 16 || terms.length > INITIAL_TERMS * FIELDS * 16) {
+                // Pas de rétention après un lot exceptionnel
+                chars = new char[INITIAL_CHARS];
+                terms = new int[INITIAL_TERMS * FIELDS];
+            }
+        }
+    }
+
+    /**
+     * Termes courts: comparaison directe, sans les contrôles de Arrays.equals
+     */
+    private static boolean sameTerm(char[] chars, int offset, int length, char[] term, int start, int end) {
+        if (length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[offset + i] != term[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char termChar(char c) {
+        if (c < 0x80) {
+            return ASCII_TERM_CHARS[c];
+        }
+        return Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : 0;
+    }
+
+    private static boolean isEdgeChar(char c) {
+        return c == '.' || c == '-';
+    }
+
+    /**
+     * Intervalles des termes recherchés dans l'index d'un segment fermé
+     * @return intervalles par terme (terme absent: pas de clé), null si
+     *         l'index n'existe pas ou est illisible
+     */
+    public static Map<String, int[]> lookup(Path segment, Collection<String> terms) {
+        Path path = termsPath(segment);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException("en-tête invalide");
+            }
+            ByteBuffer header = read(channel, 0, HEADER_BYTES);
+            int directoryOffset;
+            int blocks;
+            if (header.getInt() != MAGIC || header.getInt() < 0 || (blocks = header.getInt()) < 0
+                    || (directoryOffset = header.getInt()) < HEADER_BYTES || directoryOffset > size) {
+                throw new IOException("en-tête invalide");
+            }
+            // Répertoire: position de chaque bloc et de son premier terme
+            ByteBuffer directory = read(channel, directoryOffset, (int) (size - directoryOffset));
+            int[] blockOffsets = new int[blocks + 1];
+            int[] firstStarts = new int[blocks];
+            int[] firstLengths = new int[blocks];
+            for (int block = 0; block < blocks; block++) {
+                blockOffsets[block] = directory.getInt();
+                firstLengths[block] = readVarint(directory);
+                firstStarts[block] = directory.position();
+                directory.position(firstStarts[block] + firstLengths[block]);
+            }
+            blockOffsets[blocks] = directoryOffset;
+
+            // Termes recherchés dans l'ordre de l'index: un bloc lu une fois
+            // pour des termes voisins
+            List<String> wanted = new ArrayList<>(terms);
+            wanted.sort(null);
+            Map<String, int[]> found = new HashMap<>();
+            int loaded = -1;
+            ByteBuffer block = null;
+            for (String term : wanted) {
+                byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+                int index = floorBlock(directory.array(), firstStarts, firstLengths, bytes);
+                if (index < 0) {
+                    continue;
+                }
+                if (index != loaded) {
+                    block = read(channel, blockOffsets[index], blockOffsets[index + 1] - blockOffsets[index]);
+                    loaded = index;
+                }
+                int[] intervals = findInBlock(block, bytes);
+                if (intervals != null) {
+                    found.put(term, intervals);
+                }
+            }
+            return found;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Index de termes illisible " + path.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Dernier bloc dont le premier terme précède ou vaut term, -1: avant le
+     * premier terme. Ordre des octets UTF-8 non signés, celui de
+     * String.compareTo pour les termes (pas de caractère hors du BMP: les
+     * demi-codets ne sont ni lettres ni chiffres)
+     */
+    private static int floorBlock(byte[] directory, int[] firstStarts, int[] firstLengths, byte[] term) {
+        int low = 0;
+        int high = firstStarts.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int cmp = Arrays.compareUnsigned(directory, firstStarts[middle], firstStarts[middle] + firstLengths[middle],
+                                             term, 0, term.length);
+            if (cmp <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Intervalles de term dans un bloc (termes triés), null s'il n'y est pas
+     */
+    private static int[] findInBlock(ByteBuffer block, byte[] term) {
+        byte[] data = block.array();
+        block.position(0);
+        while (block.hasRemaining()) {
+            int termLength = readVarint(block);
+            int termStart = block.position();
+            block.position(termStart + termLength);
+            int postings = readVarint(block);
+            int deltaBytes = readVarint(block);
+            int deltaStart = block.position();
+            block.position(deltaStart + deltaBytes);
+            int cmp = Arrays.compareUnsigned(data, termStart, termStart + termLength, term, 0, term.length);
+            if (cmp == 0) {
+                return decode(data, deltaStart, postings);
+            }
+            if (cmp > 0) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("fin de fichier inattendue");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static int[] decode(byte[] data, int offset, int count) {
+        int[] intervals = new int[count];
+        int position = offset;
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            value += delta;
+            intervals[i] = value;
+        }
+        return intervals;
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static int writeVarint(byte[] out, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Construction de l'index par le thread d'écriture du segment
+     * Table à adressage ouvert d'enregistrements de RECORD entiers (hash,
+     * position et longueur du terme, dernier intervalle, nombre, deltas): les
+     * caractères des termes sont copiés dans un seul tableau et les deltas
+     * dans des blocs chaînés d'un seul tableau d'octets, sans objet par terme
+     * que chaque collecte du ramasse-miettes recopierait tant que le segment
+     * est ouvert (une valeur par log: request_id, numéros). Les termes d'un
+     * lot, déjà découpés par le processeur (BatchTerms), sont ajoutés sous
+     * un seul verrou, celui des recherches.
+     */
+    static final class Writer implements Closeable {
+        // Case de la table: longueur du terme (0: case vide), hash, début dans
+        // chars, dernier intervalle, nombre d'intervalles, longueur des deltas,
+        // premier bloc et position d'écriture des deltas, à la suite (une
+        // ligne de cache par recherche ou ajout)
+        private static final int RECORD = 8;
+        private static final int LENGTH = 0;
+        private static final int HASH = 1;
+        private static final int START = 2;
+        private static final int LAST = 3;
+        private static final int COUNT = 4;
+        private static final int DELTA_LENGTH = 5;
+        private static final int FIRST_BLOCK = 6;
+        private static final int TAIL = 7;
+        // Blocs de deltas: BLOCK_DATA octets puis la position du bloc suivant
+        private static final int BLOCK_BYTES = 32; // Puissance de 2
+        private static final int BLOCK_DATA = BLOCK_BYTES - Integer.BYTES;
+        private final Path segment;
+        private int capacity = 4096; // Cases, puissance de 2
+        private int[] table = new int[capacity * RECORD];
+        private char[] chars = new char[32 * 1024];
+        private int charCount = 0;
+        private byte[] blocks = new byte[64 * 1024];
+        private int blockCount = 0; // Octets de blocks utilisés
+        private int size = 0;
+        private int interval; // Intervalle du terme en cours d'ajout
+
+        Writer(Path segment) {
+            this.segment = segment;
+        }
+
+        /**
+         * Rattache les termes d'un lot à l'intervalle de leur entrée
+         * (numéros croissants d'un lot à l'autre)
+         * @param entryIntervals intervalle de chaque entrée du lot, null: toutes
+         *        dans blockInterval (segment compressé)
+         */
+        synchronized void add(BatchTerms terms, int[] entryIntervals, int blockInterval) {
+            int[] fields = terms.terms;
+            for (int field = 0, end = terms.count * BatchTerms.FIELDS; field < end; field += BatchTerms.FIELDS) {
+                interval = entryIntervals == null ? blockInterval : entryIntervals[fields[field + BatchTerms.ENTRY]];
+                int start = fields[field + BatchTerms.START];
+                addTerm(terms.chars, start, start + fields[field + BatchTerms.LENGTH], fields[field + BatchTerms.HASH]);
+            }
+        }
+
+        /**
+         * Terme ajouté à l'intervalle en cours s'il n'y est pas déjà
+         */
+        private void addTerm(char[] term, int start, int end, int hash) {
+            int slot = slot(term, start, end, hash);
+            if (table[slot * RECORD + LENGTH] == 0) {
+                insert(slot, term, start, end, hash);
+            } else if (table[slot * RECORD + LAST] != interval) {
+                append(slot * RECORD);
+            }
+        }
+
+        private int slot(char[] term, int start, int end, int hash) {
+            int mask = capacity - 1;
+            // Hash de valeurs proches (request_id, numéros) dans des cases
+            // voisines: insertions successives dans les mêmes lignes de cache
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            for (int record = slot * RECORD; table[record + LENGTH] != 0; record = slot * RECORD) {
+                if (table[record + HASH] == hash
+                        && sameTerm(chars, table[record + START], table[record + LENGTH], term, start, end)) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Nouveau terme term[start, end) dans la case libre slot
+         */
+        private void insert(int slot, char[] term, int start, int end, int hash) {
+            int length = end - start;
+            if (charCount + length > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+            }
+            System.arraycopy(term, start, chars, charCount, length);
+            int record = slot * RECORD;
+            table[record + LENGTH] = length;
+            table[record + HASH] = hash;
+            table[record + START] = charCount;
+            table[record + LAST] = interval;
+            table[record + COUNT] = 1;
+            charCount += length;
+            if (++size * 2 > capacity) {
+                resize();
+            }
+        }
+
+        /**
+         * Intervalle en cours ajouté aux deltas du terme; premier bloc
+         * alloué au deuxième intervalle (le premier reste dans LAST)
+         */
+        private void append(int record) {
+            int previous = table[record + LAST];
+            if (table[record + COUNT] == 1) {
+                int block = newBlock();
+                table[record + FIRST_BLOCK] = block;
+                table[record + TAIL] = block;
+                writeDelta(record, previous);
+            }
+            writeDelta(record, interval - previous);
+            table[record + LAST] = interval;
+            table[record + COUNT]++;
+        }
+
+        private void writeDelta(int record, int value) {
+            while ((value & ~0x7F) != 0) {
+                writeDeltaByte(record, (byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeDeltaByte(record, (byte) value);
+        }
+
+        private void writeDeltaByte(int record, byte value) {
+            int tail = table[record + TAIL];
+            if ((tail & (BLOCK_BYTES - 1)) == BLOCK_DATA) {
+                // Bloc plein: le suivant est chaîné à sa fin
+                int block = newBlock();
+                ByteBuffer.wrap(blocks).putInt(tail, block);
+                tail = block;
+            }
+            blocks[tail] = value;
+            table[record + TAIL] = tail + 1;
+            table[record + DELTA_LENGTH]++;
+        }
+
+        private int newBlock() {
+            if (blockCount + BLOCK_BYTES > blocks.length) {
+                blocks = Arrays.copyOf(blocks, blocks.length * 2);
+            }
+            int block = blockCount;
+            blockCount += BLOCK_BYTES;
+            return block;
+        }
+
+        /**
+         * Deltas du terme à la suite (varint de chaque intervalle pour un seul)
+         */
+        private byte[] deltas(int record) {
+            if (table[record + COUNT] == 1) {
+                byte[] single = new byte[5];
+                return Arrays.copyOf(single, writeVarint(single, 0, table[record + LAST]));
+            }
+            byte[] deltas = new byte[table[record + DELTA_LENGTH]];
+            ByteBuffer chain = ByteBuffer.wrap(blocks);
+            int position = table[record + FIRST_BLOCK];
+            for (int i = 0; i < deltas.length; i++) {
+                if ((position & (BLOCK_BYTES - 1)) == BLOCK_DATA) {
+                    position = chain.getInt(position);
+                }
+                deltas[i] = blocks[position++];
+            }
+            return deltas;
+        }
+
+        private void resize() {
+            int[] oldTable = table;
+            int oldCapacity = capacity;
+            capacity *= 2;
+            table = new int[capacity * RECORD];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldCapacity; i++) {
+                if (oldTable[i * RECORD + LENGTH] != 0) {
+                    // Termes distincts: première case libre
+                    int hash = oldTable[i * RECORD + HASH];
+                    int slot = (hash ^ (hash >>> 16)) & mask;
+                    while (table[slot * RECORD + LENGTH] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    System.arraycopy(oldTable, i * RECORD, table, slot * RECORD, RECORD);
+                }
+            }
+        }
+
+        /**
+         * Intervalles des termes recherchés, segment ouvert (même contrat que lookup)
+         */
+        synchronized Map<String, int[]> lookup(Collection<String> wanted) {
+            Map<String, int[]> found = new HashMap<>();
+            for (String term : wanted) {
+                int record = slot(term.toCharArray(), 0, term.length(), term.hashCode()) * RECORD;
+                if (table[record + LENGTH] != 0) {
+                    found.put(term, decode(deltas(record), 0, table[record + COUNT]));
+                }
+            }
+            return found;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        /**
+         * Écrit l'index trié (segment fermé)
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            Integer[] order = new Integer[size];
+            int n = 0;
+            for (int i = 0; i < capacity; i++) {
+                if (table[i * RECORD + LENGTH] != 0) {
+                    order[n++] = i * RECORD;
+                }
+            }
+            // Ordre des caractères, celui de String.compareTo
+            Arrays.sort(order, (a, b) -> Arrays.compare(chars, table[a + START], table[a + START] + table[a + LENGTH],
+                                                        chars, table[b + START], table[b + START] + table[b + LENGTH]));
+            byte[] out = new byte[1024];
+            int position = HEADER_BYTES;
+            byte[] directory = new byte[256];
+            int directoryLength = 0;
+            for (int t = 0; t < order.length; t++) {
+                int record = order[t];
+                byte[] bytes = new String(chars, table[record + START], table[record + LENGTH])
+                        .getBytes(StandardCharsets.UTF_8);
+                if (t % TERMS_PER_BLOCK == 0) {
+                    // Début de bloc: sa position et son premier terme au répertoire
+                    if (directoryLength + 9 + bytes.length > directory.length) {
+                        directory = Arrays.copyOf(directory, Math.max(directory.length * 2,
+                                                                      directoryLength + 9 + bytes.length));
+                    }
+                    ByteBuffer.wrap(directory).putInt(directoryLength, position);
+                    directoryLength = writeVarint(directory, directoryLength + Integer.BYTES, bytes.length);
+                    System.arraycopy(bytes, 0, directory, directoryLength, bytes.length);
+                    directoryLength += bytes.length;
+                }
+                byte[] deltas = deltas(record);
+                int needed = position + 15 + bytes.length + deltas.length;
+                if (needed > out.length) {
+                    out = Arrays.copyOf(out, Math.max(out.length * 2, needed));
+                }
+                position = writeVarint(out, position, bytes.length);
+                System.arraycopy(bytes, 0, out, position, bytes.length);
+                position += bytes.length;
+                position = writeVarint(out, position, table[record + COUNT]);
+                position = writeVarint(out, position, deltas.length);
+                System.arraycopy(deltas, 0, out, position, deltas.length);
+                position += deltas.length;
+            }
+            int blocks = (size + TERMS_PER_BLOCK - 1) / TERMS_PER_BLOCK;
+            ByteBuffer.wrap(out).putInt(MAGIC).putInt(size).putInt(blocks).putInt(position);
+            out = Arrays.copyOf(out, position + directoryLength);
+            System.arraycopy(directory, 0, out, position, directoryLength);
+            Files.write(termsPath(segment), out);
+        }
+    }
+}
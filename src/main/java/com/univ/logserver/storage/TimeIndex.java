@@ -0,0 +1,307 @@
+package com.univ.logserver.storage;
+
+import com.univ.logserver.model.LogLevel;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Index temporel creux d'un segment (fichier voisin SEGMENT.idx)
+ * Un enregistrement par intervalle de N entrées (segment texte) ou par bloc
+ * (segment compressé): [début, fin) dans le fichier, horodatages min/max et
+ * masque des niveaux présents, chargé en un bitmap d'intervalles par niveau.
+ * Le nombre d'entrées par niveau du segment est écrit à la fermeture
+ * (SEGMENT.lvl) et tenu en mémoire tant que le segment est ouvert.
+ * Les horodatages ne sont pas strictement croissants (lots de processeurs
+ * concurrents): la recherche dichotomique porte sur le maximum cumulé, et
+ * le parcours s'arrête dès que le minimum des intervalles restants dépasse
+ * la borne haute.
+ *
+ * L'index est écrit après les données: il ne désigne jamais d'octets non
+ * écrits, et la fin du segment non couverte est parcourue séquentiellement.
+ */
+public final class TimeIndex {
+    static final String EXTENSION = ".idx";
+    static final String LEVELS_EXTENSION = ".lvl";
+    private static final int RECORD_BYTES = 36;
+    private static final int LEVEL_COUNT = LogLevel.values().length;
+
+    private final long[] starts;
+    private final long[] ends;
+    private final long[] minTimestamps;
+    private final long[] maxTimestamps;
+    private final long[] prefixMax;
+    private final long[] suffixMin;
+    private final BitSet[] levelBitmaps = new BitSet[LEVEL_COUNT]; // Intervalles contenant le niveau
+
+    private TimeIndex(long[] starts, long[] ends, long[] minTimestamps, long[] maxTimestamps, int[] levelMasks) {
+        this.starts = starts;
+        this.ends = ends;
+        this.minTimestamps = minTimestamps;
+        this.maxTimestamps = maxTimestamps;
+        int count = starts.length;
+        for (int level = 0; level < LEVEL_COUNT; level++) {
+            levelBitmaps[level] = new BitSet(count);
+        }
+        for (int i = 0; i < count; i++) {
+            for (int mask = levelMasks[i]; mask != 0; mask &= mask - 1) {
+                int level = Integer.numberOfTrailingZeros(mask);
+                if (level < LEVEL_COUNT) {
+                    levelBitmaps[level].set(i);
+                }
+            }
+        }
+        this.prefixMax = new long[count];
+        this.suffixMin = new long[count];
+        for (int i = 0; i < count; i++) {
+            prefixMax[i] = i == 0 ? maxTimestamps[i] : Math.max(prefixMax[i - 1], maxTimestamps[i]);
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            suffixMin[i] = i == count - 1 ? minTimestamps[i] : Math.min(suffixMin[i + 1], minTimestamps[i]);
+        }
+    }
+
+    static Path indexPath(Path segment) {
+        return Paths.get(segment.toString() + EXTENSION);
+    }
+
+    static Path levelsPath(Path segment) {
+        return Paths.get(segment.toString() + LEVELS_EXTENSION);
+    }
+
+    /**
+     * Charge l'index d'un segment; index absent ou illisible: index vide
+     * (le segment entier est alors parcouru)
+     */
+    public static TimeIndex load(Path segment) {
+        Path path = indexPath(segment);
+        try {
+            if (Files.exists(path)) {
+                byte[] content = Files.readAllBytes(path);
+                int count = content.length / RECORD_BYTES; // Enregistrement tronqué ignoré
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                long[] starts = new long[count];
+                long[] ends = new long[count];
+                long[] mins = new long[count];
+                long[] maxs = new long[count];
+                int[] masks = new int[count];
+                for (int i = 0; i < count; i++) {
+                    starts[i] = buffer.getLong();
+                    ends[i] = buffer.getLong();
+                    mins[i] = buffer.getLong();
+                    maxs[i] = buffer.getLong();
+                    masks[i] = buffer.getInt();
+                }
+                return new TimeIndex(starts, ends, mins, maxs, masks);
+            }
+        } catch (IOException e) {
+            System.err.println("Index illisible " + path.getFileName() + ": " + e.getMessage());
+        }
+        return new TimeIndex(new long[0], new long[0], new long[0], new long[0], new int[0]);
+    }
+
+    /**
+     * Nombre d'entrées par niveau (indice: ordinal) d'un segment fermé
+     * @return null si inconnu (segment ouvert ou fermeture interrompue)
+     */
+    public static long[] loadLevelCounts(Path segment) {
+        Path path = levelsPath(segment);
+        try {
+            if (Files.exists(path)) {
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+                if (buffer.remaining() == LEVEL_COUNT * Long.BYTES) {
+                    long[] counts = new long[LEVEL_COUNT];
+                    for (int level = 0; level < LEVEL_COUNT; level++) {
+                        counts[level] = buffer.getLong();
+                    }
+                    return counts;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Comptes illisibles " + path.getFileName() + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    public int size() { return starts.length; }
+    public long getStart(int i) { return starts[i]; }
+    public long getEnd(int i) { return ends[i]; }
+    public long getMinTimestampMicros(int i) { return minTimestamps[i]; }
+    public long getMaxTimestampMicros(int i) { return maxTimestamps[i]; }
+
+    /**
+     * Fin de la partie indexée du segment (0 si index vide)
+     */
+    public long getCoveredEnd() {
+        return starts.length == 0 ? 0 : ends[starts.length - 1];
+    }
+
+    /**
+     * Premier intervalle pouvant contenir une entrée >= from (dichotomie sur le maximum cumulé)
+     */
+    public int firstCandidate(long fromMicros) {
+        int low = 0;
+        int high = starts.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (prefixMax[middle] < fromMicros) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Aucun intervalle à partir de i ne contient d'entrée <= to
+     */
+    public boolean isPast(int i, long toMicros) {
+        return i >= starts.length || suffixMin[i] > toMicros;
+    }
+
+    public boolean intersects(int i, long fromMicros, long toMicros) {
+        return maxTimestamps[i] >= fromMicros && minTimestamps[i] <= toMicros;
+    }
+
+    /**
+     * Bitmap des intervalles contenant au moins une entrée du niveau (ne pas modifier)
+     */
+    public BitSet levelBitmap(LogLevel level) {
+        return levelBitmaps[level.ordinal()];
+    }
+
+    /**
+     * Construction de l'index par le thread d'écriture du segment
+     */
+    static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final int interval;
+        private final Path segment;
+        private final ByteBuffer pending = ByteBuffer.allocate(RECORD_BYTES * 64);
+        private final AtomicLongArray levelCounts = new AtomicLongArray(LEVEL_COUNT);
+
+        // Intervalle en cours (segment texte)
+        private int count = 0;
+        private long start;
+        private long end;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+        private int levelMask = 0;
+        private int records = 0;
+
+        /**
+         * @param interval nombre d'entrées par enregistrement (segment texte)
+         */
+        Writer(Path segment, int interval) throws IOException {
+            this.segment = segment;
+            this.interval = Math.max(1, interval);
+            this.channel = FileChannel.open(indexPath(segment), StandardOpenOption.CREATE,
+                                            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        /**
+         * Entrée écrite en [startOffset, endOffset) du segment
+         */
+        void onEntry(long startOffset, long endOffset, long timestampMicros, int level) throws IOException {
+            if (count == 0) {
+                start = startOffset;
+            }
+            end = endOffset;
+            min = Math.min(min, timestampMicros);
+            max = Math.max(max, timestampMicros);
+            levelMask |= 1 << level;
+            levelCounts.incrementAndGet(level);
+            if (++count == interval) {
+                closeInterval();
+            }
+        }
+
+        /**
+         * Bloc compressé écrit en [startOffset, endOffset); ses entrées sont
+         * comptées par countLevel
+         */
+        void onBlock(long startOffset, long endOffset, long minMicros, long maxMicros, int blockLevelMask)
+                throws IOException {
+            append(startOffset, endOffset, minMicros, maxMicros, blockLevelMask);
+        }
+
+        /**
+         * Numéro de l'intervalle qui recevra la prochaine entrée ou le prochain bloc
+         */
+        int currentInterval() {
+            return records;
+        }
+
+        void countLevel(int level) {
+            levelCounts.incrementAndGet(level);
+        }
+
+        /**
+         * Nombre d'entrées écrites par niveau (lecture concurrente possible)
+         */
+        long[] getLevelCounts() {
+            long[] counts = new long[LEVEL_COUNT];
+            for (int level = 0; level < LEVEL_COUNT; level++) {
+                counts[level] = levelCounts.get(level);
+            }
+            return counts;
+        }
+
+        private void closeInterval() throws IOException {
+            if (count > 0) {
+                append(start, end, min, max, levelMask);
+                count = 0;
+                min = Long.MAX_VALUE;
+                max = Long.MIN_VALUE;
+                levelMask = 0;
+            }
+        }
+
+        private void append(long startOffset, long endOffset, long minMicros, long maxMicros, int mask)
+                throws IOException {
+            if (pending.remaining() < RECORD_BYTES) {
+                flush();
+            }
+            pending.putLong(startOffset).putLong(endOffset).putLong(minMicros).putLong(maxMicros).putInt(mask);
+            records++;
+        }
+
+        /**
+         * Écrit les enregistrements terminés (après l'écriture des données)
+         */
+        void flush() throws IOException {
+            pending.flip();
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+            pending.clear();
+        }
+
+        /**
+         * Termine l'intervalle partiel (un segment fermé est entièrement
+         * indexé) et écrit les comptes par niveau
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                closeInterval();
+                flush();
+                ByteBuffer counts = ByteBuffer.allocate(LEVEL_COUNT * Long.BYTES);
+                for (long count : getLevelCounts()) {
+                    counts.putLong(count);
+                }
+                Files.write(levelsPath(segment), counts.array());
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
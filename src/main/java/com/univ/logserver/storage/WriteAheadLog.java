@@ -0,0 +1,533 @@
+package com.univ.logserver.storage;
+
+import com.univ.logserver.model.LogEntry;
+import com.univ.logserver.model.LogEntrySerializer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal d'écriture anticipée (WAL) des entrées acceptées
+ * Les entrées sont journalisées avant d'entrer dans le buffer; un seul thread
+ * de commit regroupe les ajouts de toutes les connexions: un FileChannel.write
+ * puis un force() toutes les N ms ou dès M octets en attente (group commit).
+ *
+ * Enregistrement: int longueur | int CRC32C | LogEntry sérialisée
+ * Segments wal-NNNNNN.log: un segment plein est fermé, puis supprimé quand
+ * toutes ses entrées ont été stockées (markStored). Au redémarrage, replay()
+ * relit les segments restants, jusqu'au premier enregistrement incomplet.
+ * Garantie au moins une fois: une entrée stockée juste avant un arrêt brutal
+ * peut être rejouée.
+ */
+public class WriteAheadLog implements Closeable {
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Notifié par le thread de commit quand l'entrée est sur disque (ou en cas d'échec)
+     * Ne doit pas bloquer (pas d'écriture réseau): il retarde le commit, sync()
+     * et le replay de toutes les connexions
+     */
+    @FunctionalInterface
+    public interface CommitListener {
+        void onCommit(boolean durable);
+    }
+
+    /**
+     * Segment du journal: supprimable une fois fermé, écrit et entièrement stocké
+     */
+    private final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        final AtomicInteger unstored = new AtomicInteger(0);
+        final AtomicBoolean deleted = new AtomicBoolean(false);
+        long appendedBytes = 0;          // Sous verrou
+        volatile boolean sealed = false; // Plus d'ajout
+        volatile boolean written = false; // Dernier lot écrit, canal fermé
+
+        Segment(int id) throws IOException {
+            this.id = id;
+            this.path = segmentPath(id);
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        void deleteIfReclaimable() {
+            if (sealed && written && unstored.get() <= 0 && deleted.compareAndSet(false, true)) {
+                segments.remove(id);
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    System.err.println("Erreur suppression segment WAL " + path + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Lot d'enregistrements d'un segment, écrit en un seul appel
+     */
+    private static final class Batch {
+        final ByteBuffer data;
+        Segment segment;
+        long lastSequence;
+        boolean closesSegment;
+
+        Batch(int capacity) {
+            this.data = ByteBuffer.allocateDirect(capacity);
+        }
+    }
+
+    private static final class Waiter {
+        final long sequence;
+        final CommitListener listener;
+
+        Waiter(long sequence, CommitListener listener) {
+            this.sequence = sequence;
+            this.listener = listener;
+        }
+    }
+
+    private final Path directory;
+    private final long groupCommitNanos;
+    private final int groupCommitBytes;
+    private final long segmentBytes;
+    private final List<Path> recoveredSegments;
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+
+    // État des ajouts (sous verrou)
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Condition committed = lock.newCondition();
+    private final LogEntrySerializer serializer = new LogEntrySerializer();
+    private final CRC32C crc = new CRC32C();
+    private final ArrayDeque<Batch> ready = new ArrayDeque<>();
+    private final ArrayDeque<Batch> freeBatches = new ArrayDeque<>();
+    private final List<Waiter> waiters = new ArrayList<>();
+    private Batch current;
+    private long batchStartNanos;
+    private Segment segment;
+    private int nextSegmentId;
+    private long appendedSequence = 0;
+    private volatile long durableSequence = 0;
+    private volatile boolean failed = false;
+    private volatile boolean running = true;
+    private final Thread committer;
+
+    // Statistiques
+    private volatile long totalRecords = 0;
+    private volatile long totalBytes = 0;
+    private volatile long totalCommits = 0;
+    private volatile long totalForceNanos = 0;
+
+    /**
+     * Ouvre le journal: les segments existants sont réservés à replay(),
+     * les nouveaux ajouts partent dans un nouveau segment
+     * @param groupCommitMs délai maximal avant commit d'un ajout (0: dès que possible)
+     * @param groupCommitBytes volume déclenchant un commit anticipé
+     */
+    public WriteAheadLog(String directory, long groupCommitMs, int groupCommitBytes, long segmentBytes) throws IOException {
+        this.directory = Paths.get(directory);
+        this.groupCommitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, groupCommitMs));
+        this.groupCommitBytes = Math.max(4096, groupCommitBytes);
+        this.segmentBytes = Math.max(this.groupCommitBytes, segmentBytes);
+        Files.createDirectories(this.directory);
+
+        // Segments laissés par l'exécution précédente, dans l'ordre d'écriture
+        TreeMap<Integer, Path> existing = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    existing.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    System.err.println("Fichier WAL ignoré: " + name);
+                }
+            }
+        }
+        this.recoveredSegments = new ArrayList<>(existing.values());
+        this.nextSegmentId = existing.isEmpty() ? 1 : existing.lastKey() + 1;
+
+        this.segment = openSegment();
+        this.current = newBatch(this.groupCommitBytes);
+        this.committer = new Thread(this::commitLoop, "LogServer-WAL");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private Segment openSegment() throws IOException {
+        Segment opened = new Segment(nextSegmentId++);
+        segments.put(opened.id, opened);
+        return opened;
+    }
+
+    /**
+     * Journalise une entrée (retour immédiat, écriture par le thread de commit)
+     * @return numéro d'ajout, à passer à whenDurable()
+     * @throws IllegalStateException si le journal est fermé ou en échec
+     */
+    public long append(LogEntry entry) {
+        lock.lock();
+        try {
+            if (failed || !running) {
+                throw new IllegalStateException("WAL indisponible");
+            }
+            ByteBuffer record = serializer.serialize(entry);
+            int recordLength = record.remaining();
+            int needed = RECORD_HEADER_BYTES + recordLength;
+
+            if (segment.appendedBytes > 0 && segment.appendedBytes + needed > segmentBytes) {
+                rotateSegment();
+            }
+            if (current.data.remaining() < needed) {
+                sealCurrentBatch(needed);
+            }
+
+            crc.reset();
+            crc.update(record.duplicate());
+            current.data.putInt(recordLength).putInt((int) crc.getValue()).put(record);
+            boolean firstOfBatch = current.lastSequence == 0;
+            if (firstOfBatch) {
+                batchStartNanos = System.nanoTime();
+            }
+            current.lastSequence = ++appendedSequence;
+            current.segment = segment;
+            segment.appendedBytes += needed;
+            segment.unstored.incrementAndGet();
+            entry.setWalSegment(segment.id);
+
+            if (firstOfBatch || current.data.position() >= groupCommitBytes) {
+                work.signal();
+            }
+            return appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ferme le segment courant (son dernier lot fermera le canal) et en ouvre un nouveau
+     */
+    private void rotateSegment() {
+        current.segment = segment;
+        current.closesSegment = true;
+        segment.sealed = true;
+        ready.add(current);
+        current = newBatch(groupCommitBytes);
+        try {
+            segment = openSegment();
+        } catch (IOException e) {
+            failed = true;
+            throw new IllegalStateException("Rotation WAL impossible: " + e.getMessage(), e);
+        }
+        work.signal();
+    }
+
+    private void sealCurrentBatch(int needed) {
+        if (current.lastSequence > 0) {
+            ready.add(current);
+            work.signal();
+        }
+        current = newBatch(Math.max(groupCommitBytes, needed));
+    }
+
+    private Batch newBatch(int capacity) {
+        Batch batch = freeBatches.poll();
+        if (batch == null || batch.data.capacity() < capacity) {
+            batch = new Batch(Math.max(capacity, groupCommitBytes * 2));
+        }
+        batch.data.clear();
+        batch.segment = segment;
+        batch.lastSequence = 0;
+        batch.closesSegment = false;
+        return batch;
+    }
+
+    /**
+     * Appelle listener quand l'ajout sequence est sur disque
+     * (immédiatement, dans le thread appelant, s'il l'est déjà)
+     */
+    public void whenDurable(long sequence, CommitListener listener) {
+        lock.lock();
+        try {
+            if (sequence > durableSequence && !failed) {
+                waiters.add(new Waiter(sequence, listener));
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        listener.onCommit(!failed || sequence <= durableSequence);
+    }
+
+    /**
+     * Attend que tous les ajouts précédents soient sur disque
+     * @return false en cas d'échec d'écriture ou de délai expiré
+     */
+    public boolean sync(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            long target = appendedSequence;
+            work.signal();
+            while (durableSequence < target && !failed) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = committed.awaitNanos(remaining);
+            }
+            return durableSequence >= target;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Thread de commit: attend le premier ajout, laisse le lot se remplir
+     * jusqu'à N ms ou M octets, puis écrit et force les lots en attente
+     */
+    private void commitLoop() {
+        List<Batch> toWrite = new ArrayList<>();
+        while (true) {
+            lock.lock();
+            try {
+                while (running && ready.isEmpty() && current.lastSequence == 0) {
+                    work.awaitUninterruptibly();
+                }
+                if (ready.isEmpty() && current.lastSequence == 0) {
+                    return; // Arrêt, plus rien à écrire
+                }
+                while (running && ready.isEmpty() && current.data.position() < groupCommitBytes) {
+                    long remaining = batchStartNanos + groupCommitNanos - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    work.awaitNanos(remaining);
+                }
+                toWrite.addAll(ready);
+                ready.clear();
+                if (current.lastSequence > 0) {
+                    toWrite.add(current);
+                    current = newBatch(groupCommitBytes);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+
+            boolean durable = writeBatches(toWrite);
+            completeCommit(toWrite, durable);
+            toWrite.clear();
+        }
+    }
+
+    /**
+     * Un write par lot, un force() par segment touché
+     */
+    private boolean writeBatches(List<Batch> batches) {
+        try {
+            long bytes = 0;
+            long forceNanos = 0;
+            for (int i = 0; i < batches.size(); i++) {
+                Batch batch = batches.get(i);
+                batch.data.flip();
+                bytes += batch.data.remaining();
+                while (batch.data.hasRemaining()) {
+                    batch.segment.channel.write(batch.data);
+                }
+                boolean lastOfSegment = i == batches.size() - 1 || batches.get(i + 1).segment != batch.segment;
+                if (lastOfSegment) {
+                    long start = System.nanoTime();
+                    batch.segment.channel.force(false);
+                    forceNanos += System.nanoTime() - start;
+                }
+                if (batch.closesSegment) {
+                    batch.segment.channel.close();
+                    batch.segment.written = true;
+                    batch.segment.deleteIfReclaimable();
+                }
+            }
+            totalBytes += bytes;
+            totalCommits++;
+            totalForceNanos += forceNanos;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Erreur écriture WAL: " + e.getMessage());
+            failed = true;
+            return false;
+        }
+    }
+
+    private void completeCommit(List<Batch> batches, boolean durable) {
+        List<Waiter> done = new ArrayList<>();
+        lock.lock();
+        try {
+            long lastSequence = 0;
+            for (Batch batch : batches) {
+                lastSequence = Math.max(lastSequence, batch.lastSequence);
+                if (freeBatches.size() < 4) {
+                    freeBatches.add(batch);
+                }
+            }
+            if (durable) {
+                totalRecords += lastSequence - Math.min(lastSequence, durableSequence);
+                durableSequence = Math.max(durableSequence, lastSequence);
+            }
+            for (int i = waiters.size() - 1; i >= 0; i--) {
+                Waiter waiter = waiters.get(i);
+                if (!durable || waiter.sequence <= durableSequence) {
+                    done.add(waiter);
+                    waiters.remove(i);
+                }
+            }
+            committed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (int i = done.size() - 1; i >= 0; i--) {
+            done.get(i).listener.onCommit(durable);
+        }
+    }
+
+    /**
+     * Signale des entrées stockées: un segment fermé dont toutes les entrées
+     * sont stockées est supprimé
+     */
+    public void markStored(List<LogEntry> entries) {
+        for (LogEntry entry : entries) {
+            markStored(entry);
+        }
+    }
+
+    /**
+     * Signale une entrée stockée ou abandonnée (rejet du buffer)
+     */
+    public void markStored(LogEntry entry) {
+        int id = entry.getWalSegment();
+        if (id < 0) {
+            return;
+        }
+        entry.setWalSegment(-1); // Compté une seule fois
+        Segment stored = segments.get(id);
+        if (stored != null && stored.unstored.decrementAndGet() <= 0) {
+            stored.deleteIfReclaimable();
+        }
+    }
+
+    /**
+     * Relit les segments de l'exécution précédente dans l'ordre d'écriture;
+     * chaque entrée est confiée à consumer (qui la journalise à nouveau),
+     * puis les anciens segments sont supprimés une fois ces ajouts sur disque
+     * @return nombre d'entrées rejouées
+     */
+    public long replay(Consumer<LogEntry> consumer) throws IOException, InterruptedException {
+        LogEntrySerializer reader = new LogEntrySerializer();
+        CRC32C checksum = new CRC32C();
+        long replayed = 0;
+        for (Path path : recoveredSegments) {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+            while (data.remaining() >= RECORD_HEADER_BYTES) {
+                int recordLength = data.getInt();
+                int expectedCrc = data.getInt();
+                if (recordLength <= 0 || recordLength > data.remaining()) {
+                    break; // Fin incomplète (arrêt brutal pendant l'écriture)
+                }
+                ByteBuffer record = data.slice(data.position(), recordLength);
+                checksum.reset();
+                checksum.update(record.duplicate());
+                if ((int) checksum.getValue() != expectedCrc) {
+                    System.err.println("WAL: enregistrement corrompu dans " + path.getFileName() + ", fin du segment ignorée");
+                    break;
+                }
+                data.position(data.position() + recordLength);
+                consumer.accept(reader.deserialize(record));
+                replayed++;
+            }
+        }
+
+        if (!recoveredSegments.isEmpty()) {
+            if (!sync(30, TimeUnit.SECONDS)) {
+                throw new IOException("WAL: entrées rejouées non écrites, anciens segments conservés");
+            }
+            for (Path path : recoveredSegments) {
+                Files.deleteIfExists(path);
+            }
+            recoveredSegments.clear();
+        }
+        return replayed;
+    }
+
+    public boolean isFailed() { return failed; }
+    public long getDurableSequence() { return durableSequence; }
+    public long getTotalRecords() { return totalRecords; }
+    public long getTotalCommits() { return totalCommits; }
+    public int getSegmentCount() { return segments.size(); }
+
+    public String getStats() {
+        long commits = totalCommits;
+        return String.format(
+            "WAL Stats - Records: %d, Commits: %d, Avg/Commit: %.1f, Bytes: %d, Avg force: %.2fms, Segments: %d%s",
+            totalRecords, commits, commits > 0 ? (double) totalRecords / commits : 0,
+            totalBytes, commits > 0 ? totalForceNanos / 1e6 / commits : 0,
+            segments.size(), failed ? ", FAILED" : ""
+        );
+    }
+
+    /**
+     * Écrit les ajouts en attente puis arrête le thread de commit;
+     * les segments non entièrement stockés restent pour le prochain replay
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+            work.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            committer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Segment open : segments.values()) {
+            if (open.channel.isOpen()) {
+                open.channel.close();
+            }
+            open.sealed = true;
+            open.written = true;
+            open.deleteIfReclaimable();
+        }
+    }
+}
@@ -3,16 +3,54 @@ package com.univ.logserver;
 import org.junit.jupiter.api.*;
 
 import com.univ.logserver.buffer.CircularBuffer;
+import com.univ.logserver.buffer.LockFreeRingBuffer;
+import com.univ.logserver.buffer.LogBuffer;
+import com.univ.logserver.buffer.ShardedLogBuffer;
+import com.univ.logserver.buffer.SpillFile;
 import com.univ.logserver.client.LogClient;
+import com.univ.logserver.config.ServerConfig;
 import com.univ.logserver.model.LogEntry;
+import com.univ.logserver.model.LogEntrySerializer;
 import com.univ.logserver.model.LogLevel;
+import com.univ.logserver.model.Metadata;
+import com.univ.logserver.model.TimeOrderedIdGenerator;
+import com.univ.logserver.model.TimestampFormatter;
+import com.univ.logserver.processor.BinaryLogCodec;
+import com.univ.logserver.processor.KeywordClassifier;
 import com.univ.logserver.processor.LogParser;
+import com.univ.logserver.server.ClientSession;
 import com.univ.logserver.server.LogServer;
+import com.univ.logserver.storage.BlockCodec;
+import com.univ.logserver.storage.BlockHeader;
+import com.univ.logserver.storage.BlockSegmentReader;
+import com.univ.logserver.storage.DurabilityPolicy;
 import com.univ.logserver.storage.FileLogStorage;
+import com.univ.logserver.storage.MetadataBloomFilter;
+import com.univ.logserver.storage.TermIndex;
+import com.univ.logserver.storage.TimeIndex;
+import com.univ.logserver.storage.WriteAheadLog;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -82,6 +120,229 @@ public class LogServerTest {
         assertTrue(formatted.contains("TestApp"), "Le format doit contenir l'application");
     }
     
+    /**
+     * Test des identifiants ordonnés: unicité multi-thread, ordre, décodage et rendu
+     */
+    @Test
+    @DisplayName("Test TimeOrderedIdGenerator - Unicité et ordre")
+    void testTimeOrderedIds() throws InterruptedException {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(42);
+        int threadCount = 8;
+        int idsPerThread = 50000;
+        long[][] generated = new long[threadCount][idsPerThread];
+        CountDownLatch latch = new CountDownLatch(threadCount);
+        
+        long before = System.currentTimeMillis();
+        long start = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+            long[] target = generated[t];
+            new Thread(() -> {
+                for (int i = 0; i < idsPerThread; i++) {
+                    target[i] = generator.nextId();
+                }
+                latch.countDown();
+            }).start();
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        long perId = (System.nanoTime() - start) / (threadCount * idsPerThread);
+        
+        Set<Long> ids = new HashSet<>();
+        for (long[] threadIds : generated) {
+            for (int i = 0; i < idsPerThread; i++) {
+                assertTrue(i == 0 || threadIds[i] > threadIds[i - 1], "Les identifiants d'un thread doivent être croissants");
+                ids.add(threadIds[i]);
+            }
+        }
+        assertEquals(threadCount * idsPerThread, ids.size(), "Les identifiants doivent être uniques");
+        
+        long id = generator.nextId();
+        assertEquals(42, TimeOrderedIdGenerator.nodeOf(id), "Le nœud doit être encodé");
+        assertTrue(TimeOrderedIdGenerator.timestampOf(id) >= before, "L'horodatage doit être décodable");
+        assertTrue(id >= TimeOrderedIdGenerator.lowerBound(before), "La borne inférieure doit précéder l'identifiant");
+        
+        // Rendu texte: 16 caractères hexadécimaux, ordre lexicographique = ordre numérique
+        LogEntry first = new LogEntry(LogLevel.INFO, "premier", "App");
+        LogEntry second = new LogEntry(LogLevel.INFO, "second", "App");
+        assertEquals(16, first.getId().length());
+        assertEquals(first.getIdValue(), Long.parseUnsignedLong(first.getId(), 16));
+        assertSame(first.getId(), first.getId(), "Le rendu doit être mis en cache");
+        assertTrue(first.getId().compareTo(second.getId()) < 0, "Les identifiants texte doivent être triables");
+        
+        assertThrows(IllegalArgumentException.class, () -> new TimeOrderedIdGenerator(1024),
+                    "Un nœud hors plage doit être refusé");
+        
+        start = System.nanoTime();
+        for (int i = 0; i < 100000; i++) {
+            UUID.randomUUID().toString();
+        }
+        long perUuid = (System.nanoTime() - start) / 100000;
+        System.out.println(String.format("Identifiants - Ordonnés: %d ns/id (%d threads) - UUID: %d ns/id (1 thread)",
+            perId, threadCount, perUuid));
+    }
+    
+    /**
+     * Test des horodatages epoch µs: formatage en cache, heure client séparée
+     */
+    @Test
+    @DisplayName("Test Horodatages - Formatage et heure de l'événement")
+    void testTimestamps() throws IOException {
+        DateTimeFormatter reference = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+        long[] samples = {0L, 1_700_000_000_123_456L, 1_711_846_799_999_000L, 1_711_846_800_000_000L,
+                          1_729_994_399_500_000L, 4_102_444_800_001_000L};
+        for (long micros : samples) {
+            assertEquals(TimestampFormatter.toLocalDateTime(micros).format(reference), TimestampFormatter.format(micros),
+                        "Formatage de " + micros);
+        }
+        
+        LogEntry entry = new LogEntry(LogLevel.INFO, "Horodatage", "App");
+        long nowMicros = System.currentTimeMillis() * 1000;
+        assertTrue(Math.abs(entry.getTimestampMicros() - nowMicros) < 5_000_000, "Horodatage en µs epoch");
+        assertEquals(entry.getTimestamp().format(reference), TimestampFormatter.format(entry.getTimestampMicros()),
+                    "getTimestamp() doit rester cohérent");
+        assertFalse(entry.hasEventTime(), "Sans heure client, l'événement est daté de la réception");
+        assertTrue(entry.toFormattedString().startsWith("[" + entry.getTimestamp().format(reference) + "] INFO [App]"));
+        
+        // Heure client: texte et binaire
+        LogEntry parsed = LogParser.parseLogMessage("WARN|App|host|Retard|event_time=1700000000123,k=v");
+        assertEquals(1_700_000_000_123_000L, parsed.getEventTimeMicros());
+        assertTrue(parsed.hasEventTime());
+        assertNull(parsed.getMetadata().get("event_time"), "event_time ne doit pas dupliquer l'horodatage");
+        assertEquals("v", parsed.getMetadata().get("k"));
+        assertEquals("pas_un_nombre", LogParser.parseLogMessage("WARN|App|host|m|event_time=pas_un_nombre")
+                    .getMetadata().get("event_time"), "Une valeur invalide reste une métadonnée");
+        
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        new BinaryLogCodec.Encoder().writeLog(wire, LogLevel.WARN, "App", "host", "Retard", "event_time=1700000000123,k=v");
+        BinaryLogCodec.Decoder decoder = new BinaryLogCodec.Decoder();
+        ByteBuffer frames = ByteBuffer.wrap(wire.toByteArray());
+        LogEntry decoded = null;
+        while (frames.hasRemaining()) {
+            int length = BinaryLogCodec.readVarint(frames);
+            ByteBuffer frame = frames.slice(frames.position(), length);
+            frames.position(frames.position() + length);
+            if (frame.get() == BinaryLogCodec.FRAME_DEFINE) {
+                decoder.define(frame);
+            } else {
+                decoded = decoder.decodeLog(frame, length);
+            }
+        }
+        assertNotNull(decoded);
+        assertEquals(1_700_000_000_123_000L, decoded.getEventTimeMicros(), "Heure client transmise en binaire");
+        assertEquals("v", decoded.getMetadata().get("k"));
+        
+        // Coût: préfixe par seconde en cache vs DateTimeFormatter
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        StringBuilder sb = new StringBuilder(64);
+        long base = entry.getTimestampMicros();
+        int iterations = 1_000_000;
+        long[] cached = new long[2];
+        long[] formatter = new long[2];
+        for (int round = 0; round < 3; round++) {
+            long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sb.setLength(0);
+                TimestampFormatter.appendTo(sb, base + (i % 1000) * 1000L);
+            }
+            cached[0] = (System.nanoTime() - start) / iterations;
+            cached[1] = (threads.getThreadAllocatedBytes(Thread.currentThread().threadId()) - allocated) / iterations;
+            
+            allocated = threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+            start = System.nanoTime();
+            for (int i = 0; i < iterations / 10; i++) {
+                sb.setLength(0);
+                sb.append(TimestampFormatter.toLocalDateTime(base + (i % 1000) * 1000L).format(reference));
+            }
+            formatter[0] = (System.nanoTime() - start) / (iterations / 10);
+            formatter[1] = (threads.getThreadAllocatedBytes(Thread.currentThread().threadId()) - allocated) / (iterations / 10);
+        }
+        System.out.println(String.format(
+            "Horodatage - Préfixe en cache: %d ns/op, %d octets/op - DateTimeFormatter: %d ns/op, %d octets/op",
+            cached[0], cached[1], formatter[0], formatter[1]));
+        assertTrue(cached[1] < 8, "Le formatage dans la même seconde ne doit pas allouer");
+    }
+    
+    /**
+     * Test des métadonnées compactes: clés internées, partage par connexion, lecture sans copie
+     */
+    @Test
+    @DisplayName("Test Metadata - Stockage compact et partagé")
+    void testCompactMetadata() {
+        Metadata connection = new Metadata(2);
+        connection.put("client_ip", "10.0.0.1");
+        connection.put("client_id", "10.0.0.1:5000-1");
+        
+        LogEntry first = new LogEntry(LogLevel.INFO, "premier", "App");
+        LogEntry second = new LogEntry(LogLevel.INFO, "second", "App");
+        first.setSharedMetadata(connection);
+        second.setSharedMetadata(connection);
+        assertThrows(IllegalStateException.class, () -> connection.put("autre", "x"),
+                    "Les métadonnées partagées doivent être gelées");
+        
+        for (int i = 0; i < 12; i++) { // Au-delà de la capacité initiale
+            first.addMetadata(new String("cle" + i), "v" + i);
+        }
+        first.addMetadata("cle3", "remplacée");
+        first.addMetadata("client_ip", "masquée");
+        second.addMetadata(new String("cle0"), "w0");
+        
+        assertEquals("remplacée", first.getMetadataValue("cle3"));
+        assertEquals("masquée", first.getMetadataValue("client_ip"), "Une valeur propre masque la valeur partagée");
+        assertEquals("10.0.0.1", second.getMetadataValue("client_ip"));
+        assertEquals("10.0.0.1:5000-1", first.getMetadataValue("client_id"));
+        assertNull(first.getMetadataValue("absente"));
+        assertEquals(14, first.getMetadataCount());
+        assertEquals(14, first.getMetadata().size(), "getMetadata() doit inclure les métadonnées partagées");
+        
+        List<String> firstKeys = new ArrayList<>();
+        first.forEachMetadata((key, value) -> firstKeys.add(key));
+        List<String> secondKeys = new ArrayList<>();
+        second.forEachMetadata((key, value) -> secondKeys.add(key));
+        assertEquals(14, firstKeys.size());
+        assertSame(firstKeys.get(firstKeys.indexOf("cle0")), secondKeys.get(secondKeys.indexOf("cle0")),
+                  "Les clés doivent être internées entre entrées");
+        assertTrue(first.toJson().contains("\"client_ip\":\"masquée\""));
+        
+        // Coût: 10 métadonnées puis lecture, HashMap copiée vs stockage compact
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String[] keys = {"client_ip", "client_id", "server_time", "category", "raw_length",
+                         "parsed_at", "processor_thread", "processed_at", "severity", "component"};
+        int iterations = 200000;
+        long[] hashMap = new long[1];
+        long[] compact = new long[1];
+        int[] sink = new int[1];
+        for (int round = 0; round < 3; round++) {
+            long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+            for (int i = 0; i < iterations; i++) {
+                Map<String, String> map = new HashMap<>();
+                for (String key : keys) {
+                    map.put(key, key);
+                }
+                for (Map.Entry<String, String> e : new HashMap<>(map).entrySet()) {
+                    sink[0] += e.getValue().length();
+                }
+            }
+            hashMap[0] = (threads.getThreadAllocatedBytes(Thread.currentThread().threadId()) - allocated) / iterations;
+            
+            allocated = threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+            for (int i = 0; i < iterations; i++) {
+                Metadata metadata = new Metadata();
+                for (String key : keys) {
+                    metadata.put(key, key);
+                }
+                for (int k = 0; k < metadata.size(); k++) {
+                    sink[0] += metadata.valueAt(k).length();
+                }
+            }
+            compact[0] = (threads.getThreadAllocatedBytes(Thread.currentThread().threadId()) - allocated) / iterations;
+        }
+        System.out.println(String.format("Métadonnées (10 clés, écriture + lecture) - HashMap copiée: %d octets - Compact: %d octets (%d)",
+            hashMap[0], compact[0], sink[0] & 1));
+        assertTrue(compact[0] < hashMap[0], "Le stockage compact doit allouer moins que la HashMap copiée");
+    }
+    
     /**
      * Test du parser de logs avec différents formats
      */
@@ -121,6 +382,172 @@ public class LogServerTest {
         assertFalse(LogParser.isValidLogMessage(null), "Un message null ne doit pas passer");
     }
     
+    /**
+     * Test du parser en une passe: résultat identique à l'ancien parser split/regex,
+     * temps et octets alloués par message comparés
+     */
+    @Test
+    @DisplayName("Test LogParser - Parser en une passe vs split")
+    void testLogParserFastPath() {
+        String[] samples = {
+            "INFO|MyApp|server01|User logged in|user_id=123,session=abc",
+            " error | App | host | Message avec espaces | k = v , k2=v2 ",
+            "|||invalid|||",
+            "WARN|App|host|message|",
+            "WARN|App|host|message",
+            "DEBUG|App|host|msg|a=1|b=2,c=3",
+            "TRACE|App|host|msg|=vide,k=,sans_egal,,x=y=z",
+            "fatal|App|host|msg| ",
+            "ERROR Simple error message",
+            "ERROR\t x",
+            "pas_de_separateur",
+            " INFO message après espace",
+            "info|App|host",
+            "Inconnu|App|host|msg|k=v",
+        };
+        for (String sample : samples) {
+            assertSameEntry(legacyParse(sample), LogParser.parseLogMessage(sample), sample);
+        }
+        assertNull(LogParser.parseLogMessage(" \t "), "Un message blanc doit retourner null");
+        
+        // Coût par message: ancien parser vs parser en une passe
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String line = "INFO|OrderService|web-03|Commande validée pour le client 4521|request_id=req-9f2,user_id=4521,session=s-77";
+        int iterations = 200000;
+        long[] legacy = new long[2];
+        long[] fast = new long[2];
+        for (int round = 0; round < 3; round++) { // Deux tours de chauffe, mesure au dernier
+            long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                legacyParse(line);
+            }
+            legacy[0] = (System.nanoTime() - start) / iterations;
+            legacy[1] = (threads.getThreadAllocatedBytes(Thread.currentThread().threadId()) - allocated) / iterations;
+            
+            allocated = threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                LogParser.parseLogMessage(line);
+            }
+            fast[0] = (System.nanoTime() - start) / iterations;
+            fast[1] = (threads.getThreadAllocatedBytes(Thread.currentThread().threadId()) - allocated) / iterations;
+        }
+        
+        System.out.println(String.format(
+            "Parser - Ancien: %d ns/op, %d octets/op - Une passe: %d ns/op, %d octets/op",
+            legacy[0], legacy[1], fast[0], fast[1]));
+        assertTrue(fast[1] < legacy[1], "Le parser en une passe doit allouer moins que l'ancien");
+    }
+    
+    private static void assertSameEntry(LogEntry expected, LogEntry actual, String sample) {
+        assertEquals(expected.getLevel(), actual.getLevel(), "Niveau: " + sample);
+        assertEquals(expected.getApplicationName(), actual.getApplicationName(), "Application: " + sample);
+        assertEquals(expected.getHostname(), actual.getHostname(), "Hostname: " + sample);
+        assertEquals(expected.getMessage(), actual.getMessage(), "Message: " + sample);
+        Map<String, String> expectedMetadata = expected.getMetadata();
+        Map<String, String> actualMetadata = actual.getMetadata();
+        expectedMetadata.remove("parsed_at");
+        actualMetadata.remove("parsed_at");
+        assertEquals(expectedMetadata, actualMetadata, "Métadonnées: " + sample);
+    }
+    
+    /**
+     * Ancienne implémentation (split/regex), référence de comportement et de coût
+     */
+    private static LogEntry legacyParse(String rawMessage) {
+        String[] parts = rawMessage.split("\\|", 5);
+        if (parts.length < 4) {
+            String[] simpleParts = rawMessage.split(" ", 2);
+            if (simpleParts.length >= 2) {
+                LogLevel level;
+                try {
+                    level = LogLevel.valueOf(simpleParts[0].toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    level = LogLevel.INFO;
+                }
+                return new LogEntry(level, simpleParts[1], "unknown");
+            }
+            return new LogEntry(LogLevel.INFO, rawMessage, "unknown");
+        }
+        LogLevel level;
+        try {
+            level = LogLevel.valueOf(parts[0].trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            level = LogLevel.INFO;
+        }
+        Map<String, String> metadata = new HashMap<>();
+        if (parts.length > 4 && !parts[4].trim().isEmpty()) {
+            for (String pair : parts[4].split(",")) {
+                String[] keyValue = pair.split("=", 2);
+                if (keyValue.length == 2) {
+                    metadata.put(keyValue[0].trim(), keyValue[1].trim());
+                }
+            }
+        }
+        LogEntry entry = new LogEntry(level, parts[3].trim(), parts[1].trim(), parts[2].trim(), metadata);
+        entry.addMetadata("raw_length", String.valueOf(rawMessage.length()));
+        entry.addMetadata("parsed_at", String.valueOf(System.currentTimeMillis()));
+        return entry;
+    }
+    
+    /**
+     * Test du classifieur Aho-Corasick: mêmes résultats que les chaînes de contains()
+     */
+    @Test
+    @DisplayName("Test KeywordClassifier - Règles ordonnées en une passe")
+    void testKeywordClassifier() {
+        KeywordClassifier components = KeywordClassifier.parse(
+            "database:sql,database,query;web:http,request,response;memory:memory,gc,heap;security:security,auth,login", null);
+        String[] messages = {
+            "SELECT failed: SQL timeout",
+            "HTTP request to /login",           // web avant security (ordre des règles)
+            "Heap usage high after GC",
+            "User LOGIN ok",
+            "Nothing to see",
+            "authentication required for query", // database avant security
+            "logcat output",                    // gc au milieu d'un mot, comme contains()
+            "",
+        };
+        for (String message : messages) {
+            String lower = message.toLowerCase();
+            String expected = null;
+            if (lower.contains("sql") || lower.contains("database") || lower.contains("query")) {
+                expected = "database";
+            } else if (lower.contains("http") || lower.contains("request") || lower.contains("response")) {
+                expected = "web";
+            } else if (lower.contains("memory") || lower.contains("gc") || lower.contains("heap")) {
+                expected = "memory";
+            } else if (lower.contains("security") || lower.contains("auth") || lower.contains("login")) {
+                expected = "security";
+            }
+            assertEquals(expected, components.classify(message), "Composant: " + message);
+        }
+        
+        // Mots-clés imbriqués (liens d'échec) et caractères non ASCII
+        KeywordClassifier nested = KeywordClassifier.parse("a:hers;b:she,he;c:Démarrage", "aucun");
+        assertEquals("a", nested.classify("USHERS"), "hers doit être trouvé malgré she/he");
+        assertEquals("b", nested.classify("ushe"));
+        assertEquals("c", nested.classify("DÉMARRAGE du service"));
+        assertEquals("aucun", nested.classify("rien"));
+        
+        // Catégorie par défaut de l'enrichissement
+        LogEntry entry = new LogEntry(LogLevel.INFO, "Service startup complete", "App");
+        LogParser.enrichLogEntry(entry, "127.0.0.1");
+        assertEquals("lifecycle", entry.getMetadata().get("category"));
+        
+        // Beaucoup de règles: toujours une seule passe sur le message
+        StringBuilder spec = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            spec.append("tag").append(i).append(":motcle").append(i).append("x;");
+        }
+        KeywordClassifier large = KeywordClassifier.parse(spec.toString(), null);
+        assertEquals(500, large.getRuleCount());
+        assertEquals("tag321", large.classify("erreur avec MOTCLE321X dans le message"));
+        assertNull(large.classify("motcle321 sans suffixe"));
+    }
+    
     /**
      * Test du buffer circulaire avec back-pressure
      */
@@ -162,6 +589,366 @@ public class LogServerTest {
         assertTrue(buffer.getCapacityUsage() >= 0, "L'utilisation doit être positive");
     }
     
+    /**
+     * Test de l'éviction par priorité: plus ancien DEBUG/TRACE d'abord, ordre d'arrivée conservé
+     */
+    @Test
+    @DisplayName("Test CircularBuffer - Éviction par priorité et ordre d'arrivée")
+    void testCircularBufferPriorityEviction() {
+        CircularBuffer buffer = new CircularBuffer(4);
+        buffer.add(new LogEntry(LogLevel.ERROR, "E1", "App"));
+        buffer.add(new LogEntry(LogLevel.DEBUG, "D1", "App"));
+        buffer.add(new LogEntry(LogLevel.TRACE, "T1", "App"));
+        buffer.add(new LogEntry(LogLevel.INFO, "I1", "App"));
+        
+        // Plein: D1 (plus ancien DEBUG/TRACE) est évincé
+        assertTrue(buffer.add(new LogEntry(LogLevel.WARN, "W1", "App")), "L'ajout doit réussir");
+        // Puis T1
+        assertTrue(buffer.add(new LogEntry(LogLevel.ERROR, "E2", "App")), "L'ajout doit réussir");
+        // Plus de faible priorité: le plus ancien (E1) est évincé
+        assertTrue(buffer.add(new LogEntry(LogLevel.FATAL, "F1", "App")), "L'ajout doit réussir");
+        assertEquals(3, buffer.getTotalDropped(), "Trois entrées doivent avoir été évincées");
+        
+        String[] expected = { "I1", "W1", "E2", "F1" };
+        for (String message : expected) {
+            assertEquals(message, buffer.poll().getMessage(), "Les entrées doivent sortir dans l'ordre d'arrivée");
+        }
+        assertNull(buffer.poll(), "Le buffer doit être vide");
+    }
+    
+    /**
+     * Test du buffer sans verrou (MPMC)
+     */
+    @Test
+    @DisplayName("Test LockFreeRingBuffer - FIFO, back-pressure et concurrence")
+    void testLockFreeRingBuffer() throws InterruptedException {
+        LockFreeRingBuffer buffer = new LockFreeRingBuffer(5);
+        assertEquals(8, buffer.getCapacity(), "La capacité doit être arrondie à une puissance de deux");
+        
+        buffer.add(new LogEntry(LogLevel.INFO, "Message 1", "App"));
+        buffer.add(new LogEntry(LogLevel.ERROR, "Message 2", "App"));
+        assertEquals("Message 1", buffer.poll().getMessage(), "L'ordre FIFO doit être respecté");
+        assertEquals("Message 2", buffer.take().getMessage(), "take() doit retourner l'entrée suivante");
+        assertNull(buffer.poll(), "Le buffer doit être vide");
+        
+        // Remplir: les DEBUG excédentaires sont rejetés, les ERROR évincent les plus anciens
+        for (int i = 0; i < 10; i++) {
+            buffer.add(new LogEntry(LogLevel.DEBUG, "Debug " + i, "App"));
+        }
+        assertTrue(buffer.isBackPressureActive(), "Le back-pressure doit être actif");
+        assertEquals(2, buffer.getTotalDropped(), "Deux DEBUG doivent être rejetés");
+        assertTrue(buffer.add(new LogEntry(LogLevel.ERROR, "Critique", "App")), "Un ERROR doit toujours être accepté");
+        assertEquals(8, buffer.size(), "Le buffer doit rester à capacité");
+        assertNotNull(buffer.getStats(), "Les stats ne doivent pas être null");
+
+        // Plus ancienne entrée plus prioritaire: la nouvelle est rejetée, pas évincée à sa place
+        List<LogEntry> evicted = new ArrayList<>();
+        LockFreeRingBuffer errors = new LockFreeRingBuffer(2, 0, evicted::add);
+        errors.add(new LogEntry(LogLevel.ERROR, "Erreur 1", "App"));
+        errors.add(new LogEntry(LogLevel.ERROR, "Erreur 2", "App"));
+        assertFalse(errors.add(new LogEntry(LogLevel.INFO, "Info", "App")), "Un INFO ne doit pas évincer un ERROR");
+        assertTrue(evicted.isEmpty(), "Aucune éviction pour une entrée moins prioritaire");
+        assertEquals("Erreur 1", errors.poll().getMessage(), "Les ERROR doivent être conservés");
+        errors.add(new LogEntry(LogLevel.INFO, "Info", "App"));
+        assertTrue(errors.add(new LogEntry(LogLevel.FATAL, "Fatal", "App")), "Un FATAL évince un ERROR plus ancien");
+        assertEquals("Erreur 2", evicted.get(0).getMessage(), "La plus ancienne entrée doit être évincée");
+
+        // Entrée plus grosse que le budget: rejetée sans vider l'anneau, acceptée seule
+        evicted.clear();
+        LockFreeRingBuffer budget = new LockFreeRingBuffer(16, 2000, evicted::add);
+        budget.add(new LogEntry(LogLevel.INFO, "Petit", "App"));
+        LogEntry large = new LogEntry(LogLevel.ERROR, "x".repeat(5000), "App");
+        assertFalse(budget.add(large), "Une entrée hors budget doit être rejetée");
+        assertEquals(1, budget.size(), "Les entrées en attente doivent être conservées");
+        assertTrue(evicted.isEmpty(), "Aucune éviction pour une entrée hors budget");
+        budget.poll();
+        assertTrue(budget.add(large), "Une entrée hors budget est acceptée dans un anneau vide");
+
+        // Concurrence: 4 producteurs, 4 consommateurs, aucune perte ni doublon
+        LockFreeRingBuffer shared = new LockFreeRingBuffer(100000);
+        int producers = 4;
+        int perProducer = 10000;
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        CountDownLatch produced = new CountDownLatch(producers);
+        CountDownLatch consumed = new CountDownLatch(producers * perProducer);
+        
+        for (int c = 0; c < 4; c++) {
+            Thread consumer = new Thread(() -> {
+                try {
+                    while (true) {
+                        LogEntry entry = shared.take();
+                        assertTrue(seen.add(entry.getMessage()), "Aucune entrée ne doit être livrée deux fois");
+                        consumed.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            consumer.setDaemon(true);
+            consumer.start();
+        }
+        for (int p = 0; p < producers; p++) {
+            final int producerId = p;
+            new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    shared.add(new LogEntry(LogLevel.INFO, producerId + "-" + i, "App"));
+                }
+                produced.countDown();
+            }).start();
+        }
+        
+        assertTrue(produced.await(10, TimeUnit.SECONDS), "Les producteurs doivent terminer");
+        assertTrue(consumed.await(10, TimeUnit.SECONDS), "Toutes les entrées doivent être consommées");
+        assertEquals(producers * perProducer, seen.size(), "Aucune entrée ne doit être perdue");
+        assertEquals(0, shared.getTotalDropped(), "Aucune entrée ne doit être supprimée");
+    }
+    
+    /**
+     * Test du drain par batch bloquant (sans poll + sleep)
+     */
+    @Test
+    @DisplayName("Test drainTo - Batch bloquant avec délai")
+    void testDrainTo() throws InterruptedException {
+        for (LogBuffer buffer : new LogBuffer[] { new CircularBuffer(100), new LockFreeRingBuffer(100) }) {
+            List<LogEntry> batch = new ArrayList<>();
+            
+            // Buffer vide: retour après expiration du délai
+            long start = System.nanoTime();
+            assertEquals(0, buffer.drainTo(batch, 10, 50, TimeUnit.MILLISECONDS), "Aucune entrée attendue");
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40), "Le drain doit attendre le délai");
+            
+            // Batch limité à maxEntries, ordre FIFO
+            for (int i = 0; i < 25; i++) {
+                buffer.add(new LogEntry(LogLevel.INFO, "Drain " + i, "App"));
+            }
+            assertEquals(10, buffer.drainTo(batch, 10, 0, TimeUnit.MILLISECONDS), "Le batch doit être plein");
+            assertEquals("Drain 0", batch.get(0).getMessage(), "L'ordre FIFO doit être respecté");
+            assertEquals(15, buffer.size(), "15 entrées doivent rester");
+            batch.clear();
+            buffer.drainTo(batch, 100, 0, TimeUnit.MILLISECONDS);
+            
+            // Consommateur en attente réveillé dès l'arrivée d'une entrée
+            Thread producer = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                buffer.add(new LogEntry(LogLevel.ERROR, "Réveil", "App"));
+            });
+            producer.start();
+            batch.clear();
+            start = System.nanoTime();
+            assertEquals(1, buffer.drainTo(batch, 10, 5, TimeUnit.SECONDS), "Le consommateur doit être réveillé");
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "Le réveil doit être immédiat");
+            producer.join();
+            
+            // Producteur en attente de place réveillé par le consommateur, sans éviction
+            while (!buffer.isFull()) {
+                buffer.add(new LogEntry(LogLevel.ERROR, "Plein", "App"));
+            }
+            int dropped = buffer.getTotalDropped();
+            Thread consumer = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                buffer.poll();
+            });
+            consumer.start();
+            start = System.nanoTime();
+            assertTrue(buffer.add(new LogEntry(LogLevel.ERROR, "Attente", "App"), 5, TimeUnit.SECONDS), "L'entrée doit être ajoutée");
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "Le réveil doit être immédiat");
+            assertEquals(dropped, buffer.getTotalDropped(), "Aucune entrée ne doit être évincée");
+            consumer.join();
+        }
+    }
+    
+    /**
+     * Test du buffer partitionné: hash par application, vol de travail, stats agrégées
+     */
+    @Test
+    @DisplayName("Test ShardedLogBuffer - Partition et vol de travail")
+    void testShardedLogBuffer() throws InterruptedException {
+        ShardedLogBuffer buffer = new ShardedLogBuffer(4, 100, CircularBuffer::new);
+        for (int i = 0; i < 40; i++) {
+            buffer.add(new LogEntry(LogLevel.INFO, "Sharded " + i, "ShardApp" + (i % 8)));
+        }
+        assertEquals(40, buffer.size(), "La taille doit être agrégée sur les shards");
+        assertEquals(40, buffer.getTotalAdded(), "Les ajouts doivent être agrégés");
+        assertTrue(buffer.getStats().contains("Shards: 4"), "Les stats doivent indiquer le nombre de shards");
+        
+        // Un seul consommateur vide tous les shards en volant les autres
+        LogBuffer consumer = buffer.consumer(0);
+        List<LogEntry> drained = new ArrayList<>();
+        while (consumer.drainTo(drained, 100, 10, TimeUnit.MILLISECONDS) > 0) {
+            // Continuer jusqu'à épuisement
+        }
+        assertEquals(40, drained.size(), "Toutes les entrées doivent être récupérées");
+        assertTrue(buffer.isEmpty(), "Le buffer doit être vide");
+        assertTrue(buffer.getTotalStolen() > 0, "Des entrées doivent avoir été volées");
+        
+        // Ordre conservé pour une même application (même shard)
+        int last = -1;
+        for (LogEntry entry : drained) {
+            if (entry.getApplicationName().equals("ShardApp3")) {
+                int index = Integer.parseInt(entry.getMessage().substring("Sharded ".length()));
+                assertTrue(index > last, "L'ordre doit être conservé par application");
+                last = index;
+            }
+        }
+    }
+    
+    /**
+     * Test du budget mémoire: éviction et back-pressure sur les octets estimés
+     */
+    @Test
+    @DisplayName("Test Buffer - Budget mémoire en octets")
+    void testByteBudgetBuffer() throws InterruptedException {
+        String large = "x".repeat(4000);
+        LogEntry sample = new LogEntry(LogLevel.DEBUG, large, "BudgetApp");
+        int entryBytes = sample.estimateRetainedBytes();
+        assertTrue(entryBytes > 4000, "L'estimation doit couvrir le message");
+        assertEquals(entryBytes, sample.estimateRetainedBytes(), "L'estimation doit être stable");
+        
+        for (LogBuffer buffer : new LogBuffer[] {
+                new CircularBuffer(1000, 10L * entryBytes),
+                new LockFreeRingBuffer(1000, 10L * entryBytes) }) {
+            String name = buffer.getClass().getSimpleName();
+            buffer.add(new LogEntry(LogLevel.ERROR, large, "BudgetApp"));
+            for (int i = 0; i < 30; i++) {
+                buffer.add(new LogEntry(LogLevel.DEBUG, large, "BudgetApp"));
+            }
+            // Le nombre d'entrées est loin de la capacité: seul le budget limite
+            assertTrue(buffer.size() <= 10, name + ": le budget doit limiter le nombre d'entrées");
+            assertTrue(buffer.getBytesInFlight() <= 10L * entryBytes, name + ": le budget doit être respecté");
+            assertTrue(buffer.getTotalDropped() > 0, name + ": des entrées doivent avoir été évincées");
+            assertTrue(buffer.isBackPressureActive(), name + ": le back-pressure doit être actif");
+            assertTrue(buffer.getStats().contains("Bytes: "), name + ": les stats doivent indiquer les octets");
+            
+            List<LogEntry> drained = new ArrayList<>();
+            while (buffer.drainTo(drained, 100, 10, TimeUnit.MILLISECONDS) > 0) {
+                // Continuer jusqu'à épuisement
+            }
+            assertEquals(LogLevel.ERROR, drained.get(0).getLevel(), name + ": l'entrée ERROR doit être conservée");
+            assertEquals(0, buffer.getBytesInFlight(), name + ": aucun octet ne doit rester après vidage");
+
+            // Sous 90% d'usage, l'entrée entrante compte aussi dans le budget
+            buffer.add(new LogEntry(LogLevel.DEBUG, "x".repeat(1000), "BudgetApp"));
+            for (int i = 0; i < 6; i++) {
+                buffer.add(new LogEntry(LogLevel.DEBUG, large, "BudgetApp"));
+            }
+            assertTrue(buffer.getBytesInFlight() < 9L * entryBytes, name + ": usage sous le seuil de 90%");
+            buffer.add(new LogEntry(LogLevel.DEBUG, large.repeat(5), "BudgetApp"));
+            assertTrue(buffer.getBytesInFlight() <= 10L * entryBytes,
+                       name + ": une entrée ne doit jamais dépasser le budget: " + buffer.getBytesInFlight());
+            while (buffer.drainTo(drained, 100, 10, TimeUnit.MILLISECONDS) > 0) {
+                // Vidage avant le cas suivant
+            }
+        }
+
+        // Entrée plus grosse que tout le budget: rejetée sans évincer les
+        // entrées en attente, acceptée seule dans un anneau vide
+        CircularBuffer circular = new CircularBuffer(1000, 10L * entryBytes);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(circular.add(new LogEntry(LogLevel.FATAL, "Fatal " + i, "BudgetApp")));
+        }
+        LogEntry oversized = new LogEntry(LogLevel.DEBUG, large.repeat(11), "BudgetApp");
+        assertFalse(circular.add(oversized), "Une entrée plus grosse que le budget doit être rejetée");
+        assertEquals(6, circular.size(), "Les entrées FATAL ne doivent pas être évincées pour elle");
+        List<LogEntry> fatals = new ArrayList<>();
+        circular.drainTo(fatals, 100, 10, TimeUnit.MILLISECONDS);
+        assertTrue(circular.add(oversized), "Seule dans l'anneau vide, l'entrée doit être acceptée");
+        assertEquals(1, circular.size(), "L'entrée seule doit être en attente");
+
+        // Sans budget: limite en nombre seule, octets toujours comptés
+        ShardedLogBuffer sharded = new ShardedLogBuffer(2, 100, CircularBuffer::new);
+        sharded.add(new LogEntry(LogLevel.INFO, "petit", "BudgetApp"));
+        assertTrue(sharded.getBytesInFlight() > 0, "Les octets doivent être agrégés sur les shards");
+    }
+    
+    /**
+     * Test du débordement disque: aucune perte sous le quota, ordre FIFO conservé
+     */
+    @Test
+    @DisplayName("Test CircularBuffer - Débordement disque")
+    void testSpillToDisk() throws IOException, InterruptedException {
+        // Sérialisation: identifiant, horodatages, métadonnées et UTF-8 conservés
+        LogEntry original = new LogEntry(LogLevel.WARN, "Été \uD83D\uDE80 ok", "SpillApp", null, null);
+        original.addMetadata("user_id", "42");
+        original.setEventTimeMicros(original.getTimestampMicros() - 5_000);
+        LogEntrySerializer serializer = new LogEntrySerializer();
+        LogEntry restored = serializer.deserialize(serializer.serialize(original));
+        assertEquals(original.getId(), restored.getId(), "L'identifiant doit être conservé");
+        assertEquals(original.getTimestampMicros(), restored.getTimestampMicros(), "La réception doit être conservée");
+        assertEquals(original.getEventTimeMicros(), restored.getEventTimeMicros(), "L'événement doit être conservé");
+        assertEquals(original.getMessage(), restored.getMessage(), "Le message UTF-8 doit être conservé");
+        assertNull(restored.getHostname(), "Un hostname null doit rester null");
+        assertEquals("42", restored.getMetadataValue("user_id"), "Les métadonnées doivent être conservées");
+        
+        // Anneau de 10 entrées: les 190 suivantes passent par le disque, sans suppression
+        CircularBuffer buffer = new CircularBuffer(10, 0, new SpillFile(tempDir.resolve("spill-fifo.dat"), 1 << 20));
+        for (int i = 0; i < 200; i++) {
+            LogLevel level = i % 3 == 0 ? LogLevel.DEBUG : LogLevel.ERROR;
+            assertTrue(buffer.add(new LogEntry(level, "Spill " + i, "SpillApp")), "Aucune entrée ne doit être rejetée");
+        }
+        assertEquals(0, buffer.getTotalDropped(), "Aucune suppression sous le quota");
+        assertEquals(10, buffer.size(), "L'anneau doit rester à sa capacité");
+        assertEquals(190, buffer.getSpillDepth(), "Le reste doit être sur disque");
+        assertTrue(buffer.getStats().contains("Spill: 190"), "Les stats doivent indiquer la profondeur");
+        
+        List<LogEntry> drained = new ArrayList<>();
+        while (buffer.drainTo(drained, 32, 10, TimeUnit.MILLISECONDS) > 0) {
+            // Continuer jusqu'à épuisement
+        }
+        assertEquals(200, drained.size(), "Toutes les entrées doivent être récupérées");
+        for (int i = 0; i < 200; i++) {
+            assertEquals("Spill " + i, drained.get(i).getMessage(), "L'ordre d'arrivée doit être conservé");
+        }
+        assertEquals(0, buffer.getSpillDepth(), "Le débordement doit être vide");
+        assertEquals(190, buffer.getTotalUnspilled(), "Les entrées doivent être remontées du disque");
+        assertEquals(0, buffer.getBytesInFlight(), "Aucun octet ne doit rester après vidage");
+        buffer.close();
+        assertFalse(Files.exists(tempDir.resolve("spill-fifo.dat")), "Le fichier doit être supprimé à la fermeture");
+        
+        // Quota atteint: DEBUG rejetés, ERROR conservés en supprimant des DEBUG
+        CircularBuffer small = new CircularBuffer(4, 0, new SpillFile(tempDir.resolve("spill-quota.dat"), 4096));
+        String payload = "p".repeat(300);
+        for (int i = 0; i < 40; i++) {
+            small.add(new LogEntry(i % 4 == 3 ? LogLevel.ERROR : LogLevel.DEBUG, payload + i, "SpillApp"));
+        }
+        assertTrue(small.getTotalDropped() > 0, "Des suppressions doivent avoir lieu au-delà du quota");
+        assertTrue(small.getSpillBytes() <= 4096, "Le quota doit être respecté");
+        drained.clear();
+        while (small.drainTo(drained, 32, 10, TimeUnit.MILLISECONDS) > 0) {
+            // Continuer jusqu'à épuisement
+        }
+        long errors = drained.stream().filter(e -> e.getLevel() == LogLevel.ERROR).count();
+        assertEquals(10, errors, "Aucune entrée ERROR ne doit être perdue tant que des DEBUG peuvent l'être");
+        small.close();
+        
+        // Buffer partitionné: profondeur et débit agrégés sur les shards
+        java.util.concurrent.atomic.AtomicInteger shardIndex = new java.util.concurrent.atomic.AtomicInteger(0);
+        ShardedLogBuffer sharded = new ShardedLogBuffer(2, 5, capacity -> {
+            try {
+                return new CircularBuffer(capacity, 0,
+                    new SpillFile(tempDir.resolve("spill-shard-" + shardIndex.getAndIncrement() + ".dat"), 1 << 20));
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        });
+        for (int i = 0; i < 100; i++) {
+            sharded.add(new LogEntry(LogLevel.INFO, "Shard " + i, "ShardApp" + (i % 4)));
+        }
+        assertTrue(sharded.isSpillEnabled(), "Le débordement doit être signalé");
+        assertEquals(100 - sharded.size(), sharded.getSpillDepth(), "Profondeur agrégée sur les shards");
+        assertTrue(sharded.getSpillBytes() > 0, "Octets agrégés sur les shards");
+        assertTrue(sharded.getStats().contains("Spill: " + sharded.getSpillDepth()), "Les stats doivent indiquer la profondeur");
+        assertTrue(sharded.getStats().contains("DrainRate"), "Les stats doivent indiquer le débit de vidage");
+        sharded.close();
+    }
+    
     /**
      * Test du stockage sur fichier
      */
@@ -198,31 +985,828 @@ public class LogServerTest {
     }
     
     /**
-     * Test d'intégration serveur-client complet
+     * Test de l'écriture asynchrone: lots encodés en UTF-8, écrits par l'étage du fichier
      */
     @Test
-    @DisplayName("Test Intégration - Serveur et Client")
-    void testServerClientIntegration() throws Exception {
-        // Configuration pour le test
-        System.setProperty("server.port", String.valueOf(TEST_PORT));
-        System.setProperty("storage.directory", tempDir.toString());
+    @DisplayName("Test FileLogStorage - Étage d'écriture asynchrone")
+    void testAsyncFileWriter() throws Exception {
+        Path directory = tempDir.resolve("async-storage");
+        FileLogStorage storage = new FileLogStorage(directory.toString());
+        java.util.concurrent.atomic.AtomicInteger written = new java.util.concurrent.atomic.AtomicInteger();
         
-        LogServer server = new LogServer();
+        // 4 processeurs, lots de 50 sur deux fichiers
+        Thread[] processors = new Thread[4];
+        for (int t = 0; t < processors.length; t++) {
+            int thread = t;
+            processors[t] = new Thread(() -> {
+                for (int b = 0; b < 20; b++) {
+                    List<LogEntry> batch = new ArrayList<>();
+                    for (int i = 0; i < 50; i++) {
+                        batch.add(new LogEntry(LogLevel.INFO, "Été " + thread + "-" + b + "-" + i,
+                                               i % 2 == 0 ? "AsyncA" : "AsyncB"));
+                    }
+                    storage.storeBatch(batch, written::incrementAndGet);
+                }
+            });
+            processors[t].start();
+        }
+        for (Thread processor : processors) {
+            processor.join();
+        }
         
-        // Démarrer le serveur dans un thread
-        Thread serverThread = new Thread(() -> {
-            try {
-                server.start();
-            } catch (IOException e) {
-                fail("Erreur démarrage serveur: " + e.getMessage());
+        // Ligne plus grande qu'un tampon direct (64 Ko)
+        String large = "é".repeat(50_000);
+        storage.store(new LogEntry(LogLevel.WARN, large, "AsyncA"));
+        storage.flush();
+        assertEquals(80, written.get(), "Chaque lot doit être notifié une fois écrit");
+        assertTrue(storage.getStorageStats().contains("Logs: 4001"), "Les stats doivent compter les logs");
+        
+        List<String> lines = new ArrayList<>();
+        try (java.util.stream.Stream<Path> files = Files.list(directory).filter(file -> file.toString().endsWith(".log"))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                lines.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(4001, lines.size(), "Toutes les lignes doivent être écrites");
+        assertTrue(lines.stream().filter(line -> line.contains("Été 0-0-0")).count() == 1, "L'UTF-8 doit être conservé");
+        assertTrue(lines.stream().anyMatch(line -> line.endsWith(large)), "Une ligne sur plusieurs tampons doit rester intacte");
+        storage.close();
+    }
+
+    /**
+     * Test des politiques de durabilité: parsing, force regroupé, seuil en octets
+     */
+    @Test
+    @DisplayName("Test durabilité - Politiques et fsync regroupés")
+    void testDurabilityPolicy() throws Exception {
+        assertEquals(DurabilityPolicy.Mode.NONE, DurabilityPolicy.parse("none").getMode());
+        assertEquals(DurabilityPolicy.Mode.EVERY_BATCH, DurabilityPolicy.parse("every-batch").getMode());
+        assertEquals(250, DurabilityPolicy.parse("interval:250").getParameter());
+        assertEquals("bytes:4096", DurabilityPolicy.parse("BYTES:4096").toString());
+        assertEquals(DurabilityPolicy.DEFAULT_MAX_DELAY_MILLIS, DurabilityPolicy.parse("bytes:4096").getMaxDelayMillis());
+        assertEquals(250, DurabilityPolicy.parse("bytes:4096:250").getMaxDelayMillis());
+        assertEquals("bytes:4096:250", DurabilityPolicy.parse("bytes:4096:250").toString());
+        assertThrows(IllegalArgumentException.class, () -> DurabilityPolicy.parse("bytes:4096:0"), "Délai nul refusé");
+        assertThrows(IllegalArgumentException.class, () -> DurabilityPolicy.parse("interval:0"), "Intervalle nul refusé");
+        assertThrows(IllegalArgumentException.class, () -> DurabilityPolicy.parse("always"), "Politique inconnue refusée");
+
+        // every-batch: 4 processeurs, chaque lot notifié après un force partagé
+        FileLogStorage storage = new FileLogStorage(tempDir.resolve("durable").toString(),
+                                                    DurabilityPolicy.parse("every-batch"));
+        CountDownLatch stored = new CountDownLatch(200);
+        Thread[] processors = new Thread[4];
+        for (int t = 0; t < processors.length; t++) {
+            int thread = t;
+            processors[t] = new Thread(() -> {
+                for (int b = 0; b < 50; b++) {
+                    List<LogEntry> batch = new ArrayList<>();
+                    for (int i = 0; i < 10; i++) {
+                        batch.add(new LogEntry(LogLevel.INFO, "Durable " + thread + "-" + b + "-" + i, "DurableApp"));
+                    }
+                    storage.storeBatch(batch, stored::countDown);
+                }
+            });
+            processors[t].start();
+        }
+        for (Thread processor : processors) {
+            processor.join();
+        }
+        assertTrue(stored.await(10, TimeUnit.SECONDS), "Chaque lot doit être notifié après le force");
+        String stats = storage.getStorageStats();
+        assertTrue(stats.contains("Durability: every-batch"), "Les stats doivent indiquer la politique");
+        assertTrue(stats.contains("Fsync p50/p95/p99/max"), "Les stats doivent inclure les percentiles fsync: " + stats);
+        storage.close();
+
+        // bytes:<n>: pas de notification avant le seuil, force final à la fermeture
+        FileLogStorage thresholdStorage = new FileLogStorage(tempDir.resolve("durable-bytes").toString(),
+                                                             DurabilityPolicy.parse("bytes:1048576"));
+        CountDownLatch small = new CountDownLatch(1);
+        thresholdStorage.storeBatch(List.of(new LogEntry(LogLevel.INFO, "Sous le seuil", "DurableApp")), small::countDown);
+        thresholdStorage.flush();
+        assertFalse(small.await(200, TimeUnit.MILLISECONDS), "Aucun force sous le seuil d'octets");
+        thresholdStorage.close();
+        assertEquals(0, small.getCount(), "La fermeture doit forcer les écritures restantes");
+
+        // bytes:<n>:<ms>: reste sous le seuil forcé après le délai maximum, sans attendre la fermeture
+        FileLogStorage delayedStorage = new FileLogStorage(tempDir.resolve("durable-delay").toString(),
+                                                           DurabilityPolicy.parse("bytes:1048576:100"));
+        CountDownLatch delayed = new CountDownLatch(1);
+        long written = System.nanoTime();
+        delayedStorage.storeBatch(List.of(new LogEntry(LogLevel.INFO, "Sous le seuil", "DurableApp")), delayed::countDown);
+        assertTrue(delayed.await(5, TimeUnit.SECONDS), "Le délai maximum doit forcer le reste");
+        assertTrue(System.nanoTime() - written >= TimeUnit.MILLISECONDS.toNanos(100), "Pas de force avant le délai");
+        delayedStorage.close();
+    }
+
+    /**
+     * Test d'un lot sur plusieurs fichiers dont un échoue: seules ses
+     * entrées sont rapportées, les autres sont écrites
+     */
+    @Test
+    @DisplayName("Test stockage - Échec partiel d'un lot")
+    void testPartialBatchFailure() throws Exception {
+        Path directory = tempDir.resolve("partial");
+        FileLogStorage storage = new FileLogStorage(directory.toString(), DurabilityPolicy.NONE);
+        List<LogEntry> batch = new ArrayList<>();
+        List<LogEntry> unwritable = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            // Application dans un répertoire absent: segment impossible à créer
+            LogEntry entry = new LogEntry(LogLevel.INFO, "Partiel " + i, i % 3 == 0 ? "absent/App" : "PartialApp");
+            batch.add(entry);
+            if (i % 3 == 0) {
+                unwritable.add(entry);
             }
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        java.util.concurrent.atomic.AtomicBoolean stored = new java.util.concurrent.atomic.AtomicBoolean();
+        List<LogEntry> failed = new ArrayList<>();
+        storage.storeBatch(batch, () -> stored.set(true), entries -> {
+            failed.addAll(entries);
+            done.countDown();
         });
+        assertTrue(done.await(5, TimeUnit.SECONDS), "L'échec doit être notifié");
+        assertFalse(stored.get(), "Pas de onStored pour un lot en partie écrit");
+        assertEquals(unwritable.size(), failed.size(), "Seules les entrées du fichier en échec");
+        assertTrue(failed.containsAll(unwritable), "Entrées en échec inattendues");
+        storage.flush();
+        assertEquals(4, storage.getLogsByApplication("PartialApp", 10).size(), "Les autres entrées sont écrites");
+        storage.close();
+    }
+
+    /**
+     * Test de la rotation des segments: taille, âge et reprise après redémarrage
+     */
+    @Test
+    @DisplayName("Test rotation - Segments par taille et par âge")
+    void testSegmentRotation() throws Exception {
+        Path directory = tempDir.resolve("segments");
+        FileLogStorage storage = new FileLogStorage(directory.toString(), DurabilityPolicy.NONE, 16 * 1024, 0);
+
+        // Écritures concurrentes pendant les rotations: aucune ligne perdue
+        Thread[] processors = new Thread[4];
+        for (int t = 0; t < processors.length; t++) {
+            int thread = t;
+            processors[t] = new Thread(() -> {
+                for (int b = 0; b < 20; b++) {
+                    List<LogEntry> batch = new ArrayList<>();
+                    for (int i = 0; i < 50; i++) {
+                        batch.add(new LogEntry(LogLevel.INFO, "Rotation " + thread + "-" + b + "-" + i, "RollApp"));
+                    }
+                    storage.storeBatch(batch);
+                }
+            });
+            processors[t].start();
+        }
+        for (Thread processor : processors) {
+            processor.join();
+        }
+        storage.close();
+
+        String today = java.time.LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        List<Path> files = new ArrayList<>();
+        try (java.util.stream.Stream<Path> stream = Files.list(directory)) {
+            stream.filter(file -> file.toString().endsWith(".log")).sorted().forEach(files::add);
+        }
+        assertTrue(files.size() > 5, "La taille maximum doit provoquer plusieurs segments: " + files.size());
+        int lines = 0;
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(String.format("RollApp_%s_%04d.log", today, i + 1), files.get(i).getFileName().toString(),
+                         "Segments numérotés à la suite");
+            lines += Files.readAllLines(files.get(i), StandardCharsets.UTF_8).size();
+        }
+        assertEquals(4000, lines, "Toutes les lignes doivent être écrites malgré les rotations");
+
+        // Âge maximum d'une seconde; après redémarrage la numérotation reprend
+        FileLogStorage aged = new FileLogStorage(directory.toString(), DurabilityPolicy.NONE, 0, 1);
+        aged.store(new LogEntry(LogLevel.INFO, "Avant rotation", "RollApp"));
+        Thread.sleep(2500);
+        aged.store(new LogEntry(LogLevel.INFO, "Après rotation", "RollApp"));
+        aged.flush();
+        assertTrue(aged.getStorageStats().contains("Rolled: 1"), "Le segment doit être remplacé à son âge maximum");
+        aged.close();
+        assertTrue(Files.exists(directory.resolve(String.format("RollApp_%s_%04d.log", today, files.size() + 2))),
+                   "Le redémarrage doit reprendre après le dernier segment");
+        
+        // Fichier d'un jour au format antérieur (sans numéro): toujours lu, avant les segments du jour
+        Path legacyDirectory = tempDir.resolve("segments-legacy");
+        FileLogStorage before = new FileLogStorage(legacyDirectory.toString(), DurabilityPolicy.NONE, 0, 0);
+        before.store(new LogEntry(LogLevel.INFO, "Format antérieur", "LegacyApp"));
+        before.close();
+        try (java.util.stream.Stream<Path> stream = Files.list(legacyDirectory)) {
+            for (Path file : stream.collect(java.util.stream.Collectors.toList())) {
+                if (file.toString().endsWith(".log")) {
+                    Files.move(file, legacyDirectory.resolve("LegacyApp_" + today + ".log"));
+                } else {
+                    Files.delete(file); // Pas d'index pour l'ancien format
+                }
+            }
+        }
+        FileLogStorage upgraded = new FileLogStorage(legacyDirectory.toString(), DurabilityPolicy.NONE, 0, 0);
+        upgraded.store(new LogEntry(LogLevel.INFO, "Segment numéroté", "LegacyApp"));
+        upgraded.flush();
+        List<LogEntry> legacy = upgraded.getLogsByApplication("LegacyApp", 10);
+        assertEquals(2, legacy.size(), "Le fichier sans numéro doit être lu");
+        assertTrue(legacy.stream().anyMatch(entry -> entry.getMessage().equals("Format antérieur")),
+                   "Les entrées de l'ancien format doivent être retournées");
+        assertTrue(Files.exists(legacyDirectory.resolve("LegacyApp_" + today + "_0001.log")),
+                   "Les nouveaux segments sont numérotés à côté de l'ancien fichier");
+        upgraded.close();
+    }
+
+    /**
+     * Mesure taux de compression / débit des segments en blocs sur les logs de simulateLoad
+     */
+    @Test
+    @DisplayName("Test compression - Blocs indépendants, taux et débit")
+    void testCompressedSegments() throws Exception {
+        java.util.Random random = new java.util.Random(42);
+        List<LogEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            LogClient.SimulatedLog log = LogClient.simulatedLog(random, i);
+            entries.add(LogParser.parseLogMessage(String.join("|", log.level.getName(), "BenchApp",
+                                                              log.hostname, log.message, log.metadata)));
+        }
+
+        String[] modes = { null, "identity", "deflate:1", "deflate:6" };
+        long[] diskBytes = new long[modes.length];
+        for (int m = 0; m < modes.length; m++) {
+            Path directory = tempDir.resolve("compressed-" + m);
+            FileLogStorage storage = new FileLogStorage(directory.toString(), DurabilityPolicy.NONE,
+                                                        0, 0, modes[m], FileLogStorage.DEFAULT_BLOCK_BYTES);
+            long start = System.nanoTime();
+            for (int i = 0; i < entries.size(); i += 100) {
+                storage.storeBatch(entries.subList(i, i + 100));
+            }
+            storage.close(); // Inclut la compression du dernier bloc
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            try (java.util.stream.Stream<Path> files = Files.list(directory).filter(file -> !file.toString().endsWith(".idx") && !file.toString().endsWith(".lvl")
+                                 && !file.toString().endsWith(".terms") && !file.toString().endsWith(".bloom"))) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    diskBytes[m] += Files.size(file);
+                }
+            }
+            System.out.printf("Compression %-10s: %8d octets, x%.1f, %,.0f logs/s%n", modes[m] == null ? "texte" : modes[m],
+                              diskBytes[m], (double) diskBytes[0] / diskBytes[m], entries.size() / seconds);
+
+            if (modes[m] != null) {
+                // Blocs lisibles un à un: en-têtes cohérents, toutes les lignes présentes
+                Path segment;
+                try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+                    segment = files.filter(file -> !file.toString().endsWith(".idx") && !file.toString().endsWith(".lvl")
+                                 && !file.toString().endsWith(".terms") && !file.toString().endsWith(".bloom")).findFirst().orElseThrow();
+                }
+                assertTrue(segment.toString().endsWith(".logz"), "Segment compressé attendu");
+                try (BlockSegmentReader reader = new BlockSegmentReader(segment)) {
+                    List<BlockHeader> headers = reader.readHeaders();
+                    assertTrue(headers.size() > 1, "Le segment doit contenir plusieurs blocs");
+                    int entryCount = 0;
+                    int[] lines = { 0 };
+                    long rawOffset = 0;
+                    for (BlockHeader header : headers) {
+                        assertEquals(rawOffset, header.getRawOffset(), "Positions non compressées contiguës");
+                        assertTrue(header.getMinTimestampMicros() <= header.getMaxTimestampMicros(), "Intervalle de temps valide");
+                        rawOffset += header.getRawLength();
+                        entryCount += header.getEntryCount();
+                    }
+                    // Lecture d'un bloc isolé (le dernier) puis de tous
+                    byte[] last = reader.readBlock(headers.get(headers.size() - 1));
+                    assertTrue(new String(last, StandardCharsets.UTF_8).contains("[49999]"), "Le dernier bloc se lit seul");
+                    for (BlockHeader header : headers) {
+                        BlockSegmentReader.forEachLine(reader.readBlock(header), line -> ++lines[0] > 0);
+                    }
+                    assertEquals(entries.size(), entryCount, "Les en-têtes doivent compter toutes les entrées");
+                    assertEquals(entries.size(), lines[0], "Toutes les lignes doivent être relues");
+                }
+            }
+        }
+        assertTrue(diskBytes[1] > diskBytes[0], "identity: texte + en-têtes de blocs");
+        assertTrue(diskBytes[0] > diskBytes[3] * 4, "Deflate doit compresser fortement des logs répétitifs");
+
+        // Configuration validée sans instancier de codec; codec fermé après usage
+        assertEquals("deflate:6", BlockCodec.name(" Deflate "), "Niveau par défaut");
+        assertEquals("identity", BlockCodec.name("identity"));
+        assertThrows(IllegalArgumentException.class, () -> BlockCodec.name("deflate:10"), "Niveau hors limites refusé");
+        assertThrows(IllegalArgumentException.class, () -> BlockCodec.name("lz4"), "Codec inconnu refusé");
+        byte[] raw = "ligne de log répétée\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+        byte[] decoded = new byte[raw.length];
+        try (BlockCodec codec = BlockCodec.create("deflate:1")) {
+            ByteBuffer compressed = codec.compress(raw, raw.length);
+            codec.decompress(compressed, decoded, decoded.length);
+        }
+        assertArrayEquals(raw, decoded, "Aller-retour deflate");
+    }
+
+    /**
+     * Test de l'index temporel creux: requêtes par intervalle, segments texte et compressés
+     */
+    @Test
+    @DisplayName("Test index temporel - getLogsBetween")
+    void testTimeIndex() throws Exception {
+        for (String compression : new String[] { null, "deflate" }) {
+            Path directory = tempDir.resolve("time-index-" + (compression == null ? "text" : compression));
+            FileLogStorage storage = new FileLogStorage(directory.toString(), DurabilityPolicy.NONE,
+                                                        0, 0, compression, 4096, 16);
+
+            // 5 lots espacés dans le temps
+            List<List<LogEntry>> batches = new ArrayList<>();
+            for (int b = 0; b < 5; b++) {
+                List<LogEntry> batch = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    LogEntry entry = new LogEntry(LogLevel.INFO, "Lot " + b + " entrée " + i, "IndexApp");
+                    entry.addMetadata("request_id", "req-" + b + "-" + i);
+                    batch.add(entry);
+                }
+                storage.storeBatch(batch);
+                batches.add(batch);
+                Thread.sleep(20);
+            }
+
+            List<LogEntry> middle = batches.get(2);
+            long from = middle.get(0).getTimestampMicros();
+            long to = middle.get(middle.size() - 1).getTimestampMicros();
+            List<LogEntry> logs = storage.getLogsBetween("IndexApp", from, to, 1000);
+            assertEquals(200, logs.size(), "Seul le lot du milieu doit être retourné (" + compression + ")");
+            assertTrue(logs.stream().allMatch(log -> log.getMessage().startsWith("Lot 2 ")), "Lot inattendu");
+            assertEquals(to / 1000 * 1000, logs.get(0).getTimestampMicros(),
+                         "L'horodatage stocké doit être restauré (ms)");
+            assertEquals("req-2-199", logs.get(0).getMetadataValue("request_id"), "Les plus récents d'abord");
+            assertEquals("req-2-0", logs.get(logs.size() - 1).getMetadataValue("request_id"), "Les métadonnées doivent être relues");
+            List<LogEntry> newest = storage.getLogsBetween("IndexApp", from, to, 10);
+            assertEquals(10, newest.size(), "La limite doit être respectée");
+            assertEquals("req-2-190", newest.get(9).getMetadataValue("request_id"), "La limite garde les plus récents");
+            assertTrue(storage.getLogsBetween("IndexApp", to + 10_000_000L, to + 20_000_000L, 10).isEmpty(),
+                       "Aucun log après le dernier lot");
+            storage.close();
+
+            // Segment fermé: entièrement couvert par l'index
+            Path segment;
+            try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+                segment = files.filter(file -> !file.toString().endsWith(".idx") && !file.toString().endsWith(".lvl")
+                                 && !file.toString().endsWith(".terms") && !file.toString().endsWith(".bloom")).findFirst().orElseThrow();
+            }
+            TimeIndex index = TimeIndex.load(segment);
+            assertTrue(index.size() >= 5, "L'index doit contenir plusieurs intervalles");
+            assertEquals(Files.size(segment), index.getCoveredEnd(), "Segment fermé entièrement indexé");
+            if (compression == null) {
+                assertEquals(1000 / 16 + 1, index.size(), "Un enregistrement toutes les 16 entrées");
+            }
+            assertTrue(index.firstCandidate(from) > 0, "La dichotomie doit écarter les premiers intervalles");
+        }
+    }
+
+    /**
+     * Test de l'index de niveaux: comptes par segment et bitmap d'intervalles
+     */
+    @Test
+    @DisplayName("Test index de niveaux - getLogsByLevel")
+    void testLevelBitmap() throws Exception {
+        for (String compression : new String[] { null, "deflate" }) {
+            Path directory = tempDir.resolve("level-index-" + (compression == null ? "text" : compression));
+            FileLogStorage storage = new FileLogStorage(directory.toString(), DurabilityPolicy.NONE,
+                                                        0, 0, compression, 4096, 16);
+
+            // 5 FATAL au milieu de 1000 INFO, et une application sans FATAL
+            List<LogEntry> batch = new ArrayList<>();
+            List<LogEntry> quiet = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                LogLevel level = i >= 500 && i < 505 ? LogLevel.FATAL : LogLevel.INFO;
+                batch.add(new LogEntry(level, "Entrée " + i, "LevelApp"));
+                quiet.add(new LogEntry(LogLevel.INFO, "Calme " + i, "QuietApp"));
+            }
+            storage.storeBatch(batch);
+            storage.storeBatch(quiet);
+
+            // Segments ouverts: comptes tenus par les étages d'écriture
+            List<LogEntry> fatal = storage.getLogsByLevel(LogLevel.FATAL, 100);
+            assertEquals(5, fatal.size(), "Les 5 FATAL doivent être trouvés (" + compression + ")");
+            assertEquals("Entrée 504", fatal.get(0).getMessage(), "Les plus récents d'abord");
+            assertTrue(fatal.stream().allMatch(log -> log.getLevel() == LogLevel.FATAL
+                                               && log.getApplicationName().equals("LevelApp")), "Niveau inattendu");
+            assertTrue(storage.getStorageStats().contains("Level skips: 1"), "QuietApp doit être écarté");
+            assertEquals(10, storage.getLogsByLevel(LogLevel.INFO, 10).size(), "La limite doit être respectée");
+            assertTrue(storage.getLogsByLevel(LogLevel.TRACE, 10).isEmpty(), "Aucun TRACE");
+            storage.close();
+
+            // Segments fermés: comptes relus depuis .lvl
+            Path segment;
+            try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+                segment = files.filter(file -> file.getFileName().toString().startsWith("LevelApp_")
+                                       && file.toString().matches(".*\\.logz?")).findFirst().orElseThrow();
+            }
+            long[] counts = TimeIndex.loadLevelCounts(segment);
+            assertNotNull(counts, "Les comptes doivent être écrits à la fermeture");
+            assertEquals(5, counts[LogLevel.FATAL.ordinal()], "Compte FATAL");
+            assertEquals(995, counts[LogLevel.INFO.ordinal()], "Compte INFO");
+            TimeIndex index = TimeIndex.load(segment);
+            int marked = index.levelBitmap(LogLevel.FATAL).cardinality();
+            assertTrue(marked >= 1 && marked <= 2, "Seuls les intervalles des FATAL doivent être marqués: " + marked);
+            assertEquals(index.size(), index.levelBitmap(LogLevel.INFO).cardinality(), "INFO dans chaque intervalle");
+
+            FileLogStorage reopened = new FileLogStorage(directory.toString(), DurabilityPolicy.NONE,
+                                                         0, 0, compression, 4096, 16);
+            assertEquals(5, reopened.getLogsByLevel(LogLevel.FATAL, 100).size(), "FATAL après redémarrage");
+            assertTrue(reopened.getStorageStats().contains("Level skips: 1"), "QuietApp écarté via .lvl");
+            assertEquals("Entrée 503", reopened.getLogsByLevel(LogLevel.FATAL, 2).get(1).getMessage(),
+                         "La limite garde les plus récents");
+            reopened.close();
+        }
+    }
+
+    /**
+     * Test de l'index inversé: search par termes et intervalle de temps
+     */
+    @Test
+    @DisplayName("Test index inversé - search")
+    void testSearchIndex() throws Exception {
+        for (String compression : new String[] { null, "deflate" }) {
+            Path directory = tempDir.resolve("search-" + (compression == null ? "text" : compression));
+            FileLogStorage storage = new FileLogStorage(directory.toString(), DurabilityPolicy.NONE,
+                                                        0, 0, compression, 4096, 16, true);
+            List<LogEntry> batch = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                boolean failure = i % 500 == 7;
+                LogEntry entry = new LogEntry(failure ? LogLevel.ERROR : LogLevel.INFO,
+                                              failure ? "Échec: java.lang.NullPointerException à l'étape " + i
+                                                      : "Requête traitée en " + i + " ms",
+                                              i % 2 == 0 ? "SearchApp" : "OtherApp");
+                entry.addMetadata("request_id", "req-" + i);
+                entry.addMetadata("user_id", "user-" + (i % 10));
+                batch.add(entry);
+            }
+            storage.storeBatch(batch);
+            long from = batch.get(0).getTimestampMicros();
+            long to = batch.get(batch.size() - 1).getTimestampMicros();
+
+            for (int pass = 0; pass < 2; pass++) {
+                String phase = (pass == 0 ? "ouvert" : "fermé") + ", " + compression;
+                List<LogEntry> found = storage.search(List.of("REQ-1234"), Long.MIN_VALUE, Long.MAX_VALUE, 10);
+                assertEquals(1, found.size(), "Un seul log par request_id (" + phase + ")");
+                assertEquals("req-1234", found.get(0).getMetadataValue("request_id"), "Log inattendu");
+                assertEquals(4, storage.search(List.of("NullPointerException"), from, to, 100).size(),
+                             "Nom simple de la classe d'exception (" + phase + ")");
+                assertEquals(4, storage.search(List.of("java.lang.NullPointerException"), from, to, 100).size(),
+                             "Nom complet de la classe d'exception (" + phase + ")");
+                List<LogEntry> both = storage.search(List.of("NullPointerException user-7"), from, to, 100);
+                assertEquals(4, both.size(), "Tous les termes doivent être présents (" + phase + ")");
+                assertTrue(both.get(0).getMessage().endsWith("étape 1507"), "Les plus récents d'abord (" + phase + ")");
+                assertTrue(storage.search(List.of("NullPointerException", "user-3"), from, to, 100).isEmpty(),
+                           "Aucun log avec les deux termes (" + phase + ")");
+                assertTrue(storage.search(List.of("req-1234"), to + 1_000_000L, to + 2_000_000L, 10).isEmpty(),
+                           "Hors de l'intervalle de temps (" + phase + ")");
+                assertTrue(storage.search(List.of("inconnu"), from, to, 10).isEmpty(), "Terme absent");
+                assertEquals(5, storage.search(List.of("user-3"), from, to, 5).size(), "La limite doit être respectée");
+
+                if (pass == 0) {
+                    storage.close();
+                    storage = new FileLogStorage(directory.toString(), DurabilityPolicy.NONE,
+                                                 0, 0, compression, 4096, 16, true);
+                }
+            }
+            storage.close();
+
+            Path segment;
+            try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+                segment = files.filter(file -> file.getFileName().toString().startsWith("SearchApp_")
+                                       && file.toString().matches(".*\\.logz?")).findFirst().orElseThrow();
+            }
+            Map<String, int[]> postings = TermIndex.lookup(segment, Set.of("user-2", "req-1234", "absent"));
+            assertNotNull(postings, "L'index doit être écrit à la fermeture");
+            assertFalse(postings.containsKey("absent"), "Terme absent de l'index");
+            assertEquals(1, postings.get("req-1234").length, "Un seul intervalle pour un request_id");
+            int[] intervals = postings.get("user-2");
+            for (int i = 1; i < intervals.length; i++) {
+                assertTrue(intervals[i] > intervals[i - 1], "Intervalles strictement croissants");
+            }
+            // Tous les blocs du répertoire: request_id pairs présents, impairs
+            // (autre segment) et termes avant le premier ou après le dernier absents
+            Set<String> requestIds = new HashSet<>(Set.of("00", "zzz"));
+            for (int i = 0; i < 2000; i++) {
+                requestIds.add("req-" + i);
+            }
+            Map<String, int[]> all = TermIndex.lookup(segment, requestIds);
+            assertEquals(1000, all.size(), "Chaque request_id du segment doit être trouvé");
+            for (int i = 0; i < 2000; i += 2) {
+                assertEquals(1, all.get("req-" + i).length, "Intervalle de req-" + i);
+            }
+
+            // Sans index: segment identique, seul le fichier .terms manque
+            Path plainDirectory = tempDir.resolve("search-plain-" + (compression == null ? "text" : compression));
+            FileLogStorage plain = new FileLogStorage(plainDirectory.toString(), DurabilityPolicy.NONE,
+                                                      0, 0, compression, 4096, 16, false);
+            plain.storeBatch(batch);
+            plain.close();
+            Path plainSegment = plainDirectory.resolve(segment.getFileName());
+            if (compression == null) {
+                assertArrayEquals(Files.readAllBytes(plainSegment), Files.readAllBytes(segment),
+                                  "L'index ne doit pas modifier le segment");
+            }
+            assertNull(TermIndex.lookup(plainSegment, Set.of("req-1234")), "Pas d'index sans search.index");
+        }
+    }
+
+    /**
+     * Banc d'essai du coût de l'index inversé à l'ingestion (parsing, découpage
+     * en termes et stockage, comme un processeur): temps CPU du processus, qui
+     * compte aussi le thread d'écriture et le ramasse-miettes, moins sensible
+     * que le temps écoulé aux autres charges de la machine. Hors de la suite
+     * unitaire (tag benchmark): mvn test -Pbenchmark
+     */
+    @Test
+    @Tag("benchmark")
+    @DisplayName("Banc d'essai index inversé - coût à l'ingestion")
+    void benchmarkSearchIndex() throws Exception {
+        // Logs de simulateLoad avec et sans index: 4 essais de chauffe (JIT)
+        // puis temps CPU cumulé de 12 essais alternés, les collectes du
+        // ramasse-miettes réparties sur tous les essais plutôt qu'au hasard
+        // de l'un d'eux
+        java.util.Random random = new java.util.Random(42);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 300_000; i++) {
+            LogClient.SimulatedLog log = LogClient.simulatedLog(random, i);
+            lines.add(String.join("|", log.level.getName(), "BenchApp", log.hostname, log.message, log.metadata));
+        }
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long[] cpu = new long[2];
+        for (int run = 0; run < 16; run++) {
+            boolean indexed = run % 2 == 1;
+            Path directory = tempDir.resolve("search-bench-" + run);
+            FileLogStorage storage = new FileLogStorage(directory.toString(), DurabilityPolicy.NONE, 0, 0, null,
+                                                        FileLogStorage.DEFAULT_BLOCK_BYTES,
+                                                        FileLogStorage.DEFAULT_INDEX_INTERVAL, indexed);
+            long start = os.getProcessCpuTime();
+            List<LogEntry> batch = new ArrayList<>(100);
+            for (String line : lines) {
+                batch.add(LogParser.parseLogMessage(line));
+                if (batch.size() == 100) {
+                    storage.storeBatch(batch);
+                    batch = new ArrayList<>(100);
+                }
+            }
+            storage.flush(); // L'index est écrit à la fermeture, hors du chemin d'ingestion
+            if (run >= 4) {
+                cpu[indexed ? 1 : 0] += os.getProcessCpuTime() - start;
+            }
+            storage.close();
+        }
+        double[] rate = {lines.size() * 6 / (cpu[0] / 1e9), lines.size() * 6 / (cpu[1] / 1e9)};
+        double overhead = 1 - rate[1] / rate[0];
+        System.out.printf("Index inversé: %.0f logs/s CPU sans, %.0f logs/s CPU avec (coût %.0f%%)%n",
+                          rate[0], rate[1], overhead * 100);
+        assertTrue(overhead <= FileLogStorage.SEARCH_INDEX_BUDGET,
+                   "L'index dépasse son budget de " + FileLogStorage.SEARCH_INDEX_BUDGET * 100 + "% du débit d'ingestion");
+    }
+
+    /**
+     * Test des filtres de Bloom par segment: recherche par valeur de métadonnée
+     */
+    @Test
+    @DisplayName("Test filtres de Bloom - getLogsByMetadata")
+    void testMetadataBloom() throws Exception {
+        Path directory = tempDir.resolve("bloom");
+        FileLogStorage storage = new FileLogStorage(directory.toString(), DurabilityPolicy.NONE, 0, 0, null,
+                                                    4096, 16, false, FileLogStorage.DEFAULT_BLOOM_KEYS);
+        // 10 applications (un segment chacune), request_id=4711 dans une seule
+        for (int app = 0; app < 10; app++) {
+            List<LogEntry> batch = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                LogEntry entry = new LogEntry(LogLevel.INFO, "Requête " + i, "BloomApp" + app);
+                entry.addMetadata("request_id", app == 3 && i == 42 ? "4711" : "req-" + app + "-" + i);
+                entry.addMetadata("user_id", "user-" + (i % 20));
+                entry.addMetadata("trace_id", "trace-" + app + "-" + i);
+                batch.add(entry);
+            }
+            storage.storeBatch(batch);
+        }
+
+        // Segments ouverts: hash exacts tenus par les étages d'écriture
+        List<LogEntry> found = storage.getLogsByMetadata("request_id", "4711", 10);
+        assertEquals(1, found.size(), "Une seule entrée request_id=4711");
+        assertEquals("BloomApp3", found.get(0).getApplicationName(), "Application de l'entrée");
+        assertEquals("Requête 42", found.get(0).getMessage(), "Entrée trouvée");
+        assertTrue(storage.getStorageStats().contains("Bloom skips: 9"), "9 segments écartés");
+        assertEquals(100, storage.getLogsByMetadata("user_id", "user-5", 1000).size(), "user-5 dans chaque segment");
+        assertEquals(1, storage.getLogsByMetadata("trace_id", "trace-7-3", 10).size(), "Clé non couverte: parcours");
+        assertTrue(storage.getLogsByMetadata("request_id", "47", 10).isEmpty(), "Valeur exacte, pas un préfixe");
+        storage.close();
+
+        // Segments fermés: filtres .bloom dimensionnés à la fermeture
+        Path segment;
+        try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.getFileName().toString().startsWith("BloomApp0_")
+                                   && file.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        MetadataBloomFilter filter = MetadataBloomFilter.load(segment);
+        assertNotNull(filter, "Le filtre doit être écrit à la fermeture");
+        assertTrue(filter.covers("request_id") && !filter.covers("trace_id"), "Clés couvertes");
+        for (int i = 0; i < 200; i++) {
+            assertTrue(filter.mightContain(MetadataBloomFilter.hash("request_id", "req-0-" + i)), "Pas de faux négatif");
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain(MetadataBloomFilter.hash("request_id", "absent-" + i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "Taux de faux positifs trop élevé: " + falsePositives + "/10000");
+
+        FileLogStorage reopened = new FileLogStorage(directory.toString(), DurabilityPolicy.NONE, 0, 0, null,
+                                                     4096, 16, false, List.of("request_id", "trace_id"));
+        assertEquals(1, reopened.getLogsByMetadata("request_id", "4711", 10).size(), "request_id après redémarrage");
+        assertTrue(reopened.getStorageStats().contains("Bloom skips: 9"), "Segments écartés via .bloom");
+        // Clé ajoutée depuis: les anciens filtres ne la couvrent pas, aucun segment écarté à tort
+        assertEquals(1, reopened.getLogsByMetadata("trace_id", "trace-7-3", 10).size(), "Nouvelle clé couverte");
+        reopened.close();
+    }
+
+    /**
+     * Test du chemin de lecture projeté en mémoire: LRU des projections, filtrage sur les octets
+     */
+    @Test
+    @DisplayName("Test lecture - Segments projetés en mémoire")
+    void testMappedReadPath() throws Exception {
+        Path directory = tempDir.resolve("mapped");
+        FileLogStorage storage = new FileLogStorage(directory.toString(), DurabilityPolicy.NONE, 0, 0, null,
+                                                    4096, 16, false, List.of(), 2);
+        for (String app : new String[] { "MapA", "MapB", "MapC" }) {
+            List<LogEntry> batch = new ArrayList<>();
+            for (int i = 0; i < 20_000; i++) {
+                LogEntry entry = new LogEntry(i % 1000 == 0 ? LogLevel.ERROR : LogLevel.INFO,
+                                              "Requête été ☕ " + i, app);
+                entry.addMetadata("trace_id", app + "-" + i);
+                entry.addMetadata("ville", i == 777 ? "Zürich" : "Paris");
+                batch.add(entry);
+            }
+            storage.storeBatch(batch);
+        }
+        // Segments ouverts: lus par tranches, jamais projetés
+        assertEquals(1, storage.getLogsByMetadata("trace_id", "MapA-42", 10).size(), "Lecture d'un segment ouvert");
+        assertTrue(storage.getStorageStats().contains("Mapped: 0 "), "Segment ouvert non projeté");
+        storage.close();
+
+        FileLogStorage reopened = new FileLogStorage(directory.toString(), DurabilityPolicy.NONE, 0, 0, null,
+                                                     4096, 16, false, List.of(), 2);
+        for (String app : new String[] { "MapA", "MapB", "MapC" }) {
+            List<LogEntry> logs = reopened.getLogsByApplication(app, 5);
+            assertEquals(5, logs.size(), "Logs de " + app);
+            assertEquals("Requête été ☕ 0", logs.get(0).getMessage(), "Message UTF-8 relu");
+        }
+        String stats = reopened.getStorageStats();
+        assertTrue(stats.contains("Mapped: 2 (hits 0, maps 3)"), "Au plus 2 projections: " + stats);
+
+        // Filtres sur les octets: niveau, intervalle de temps, clé=valeur non ASCII
+        assertEquals(20, reopened.getLogsByLevel(LogLevel.ERROR, 100).stream()
+                .filter(log -> log.getApplicationName().equals("MapC")).count(), "ERROR de MapC");
+        List<LogEntry> zurich = reopened.getLogsByMetadata("ville", "Zürich", 10);
+        assertEquals(3, zurich.size(), "Une entrée par application");
+        assertEquals("Requête été ☕ 777", zurich.get(0).getMessage(), "Entrée Zürich");
+        assertEquals(20_000, reopened.getLogsBetween("MapB", Long.MIN_VALUE, Long.MAX_VALUE, 100_000).size(),
+                     "Toutes les entrées de MapB");
+
+        // Recherche d'une valeur absente: pas d'allocation par ligne lue
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        reopened.getLogsByMetadata("trace_id", "absent", 10);
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+        assertTrue(reopened.getLogsByMetadata("trace_id", "absent", 10).isEmpty(), "Valeur absente");
+        long perLine = (threads.getThreadAllocatedBytes(Thread.currentThread().threadId()) - allocated) / 60_000;
+        System.out.println("Lecture projetée: " + perLine + " octets alloués par ligne parcourue");
+        assertTrue(perLine < 4, "Les lignes écartées ne doivent pas être décodées: " + perLine + " octets/ligne");
+        reopened.close();
+    }
+
+    /**
+     * Test du journal d'écriture anticipée: group commit, replay, fin tronquée, acquittement DURABLE
+     */
+    @Test
+    @DisplayName("Test WAL - Group commit, replay et acquittement DURABLE")
+    void testWriteAheadLog() throws Exception {
+        String directory = tempDir.resolve("wal").toString();
+        WriteAheadLog wal = new WriteAheadLog(directory, 2, 64 * 1024, 1024 * 1024);
+        
+        // 4 connexions concurrentes: les ajouts sont regroupés en peu de force()
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            int thread = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 250; i++) {
+                    LogEntry entry = new LogEntry(LogLevel.INFO, "WAL " + thread + "-" + i, "WalApp");
+                    entry.addMetadata("request_id", "r" + i);
+                    wal.append(entry);
+                    ids.add(entry.getId());
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertTrue(wal.sync(5, TimeUnit.SECONDS), "Les ajouts doivent être écrits");
+        assertEquals(1000, wal.getTotalRecords(), "Tous les ajouts doivent être journalisés");
+        assertTrue(wal.getTotalCommits() < 1000, "Les ajouts doivent être regroupés: " + wal.getStats());
+        wal.close(); // Aucune entrée stockée: le segment est conservé
+        
+        // Arrêt brutal simulé: enregistrement incomplet en fin de segment
+        Path segment;
+        try (java.util.stream.Stream<Path> files = Files.list(tempDir.resolve("wal"))) {
+            segment = files.filter(path -> path.getFileName().toString().startsWith("wal-")).findFirst().orElseThrow();
+        }
+        Files.write(segment, new byte[] {0, 0, 0, 100, 1, 2, 3}, java.nio.file.StandardOpenOption.APPEND);
+        
+        // Replay: mêmes identifiants et métadonnées, puis suppression une fois stocké
+        WriteAheadLog reopened = new WriteAheadLog(directory, 2, 64 * 1024, 1024 * 1024);
+        List<LogEntry> replayed = new ArrayList<>();
+        long count = reopened.replay(entry -> {
+            reopened.append(entry);
+            replayed.add(entry);
+        });
+        assertEquals(1000, count, "Toutes les entrées complètes doivent être rejouées");
+        assertTrue(replayed.stream().allMatch(entry -> ids.contains(entry.getId())), "Les identifiants doivent être conservés");
+        assertNotNull(replayed.get(0).getMetadataValue("request_id"), "Les métadonnées doivent être conservées");
+        assertFalse(Files.exists(segment), "L'ancien segment doit être supprimé après replay");
+        reopened.markStored(replayed);
+        reopened.close();
+        try (java.util.stream.Stream<Path> files = Files.list(tempDir.resolve("wal"))) {
+            assertEquals(0, files.count(), "Les segments entièrement stockés doivent être supprimés");
+        }
+        
+        // Acquittement DURABLE: réponse envoyée après le force()
+        WriteAheadLog durableWal = new WriteAheadLog(tempDir.resolve("wal-durable").toString(), 2, 64 * 1024, 1024 * 1024);
+        List<String> responses = java.util.Collections.synchronizedList(new ArrayList<>());
+        CircularBuffer buffer = new CircularBuffer(100);
+        ClientSession session = new ClientSession("wal-client", "127.0.0.1", buffer, durableWal);
+        session.onConnect(responses::add);
+        session.onLine("CMD:ACK:DURABLE");
+        session.onLine("INFO|WalApp|host|Message durable|");
+        assertTrue(durableWal.sync(5, TimeUnit.SECONDS), "Le journal doit être écrit");
+        long deadline = System.currentTimeMillis() + 2000;
+        while (responses.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals("OK:ACK_MODE:DURABLE", responses.get(1), "Le mode DURABLE doit être accepté");
+        assertEquals("OK:DURABLE:" + buffer.poll().getId(), responses.get(2), "L'acquittement doit suivre l'écriture");
+        durableWal.close();
+        
+        // Entrées passées par le débordement disque ou évincées: segments libérés
+        WriteAheadLog releasingWal = new WriteAheadLog(tempDir.resolve("wal-release").toString(), 0, 4096, 4096);
+        CircularBuffer spilled = new CircularBuffer(4, 0, new SpillFile(tempDir.resolve("wal-spill.dat"), 1 << 20),
+                                                    releasingWal::markStored);
+        LockFreeRingBuffer evicting = new LockFreeRingBuffer(4, 0, releasingWal::markStored);
+        for (int i = 0; i < 200; i++) {
+            LogEntry entry = new LogEntry(LogLevel.ERROR, "Segment " + i + " " + "x".repeat(100), "WalApp");
+            releasingWal.append(entry);
+            (i % 2 == 0 ? spilled : evicting).add(entry);
+        }
+        assertTrue(spilled.getSpillDepth() > 0, "Des entrées doivent passer par le disque");
+        assertTrue(evicting.getTotalDropped() > 0, "Des entrées doivent être évincées");
+        assertTrue(releasingWal.sync(5, TimeUnit.SECONDS), "Le journal doit être écrit");
+        List<LogEntry> stored = new ArrayList<>();
+        while (spilled.drainTo(stored, 32, 10, TimeUnit.MILLISECONDS) > 0) {
+            // Continuer jusqu'à épuisement
+        }
+        assertTrue(stored.stream().allMatch(entry -> entry.getWalSegment() > 0), "Le segment WAL doit survivre au débordement");
+        evicting.drainTo(stored, 32, 10, TimeUnit.MILLISECONDS);
+        releasingWal.markStored(stored);
+        assertEquals(1, releasingWal.getSegmentCount(), "Seul le segment courant doit rester: " + releasingWal.getStats());
+        spilled.close();
+        releasingWal.close();
+        
+        // Sans journal, le mode DURABLE est refusé
+        List<String> refused = new ArrayList<>();
+        ClientSession noWal = new ClientSession("no-wal", "127.0.0.1", buffer);
+        noWal.onConnect(refused::add);
+        noWal.onLine("CMD:ACK:DURABLE");
+        assertEquals("ERROR:WAL_DISABLED", refused.get(1), "Le mode DURABLE exige le journal");
+    }
+    
+    /**
+     * Test d'intégration serveur-client complet
+     */
+    @Test
+    @DisplayName("Test Intégration - Serveur et Client")
+    void testServerClientIntegration() throws Exception {
+        // Configuration pour le test
+        System.setProperty("server.port", String.valueOf(TEST_PORT));
+        System.setProperty("storage.directory", tempDir.toString());
+        
+        LogServer server = new LogServer();
+        
+        // Démarrer le serveur dans un thread
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                fail("Erreur démarrage serveur: " + e.getMessage());
+            }
+        });
+        
+        serverThread.start();
+        
+        // Attendre que le serveur soit prêt
+        Thread.sleep(2000);
         
-        serverThread.start();
-        
-        // Attendre que le serveur soit prêt
-        Thread.sleep(2000);
-        
         try {
             // Tester la connexion client
             LogClient client = new LogClient(TEST_HOST, TEST_PORT, "IntegrationTestApp");
@@ -259,6 +1843,412 @@ public class LogServerTest {
         }
     }
     
+    /**
+     * Test du mode d'ingestion NIO (Selector) avec le même protocole
+     */
+    @Test
+    @DisplayName("Test Intégration - Ingestion NIO")
+    void testNioIngestion() throws Exception {
+        ServerConfig config = ServerConfig.getInstance();
+        int previousPort = config.getPort();
+        String previousMode = config.getIngestionMode();
+        config.setPort(TEST_PORT + 10);
+        config.setIngestionMode("nio");
+        
+        LogServer server = new LogServer();
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                fail("Erreur démarrage serveur NIO: " + e.getMessage());
+            }
+        });
+        serverThread.start();
+        Thread.sleep(1000);
+        
+        try {
+            LogClient client = new LogClient(TEST_HOST, TEST_PORT + 10, "NioTestApp");
+            assertTrue(client.connect(), "Le client doit pouvoir se connecter en NIO");
+            
+            for (int i = 0; i < 50; i++) {
+                assertTrue(client.sendLog(LogLevel.INFO, "Nio message " + i, "nio-host", "index=" + i),
+                          "L'envoi en NIO doit réussir");
+            }
+            assertTrue(client.sendCommand("PING").contains("PONG"), "PING doit fonctionner en NIO");
+            assertTrue(client.sendCommand("UNKNOWN").startsWith("ERROR:UNKNOWN_COMMAND"),
+                      "Une commande inconnue doit être rejetée");
+            assertEquals(1, server.getClientCount(), "Un client doit être enregistré");
+            
+            client.disconnect();
+            assertTrue(server.getBuffer().getTotalAdded() >= 50, "Le buffer doit avoir reçu les messages");
+            
+        } finally {
+            server.stop();
+            serverThread.interrupt();
+            config.setPort(previousPort);
+            config.setIngestionMode(previousMode);
+        }
+    }
+    
+    /**
+     * Test NIO d'un client qui ne lit pas ses réponses: lecture suspendue, sortie bornée
+     */
+    @Test
+    @DisplayName("Test Intégration - NIO client lent")
+    void testNioSlowReader() throws Exception {
+        ServerConfig config = ServerConfig.getInstance();
+        int previousPort = config.getPort();
+        String previousMode = config.getIngestionMode();
+        config.setPort(TEST_PORT + 11);
+        config.setIngestionMode("nio");
+        
+        LogServer server = new LogServer();
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                fail("Erreur démarrage serveur NIO: " + e.getMessage());
+            }
+        });
+        serverThread.start();
+        Thread.sleep(1000);
+        
+        try (Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(4096);
+            socket.connect(new java.net.InetSocketAddress(TEST_HOST, TEST_PORT + 11));
+            // 2 millions de PING (20 Mo) sans jamais lire les PONG
+            byte[] pings = "CMD:PING\n".repeat(10_000).getBytes(StandardCharsets.US_ASCII);
+            long[] sent = {0};
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        socket.getOutputStream().write(pings);
+                        sent[0] += pings.length;
+                    }
+                } catch (IOException e) {
+                    // Connexion fermée par le serveur ou par le test
+                }
+            });
+            writer.setDaemon(true);
+            writer.start();
+            writer.join(5000);
+            
+            assertTrue(writer.isAlive(), "Le serveur doit cesser de lire un client qui ne lit pas ses réponses");
+            assertTrue(sent[0] < 200L * pings.length / 2, "Envoi bloqué par le serveur: " + sent[0] + " octets");
+            socket.close();
+        } finally {
+            server.stop();
+            serverThread.interrupt();
+            config.setPort(previousPort);
+            config.setIngestionMode(previousMode);
+        }
+    }
+    
+    /**
+     * Test des acquittements cumulatifs émis par le tick pendant l'ingestion:
+     * numéro et comptes toujours cohérents
+     */
+    @Test
+    @DisplayName("Test Acquittements - Instantané cohérent du tick")
+    void testCumulativeAckSnapshot() throws Exception {
+        List<String> responses = java.util.Collections.synchronizedList(new ArrayList<>());
+        ClientSession session = new ClientSession("ack-client", "127.0.0.1", new CircularBuffer(1000));
+        session.onConnect(responses::add);
+        session.onLine("CMD:ACK:INTERVAL:1");
+        
+        java.util.concurrent.atomic.AtomicBoolean done = new java.util.concurrent.atomic.AtomicBoolean(false);
+        Thread ticker = new Thread(() -> {
+            while (!done.get()) {
+                session.tick(System.currentTimeMillis());
+            }
+        });
+        ticker.start();
+        for (int i = 0; i < 50_000; i++) {
+            // Lignes acceptées, invalides et refusées (buffer plein)
+            session.onLine(i % 7 == 0 ? "invalide" : "INFO|AckApp|host|Message " + i + "|");
+        }
+        done.set(true);
+        ticker.join();
+        session.onLine("CMD:SYNC");
+        
+        int acks = 0;
+        long last = 0;
+        synchronized (responses) {
+            for (String response : responses) {
+                if (response.startsWith("OK:ACK:") || response.startsWith("OK:SYNC:")) {
+                    String[] parts = response.split(":");
+                    long sequence = Long.parseLong(parts[2]);
+                    assertEquals(sequence, Long.parseLong(parts[3]) + Long.parseLong(parts[4]),
+                                 "Acceptés + rejetés doivent égaler le numéro: " + response);
+                    assertTrue(sequence >= last, "Numéros croissants");
+                    last = sequence;
+                    acks++;
+                }
+            }
+        }
+        assertTrue(acks > 1, "Des acquittements cumulatifs doivent être émis");
+        assertEquals(50_000, last, "Toutes les lignes acquittées");
+    }
+    
+    /**
+     * Test des acquittements négociés: cumulatifs, pipeline et rejets numérotés
+     */
+    @Test
+    @DisplayName("Test Acquittements - Modes EVERY, NONE et INTERVAL")
+    void testAckModes() throws Exception {
+        ServerConfig config = ServerConfig.getInstance();
+        int previousPort = config.getPort();
+        config.setPort(TEST_PORT + 30);
+        
+        LogServer server = new LogServer();
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                fail("Erreur démarrage serveur: " + e.getMessage());
+            }
+        });
+        serverThread.start();
+        Thread.sleep(1000);
+        
+        try {
+            // Client en pipeline: acquittement toutes les 10 lignes
+            LogClient client = new LogClient(TEST_HOST, TEST_PORT + 30, "AckTestApp");
+            assertTrue(client.connect(), "Le client doit pouvoir se connecter");
+            assertTrue(client.setAckMode("EVERY:10"), "Le mode EVERY doit être accepté");
+            for (int i = 0; i < 95; i++) {
+                assertTrue(client.sendLog(LogLevel.INFO, "Ack message " + i), "L'envoi en pipeline doit réussir");
+            }
+            assertTrue(client.sync(), "Toutes les lignes doivent être acquittées après SYNC");
+            assertEquals(95L, client.getLastAckedSequence(), "Le dernier acquittement doit couvrir toutes les lignes");
+            assertEquals(0L, client.getMessagesRejected(), "Aucune ligne ne doit être rejetée");
+            assertFalse(client.setAckMode("EVERY:0"), "Un paramètre nul doit être refusé");
+            client.disconnect();
+            
+            // Protocole brut: rejets numérotés et acquittement par intervalle
+            try (Socket socket = new Socket(TEST_HOST, TEST_PORT + 30);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                 PrintWriter writer = new PrintWriter(socket.getOutputStream(), true)) {
+                assertTrue(reader.readLine().startsWith("OK:CONNECTED"));
+                
+                writer.println("CMD:ACK:NONE");
+                assertEquals("OK:ACK_MODE:NONE", reader.readLine());
+                writer.println("INFO|App|host|premier|");
+                writer.println("   ");
+                writer.println("INFO|App|host|troisième|");
+                assertEquals("ERROR:REJECTED:2:EMPTY_MESSAGE", reader.readLine(),
+                            "Le rejet doit porter le numéro de la ligne");
+                
+                writer.println("CMD:ACK:INTERVAL:50");
+                assertEquals("OK:ACK:3:2:1", reader.readLine(), "Le changement de mode doit acquitter ce qui précède");
+                assertEquals("OK:ACK_MODE:INTERVAL:50", reader.readLine());
+                writer.println("INFO|App|host|quatrième|");
+                socket.setSoTimeout(2000);
+                assertEquals("OK:ACK:4:3:1", reader.readLine(), "L'acquittement périodique doit arriver sans SYNC");
+            }
+            
+        } finally {
+            server.stop();
+            serverThread.interrupt();
+            config.setPort(previousPort);
+        }
+    }
+    
+    /**
+     * Test du protocole binaire: décodage identique au texte, taille et CPU comparés
+     */
+    @Test
+    @DisplayName("Test Protocole binaire - Trames vs texte")
+    void testBinaryProtocolCodec() throws IOException {
+        int messageCount = 20000;
+        ByteArrayOutputStream textWire = new ByteArrayOutputStream();
+        ByteArrayOutputStream binaryWire = new ByteArrayOutputStream();
+        BinaryLogCodec.Encoder encoder = new BinaryLogCodec.Encoder();
+        
+        for (int i = 0; i < messageCount; i++) {
+            String message = "Utilisateur connecté: user_" + i;
+            String metadata = "request_id=req-" + i + ",user_id=" + (i % 100);
+            textWire.write(("WARN|BenchApp|bench-host-" + (i % 3) + "|" + message + "|" + metadata + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            encoder.writeLog(binaryWire, LogLevel.WARN, "BenchApp", "bench-host-" + (i % 3), message, metadata);
+        }
+        byte[] text = textWire.toByteArray();
+        byte[] binary = binaryWire.toByteArray();
+        
+        // Décodage texte: découpage des lignes, décodage UTF-8 puis parsing
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long textStart = threads.getCurrentThreadCpuTime();
+        List<LogEntry> textEntries = new ArrayList<>(messageCount);
+        int lineStart = 0;
+        for (int i = 0; i < text.length; i++) {
+            if (text[i] == '\n') {
+                textEntries.add(LogParser.parseLogMessage(new String(text, lineStart, i - lineStart, StandardCharsets.UTF_8)));
+                lineStart = i + 1;
+            }
+        }
+        long textCpu = threads.getCurrentThreadCpuTime() - textStart;
+        
+        // Décodage binaire: préfixe de longueur puis trames
+        long binaryStart = threads.getCurrentThreadCpuTime();
+        BinaryLogCodec.Decoder decoder = new BinaryLogCodec.Decoder();
+        List<LogEntry> binaryEntries = new ArrayList<>(messageCount);
+        ByteBuffer wire = ByteBuffer.wrap(binary);
+        while (wire.hasRemaining()) {
+            int length = BinaryLogCodec.readVarint(wire);
+            ByteBuffer frame = wire.slice(wire.position(), length);
+            wire.position(wire.position() + length);
+            byte type = frame.get();
+            if (type == BinaryLogCodec.FRAME_DEFINE) {
+                decoder.define(frame);
+            } else {
+                assertEquals(BinaryLogCodec.FRAME_LOG, type);
+                binaryEntries.add(decoder.decodeLog(frame, length));
+            }
+        }
+        long binaryCpu = threads.getCurrentThreadCpuTime() - binaryStart;
+        
+        assertEquals(messageCount, binaryEntries.size(), "Chaque log doit produire une trame");
+        for (int i = 0; i < messageCount; i += 997) {
+            LogEntry expected = textEntries.get(i);
+            LogEntry actual = binaryEntries.get(i);
+            assertEquals(expected.getLevel(), actual.getLevel());
+            assertEquals(expected.getApplicationName(), actual.getApplicationName());
+            assertEquals(expected.getHostname(), actual.getHostname());
+            assertEquals(expected.getMessage(), actual.getMessage());
+            assertEquals(expected.getMetadata().get("request_id"), actual.getMetadata().get("request_id"));
+            assertEquals(expected.getMetadata().get("user_id"), actual.getMetadata().get("user_id"));
+        }
+        
+        System.out.println(String.format(
+            "Protocole - Texte: %.1f octets/msg, %d ns CPU/msg - Binaire: %.1f octets/msg, %d ns CPU/msg",
+            (double) text.length / messageCount, textCpu / messageCount,
+            (double) binary.length / messageCount, binaryCpu / messageCount));
+        assertTrue(binary.length < text.length, "Les trames binaires doivent être plus compactes que le texte");
+    }
+    
+    /**
+     * Test du protocole binaire de bout en bout, en mode bloquant et NIO
+     */
+    @Test
+    @DisplayName("Test Protocole binaire - Client/Serveur")
+    void testBinaryProtocolIntegration() throws Exception {
+        ServerConfig config = ServerConfig.getInstance();
+        int previousPort = config.getPort();
+        String previousMode = config.getIngestionMode();
+        String[] modes = {"blocking", "nio"};
+        
+        for (int m = 0; m < modes.length; m++) {
+            config.setPort(TEST_PORT + 40 + m);
+            config.setIngestionMode(modes[m]);
+            LogServer server = new LogServer();
+            Thread serverThread = new Thread(() -> {
+                try {
+                    server.start();
+                } catch (IOException e) {
+                    fail("Erreur démarrage serveur: " + e.getMessage());
+                }
+            });
+            serverThread.start();
+            Thread.sleep(1000);
+            
+            try {
+                LogClient client = new LogClient(TEST_HOST, TEST_PORT + 40 + m, "BinaryApp");
+                assertTrue(client.connect(), "Le client doit pouvoir se connecter");
+                assertTrue(client.useBinaryProtocol(), "Le protocole binaire doit être accepté (" + modes[m] + ")");
+                
+                assertTrue(client.sendLog(LogLevel.ERROR, "Trame binaire | avec séparateur", "bin-host", "request_id=r1"),
+                          "Un log binaire doit être acquitté individuellement");
+                assertTrue(client.sendCommand("PING").contains("PONG"), "Les commandes doivent passer en trames");
+                assertTrue(client.setAckMode("EVERY:50"));
+                for (int i = 0; i < 200; i++) {
+                    client.sendLog(LogLevel.INFO, "Binaire " + i, "bin-host", "index=" + i);
+                }
+                assertTrue(client.sync(), "Toutes les trames doivent être acquittées");
+                assertEquals(0L, client.getMessagesRejected());
+                assertTrue(client.sendCommand("STATS").contains("Protocol:BINARY"));
+                client.disconnect();
+                
+                assertEquals(201, server.getBuffer().getTotalAdded(), "Toutes les trames doivent atteindre le buffer");
+                
+            } finally {
+                server.stop();
+                serverThread.interrupt();
+            }
+        }
+        config.setPort(previousPort);
+        config.setIngestionMode(previousMode);
+    }
+    
+    /**
+     * Test de charge: connexions simultanées en threads virtuels vs pool cached
+     */
+    @Test
+    @DisplayName("Test Charge - Threads virtuels vs pool cached")
+    void testVirtualThreadConnections() throws Exception {
+        int connections = 300;
+        long[] cached = measureConnections(TEST_PORT + 20, false, connections);
+        long[] virtual = measureConnections(TEST_PORT + 21, true, connections);
+        
+        System.out.println(String.format(
+            "Connexions: %d - Cached: %d threads plateforme, %d octets/connexion - Virtuels: %d threads plateforme, %d octets/connexion",
+            connections, cached[0], cached[1], virtual[0], virtual[1]));
+        
+        assertTrue(cached[0] >= connections, "Le pool cached doit créer un thread plateforme par connexion");
+        assertTrue(virtual[0] < connections / 2, "Les threads virtuels ne doivent pas créer un thread plateforme par connexion");
+    }
+    
+    /**
+     * Ouvre N connexions et retourne {threads plateforme ajoutés, octets de heap par connexion}
+     */
+    private long[] measureConnections(int port, boolean virtualThreads, int connections) throws Exception {
+        ServerConfig config = ServerConfig.getInstance();
+        int previousPort = config.getPort();
+        boolean previousVirtual = config.isVirtualThreads();
+        config.setPort(port);
+        config.setVirtualThreads(virtualThreads);
+        
+        LogServer server = new LogServer();
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                fail("Erreur démarrage serveur: " + e.getMessage());
+            }
+        });
+        serverThread.start();
+        Thread.sleep(1000);
+        
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            System.gc();
+            int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+            long heapBefore = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            
+            for (int i = 0; i < connections; i++) {
+                sockets.add(new Socket(TEST_HOST, port));
+            }
+            long deadline = System.currentTimeMillis() + 10000;
+            while (server.getClientCount() < connections && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(connections, server.getClientCount(), "Toutes les connexions doivent être actives");
+            
+            System.gc();
+            long threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+            long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() - heapBefore;
+            return new long[] { threads, Math.max(0, heap / connections) };
+            
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            server.stop();
+            serverThread.interrupt();
+            config.setPort(previousPort);
+            config.setVirtualThreads(previousVirtual);
+        }
+    }
+    
     /**
      * Test de charge avec plusieurs clients simultanés
      */